@@ -16,28 +16,94 @@ package org.openmrs.module.ugandaemrreports.activator;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.openmrs.api.AdministrationService;
 import org.openmrs.api.context.Context;
+import org.openmrs.api.context.Daemon;
+import org.openmrs.module.DaemonToken;
+import org.openmrs.module.ugandaemrreports.api.UgandaEMRReportsService;
+import org.openmrs.module.ugandaemrreports.evaluation.ParallelReportEvaluator;
 import org.openmrs.module.ugandaemrreports.reports.UgandaEMRReportManager;
 import org.openmrs.module.reporting.ReportingConstants;
-import org.openmrs.module.reporting.common.ObjectUtil;
 import org.openmrs.module.reporting.report.manager.ReportManagerUtil;
 import org.openmrs.module.reporting.report.util.ReportUtil;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Initializes reports
+ * <p>
+ * Reports are only set up again when their fingerprint (see {@link UgandaEMRReportManager#getFingerprint()}) differs
+ * from the one stored when they were last set up, and that work is done in a daemon thread so that module startup is
+ * not held up by saving report definitions and designs.
  */
 public class ReportInitializer implements Initializer {
 
 	protected static final Log log = LogFactory.getLog(ReportInitializer.class);
 
+	public static final String GP_FINGERPRINT_PREFIX = "ugandaemrreports.reportManager.";
+
+	public static final String GP_FINGERPRINT_SUFFIX = ".fingerprint";
+
+	private final DaemonToken daemonToken;
+
+	public ReportInitializer(DaemonToken daemonToken) {
+		this.daemonToken = daemonToken;
+	}
+
 	/**
 	 * @see Initializer#started()
 	 */
 	@Override
 	public synchronized void started() {
-		ReportManagerUtil.setupAllReports(UgandaEMRReportManager.class);
-		ReportUtil.updateGlobalProperty(ReportingConstants.GLOBAL_PROPERTY_DATA_EVALUATION_BATCH_SIZE, "-1");
+		// this module's evaluators batch adaptively (see BatchedPatientDataEvaluator), so only switch off the
+		// reporting module's fixed size batching if it has not been configured
+		if (Context.getAdministrationService().getGlobalProperty(ReportingConstants.GLOBAL_PROPERTY_DATA_EVALUATION_BATCH_SIZE) == null) {
+			ReportUtil.updateGlobalProperty(ReportingConstants.GLOBAL_PROPERTY_DATA_EVALUATION_BATCH_SIZE, "-1");
+		}
+		ParallelReportEvaluator.setDaemonToken(daemonToken);
+
+		Runnable setup = new Runnable() {
+			@Override
+			public void run() {
+				setupChangedReports();
+			}
+		};
+		if (daemonToken != null) {
+			Daemon.runInDaemonThread(setup, daemonToken);
+		} else {
+			setup.run();
+		}
+	}
+
+	/**
+	 * Sets up every report whose fingerprint has changed since it was last set up
+	 */
+	protected void setupChangedReports() {
+		List<UgandaEMRReportManager> managers = Context.getRegisteredComponents(UgandaEMRReportManager.class);
+		List<String> updated = new ArrayList<String>();
+		long start = System.currentTimeMillis();
+		for (UgandaEMRReportManager manager : managers) {
+			String gpName = GP_FINGERPRINT_PREFIX + manager.getUuid() + GP_FINGERPRINT_SUFFIX;
+			try {
+				String fingerprint = manager.getFingerprint();
+				String stored = Context.getAdministrationService().getGlobalProperty(gpName);
+				if (fingerprint.equals(stored) && !manager.getVersion().contains("-SNAPSHOT")) {
+					continue;
+				}
+				// force the reporting module to save the report again, even if only the template changed
+				ReportUtil.updateGlobalProperty("reporting.reportManager." + manager.getUuid() + ".version", "");
+				ReportManagerUtil.setupReport(manager);
+				// results stored for closed periods were evaluated with the previous definitions
+				Context.getService(UgandaEMRReportsService.class).purgeDataSetResults(manager.getUuid());
+				ReportUtil.updateGlobalProperty(gpName, fingerprint);
+				updated.add(manager.getName());
+			}
+			catch (Exception e) {
+				log.error("Unable to set up report " + manager.getName() + " [" + manager.getClass().getSimpleName() + "]", e);
+			}
+		}
+		log.info("Checked " + managers.size() + " reports in " + (System.currentTimeMillis() - start) + "ms, set up "
+				+ updated.size() + ": " + updated);
 	}
 
 	/**
@@ -45,5 +111,6 @@ public class ReportInitializer implements Initializer {
 	 */
 	@Override
 	public void stopped() {
+		ParallelReportEvaluator.shutdown();
 	}
-}
\ No newline at end of file
+}
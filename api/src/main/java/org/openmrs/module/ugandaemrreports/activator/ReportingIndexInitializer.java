@@ -0,0 +1,83 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.ugandaemrreports.activator;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.api.context.Context;
+import org.openmrs.api.context.Daemon;
+import org.openmrs.module.DaemonToken;
+import org.openmrs.module.ugandaemrreports.api.UgandaEMRReportsService;
+import org.openmrs.module.ugandaemrreports.evaluation.ReportingIndex;
+import org.openmrs.module.ugandaemrreports.evaluation.ReportingIndexStatus;
+
+/**
+ * Checks that the indexes the module's queries rely on (see {@link ReportingIndex#ALL}) exist, e.g. because a
+ * changeset was marked as run on a database where the index was later dropped, and warns about any that are missing
+ * or have not been read since the database server started
+ */
+public class ReportingIndexInitializer implements Initializer {
+
+	protected static final Log log = LogFactory.getLog(ReportingIndexInitializer.class);
+
+	private final DaemonToken daemonToken;
+
+	public ReportingIndexInitializer(DaemonToken daemonToken) {
+		this.daemonToken = daemonToken;
+	}
+
+	/**
+	 * @see Initializer#started()
+	 */
+	@Override
+	public void started() {
+		Runnable check = new Runnable() {
+			@Override
+			public void run() {
+				checkIndexes();
+			}
+		};
+		if (daemonToken != null) {
+			Daemon.runInDaemonThread(check, daemonToken);
+		} else {
+			check.run();
+		}
+	}
+
+	protected void checkIndexes() {
+		try {
+			for (ReportingIndexStatus status : Context.getService(UgandaEMRReportsService.class).getReportingIndexStatuses()) {
+				if (status.isMissing()) {
+					log.warn("Reporting index " + status.getIndex() + " is missing, reports reading " + status.getIndex().getTable()
+							+ " will scan the whole table");
+				} else if (status.isUnused()) {
+					log.warn("Reporting index " + status + " has not been read since the database server started");
+				} else {
+					log.info("Reporting index " + status);
+				}
+			}
+		}
+		catch (Exception e) {
+			log.error("Unable to check the reporting indexes", e);
+		}
+	}
+
+	/**
+	 * @see Initializer#stopped()
+	 */
+	@Override
+	public void stopped() {
+	}
+}
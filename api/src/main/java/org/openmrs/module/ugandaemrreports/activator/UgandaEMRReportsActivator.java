@@ -19,18 +19,30 @@ import java.util.List;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.openmrs.module.BaseModuleActivator;
+import org.openmrs.module.DaemonToken;
+import org.openmrs.module.DaemonTokenAware;
 
 /**
  * This class contains the logic that is run every time this module is either started or stopped.
  */
-public class UgandaEMRReportsActivator extends BaseModuleActivator {
+public class UgandaEMRReportsActivator extends BaseModuleActivator implements DaemonTokenAware {
 	
 	protected Log log = LogFactory.getLog(getClass());
 
+	private DaemonToken daemonToken;
+
+	@Override
+	public void setDaemonToken(DaemonToken token) {
+		this.daemonToken = token;
+	}
+
 	public List<Initializer> getInitializers() {
 		List<Initializer> l = new ArrayList<Initializer>();
 		l.add(new AppConfigInitializer());
-		l.add(new ReportInitializer());
+		l.add(new ReportInitializer(daemonToken));
+		l.add(new ReportingIndexInitializer(daemonToken));
+		l.add(new ViralLoadIndexInitializer(daemonToken));
+		l.add(new AppointmentIndexInitializer(daemonToken));
 		return l;
 	}
 
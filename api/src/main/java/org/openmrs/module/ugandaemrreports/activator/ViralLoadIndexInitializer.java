@@ -0,0 +1,77 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.ugandaemrreports.activator;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.api.context.Context;
+import org.openmrs.api.context.Daemon;
+import org.openmrs.module.DaemonToken;
+import org.openmrs.module.ugandaemrreports.evaluation.ViralLoadIndex;
+
+import java.util.List;
+
+/**
+ * Brings the viral load index up to date with the obs entered while the module was stopped, building it the first
+ * time the module starts, so that the first viral load report does not have to read them
+ */
+public class ViralLoadIndexInitializer implements Initializer {
+
+	protected static final Log log = LogFactory.getLog(ViralLoadIndexInitializer.class);
+
+	private final DaemonToken daemonToken;
+
+	public ViralLoadIndexInitializer(DaemonToken daemonToken) {
+		this.daemonToken = daemonToken;
+	}
+
+	/**
+	 * @see Initializer#started()
+	 */
+	@Override
+	public void started() {
+		Runnable refresh = new Runnable() {
+			@Override
+			public void run() {
+				refreshIndex();
+			}
+		};
+		if (daemonToken != null) {
+			Daemon.runInDaemonThread(refresh, daemonToken);
+		} else {
+			refresh.run();
+		}
+	}
+
+	protected void refreshIndex() {
+		try {
+			List<ViralLoadIndex> indexes = Context.getRegisteredComponents(ViralLoadIndex.class);
+			if (!indexes.isEmpty()) {
+				int updated = indexes.get(0).refresh();
+				log.info("Viral load index refreshed for " + updated + " patients");
+			}
+		}
+		catch (Exception e) {
+			log.error("Unable to refresh the viral load index", e);
+		}
+	}
+
+	/**
+	 * @see Initializer#stopped()
+	 */
+	@Override
+	public void stopped() {
+	}
+}
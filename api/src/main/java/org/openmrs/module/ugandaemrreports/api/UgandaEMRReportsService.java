@@ -1,8 +1,22 @@
 package org.openmrs.module.ugandaemrreports.api;
 
+import org.openmrs.Cohort;
+import org.openmrs.OpenmrsObject;
 import org.openmrs.api.OpenmrsService;
+import org.openmrs.module.ugandaemrreports.common.Appointment;
+import org.openmrs.module.ugandaemrreports.common.NonSuppressingDataHandler;
+import org.openmrs.module.ugandaemrreports.common.ViralLoadTest;
+import org.openmrs.module.ugandaemrreports.evaluation.DataSetResult;
+import org.openmrs.module.ugandaemrreports.evaluation.ReportProfile;
+import org.openmrs.module.ugandaemrreports.evaluation.ReportingIndex;
+import org.openmrs.module.ugandaemrreports.evaluation.ReportingIndexStatus;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
 /**
  * This service exposes module's core functionality. It is a Spring managed bean which is configured in
  * moduleApplicationContext.xml.
@@ -16,5 +30,169 @@ import org.springframework.transaction.annotation.Transactional;
  */
 @Transactional
 public interface UgandaEMRReportsService extends OpenmrsService {
-	
+
+	/**
+	 * Saves the profile of a report run and its tree of steps, in its own transaction so that it is saved whatever
+	 * happens to the transaction the report was evaluated in. Profiles older than the retention period are purged.
+	 *
+	 * @param profile the profile to save
+	 * @return the saved profile
+	 */
+	@Transactional(propagation = Propagation.REQUIRES_NEW)
+	ReportProfile saveReportProfile(ReportProfile profile);
+
+	/**
+	 * @param reportDefinitionUuid the report to get the profiles of, or null for all reports
+	 * @param startedSince the earliest start of the runs to return, or null for all runs
+	 * @param max the maximum number of profiles to return
+	 * @return the most recent profiles, without their trees
+	 */
+	@Transactional(readOnly = true)
+	List<ReportProfile> getReportProfiles(String reportDefinitionUuid, Date startedSince, int max);
+
+	/**
+	 * @return the profile with the given id and its tree of steps, or null if there is none
+	 */
+	@Transactional(readOnly = true)
+	ReportProfile getReportProfile(Integer reportProfileId);
+
+	/**
+	 * Deletes the profiles of runs started before the given date
+	 *
+	 * @return the number of profiles deleted
+	 */
+	int purgeReportProfiles(Date startedBefore);
+
+	/**
+	 * Checks the indexes the module's queries rely on (see {@link ReportingIndex#ALL}) against the database
+	 *
+	 * @return whether each index, or another index serving the same lookups, exists and how often it has been read
+	 */
+	@Transactional(readOnly = true)
+	List<ReportingIndexStatus> getReportingIndexStatuses();
+
+	/**
+	 * @return the object read again in the current session, e.g. a parameter value loaded by the thread that requested
+	 * a report, for a thread evaluating part of it; or the object itself if it has never been saved
+	 */
+	@Transactional(readOnly = true)
+	<T extends OpenmrsObject> T reload(T object);
+
+	/**
+	 * @return the stored result with the given key, or null if there is none
+	 */
+	@Transactional(readOnly = true)
+	DataSetResult getDataSetResult(String resultKey);
+
+	/**
+	 * Stores a data set result, replacing any stored with the same key, in its own transaction so that it is kept
+	 * whatever happens to the transaction the report is evaluated in
+	 */
+	@Transactional(propagation = Propagation.REQUIRES_NEW)
+	DataSetResult saveDataSetResult(DataSetResult result);
+
+	/**
+	 * Deletes the stored data set results of a report, e.g. when it is set up again
+	 *
+	 * @return the number of results deleted
+	 */
+	int purgeDataSetResults(String reportDefinitionUuid);
+
+	/**
+	 * @return true if, since the given time, any obs or encounter dated before the given end, person, patient, or
+	 * program enrolment dated before the given end was created, changed or voided
+	 */
+	@Transactional(readOnly = true)
+	boolean isDataChangedSince(Date since, Date to);
+
+	/**
+	 * Reads the obs of the IAC encounters of the cohort, one patient at a time, without holding the rows of other
+	 * patients in memory. When dates are given, only encounters with an IAC session, results received or clinical
+	 * decision dated from the start up to the end date are read.
+	 *
+	 * @param cohort the patients to read, or null for all patients
+	 */
+	@Transactional(readOnly = true)
+	void getNonSuppressingData(Date startDate, Date endDate, Cohort cohort, NonSuppressingDataHandler handler);
+
+	/**
+	 * Updates the viral load index (the latest and previous viral load test of each patient) for the patients whose
+	 * viral load obs were created or voided since it was last refreshed, or builds it if it has never been built, and
+	 * then the viral load schedule (the next viral load due date of each patient on ART) in the same way
+	 *
+	 * @return the number of patients whose tests were updated
+	 */
+	@Transactional(propagation = Propagation.REQUIRES_NEW)
+	int refreshViralLoadIndex();
+
+	/**
+	 * Builds the viral load index and the viral load schedule again from all the obs
+	 *
+	 * @return the number of patients indexed
+	 */
+	@Transactional(propagation = Propagation.REQUIRES_NEW)
+	int rebuildViralLoadIndex();
+
+	/**
+	 * Compares the viral load index with the viral load obs, leaving out the patients changed since it was last
+	 * refreshed
+	 *
+	 * @return the patients whose tests in the index differ from their obs, or who are missing from it
+	 */
+	@Transactional(readOnly = true)
+	List<Integer> checkViralLoadIndex();
+
+	/**
+	 * Reads the latest viral load test of each patient on or before the given date from the viral load index, reading
+	 * the obs of the patients changed since it was last refreshed and of those with more than one test after the date
+	 *
+	 * @param cohort the patients to read, or null for all patients
+	 * @return the latest test by patient, for the patients with a test on or before the date
+	 */
+	@Transactional(readOnly = true)
+	Map<Integer, ViralLoadTest> getLatestViralLoads(Cohort cohort, Date onOrBefore);
+
+	/**
+	 * Looks up the patients due for a viral load test between the given dates in the viral load schedule (see
+	 * ViralLoadSchedule for the rules), working out the schedule of the patients changed since it was last refreshed.
+	 * The schedule is as of the end of activeOn: tests, ART starts and pregnancies after it are left out, and when
+	 * activeOn is before the schedule was last refreshed it is worked out again for the patients with any of them
+	 * after activeOn.
+	 *
+	 * @param cohort the patients to look up, or null for all patients
+	 * @param dueFrom the first due date included, or null for all patients due by dueBy
+	 * @param dueBy the last due date included
+	 * @param activeOn patients who died or were transferred out on or before this date are left out
+	 */
+	@Transactional(readOnly = true)
+	Cohort getPatientsDueForViralLoad(Cohort cohort, Date dueFrom, Date dueBy, Date activeOn);
+
+	/**
+	 * Updates the appointment index (the return visits given to each patient and the visits that honoured them) for
+	 * the patients whose return visit obs or encounters were created, changed or voided since it was last refreshed,
+	 * or builds it if it has never been built
+	 *
+	 * @return the number of patients whose appointments were updated
+	 */
+	@Transactional(propagation = Propagation.REQUIRES_NEW)
+	int refreshAppointmentIndex();
+
+	/**
+	 * Builds the appointment index again from all the obs and encounters
+	 *
+	 * @return the number of patients indexed
+	 */
+	@Transactional(propagation = Propagation.REQUIRES_NEW)
+	int rebuildAppointmentIndex();
+
+	/**
+	 * Reads the appointments scheduled from the start to the end date from the appointment index, reading the obs
+	 * and encounters of the patients changed since it was last refreshed
+	 *
+	 * @param cohort the patients to read, or null for all patients
+	 * @param scheduledFrom the first scheduled date, or null for no limit
+	 * @param scheduledTo the last scheduled date, or null for no limit
+	 */
+	@Transactional(readOnly = true)
+	List<Appointment> getAppointments(Cohort cohort, Date scheduledFrom, Date scheduledTo);
 }
@@ -1,10 +1,90 @@
 package org.openmrs.module.ugandaemrreports.api.db;
 
+import org.openmrs.Cohort;
+import org.openmrs.OpenmrsObject;
 import org.openmrs.module.ugandaemrreports.api.UgandaEMRReportsService;
+import org.openmrs.module.ugandaemrreports.common.Appointment;
+import org.openmrs.module.ugandaemrreports.common.NonSuppressingDataHandler;
+import org.openmrs.module.ugandaemrreports.common.PatientViralLoads;
+import org.openmrs.module.ugandaemrreports.common.ViralLoadSchedule;
+import org.openmrs.module.ugandaemrreports.evaluation.DataSetResult;
+import org.openmrs.module.ugandaemrreports.evaluation.ReportProfile;
+import org.openmrs.module.ugandaemrreports.evaluation.ReportingIndex;
+import org.openmrs.module.ugandaemrreports.evaluation.ReportingIndexStatus;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Database methods for {@link UgandaEMRReportsService}.
  */
 public interface UgandaEMRReportsDAO {
-	
+
+	ReportProfile saveReportProfile(ReportProfile profile);
+
+	List<ReportProfile> getReportProfiles(String reportDefinitionUuid, Date startedSince, int max);
+
+	ReportProfile getReportProfile(Integer reportProfileId);
+
+	int purgeReportProfiles(Date startedBefore);
+
+	List<ReportingIndexStatus> getReportingIndexStatuses(List<ReportingIndex> indexes);
+
+	<T extends OpenmrsObject> T reload(T object);
+
+	DataSetResult getDataSetResult(String resultKey);
+
+	DataSetResult saveDataSetResult(DataSetResult result);
+
+	int purgeDataSetResults(String reportDefinitionUuid);
+
+	boolean isDataChangedSince(Date since, Date to);
+
+	void getNonSuppressingData(Date startDate, Date endDate, Cohort cohort, NonSuppressingDataHandler handler);
+
+	Date getIndexWatermark(String indexName);
+
+	void saveIndexWatermark(String indexName, Date watermark, Date rebuilt);
+
+	List<Integer> getPatientsWithViralLoads();
+
+	List<Integer> getPatientsWithViralLoadChanges(Date since);
+
+	Map<Integer, PatientViralLoads> getViralLoads(Collection<Integer> patientIds, Date onOrBefore);
+
+	Map<Integer, PatientViralLoads> getViralLoadIndex(Collection<Integer> patientIds);
+
+	void saveViralLoadIndex(Collection<Integer> patientIds, Map<Integer, PatientViralLoads> viralLoads);
+
+	int clearViralLoadIndex();
+
+	List<Integer> getPatientsOnArt();
+
+	List<Integer> getPatientsWithViralLoadScheduleChanges(Date since);
+
+	List<Integer> getPatientsWithViralLoadScheduleInputsAfter(Date date);
+
+	Map<Integer, ViralLoadSchedule> getViralLoadScheduleInputs(Collection<Integer> patientIds);
+
+	void saveViralLoadSchedules(Collection<Integer> patientIds, Collection<ViralLoadSchedule> schedules);
+
+	int clearViralLoadSchedules();
+
+	List<Integer> getPatientsDueForViralLoad(Date dueFrom, Date dueBy, Date activeOn);
+
+	List<Integer> getPatientsWithAppointments();
+
+	List<Integer> getPatientsWithAppointmentsBetween(Date from, Date to);
+
+	List<Integer> getPatientsWithAppointmentChanges(Date since);
+
+	List<Appointment> getAppointments(Collection<Integer> patientIds);
+
+	List<Appointment> getAppointmentIndex(Collection<Integer> patientIds, Date from, Date to);
+
+	void saveAppointments(Collection<Integer> patientIds, Collection<Appointment> appointments);
+
+	int clearAppointments();
 }
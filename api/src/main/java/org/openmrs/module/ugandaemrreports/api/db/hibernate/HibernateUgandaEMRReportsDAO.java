@@ -1,9 +1,47 @@
 package org.openmrs.module.ugandaemrreports.api.db.hibernate;
 
+import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.hibernate.Hibernate;
 import org.hibernate.SessionFactory;
+import org.hibernate.jdbc.ReturningWork;
+import org.hibernate.jdbc.Work;
+import org.openmrs.Cohort;
+import org.openmrs.OpenmrsObject;
+import org.openmrs.module.reporting.common.DateUtil;
+import org.openmrs.module.reporting.common.DurationUnit;
 import org.openmrs.module.ugandaemrreports.api.db.UgandaEMRReportsDAO;
+import org.openmrs.module.ugandaemrreports.common.Appointment;
+import org.openmrs.module.ugandaemrreports.common.NonSuppressingDataHandler;
+import org.openmrs.module.ugandaemrreports.common.PatientNonSuppressingData;
+import org.openmrs.module.ugandaemrreports.common.PatientViralLoads;
+import org.openmrs.module.ugandaemrreports.common.ViralLoadSchedule;
+import org.openmrs.module.ugandaemrreports.common.ViralLoadTest;
+import org.openmrs.module.ugandaemrreports.evaluation.DataSetResult;
+import org.openmrs.module.ugandaemrreports.evaluation.ProfileNode;
+import org.openmrs.module.ugandaemrreports.evaluation.ReportProfile;
+import org.openmrs.module.ugandaemrreports.evaluation.ReportingIndex;
+import org.openmrs.module.ugandaemrreports.evaluation.ReportingIndexStatus;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
 
 /**
  */
@@ -11,8 +49,43 @@ public class HibernateUgandaEMRReportsDAO implements UgandaEMRReportsDAO {
 
 	protected final Log log = LogFactory.getLog(this.getClass());
 
+	private static final String IAC_ENCOUNTER_TYPE = "38cb2232-30fc-4b1f-8df1-47c795771ee9";
+
+	private static final int VIRAL_LOAD_DATE = 163023;
+
+	private static final int VIRAL_LOAD_COPIES = 856;
+
+	private static final int VIRAL_LOAD_QUALITATIVE = 1305;
+
+	private static final String VIRAL_LOAD_CONCEPTS = VIRAL_LOAD_DATE + ", " + VIRAL_LOAD_COPIES + ", " + VIRAL_LOAD_QUALITATIVE;
+
+	private static final int ART_START_DATE = 99161;
+
+	private static final int TRANSFERRED_OUT = 90306;
+
+	private static final int YES = 1065;
+
+	private static final int RETURN_VISIT_DATE = 5096;
+
+	/**
+	 * Pregnant at the ART card visit and EMTCT at the visit, as ArtPregnantCohortEvaluator reads them
+	 */
+	private static final String PREGNANCY_CONCEPTS = "99072, 99603";
+
+	/**
+	 * The ANC visit number, 1 at the first ANC visit of a pregnancy
+	 */
+	private static final String ANC_VISIT_UUID = "801b8959-4b2a-46c0-a28f-f7d3fc8b98bb";
+
+	private static final String VIRAL_LOAD_SCHEDULE_CONCEPTS = VIRAL_LOAD_CONCEPTS + ", " + ART_START_DATE + ", "
+			+ TRANSFERRED_OUT + ", " + PREGNANCY_CONCEPTS;
+
+	private static final String PROFILE_COLUMNS = "report_profile_id, report_definition_uuid, report_name, parameters, started, duration, status, peak_rows, data_source, replica_lag";
+
 	private SessionFactory sessionFactory;
 
+	private volatile Integer ancVisitConceptId;
+
 	/**
 	 * @return the sessionFactory
 	 */
@@ -26,5 +99,1159 @@ public class HibernateUgandaEMRReportsDAO implements UgandaEMRReportsDAO {
 	public void setSessionFactory(SessionFactory sessionFactory) {
 		this.sessionFactory = sessionFactory;
 	}
-	
+
+	@Override
+	public ReportProfile saveReportProfile(final ReportProfile profile) {
+		return sessionFactory.getCurrentSession().doReturningWork(new ReturningWork<ReportProfile>() {
+
+			@Override
+			public ReportProfile execute(Connection connection) throws SQLException {
+				PreparedStatement ps = connection.prepareStatement("insert into ugandaemrreports_report_profile "
+						+ "(report_definition_uuid, report_name, parameters, started, duration, status, peak_rows, data_source, replica_lag) "
+						+ "values (?, ?, ?, ?, ?, ?, ?, ?, ?)", Statement.RETURN_GENERATED_KEYS);
+				try {
+					ps.setString(1, profile.getReportDefinitionUuid());
+					ps.setString(2, profile.getReportName());
+					ps.setString(3, profile.getParameters());
+					ps.setTimestamp(4, new Timestamp(profile.getStarted().getTime()));
+					ps.setLong(5, profile.getDuration());
+					ps.setString(6, profile.getStatus());
+					ps.setLong(7, profile.getRows());
+					ps.setString(8, profile.getDataSource());
+					if (profile.getReplicaLag() == null) {
+						ps.setNull(9, Types.INTEGER);
+					} else {
+						ps.setLong(9, profile.getReplicaLag());
+					}
+					ps.executeUpdate();
+					ResultSet keys = ps.getGeneratedKeys();
+					keys.next();
+					profile.setReportProfileId(keys.getInt(1));
+				}
+				finally {
+					ps.close();
+				}
+
+				if (profile.getRoot() != null) {
+					ps = connection.prepareStatement("insert into ugandaemrreports_report_profile_node "
+							+ "(report_profile_id, node_index, parent_index, node_type, name, sql_fingerprint, duration, result_rows, result_bytes, error) "
+							+ "values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+					try {
+						insertNode(ps, profile.getReportProfileId(), profile.getRoot(), null, new int[] { 0 });
+						ps.executeBatch();
+					}
+					finally {
+						ps.close();
+					}
+				}
+				return profile;
+			}
+		});
+	}
+
+	/**
+	 * Adds a node and its children to the insert batch, numbering them in depth first order
+	 */
+	private void insertNode(PreparedStatement ps, Integer profileId, ProfileNode node, Integer parentIndex, int[] nextIndex)
+			throws SQLException {
+		int index = nextIndex[0]++;
+		node.setNodeId(index);
+		ps.setInt(1, profileId);
+		ps.setInt(2, index);
+		if (parentIndex == null) {
+			ps.setNull(3, Types.INTEGER);
+		} else {
+			ps.setInt(3, parentIndex);
+		}
+		ps.setString(4, node.getType());
+		ps.setString(5, node.getName());
+		ps.setString(6, node.getSqlFingerprint());
+		ps.setLong(7, node.getDuration());
+		ps.setLong(8, node.getRows());
+		ps.setLong(9, node.getBytes());
+		ps.setString(10, node.getError());
+		ps.addBatch();
+		for (ProfileNode child : node.getChildren()) {
+			insertNode(ps, profileId, child, index, nextIndex);
+		}
+	}
+
+	@Override
+	public List<ReportProfile> getReportProfiles(final String reportDefinitionUuid, final Date startedSince, final int max) {
+		return sessionFactory.getCurrentSession().doReturningWork(new ReturningWork<List<ReportProfile>>() {
+
+			@Override
+			public List<ReportProfile> execute(Connection connection) throws SQLException {
+				String sql = "select " + PROFILE_COLUMNS + " from ugandaemrreports_report_profile where 1 = 1"
+						+ (reportDefinitionUuid != null ? " and report_definition_uuid = ?" : "")
+						+ (startedSince != null ? " and started >= ?" : "")
+						+ " order by started desc";
+				PreparedStatement ps = connection.prepareStatement(sql);
+				try {
+					int i = 1;
+					if (reportDefinitionUuid != null) {
+						ps.setString(i++, reportDefinitionUuid);
+					}
+					if (startedSince != null) {
+						ps.setTimestamp(i, new Timestamp(startedSince.getTime()));
+					}
+					ps.setMaxRows(max);
+					ResultSet rs = ps.executeQuery();
+					List<ReportProfile> profiles = new ArrayList<ReportProfile>();
+					while (rs.next()) {
+						profiles.add(toProfile(rs));
+					}
+					return profiles;
+				}
+				finally {
+					ps.close();
+				}
+			}
+		});
+	}
+
+	@Override
+	public ReportProfile getReportProfile(final Integer reportProfileId) {
+		return sessionFactory.getCurrentSession().doReturningWork(new ReturningWork<ReportProfile>() {
+
+			@Override
+			public ReportProfile execute(Connection connection) throws SQLException {
+				ReportProfile profile;
+				PreparedStatement ps = connection.prepareStatement("select " + PROFILE_COLUMNS
+						+ " from ugandaemrreports_report_profile where report_profile_id = ?");
+				try {
+					ps.setInt(1, reportProfileId);
+					ResultSet rs = ps.executeQuery();
+					if (!rs.next()) {
+						return null;
+					}
+					profile = toProfile(rs);
+				}
+				finally {
+					ps.close();
+				}
+
+				ps = connection.prepareStatement("select node_index, parent_index, node_type, name, sql_fingerprint, "
+						+ "duration, result_rows, result_bytes, error from ugandaemrreports_report_profile_node "
+						+ "where report_profile_id = ? order by node_index");
+				try {
+					ps.setInt(1, reportProfileId);
+					ResultSet rs = ps.executeQuery();
+					Map<Integer, ProfileNode> nodes = new HashMap<Integer, ProfileNode>();
+					while (rs.next()) {
+						ProfileNode node = new ProfileNode();
+						node.setNodeId(rs.getInt("node_index"));
+						node.setType(rs.getString("node_type"));
+						node.setName(rs.getString("name"));
+						node.setSqlFingerprint(rs.getString("sql_fingerprint"));
+						node.setDuration(rs.getLong("duration"));
+						node.setRows(rs.getLong("result_rows"));
+						node.setBytes(rs.getLong("result_bytes"));
+						node.setError(rs.getString("error"));
+						nodes.put(node.getNodeId(), node);
+
+						int parentIndex = rs.getInt("parent_index");
+						if (rs.wasNull()) {
+							profile.setRoot(node);
+						} else if (nodes.containsKey(parentIndex)) {
+							nodes.get(parentIndex).addChild(node);
+						}
+					}
+				}
+				finally {
+					ps.close();
+				}
+				return profile;
+			}
+		});
+	}
+
+	@Override
+	public int purgeReportProfiles(Date startedBefore) {
+		// nodes are deleted with their profile by the foreign key
+		return sessionFactory.getCurrentSession()
+				.createSQLQuery("delete from ugandaemrreports_report_profile where started < :startedBefore")
+				.setTimestamp("startedBefore", startedBefore)
+				.executeUpdate();
+	}
+
+	@Override
+	public List<ReportingIndexStatus> getReportingIndexStatuses(final List<ReportingIndex> indexes) {
+		return sessionFactory.getCurrentSession().doReturningWork(new ReturningWork<List<ReportingIndexStatus>>() {
+
+			@Override
+			public List<ReportingIndexStatus> execute(Connection connection) throws SQLException {
+				List<ReportingIndexStatus> statuses = new ArrayList<ReportingIndexStatus>();
+				Map<String, Long> reads = getIndexReads(connection);
+				for (ReportingIndex index : indexes) {
+					String existing = null;
+					for (Map.Entry<String, List<String>> candidate : getIndexColumns(connection, index.getTable()).entrySet()) {
+						if (index.isCoveredBy(candidate.getValue())) {
+							existing = candidate.getKey();
+							// prefer the module's own index when another one covers it as well
+							if (existing.equalsIgnoreCase(index.getName())) {
+								break;
+							}
+						}
+					}
+					Long indexReads = null;
+					if (existing != null && reads != null) {
+						// indexes never read since the server started have no row
+						Long count = reads.get(index.getTable() + "." + existing);
+						indexReads = count != null ? count : 0L;
+					}
+					statuses.add(new ReportingIndexStatus(index, existing, indexReads));
+				}
+				return statuses;
+			}
+		});
+	}
+
+	/**
+	 * @return the columns of each index of the table, in index order, by index name
+	 */
+	private Map<String, List<String>> getIndexColumns(Connection connection, String table) throws SQLException {
+		PreparedStatement ps = connection.prepareStatement("select index_name, column_name from information_schema.statistics "
+				+ "where table_schema = database() and table_name = ? order by index_name, seq_in_index");
+		try {
+			ps.setString(1, table);
+			ResultSet rs = ps.executeQuery();
+			Map<String, List<String>> ret = new LinkedHashMap<String, List<String>>();
+			while (rs.next()) {
+				String name = rs.getString("index_name");
+				if (!ret.containsKey(name)) {
+					ret.put(name, new ArrayList<String>());
+				}
+				ret.get(name).add(rs.getString("column_name"));
+			}
+			return ret;
+		}
+		finally {
+			ps.close();
+		}
+	}
+
+	/**
+	 * @return the rows read through each index of the schema since the server started, by table and index name, or
+	 * null if the performance schema is not enabled or readable
+	 */
+	private Map<String, Long> getIndexReads(Connection connection) {
+		try {
+			PreparedStatement ps = connection.prepareStatement("select object_name, index_name, count_read "
+					+ "from performance_schema.table_io_waits_summary_by_index_usage "
+					+ "where object_schema = database() and index_name is not null");
+			try {
+				ResultSet rs = ps.executeQuery();
+				Map<String, Long> ret = new HashMap<String, Long>();
+				while (rs.next()) {
+					ret.put(rs.getString("object_name") + "." + rs.getString("index_name"), rs.getLong("count_read"));
+				}
+				return ret.isEmpty() ? null : ret;
+			}
+			finally {
+				ps.close();
+			}
+		}
+		catch (SQLException e) {
+			log.debug("Index usage is not available from the performance schema", e);
+			return null;
+		}
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public <T extends OpenmrsObject> T reload(T object) {
+		if (object == null || object.getId() == null) {
+			return object;
+		}
+		Object ret = sessionFactory.getCurrentSession().get(Hibernate.getClass(object), object.getId());
+		return ret != null ? (T) ret : object;
+	}
+
+	@Override
+	public DataSetResult getDataSetResult(final String resultKey) {
+		return sessionFactory.getCurrentSession().doReturningWork(new ReturningWork<DataSetResult>() {
+
+			@Override
+			public DataSetResult execute(Connection connection) throws SQLException {
+				PreparedStatement ps = connection.prepareStatement("select result_key, report_definition_uuid, dataset_name, "
+						+ "period_start, period_end, watermark, created, cell_values from ugandaemrreports_dataset_result where result_key = ?");
+				try {
+					ps.setString(1, resultKey);
+					ResultSet rs = ps.executeQuery();
+					if (!rs.next()) {
+						return null;
+					}
+					DataSetResult result = new DataSetResult();
+					result.setResultKey(rs.getString("result_key"));
+					result.setReportDefinitionUuid(rs.getString("report_definition_uuid"));
+					result.setDataSetName(rs.getString("dataset_name"));
+					result.setPeriodStart(rs.getTimestamp("period_start"));
+					result.setPeriodEnd(rs.getTimestamp("period_end"));
+					result.setWatermark(rs.getTimestamp("watermark"));
+					result.setCreated(rs.getTimestamp("created"));
+					result.setValues(parseValues(rs.getString("cell_values")));
+					return result;
+				}
+				finally {
+					ps.close();
+				}
+			}
+		});
+	}
+
+	@Override
+	public DataSetResult saveDataSetResult(final DataSetResult result) {
+		return sessionFactory.getCurrentSession().doReturningWork(new ReturningWork<DataSetResult>() {
+
+			@Override
+			public DataSetResult execute(Connection connection) throws SQLException {
+				PreparedStatement ps = connection.prepareStatement("replace into ugandaemrreports_dataset_result "
+						+ "(result_key, report_definition_uuid, dataset_name, period_start, period_end, watermark, created, cell_values) "
+						+ "values (?, ?, ?, ?, ?, ?, ?, ?)");
+				try {
+					ps.setString(1, result.getResultKey());
+					ps.setString(2, result.getReportDefinitionUuid());
+					ps.setString(3, result.getDataSetName());
+					ps.setTimestamp(4, toTimestamp(result.getPeriodStart()));
+					ps.setTimestamp(5, toTimestamp(result.getPeriodEnd()));
+					ps.setTimestamp(6, toTimestamp(result.getWatermark()));
+					ps.setTimestamp(7, toTimestamp(result.getCreated()));
+					ps.setString(8, formatValues(result.getValues()));
+					ps.executeUpdate();
+				}
+				finally {
+					ps.close();
+				}
+				return result;
+			}
+		});
+	}
+
+	@Override
+	public int purgeDataSetResults(String reportDefinitionUuid) {
+		return sessionFactory.getCurrentSession()
+				.createSQLQuery("delete from ugandaemrreports_dataset_result where report_definition_uuid = :uuid")
+				.setString("uuid", reportDefinitionUuid)
+				.executeUpdate();
+	}
+
+	@Override
+	public boolean isDataChangedSince(final Date since, final Date to) {
+		return sessionFactory.getCurrentSession().doReturningWork(new ReturningWork<Boolean>() {
+
+			@Override
+			public Boolean execute(Connection connection) throws SQLException {
+				// each change is looked for on its own, so that it reads through an index on the change date; obs are
+				// never changed, only voided and replaced
+				String[] changes = {
+						"select 1 from obs where date_created >= ? and obs_datetime < ? limit 1",
+						"select 1 from obs where date_voided >= ? and obs_datetime < ? limit 1",
+						"select 1 from encounter where date_created >= ? and encounter_datetime < ? limit 1",
+						"select 1 from encounter where date_changed >= ? and encounter_datetime < ? limit 1",
+						"select 1 from encounter where date_voided >= ? and encounter_datetime < ? limit 1",
+						"select 1 from patient_program where date_created >= ? and date_enrolled < ? limit 1",
+						"select 1 from patient_program where date_changed >= ? and date_enrolled < ? limit 1",
+						"select 1 from patient_program where date_voided >= ? and date_enrolled < ? limit 1",
+						"select 1 from person where date_created >= ? and date_created < ? limit 1",
+						"select 1 from person where date_changed >= ? and date_created < ? limit 1",
+						"select 1 from person where date_voided >= ? and date_created < ? limit 1",
+						"select 1 from patient where date_created >= ? and date_created < ? limit 1",
+						"select 1 from patient where date_changed >= ? and date_created < ? limit 1",
+						"select 1 from patient where date_voided >= ? and date_created < ? limit 1"
+				};
+				for (String change : changes) {
+					PreparedStatement ps = connection.prepareStatement(change);
+					try {
+						ps.setTimestamp(1, toTimestamp(since));
+						ps.setTimestamp(2, toTimestamp(to));
+						if (ps.executeQuery().next()) {
+							return true;
+						}
+					}
+					finally {
+						ps.close();
+					}
+				}
+				return false;
+			}
+		});
+	}
+
+	@Override
+	public void getNonSuppressingData(final Date startDate, final Date endDate, final Cohort cohort,
+	                                  final NonSuppressingDataHandler handler) {
+		if (cohort != null && cohort.isEmpty()) {
+			return;
+		}
+		sessionFactory.getCurrentSession().doWork(new Work() {
+
+			@Override
+			public void execute(Connection connection) throws SQLException {
+				StringBuilder sql = new StringBuilder("select o.person_id, e.encounter_id, date(e.encounter_datetime), "
+						+ "o.concept_id, o.value_coded, date(o.value_datetime), o.value_numeric, o.value_text, p.birthdate "
+						+ "from encounter e "
+						+ "inner join encounter_type et on (et.encounter_type_id = e.encounter_type and et.uuid = ?) "
+						+ "inner join obs o on (o.encounter_id = e.encounter_id and o.voided = 0) "
+						+ "inner join person p on (p.person_id = o.person_id) "
+						+ "where e.voided = 0");
+				if (cohort != null) {
+					sql.append(" and e.patient_id in (").append(StringUtils.join(cohort.getMemberIds(), ",")).append(")");
+				}
+				boolean dated = startDate != null && endDate != null;
+				if (dated) {
+					// the encounters with a date the IAC indicators count in the period, see ViralLoadDataSetEvaluator
+					sql.append(" and exists (select 1 from obs d where d.encounter_id = e.encounter_id and d.voided = 0 "
+							+ "and d.concept_id in (163154, 163150, 163167) and d.value_datetime >= ? and d.value_datetime < ?)");
+				}
+				sql.append(" order by o.person_id, e.encounter_id, o.obs_id");
+
+				PreparedStatement ps = connection.prepareStatement(sql.toString(), ResultSet.TYPE_FORWARD_ONLY,
+						ResultSet.CONCUR_READ_ONLY);
+				try {
+					// MySQL sends the rows as they are read rather than all at once
+					ps.setFetchSize(Integer.MIN_VALUE);
+					ps.setString(1, IAC_ENCOUNTER_TYPE);
+					if (dated) {
+						ps.setTimestamp(2, toTimestamp(startDate));
+						ps.setTimestamp(3, new Timestamp(DateUtil.getStartOfDay(DateUtil.adjustDate(endDate, 1, DurationUnit.DAYS)).getTime()));
+					}
+					ResultSet rs = ps.executeQuery();
+					Integer patientId = null;
+					List<PatientNonSuppressingData> data = new ArrayList<PatientNonSuppressingData>();
+					while (rs.next()) {
+						int personId = rs.getInt(1);
+						if (patientId != null && patientId != personId) {
+							handler.handle(patientId, data);
+							data = new ArrayList<PatientNonSuppressingData>();
+						}
+						patientId = personId;
+						data.add(new PatientNonSuppressingData(personId, rs.getInt(2), rs.getDate(3), rs.getInt(4),
+								getInteger(rs, 5), rs.getDate(6), getDouble(rs, 7), rs.getString(8), rs.getDate(9)));
+					}
+					if (patientId != null) {
+						handler.handle(patientId, data);
+					}
+				}
+				finally {
+					ps.close();
+				}
+			}
+		});
+	}
+
+	@Override
+	public Date getIndexWatermark(final String indexName) {
+		return sessionFactory.getCurrentSession().doReturningWork(new ReturningWork<Date>() {
+
+			@Override
+			public Date execute(Connection connection) throws SQLException {
+				PreparedStatement ps = connection.prepareStatement("select watermark from ugandaemrreports_index_watermark "
+						+ "where index_name = ?");
+				try {
+					ps.setString(1, indexName);
+					ResultSet rs = ps.executeQuery();
+					return rs.next() ? rs.getTimestamp(1) : null;
+				}
+				finally {
+					ps.close();
+				}
+			}
+		});
+	}
+
+	@Override
+	public void saveIndexWatermark(final String indexName, final Date watermark, final Date rebuilt) {
+		sessionFactory.getCurrentSession().doWork(new Work() {
+
+			@Override
+			public void execute(Connection connection) throws SQLException {
+				PreparedStatement ps = connection.prepareStatement("insert into ugandaemrreports_index_watermark "
+						+ "(index_name, watermark, rebuilt) values (?, ?, ?) on duplicate key update "
+						+ "watermark = values(watermark), rebuilt = coalesce(values(rebuilt), rebuilt)");
+				try {
+					ps.setString(1, indexName);
+					ps.setTimestamp(2, toTimestamp(watermark));
+					ps.setTimestamp(3, toTimestamp(rebuilt));
+					ps.executeUpdate();
+				}
+				finally {
+					ps.close();
+				}
+			}
+		});
+	}
+
+	@Override
+	public List<Integer> getPatientsWithViralLoads() {
+		return getPatientIds("select distinct person_id from obs where concept_id in (" + VIRAL_LOAD_DATE + ", "
+				+ VIRAL_LOAD_COPIES + ") and voided = 0 order by person_id");
+	}
+
+	@Override
+	public List<Integer> getPatientsWithViralLoadChanges(Date since) {
+		// obs are never changed, only created and voided; the creations are read through the creation date index
+		return getPatientIds("select person_id from obs where concept_id in (" + VIRAL_LOAD_CONCEPTS + ") and date_created > ? "
+				+ "union select person_id from obs where concept_id in (" + VIRAL_LOAD_CONCEPTS + ") and voided = 1 and date_voided > ? "
+				+ "order by person_id", since, since);
+	}
+
+	@Override
+	public Map<Integer, PatientViralLoads> getViralLoads(final Collection<Integer> patientIds, final Date onOrBefore) {
+		final Map<Integer, PatientViralLoads> ret = new HashMap<Integer, PatientViralLoads>();
+		if (patientIds.isEmpty()) {
+			return ret;
+		}
+		sessionFactory.getCurrentSession().doWork(new Work() {
+
+			@Override
+			public void execute(Connection connection) throws SQLException {
+				PreparedStatement ps = connection.prepareStatement("select person_id, encounter_id, concept_id, value_datetime, "
+						+ "obs_datetime, value_numeric, value_coded from obs where voided = 0 and concept_id in ("
+						+ VIRAL_LOAD_CONCEPTS + ") and person_id in (" + StringUtils.join(patientIds, ",") + ") "
+						+ "order by person_id, encounter_id, obs_id");
+				try {
+					ResultSet rs = ps.executeQuery();
+					ViralLoadEncounter encounter = null;
+					while (rs.next()) {
+						int personId = rs.getInt(1);
+						Integer encounterId = getInteger(rs, 2);
+						// obs outside of an encounter are tests of their own
+						if (encounter == null || encounter.personId != personId || encounterId == null
+								|| !encounterId.equals(encounter.encounterId)) {
+							addTest(ret, encounter, onOrBefore);
+							encounter = new ViralLoadEncounter(personId, encounterId);
+						}
+						encounter.add(rs.getInt(3), rs.getTimestamp(4), rs.getTimestamp(5), getDouble(rs, 6), getInteger(rs, 7));
+					}
+					addTest(ret, encounter, onOrBefore);
+				}
+				finally {
+					ps.close();
+				}
+			}
+		});
+		return ret;
+	}
+
+	private void addTest(Map<Integer, PatientViralLoads> viralLoads, ViralLoadEncounter encounter, Date onOrBefore) {
+		ViralLoadTest test = encounter != null ? encounter.toTest() : null;
+		if (test == null || (onOrBefore != null && test.getDate().after(onOrBefore))) {
+			return;
+		}
+		PatientViralLoads patient = viralLoads.get(encounter.personId);
+		if (patient == null) {
+			patient = new PatientViralLoads(encounter.personId);
+			viralLoads.put(encounter.personId, patient);
+		}
+		patient.add(test);
+	}
+
+	@Override
+	public Map<Integer, PatientViralLoads> getViralLoadIndex(final Collection<Integer> patientIds) {
+		final Map<Integer, PatientViralLoads> ret = new HashMap<Integer, PatientViralLoads>();
+		if (patientIds != null && patientIds.isEmpty()) {
+			return ret;
+		}
+		sessionFactory.getCurrentSession().doWork(new Work() {
+
+			@Override
+			public void execute(Connection connection) throws SQLException {
+				PreparedStatement ps = connection.prepareStatement("select patient_id, latest_encounter_id, latest_date, "
+						+ "latest_numeric, latest_coded, previous_encounter_id, previous_date, previous_numeric, previous_coded "
+						+ "from ugandaemrreports_viral_load"
+						+ (patientIds != null ? " where patient_id in (" + StringUtils.join(patientIds, ",") + ")" : ""),
+						ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+				try {
+					ps.setFetchSize(Integer.MIN_VALUE);
+					ResultSet rs = ps.executeQuery();
+					while (rs.next()) {
+						int patientId = rs.getInt(1);
+						ret.put(patientId, new PatientViralLoads(patientId, getViralLoadTest(rs, 2), getViralLoadTest(rs, 6)));
+					}
+				}
+				finally {
+					ps.close();
+				}
+			}
+		});
+		return ret;
+	}
+
+	@Override
+	public void saveViralLoadIndex(final Collection<Integer> patientIds, final Map<Integer, PatientViralLoads> viralLoads) {
+		if (patientIds.isEmpty()) {
+			return;
+		}
+		sessionFactory.getCurrentSession().doWork(new Work() {
+
+			@Override
+			public void execute(Connection connection) throws SQLException {
+				PreparedStatement ps = connection.prepareStatement("delete from ugandaemrreports_viral_load where patient_id in ("
+						+ StringUtils.join(patientIds, ",") + ")");
+				try {
+					ps.executeUpdate();
+				}
+				finally {
+					ps.close();
+				}
+				if (viralLoads.isEmpty()) {
+					return;
+				}
+
+				ps = connection.prepareStatement("insert into ugandaemrreports_viral_load (patient_id, latest_encounter_id, "
+						+ "latest_date, latest_numeric, latest_coded, previous_encounter_id, previous_date, previous_numeric, "
+						+ "previous_coded) values (?, ?, ?, ?, ?, ?, ?, ?, ?)");
+				try {
+					for (PatientViralLoads patient : viralLoads.values()) {
+						ps.setInt(1, patient.getPatientId());
+						setViralLoadTest(ps, 2, patient.getLatest());
+						setViralLoadTest(ps, 6, patient.getPrevious());
+						ps.addBatch();
+					}
+					ps.executeBatch();
+				}
+				finally {
+					ps.close();
+				}
+			}
+		});
+	}
+
+	@Override
+	public int clearViralLoadIndex() {
+		return sessionFactory.getCurrentSession().createSQLQuery("delete from ugandaemrreports_viral_load").executeUpdate();
+	}
+
+	@Override
+	public List<Integer> getPatientsOnArt() {
+		return getPatientIds("select distinct person_id from obs where concept_id = " + ART_START_DATE
+				+ " and voided = 0 order by person_id");
+	}
+
+	@Override
+	public List<Integer> getPatientsWithViralLoadScheduleChanges(Date since) {
+		// deaths and birth dates are changed on the person
+		String concepts = VIRAL_LOAD_SCHEDULE_CONCEPTS + ", " + getAncVisitConceptId();
+		return getPatientIds("select person_id from obs where concept_id in (" + concepts + ") and date_created > ? "
+				+ "union select person_id from obs where concept_id in (" + concepts + ") and voided = 1 and date_voided > ? "
+				+ "union select person_id from person where date_changed > ? or date_voided > ? "
+				+ "order by person_id", since, since, since, since);
+	}
+
+	@Override
+	public List<Integer> getPatientsWithViralLoadScheduleInputsAfter(Date date) {
+		// tests are dated by the test date if given, and ART starts by their value
+		String concepts = VIRAL_LOAD_CONCEPTS + ", " + ART_START_DATE + ", " + PREGNANCY_CONCEPTS + ", " + getAncVisitConceptId();
+		return getPatientIds("select person_id from obs where obs_datetime > ? and concept_id in (" + concepts + ") and voided = 0 "
+				+ "union select person_id from obs where concept_id in (" + VIRAL_LOAD_DATE + ", " + ART_START_DATE + ") "
+				+ "and value_datetime > ? and voided = 0 order by person_id", date, date);
+	}
+
+	@Override
+	public Map<Integer, ViralLoadSchedule> getViralLoadScheduleInputs(final Collection<Integer> patientIds) {
+		final Map<Integer, ViralLoadSchedule> ret = new HashMap<Integer, ViralLoadSchedule>();
+		if (patientIds.isEmpty()) {
+			return ret;
+		}
+		final int ancVisit = getAncVisitConceptId();
+		sessionFactory.getCurrentSession().doWork(new Work() {
+
+			@Override
+			public void execute(Connection connection) throws SQLException {
+				PreparedStatement ps = connection.prepareStatement("select person_id, concept_id, value_datetime, obs_datetime, "
+						+ "value_coded, value_numeric from obs where voided = 0 and concept_id in (" + ART_START_DATE + ", "
+						+ TRANSFERRED_OUT + ", " + PREGNANCY_CONCEPTS + ", " + ancVisit + ") "
+						+ "and person_id in (" + StringUtils.join(patientIds, ",") + ")");
+				try {
+					ResultSet rs = ps.executeQuery();
+					Map<Integer, List<Object[]>> others = new HashMap<Integer, List<Object[]>>();
+					while (rs.next()) {
+						int personId = rs.getInt(1);
+						int conceptId = rs.getInt(2);
+						Date valueDatetime = rs.getTimestamp(3);
+						if (conceptId == ART_START_DATE) {
+							// the earliest ART start date
+							if (valueDatetime == null) {
+								continue;
+							}
+							ViralLoadSchedule schedule = ret.get(personId);
+							if (schedule == null) {
+								schedule = new ViralLoadSchedule(personId);
+								ret.put(personId, schedule);
+							}
+							if (schedule.getArtStartDate() == null || valueDatetime.before(schedule.getArtStartDate())) {
+								schedule.setArtStartDate(new Date(valueDatetime.getTime()));
+							}
+						} else {
+							if (!others.containsKey(personId)) {
+								others.put(personId, new ArrayList<Object[]>());
+							}
+							others.get(personId).add(new Object[] { conceptId, rs.getTimestamp(4), getInteger(rs, 5), getDouble(rs, 6) });
+						}
+					}
+					// only patients who started ART are scheduled
+					for (Map.Entry<Integer, List<Object[]>> e : others.entrySet()) {
+						ViralLoadSchedule schedule = ret.get(e.getKey());
+						if (schedule == null) {
+							continue;
+						}
+						for (Object[] row : e.getValue()) {
+							Date obsDatetime = new Date(((Timestamp) row[1]).getTime());
+							int conceptId = (Integer) row[0];
+							if (conceptId == TRANSFERRED_OUT) {
+								schedule.addExitDate(obsDatetime);
+							} else if (conceptId == ancVisit ? Double.valueOf(1).equals(row[3]) : Integer.valueOf(YES).equals(row[2])) {
+								schedule.addPregnantOn(obsDatetime);
+							}
+						}
+					}
+				}
+				finally {
+					ps.close();
+				}
+				if (ret.isEmpty()) {
+					return;
+				}
+
+				ps = connection.prepareStatement("select person_id, birthdate, dead, death_date, date_changed from person "
+						+ "where person_id in (" + StringUtils.join(ret.keySet(), ",") + ")");
+				try {
+					ResultSet rs = ps.executeQuery();
+					while (rs.next()) {
+						ViralLoadSchedule schedule = ret.get(rs.getInt(1));
+						schedule.setBirthdate(rs.getDate(2));
+						if (rs.getBoolean(3)) {
+							// patients marked dead without a date are taken to have died when they were marked
+							Timestamp deathDate = rs.getTimestamp(4) != null ? rs.getTimestamp(4) : rs.getTimestamp(5);
+							schedule.addExitDate(deathDate != null ? new Date(deathDate.getTime()) : new Date(0));
+						}
+					}
+				}
+				finally {
+					ps.close();
+				}
+			}
+		});
+		return ret;
+	}
+
+	@Override
+	public void saveViralLoadSchedules(final Collection<Integer> patientIds, final Collection<ViralLoadSchedule> schedules) {
+		if (patientIds.isEmpty()) {
+			return;
+		}
+		sessionFactory.getCurrentSession().doWork(new Work() {
+
+			@Override
+			public void execute(Connection connection) throws SQLException {
+				PreparedStatement ps = connection.prepareStatement("delete from ugandaemrreports_vl_schedule where patient_id in ("
+						+ StringUtils.join(patientIds, ",") + ")");
+				try {
+					ps.executeUpdate();
+				}
+				finally {
+					ps.close();
+				}
+				if (schedules.isEmpty()) {
+					return;
+				}
+
+				ps = connection.prepareStatement("insert into ugandaemrreports_vl_schedule (patient_id, art_start_date, "
+						+ "last_vl_date, last_vl_copies, pregnancy_date, exit_date, next_due_date, due_reason) "
+						+ "values (?, ?, ?, ?, ?, ?, ?, ?)");
+				try {
+					for (ViralLoadSchedule schedule : schedules) {
+						ps.setInt(1, schedule.getPatientId());
+						ps.setDate(2, toSqlDate(schedule.getArtStartDate()));
+						ps.setDate(3, toSqlDate(schedule.getLastViralLoadDate()));
+						ps.setObject(4, schedule.getLastViralLoadCopies(), Types.DOUBLE);
+						ps.setDate(5, toSqlDate(schedule.getPregnancyDate()));
+						ps.setDate(6, toSqlDate(schedule.getExitDate()));
+						ps.setDate(7, toSqlDate(schedule.getNextDueDate()));
+						ps.setString(8, schedule.getReason() != null ? schedule.getReason().name() : null);
+						ps.addBatch();
+					}
+					ps.executeBatch();
+				}
+				finally {
+					ps.close();
+				}
+			}
+		});
+	}
+
+	@Override
+	public int clearViralLoadSchedules() {
+		return sessionFactory.getCurrentSession().createSQLQuery("delete from ugandaemrreports_vl_schedule").executeUpdate();
+	}
+
+	@Override
+	public List<Integer> getPatientsDueForViralLoad(Date dueFrom, Date dueBy, Date activeOn) {
+		if (dueFrom == null) {
+			return getPatientIds("select patient_id from ugandaemrreports_vl_schedule where next_due_date <= ? "
+					+ "and (exit_date is null or exit_date > ?)", dueBy, activeOn);
+		}
+		return getPatientIds("select patient_id from ugandaemrreports_vl_schedule where next_due_date between ? and ? "
+				+ "and (exit_date is null or exit_date > ?)", dueFrom, dueBy, activeOn);
+	}
+
+	@Override
+	public List<Integer> getPatientsWithAppointments() {
+		return getPatientIds("select distinct person_id from obs where concept_id = " + RETURN_VISIT_DATE
+				+ " and voided = 0 order by person_id");
+	}
+
+	@Override
+	public List<Integer> getPatientsWithAppointmentsBetween(Date from, Date to) {
+		return getPatientIds("select distinct person_id from obs where concept_id = " + RETURN_VISIT_DATE
+				+ " and value_datetime between ? and ? and voided = 0 order by person_id", from, to);
+	}
+
+	@Override
+	public List<Integer> getPatientsWithAppointmentChanges(Date since) {
+		// encounters are voided and moved through save, which sets date_changed
+		return getPatientIds("select person_id from obs where concept_id = " + RETURN_VISIT_DATE + " and date_created > ? "
+				+ "union select person_id from obs where concept_id = " + RETURN_VISIT_DATE + " and voided = 1 and date_voided > ? "
+				+ "union select patient_id from encounter where date_created > ? "
+				+ "union select patient_id from encounter where date_changed > ? "
+				+ "order by 1", since, since, since, since);
+	}
+
+	@Override
+	public List<Appointment> getAppointments(final Collection<Integer> patientIds) {
+		final List<Appointment> ret = new ArrayList<Appointment>();
+		if (patientIds.isEmpty()) {
+			return ret;
+		}
+		sessionFactory.getCurrentSession().doWork(new Work() {
+
+			@Override
+			public void execute(Connection connection) throws SQLException {
+				PreparedStatement ps = connection.prepareStatement("select o.obs_id, o.person_id, o.value_datetime, "
+						+ "o.encounter_id, e.encounter_type, coalesce(e.encounter_datetime, o.obs_datetime) from obs o "
+						+ "left join encounter e on e.encounter_id = o.encounter_id where o.voided = 0 and o.concept_id = "
+						+ RETURN_VISIT_DATE + " and o.value_datetime is not null and o.person_id in ("
+						+ StringUtils.join(patientIds, ",") + ")");
+				try {
+					ResultSet rs = ps.executeQuery();
+					while (rs.next()) {
+						ret.add(new Appointment(rs.getInt(1), rs.getInt(2), new Date(rs.getDate(3).getTime()),
+								getInteger(rs, 4), getInteger(rs, 5), new Date(rs.getTimestamp(6).getTime())));
+					}
+				}
+				finally {
+					ps.close();
+				}
+				if (ret.isEmpty()) {
+					return;
+				}
+
+				// the encounters of each patient in order, to find the first one after the day of each appointment
+				Map<Integer, List<Object[]>> encounters = new HashMap<Integer, List<Object[]>>();
+				ps = connection.prepareStatement("select patient_id, encounter_id, encounter_datetime from encounter "
+						+ "where voided = 0 and patient_id in (" + StringUtils.join(patientIds, ",") + ") "
+						+ "order by patient_id, encounter_datetime, encounter_id");
+				try {
+					ResultSet rs = ps.executeQuery();
+					while (rs.next()) {
+						int patientId = rs.getInt(1);
+						if (!encounters.containsKey(patientId)) {
+							encounters.put(patientId, new ArrayList<Object[]>());
+						}
+						encounters.get(patientId).add(new Object[] { rs.getInt(2), new Date(rs.getTimestamp(3).getTime()) });
+					}
+				}
+				finally {
+					ps.close();
+				}
+				for (Appointment appointment : ret) {
+					List<Object[]> patientEncounters = encounters.get(appointment.getPatientId());
+					if (patientEncounters == null) {
+						continue;
+					}
+					Date nextDay = DateUtil.getStartOfDay(DateUtil.adjustDate(appointment.getEncounterDate(), 1, DurationUnit.DAYS));
+					for (Object[] encounter : patientEncounters) {
+						if (!((Date) encounter[1]).before(nextDay)) {
+							appointment.setAttended((Integer) encounter[0], (Date) encounter[1]);
+							break;
+						}
+					}
+				}
+			}
+		});
+		return ret;
+	}
+
+	@Override
+	public List<Appointment> getAppointmentIndex(final Collection<Integer> patientIds, final Date from, final Date to) {
+		final List<Appointment> ret = new ArrayList<Appointment>();
+		if (patientIds != null && patientIds.isEmpty()) {
+			return ret;
+		}
+		sessionFactory.getCurrentSession().doWork(new Work() {
+
+			@Override
+			public void execute(Connection connection) throws SQLException {
+				StringBuilder sql = new StringBuilder("select obs_id, patient_id, scheduled_date, encounter_id, encounter_type, "
+						+ "encounter_date, attended_encounter_id, attended_date from ugandaemrreports_appointment where 1 = 1");
+				if (from != null) {
+					sql.append(" and scheduled_date >= ?");
+				}
+				if (to != null) {
+					sql.append(" and scheduled_date <= ?");
+				}
+				if (patientIds != null) {
+					sql.append(" and patient_id in (").append(StringUtils.join(patientIds, ",")).append(")");
+				}
+				PreparedStatement ps = connection.prepareStatement(sql.toString(), ResultSet.TYPE_FORWARD_ONLY,
+						ResultSet.CONCUR_READ_ONLY);
+				try {
+					int parameter = 1;
+					if (from != null) {
+						ps.setDate(parameter++, toSqlDate(from));
+					}
+					if (to != null) {
+						ps.setDate(parameter, toSqlDate(to));
+					}
+					ps.setFetchSize(Integer.MIN_VALUE);
+					ResultSet rs = ps.executeQuery();
+					while (rs.next()) {
+						Appointment appointment = new Appointment(rs.getInt(1), rs.getInt(2), new Date(rs.getDate(3).getTime()),
+								getInteger(rs, 4), getInteger(rs, 5), new Date(rs.getTimestamp(6).getTime()));
+						Timestamp attended = rs.getTimestamp(8);
+						if (attended != null) {
+							appointment.setAttended(getInteger(rs, 7), new Date(attended.getTime()));
+						}
+						ret.add(appointment);
+					}
+				}
+				finally {
+					ps.close();
+				}
+			}
+		});
+		return ret;
+	}
+
+	@Override
+	public void saveAppointments(final Collection<Integer> patientIds, final Collection<Appointment> appointments) {
+		if (patientIds.isEmpty()) {
+			return;
+		}
+		sessionFactory.getCurrentSession().doWork(new Work() {
+
+			@Override
+			public void execute(Connection connection) throws SQLException {
+				PreparedStatement ps = connection.prepareStatement("delete from ugandaemrreports_appointment where patient_id in ("
+						+ StringUtils.join(patientIds, ",") + ")");
+				try {
+					ps.executeUpdate();
+				}
+				finally {
+					ps.close();
+				}
+				if (appointments.isEmpty()) {
+					return;
+				}
+
+				ps = connection.prepareStatement("insert into ugandaemrreports_appointment (obs_id, patient_id, scheduled_date, "
+						+ "encounter_id, encounter_type, encounter_date, attended_encounter_id, attended_date) "
+						+ "values (?, ?, ?, ?, ?, ?, ?, ?)");
+				try {
+					for (Appointment appointment : appointments) {
+						ps.setInt(1, appointment.getObsId());
+						ps.setInt(2, appointment.getPatientId());
+						ps.setDate(3, toSqlDate(appointment.getScheduledDate()));
+						ps.setObject(4, appointment.getEncounterId(), Types.INTEGER);
+						ps.setObject(5, appointment.getEncounterTypeId(), Types.INTEGER);
+						ps.setTimestamp(6, toTimestamp(appointment.getEncounterDate()));
+						ps.setObject(7, appointment.getAttendedEncounterId(), Types.INTEGER);
+						ps.setTimestamp(8, toTimestamp(appointment.getAttendedDate()));
+						ps.addBatch();
+					}
+					ps.executeBatch();
+				}
+				finally {
+					ps.close();
+				}
+			}
+		});
+	}
+
+	@Override
+	public int clearAppointments() {
+		return sessionFactory.getCurrentSession().createSQLQuery("delete from ugandaemrreports_appointment").executeUpdate();
+	}
+
+	/**
+	 * @return the id of the ANC visit number concept, or 0 if it does not exist
+	 */
+	private int getAncVisitConceptId() {
+		if (ancVisitConceptId == null) {
+			Number id = (Number) sessionFactory.getCurrentSession()
+					.createSQLQuery("select concept_id from concept where uuid = :uuid")
+					.setString("uuid", ANC_VISIT_UUID)
+					.uniqueResult();
+			ancVisitConceptId = id != null ? id.intValue() : 0;
+		}
+		return ancVisitConceptId;
+	}
+
+	private List<Integer> getPatientIds(final String sql, final Date... parameters) {
+		return sessionFactory.getCurrentSession().doReturningWork(new ReturningWork<List<Integer>>() {
+
+			@Override
+			public List<Integer> execute(Connection connection) throws SQLException {
+				PreparedStatement ps = connection.prepareStatement(sql);
+				try {
+					for (int i = 0; i < parameters.length; i++) {
+						ps.setTimestamp(i + 1, toTimestamp(parameters[i]));
+					}
+					ResultSet rs = ps.executeQuery();
+					List<Integer> ret = new ArrayList<Integer>();
+					while (rs.next()) {
+						ret.add(rs.getInt(1));
+					}
+					return ret;
+				}
+				finally {
+					ps.close();
+				}
+			}
+		});
+	}
+
+	/**
+	 * @return the test in the four columns from the given one (encounter, date, numeric and coded result), or null
+	 */
+	private ViralLoadTest getViralLoadTest(ResultSet rs, int column) throws SQLException {
+		Timestamp date = rs.getTimestamp(column + 1);
+		if (date == null) {
+			return null;
+		}
+		return new ViralLoadTest(getInteger(rs, column), new Date(date.getTime()), getDouble(rs, column + 2),
+				getInteger(rs, column + 3));
+	}
+
+	private void setViralLoadTest(PreparedStatement ps, int column, ViralLoadTest test) throws SQLException {
+		if (test == null) {
+			for (int i = 0; i < 4; i++) {
+				ps.setNull(column + i, i == 1 ? Types.TIMESTAMP : i == 2 ? Types.DOUBLE : Types.INTEGER);
+			}
+			return;
+		}
+		ps.setObject(column, test.getEncounterId(), Types.INTEGER);
+		ps.setTimestamp(column + 1, toTimestamp(test.getDate()));
+		ps.setObject(column + 2, test.getValueNumeric(), Types.DOUBLE);
+		ps.setObject(column + 3, test.getValueCoded(), Types.INTEGER);
+	}
+
+	private Integer getInteger(ResultSet rs, int column) throws SQLException {
+		int value = rs.getInt(column);
+		return rs.wasNull() ? null : value;
+	}
+
+	private Double getDouble(ResultSet rs, int column) throws SQLException {
+		double value = rs.getDouble(column);
+		return rs.wasNull() ? null : value;
+	}
+
+	private java.sql.Date toSqlDate(Date date) {
+		return date == null ? null : new java.sql.Date(date.getTime());
+	}
+
+	private Timestamp toTimestamp(Date date) {
+		return date == null ? null : new Timestamp(date.getTime());
+	}
+
+	private String formatValues(Map<String, Integer> values) {
+		Properties properties = new Properties();
+		for (Map.Entry<String, Integer> e : values.entrySet()) {
+			properties.setProperty(e.getKey(), String.valueOf(e.getValue()));
+		}
+		StringWriter writer = new StringWriter();
+		try {
+			properties.store(writer, null);
+		}
+		catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		return writer.toString();
+	}
+
+	private Map<String, Integer> parseValues(String text) {
+		Properties properties = new Properties();
+		try {
+			properties.load(new StringReader(text == null ? "" : text));
+		}
+		catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		Map<String, Integer> ret = new HashMap<String, Integer>();
+		for (String name : properties.stringPropertyNames()) {
+			ret.put(name, Integer.valueOf(properties.getProperty(name)));
+		}
+		return ret;
+	}
+
+	private ReportProfile toProfile(ResultSet rs) throws SQLException {
+		ReportProfile profile = new ReportProfile();
+		profile.setReportProfileId(rs.getInt("report_profile_id"));
+		profile.setReportDefinitionUuid(rs.getString("report_definition_uuid"));
+		profile.setReportName(rs.getString("report_name"));
+		profile.setParameters(rs.getString("parameters"));
+		profile.setStarted(rs.getTimestamp("started"));
+		profile.setDuration(rs.getLong("duration"));
+		profile.setStatus(rs.getString("status"));
+		profile.setRows(rs.getLong("peak_rows"));
+		profile.setDataSource(rs.getString("data_source"));
+		long replicaLag = rs.getLong("replica_lag");
+		profile.setReplicaLag(rs.wasNull() ? null : replicaLag);
+		return profile;
+	}
+
+	/**
+	 * The viral load obs of one encounter: the test is dated by its viral load date, or by the copies obs when the
+	 * encounter has no viral load date
+	 */
+	private static class ViralLoadEncounter {
+
+		private final int personId;
+
+		private final Integer encounterId;
+
+		private Date viralLoadDate;
+
+		private Date copiesDate;
+
+		private Double valueNumeric;
+
+		private Integer valueCoded;
+
+		private ViralLoadEncounter(int personId, Integer encounterId) {
+			this.personId = personId;
+			this.encounterId = encounterId;
+		}
+
+		private void add(int conceptId, Date valueDatetime, Date obsDatetime, Double numeric, Integer coded) {
+			if (conceptId == VIRAL_LOAD_DATE) {
+				if (viralLoadDate == null) {
+					viralLoadDate = valueDatetime;
+				}
+			} else if (conceptId == VIRAL_LOAD_COPIES) {
+				if (copiesDate == null) {
+					copiesDate = obsDatetime;
+					valueNumeric = numeric;
+				}
+			} else if (valueCoded == null) {
+				valueCoded = coded;
+			}
+		}
+
+		private ViralLoadTest toTest() {
+			Date date = viralLoadDate != null ? viralLoadDate : copiesDate;
+			return date == null ? null : new ViralLoadTest(encounterId, new Date(date.getTime()), valueNumeric, valueCoded);
+		}
+	}
 }
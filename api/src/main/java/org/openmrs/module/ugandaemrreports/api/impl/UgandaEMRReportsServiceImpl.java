@@ -1,16 +1,66 @@
 package org.openmrs.module.ugandaemrreports.api.impl;
 
+import com.google.common.collect.Lists;
+import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.openmrs.Cohort;
+import org.openmrs.OpenmrsObject;
+import org.openmrs.api.context.Context;
 import org.openmrs.api.impl.BaseOpenmrsService;
+import org.openmrs.module.reporting.common.DateUtil;
+import org.openmrs.module.reporting.common.DurationUnit;
 import org.openmrs.module.ugandaemrreports.api.UgandaEMRReportsService;
 import org.openmrs.module.ugandaemrreports.api.db.UgandaEMRReportsDAO;
+import org.openmrs.module.ugandaemrreports.common.Appointment;
+import org.openmrs.module.ugandaemrreports.common.NonSuppressingDataHandler;
+import org.openmrs.module.ugandaemrreports.common.PatientViralLoads;
+import org.openmrs.module.ugandaemrreports.common.ViralLoadSchedule;
+import org.openmrs.module.ugandaemrreports.common.ViralLoadTest;
+import org.openmrs.module.ugandaemrreports.evaluation.CacheStatistics;
+import org.openmrs.module.ugandaemrreports.evaluation.DataSetResult;
+import org.openmrs.module.ugandaemrreports.evaluation.ReportProfile;
+import org.openmrs.module.ugandaemrreports.evaluation.ReportingIndex;
+import org.openmrs.module.ugandaemrreports.evaluation.ReportingIndexStatus;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 
 /**
  * It is a default implementation of {@link UgandaEMRReportsService}.
  */
 public class UgandaEMRReportsServiceImpl extends BaseOpenmrsService implements UgandaEMRReportsService {
 
+	public static final String GP_PROFILE_RETENTION_DAYS = "ugandaemrreports.profileRetentionDays";
+
+	private static final int DEFAULT_PROFILE_RETENTION_DAYS = 30;
+
+	public static final String VIRAL_LOAD_INDEX = "viral_load";
+
+	public static final String VIRAL_LOAD_SCHEDULE = "viral_load_schedule";
+
+	public static final String APPOINTMENT_INDEX = "appointment";
+
+	/**
+	 * Obs are created with the time of the application server and may be committed a while later, so changes are
+	 * looked for from this long before the watermark
+	 */
+	private static final int WATERMARK_OVERLAP_MINUTES = 10;
+
+	private static final int INDEX_BATCH_SIZE = 1000;
+
+	private final CacheStatistics viralLoadIndexStatistics = CacheStatistics.forCache("viralLoadIndex");
+
+	private final CacheStatistics appointmentIndexStatistics = CacheStatistics.forCache("appointmentIndex");
+
 	protected final Log log = LogFactory.getLog(this.getClass());
 
 	private UgandaEMRReportsDAO dao;
@@ -28,4 +78,324 @@ public class UgandaEMRReportsServiceImpl extends BaseOpenmrsService implements U
 	public void setDao(UgandaEMRReportsDAO dao) {
 		this.dao = dao;
 	}
+
+	@Override
+	public ReportProfile saveReportProfile(ReportProfile profile) {
+		dao.saveReportProfile(profile);
+		Integer retentionDays = getProfileRetentionDays();
+		if (retentionDays != null && retentionDays > 0) {
+			dao.purgeReportProfiles(DateUtil.adjustDate(new Date(), -retentionDays, DurationUnit.DAYS));
+		}
+		return profile;
+	}
+
+	@Override
+	public List<ReportProfile> getReportProfiles(String reportDefinitionUuid, Date startedSince, int max) {
+		return dao.getReportProfiles(reportDefinitionUuid, startedSince, max);
+	}
+
+	@Override
+	public ReportProfile getReportProfile(Integer reportProfileId) {
+		return dao.getReportProfile(reportProfileId);
+	}
+
+	@Override
+	public int purgeReportProfiles(Date startedBefore) {
+		return dao.purgeReportProfiles(startedBefore);
+	}
+
+	@Override
+	public List<ReportingIndexStatus> getReportingIndexStatuses() {
+		return dao.getReportingIndexStatuses(ReportingIndex.ALL);
+	}
+
+	@Override
+	public <T extends OpenmrsObject> T reload(T object) {
+		return dao.reload(object);
+	}
+
+	@Override
+	public DataSetResult getDataSetResult(String resultKey) {
+		return dao.getDataSetResult(resultKey);
+	}
+
+	@Override
+	public DataSetResult saveDataSetResult(DataSetResult result) {
+		return dao.saveDataSetResult(result);
+	}
+
+	@Override
+	public int purgeDataSetResults(String reportDefinitionUuid) {
+		return dao.purgeDataSetResults(reportDefinitionUuid);
+	}
+
+	@Override
+	public boolean isDataChangedSince(Date since, Date to) {
+		return dao.isDataChangedSince(since, to);
+	}
+
+	@Override
+	public void getNonSuppressingData(Date startDate, Date endDate, Cohort cohort, NonSuppressingDataHandler handler) {
+		dao.getNonSuppressingData(startDate, endDate, cohort, handler);
+	}
+
+	@Override
+	public int refreshViralLoadIndex() {
+		return updateViralLoadIndex(false);
+	}
+
+	@Override
+	public int rebuildViralLoadIndex() {
+		return updateViralLoadIndex(true);
+	}
+
+	@Override
+	public List<Integer> checkViralLoadIndex() {
+		Date watermark = dao.getIndexWatermark(VIRAL_LOAD_INDEX);
+		if (watermark == null) {
+			return dao.getPatientsWithViralLoads();
+		}
+		Map<Integer, PatientViralLoads> index = dao.getViralLoadIndex(null);
+		Set<Integer> patientIds = new TreeSet<Integer>(index.keySet());
+		patientIds.addAll(dao.getPatientsWithViralLoads());
+		patientIds.removeAll(dao.getPatientsWithViralLoadChanges(withOverlap(watermark)));
+
+		List<Integer> ret = new ArrayList<Integer>();
+		for (List<Integer> batch : Lists.partition(new ArrayList<Integer>(patientIds), INDEX_BATCH_SIZE)) {
+			Map<Integer, PatientViralLoads> fromObs = dao.getViralLoads(batch, null);
+			for (Integer patientId : batch) {
+				PatientViralLoads indexed = index.get(patientId);
+				if (indexed == null ? fromObs.containsKey(patientId) : !indexed.equals(fromObs.get(patientId))) {
+					ret.add(patientId);
+				}
+			}
+		}
+		return ret;
+	}
+
+	@Override
+	public Map<Integer, ViralLoadTest> getLatestViralLoads(Cohort cohort, Date onOrBefore) {
+		Map<Integer, ViralLoadTest> ret = new HashMap<Integer, ViralLoadTest>();
+		if (cohort != null && cohort.isEmpty()) {
+			return ret;
+		}
+		Set<Integer> fromObs = new TreeSet<Integer>();
+		Date watermark = dao.getIndexWatermark(VIRAL_LOAD_INDEX);
+		if (watermark == null) {
+			fromObs.addAll(dao.getPatientsWithViralLoads());
+		} else {
+			Set<Integer> changed = new HashSet<Integer>(dao.getPatientsWithViralLoadChanges(withOverlap(watermark)));
+			for (PatientViralLoads viralLoads : getViralLoadIndex(cohort != null ? cohort.getMemberIds() : null).values()) {
+				Integer patientId = viralLoads.getPatientId();
+				if (changed.contains(patientId) || !viralLoads.knowsLatestOnOrBefore(onOrBefore)) {
+					fromObs.add(patientId);
+					continue;
+				}
+				viralLoadIndexStatistics.hit();
+				ViralLoadTest test = viralLoads.getLatestOnOrBefore(onOrBefore);
+				if (test != null) {
+					ret.put(patientId, test);
+				}
+			}
+			// patients whose first test was entered since the last refresh are not in the index yet
+			fromObs.addAll(changed);
+		}
+		if (cohort != null) {
+			fromObs.retainAll(cohort.getMemberIds());
+		}
+		for (List<Integer> batch : Lists.partition(new ArrayList<Integer>(fromObs), INDEX_BATCH_SIZE)) {
+			for (PatientViralLoads viralLoads : dao.getViralLoads(batch, onOrBefore).values()) {
+				viralLoadIndexStatistics.miss();
+				ret.put(viralLoads.getPatientId(), viralLoads.getLatest());
+			}
+		}
+		return ret;
+	}
+
+	private Map<Integer, PatientViralLoads> getViralLoadIndex(Collection<Integer> patientIds) {
+		if (patientIds == null) {
+			return dao.getViralLoadIndex(null);
+		}
+		Map<Integer, PatientViralLoads> ret = new HashMap<Integer, PatientViralLoads>();
+		for (List<Integer> batch : Lists.partition(new ArrayList<Integer>(patientIds), INDEX_BATCH_SIZE)) {
+			ret.putAll(dao.getViralLoadIndex(batch));
+		}
+		return ret;
+	}
+
+	@Override
+	public Cohort getPatientsDueForViralLoad(Cohort cohort, Date dueFrom, Date dueBy, Date activeOn) {
+		Cohort ret = new Cohort();
+		if (cohort != null && cohort.isEmpty()) {
+			return ret;
+		}
+		Set<Integer> fromObs = new TreeSet<Integer>();
+		Date watermark = dao.getIndexWatermark(VIRAL_LOAD_SCHEDULE);
+		// the schedule is worked out from the tests, ART start and pregnancies up to the end of the day
+		Date asOf = DateUtil.getEndOfDay(activeOn);
+		if (watermark == null) {
+			fromObs.addAll(dao.getPatientsOnArt());
+		} else {
+			fromObs.addAll(dao.getPatientsWithViralLoadScheduleChanges(withOverlap(watermark)));
+			// the schedule holds the due dates as of when it was refreshed, which are the same as of the end date for
+			// the patients with no tests, ART starts or pregnancies after it
+			fromObs.addAll(dao.getPatientsWithViralLoadScheduleInputsAfter(asOf));
+			for (Integer patientId : dao.getPatientsDueForViralLoad(dueFrom, dueBy, activeOn)) {
+				if (!fromObs.contains(patientId) && (cohort == null || cohort.contains(patientId))) {
+					ret.addMember(patientId);
+				}
+			}
+		}
+		if (cohort != null) {
+			fromObs.retainAll(cohort.getMemberIds());
+		}
+		for (List<Integer> batch : Lists.partition(new ArrayList<Integer>(fromObs), INDEX_BATCH_SIZE)) {
+			for (ViralLoadSchedule schedule : getViralLoadSchedules(batch, dao.getViralLoads(batch, asOf), asOf).values()) {
+				if (schedule.isDueBetween(dueFrom, dueBy, activeOn)) {
+					ret.addMember(schedule.getPatientId());
+				}
+			}
+		}
+		return ret;
+	}
+
+	@Override
+	public int refreshAppointmentIndex() {
+		return updateAppointmentIndex(false);
+	}
+
+	@Override
+	public int rebuildAppointmentIndex() {
+		return updateAppointmentIndex(true);
+	}
+
+	@Override
+	public List<Appointment> getAppointments(Cohort cohort, Date scheduledFrom, Date scheduledTo) {
+		List<Appointment> ret = new ArrayList<Appointment>();
+		if (cohort != null && cohort.isEmpty()) {
+			return ret;
+		}
+		Set<Integer> fromObs = new TreeSet<Integer>();
+		Date watermark = dao.getIndexWatermark(APPOINTMENT_INDEX);
+		if (watermark == null) {
+			fromObs.addAll(scheduledFrom != null && scheduledTo != null ?
+					dao.getPatientsWithAppointmentsBetween(scheduledFrom, DateUtil.getEndOfDay(scheduledTo)) :
+					dao.getPatientsWithAppointments());
+		} else {
+			fromObs.addAll(dao.getPatientsWithAppointmentChanges(withOverlap(watermark)));
+			List<List<Integer>> batches = cohort != null ?
+					Lists.partition(new ArrayList<Integer>(cohort.getMemberIds()), INDEX_BATCH_SIZE) :
+					Collections.<List<Integer>>singletonList(null);
+			for (List<Integer> batch : batches) {
+				for (Appointment appointment : dao.getAppointmentIndex(batch, scheduledFrom, scheduledTo)) {
+					if (!fromObs.contains(appointment.getPatientId())) {
+						appointmentIndexStatistics.hit();
+						ret.add(appointment);
+					}
+				}
+			}
+		}
+		if (cohort != null) {
+			fromObs.retainAll(cohort.getMemberIds());
+		}
+		for (List<Integer> batch : Lists.partition(new ArrayList<Integer>(fromObs), INDEX_BATCH_SIZE)) {
+			for (Appointment appointment : dao.getAppointments(batch)) {
+				if ((scheduledFrom == null || !appointment.getScheduledDate().before(DateUtil.getStartOfDay(scheduledFrom)))
+						&& (scheduledTo == null || !appointment.getScheduledDate().after(scheduledTo))) {
+					appointmentIndexStatistics.miss();
+					ret.add(appointment);
+				}
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * Updates the appointment index for the patients changed since its watermark, or for all patients when
+	 * rebuilding or never built
+	 *
+	 * @return the number of patients whose appointments were updated
+	 */
+	private int updateAppointmentIndex(boolean rebuild) {
+		Date started = new Date();
+		Date watermark = rebuild ? null : dao.getIndexWatermark(APPOINTMENT_INDEX);
+		List<Integer> patientIds;
+		if (watermark == null) {
+			dao.clearAppointments();
+			patientIds = dao.getPatientsWithAppointments();
+		} else {
+			patientIds = dao.getPatientsWithAppointmentChanges(withOverlap(watermark));
+		}
+		for (List<Integer> batch : Lists.partition(patientIds, INDEX_BATCH_SIZE)) {
+			dao.saveAppointments(batch, dao.getAppointments(batch));
+		}
+		dao.saveIndexWatermark(APPOINTMENT_INDEX, started, watermark == null ? started : null);
+		return patientIds.size();
+	}
+
+	/**
+	 * Updates the viral load index and then the viral load schedule, which reads the latest tests from the index, for
+	 * the patients changed since their watermarks, or for all patients when rebuilding or never built
+	 *
+	 * @return the number of patients whose tests were updated
+	 */
+	private int updateViralLoadIndex(boolean rebuild) {
+		Date started = new Date();
+		Date watermark = rebuild ? null : dao.getIndexWatermark(VIRAL_LOAD_INDEX);
+		List<Integer> patientIds;
+		if (watermark == null) {
+			dao.clearViralLoadIndex();
+			patientIds = dao.getPatientsWithViralLoads();
+		} else {
+			patientIds = dao.getPatientsWithViralLoadChanges(withOverlap(watermark));
+		}
+		for (List<Integer> batch : Lists.partition(patientIds, INDEX_BATCH_SIZE)) {
+			dao.saveViralLoadIndex(batch, dao.getViralLoads(batch, null));
+		}
+		dao.saveIndexWatermark(VIRAL_LOAD_INDEX, started, watermark == null ? started : null);
+
+		Date scheduled = rebuild ? null : dao.getIndexWatermark(VIRAL_LOAD_SCHEDULE);
+		List<Integer> scheduleIds;
+		if (scheduled == null) {
+			dao.clearViralLoadSchedules();
+			scheduleIds = dao.getPatientsOnArt();
+		} else {
+			scheduleIds = dao.getPatientsWithViralLoadScheduleChanges(withOverlap(scheduled));
+		}
+		for (List<Integer> batch : Lists.partition(scheduleIds, INDEX_BATCH_SIZE)) {
+			dao.saveViralLoadSchedules(batch, getViralLoadSchedules(batch, dao.getViralLoadIndex(batch), null).values());
+		}
+		dao.saveIndexWatermark(VIRAL_LOAD_SCHEDULE, started, scheduled == null ? started : null);
+		return patientIds.size();
+	}
+
+	/**
+	 * @param viralLoads the latest tests of the patients, on or before asOf if given
+	 * @param asOf the date to work the schedules out as of, or null for now
+	 * @return the schedules of the patients of the batch who started ART, given their latest tests
+	 */
+	private Map<Integer, ViralLoadSchedule> getViralLoadSchedules(List<Integer> batch, Map<Integer, PatientViralLoads> viralLoads, Date asOf) {
+		Map<Integer, ViralLoadSchedule> ret = dao.getViralLoadScheduleInputs(batch);
+		for (ViralLoadSchedule schedule : ret.values()) {
+			PatientViralLoads patient = viralLoads.get(schedule.getPatientId());
+			schedule.setLastViralLoad(patient == null ? null : asOf == null ? patient.getLatest() : patient.getLatestOnOrBefore(asOf));
+			schedule.schedule(asOf);
+		}
+		return ret;
+	}
+
+	private Date withOverlap(Date watermark) {
+		return DateUtil.adjustDate(watermark, -WATERMARK_OVERLAP_MINUTES, DurationUnit.MINUTES);
+	}
+
+	private Integer getProfileRetentionDays() {
+		String value = Context.getAdministrationService().getGlobalProperty(GP_PROFILE_RETENTION_DAYS);
+		try {
+			return StringUtils.isBlank(value) ? DEFAULT_PROFILE_RETENTION_DAYS : Integer.valueOf(value.trim());
+		}
+		catch (NumberFormatException e) {
+			log.warn("Invalid value for " + GP_PROFILE_RETENTION_DAYS + ": " + value);
+			return DEFAULT_PROFILE_RETENTION_DAYS;
+		}
+	}
 }
@@ -0,0 +1,97 @@
+package org.openmrs.module.ugandaemrreports.common;
+
+import org.openmrs.module.reporting.common.DateUtil;
+
+import java.util.Date;
+
+/**
+ * A return visit a patient was given, as kept in the appointment index: the date scheduled (the return visit date
+ * obs), the encounter it was given at and the first encounter of the patient on a later day, taken as the visit
+ * that honoured it
+ */
+public class Appointment {
+
+    private final Integer obsId;
+
+    private final Integer patientId;
+
+    private final Date scheduledDate;
+
+    private final Integer encounterId;
+
+    private final Integer encounterTypeId;
+
+    private final Date encounterDate;
+
+    private Integer attendedEncounterId;
+
+    private Date attendedDate;
+
+    public Appointment(Integer obsId, Integer patientId, Date scheduledDate, Integer encounterId, Integer encounterTypeId,
+                       Date encounterDate) {
+        this.obsId = obsId;
+        this.patientId = patientId;
+        this.scheduledDate = scheduledDate;
+        this.encounterId = encounterId;
+        this.encounterTypeId = encounterTypeId;
+        this.encounterDate = encounterDate;
+    }
+
+    public Integer getObsId() {
+        return obsId;
+    }
+
+    public Integer getPatientId() {
+        return patientId;
+    }
+
+    public Date getScheduledDate() {
+        return scheduledDate;
+    }
+
+    public Integer getEncounterId() {
+        return encounterId;
+    }
+
+    public Integer getEncounterTypeId() {
+        return encounterTypeId;
+    }
+
+    public Date getEncounterDate() {
+        return encounterDate;
+    }
+
+    public Integer getAttendedEncounterId() {
+        return attendedEncounterId;
+    }
+
+    public Date getAttendedDate() {
+        return attendedDate;
+    }
+
+    public void setAttended(Integer attendedEncounterId, Date attendedDate) {
+        this.attendedEncounterId = attendedEncounterId;
+        this.attendedDate = attendedDate;
+    }
+
+    /**
+     * @return true if the patient has not come back, or came back at least the minimum and at most the maximum
+     * number of days after the scheduled date, where given; patients who came back early did not miss it
+     */
+    public boolean isMissed(Integer minimumDays, Integer maximumDays) {
+        if (attendedDate == null) {
+            return true;
+        }
+        if (attendedDate.before(scheduledDate)) {
+            return false;
+        }
+        int daysLate = DateUtil.getDaysBetween(scheduledDate, attendedDate);
+        if (minimumDays != null && daysLate < minimumDays) {
+            return false;
+        }
+        if (maximumDays != null && daysLate > maximumDays) {
+            return false;
+        }
+        return minimumDays != null || maximumDays != null;
+    }
+}
@@ -0,0 +1,308 @@
+package org.openmrs.module.ugandaemrreports.common;
+
+import org.openmrs.module.reporting.dataset.DataSet;
+import org.openmrs.module.reporting.dataset.DataSetColumn;
+import org.openmrs.module.reporting.dataset.DataSetMetaData;
+import org.openmrs.module.reporting.dataset.DataSetRow;
+import org.openmrs.module.reporting.dataset.definition.DataSetDefinition;
+import org.openmrs.module.reporting.evaluation.EvaluationContext;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * A data set that stores its values by column rather than by row, for the line list evaluators that fill tens of
+ * thousands of rows of the same columns, e.g. the ART and pre-ART registers. Each column is declared once, the first
+ * time a value is set for it, and its values are kept in one array, of ints or doubles while every value of the
+ * column is an Integer, a Double or blank. Rows are handed out as views on the columns, so renderers see the usual
+ * {@link DataSetRow}s.
+ * <p>
+ * Rows are added with {@link #newRow()} and filled with {@link PatientDataHelper#addCol(DataSetRow, String, Object)}
+ * or {@link DataSetRow#addColumnValue(DataSetColumn, Object)}.
+ */
+public class ColumnarDataSet implements DataSet {
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private final DataSetDefinition definition;
+
+    private final EvaluationContext context;
+
+    private final DataSetMetaData metaData = new DataSetMetaData();
+
+    private final Map<String, Column> columnsByName = new HashMap<String, Column>();
+
+    private final List<Column> columns = new ArrayList<Column>();
+
+    private int rows = 0;
+
+    private int capacity = INITIAL_CAPACITY;
+
+    public ColumnarDataSet(DataSetDefinition definition, EvaluationContext context) {
+        this.definition = definition;
+        this.context = context;
+    }
+
+    /**
+     * Adds an empty row at the end of the data set
+     *
+     * @return a view of the row that writes to the data set
+     */
+    public DataSetRow newRow() {
+        if (rows == capacity) {
+            capacity *= 2;
+            for (Column column : columns) {
+                column.grow(capacity);
+            }
+        }
+        return new ColumnarRow(rows++);
+    }
+
+    /**
+     * Adds a row built elsewhere, copying its values; rows from {@link #newRow()} are already part of the data set
+     */
+    public void addRow(DataSetRow row) {
+        if (row instanceof ColumnarRow && ((ColumnarRow) row).getDataSet() == this) {
+            return;
+        }
+        DataSetRow copy = newRow();
+        for (Map.Entry<DataSetColumn, Object> e : row.getColumnValues().entrySet()) {
+            copy.addColumnValue(e.getKey(), e.getValue());
+        }
+    }
+
+    /**
+     * Sets the value of a cell, declaring the column the first time it is used
+     */
+    public void set(int row, String label, Object value) {
+        if (row < 0 || row >= rows) {
+            throw new IndexOutOfBoundsException("Row " + row + " of " + rows);
+        }
+        getOrDeclareColumn(label, value).set(row, value);
+    }
+
+    public Object get(int row, String label) {
+        Column column = columnsByName.get(label);
+        return column == null || row < 0 || row >= rows ? null : column.get(row);
+    }
+
+    public int size() {
+        return rows;
+    }
+
+    /**
+     * @return the arrays and bit sets the values of the columns are kept in, for estimating the memory of the data set
+     */
+    public List<Object> getColumnArrays() {
+        List<Object> ret = new ArrayList<Object>();
+        for (Column column : columns) {
+            for (Object array : Arrays.asList(column.ints, column.doubles, column.objects, column.present, column.blank)) {
+                if (array != null) {
+                    ret.add(array);
+                }
+            }
+        }
+        return ret;
+    }
+
+    private Column getOrDeclareColumn(String label, Object value) {
+        Column column = columnsByName.get(label);
+        if (column == null) {
+            DataSetColumn dataSetColumn = new DataSetColumn(label, label, value == null ? String.class : value.getClass());
+            column = new Column(dataSetColumn, capacity);
+            columnsByName.put(label, column);
+            columns.add(column);
+            metaData.addColumn(dataSetColumn);
+        }
+        return column;
+    }
+
+    @Override
+    public DataSetMetaData getMetaData() {
+        return metaData;
+    }
+
+    @Override
+    public EvaluationContext getContext() {
+        return context;
+    }
+
+    @Override
+    public DataSetDefinition getDefinition() {
+        return definition;
+    }
+
+    @Override
+    public Iterator<DataSetRow> iterator() {
+        return new Iterator<DataSetRow>() {
+
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < rows;
+            }
+
+            @Override
+            public DataSetRow next() {
+                if (next >= rows) {
+                    throw new NoSuchElementException();
+                }
+                return new ColumnarRow(next++);
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * The values of one column. Integers and doubles are kept in primitive arrays, with blank ("") and null cells
+     * marked in bit sets, until a value of another type is set, when the column moves to an array of objects.
+     */
+    private static class Column {
+
+        private static final String BLANK = "";
+
+        private final DataSetColumn column;
+
+        private int[] ints;
+
+        private double[] doubles;
+
+        private Object[] objects;
+
+        private BitSet present = new BitSet();
+
+        private BitSet blank = new BitSet();
+
+        private int capacity;
+
+        private Column(DataSetColumn column, int capacity) {
+            this.column = column;
+            this.capacity = capacity;
+        }
+
+        private void set(int row, Object value) {
+            if (objects == null) {
+                if (value == null || BLANK.equals(value)) {
+                    present.clear(row);
+                    blank.set(row, value != null);
+                    return;
+                }
+                if (value instanceof Integer && doubles == null) {
+                    if (ints == null) {
+                        ints = new int[capacity];
+                    }
+                    ints[row] = (Integer) value;
+                    present.set(row);
+                    blank.clear(row);
+                    return;
+                }
+                if (value instanceof Double && ints == null) {
+                    if (doubles == null) {
+                        doubles = new double[capacity];
+                    }
+                    doubles[row] = (Double) value;
+                    present.set(row);
+                    blank.clear(row);
+                    return;
+                }
+                toObjects();
+            }
+            objects[row] = value;
+        }
+
+        private Object get(int row) {
+            if (objects != null) {
+                return objects[row];
+            }
+            if (!present.get(row)) {
+                return blank.get(row) ? BLANK : null;
+            }
+            return ints != null ? Integer.valueOf(ints[row]) : Double.valueOf(doubles[row]);
+        }
+
+        private void toObjects() {
+            Object[] values = new Object[capacity];
+            for (int row = 0; row < capacity; row++) {
+                values[row] = get(row);
+            }
+            objects = values;
+            ints = null;
+            doubles = null;
+            present = null;
+            blank = null;
+        }
+
+        private void grow(int newCapacity) {
+            if (ints != null) {
+                ints = Arrays.copyOf(ints, newCapacity);
+            }
+            if (doubles != null) {
+                doubles = Arrays.copyOf(doubles, newCapacity);
+            }
+            if (objects != null) {
+                objects = Arrays.copyOf(objects, newCapacity);
+            }
+            capacity = newCapacity;
+        }
+    }
+
+    /**
+     * A row of the data set. Values are read from and written to the columns; the maps of the row are built when
+     * asked for and do not write through.
+     */
+    public class ColumnarRow extends DataSetRow {
+
+        private final int index;
+
+        private ColumnarRow(int index) {
+            this.index = index;
+        }
+
+        private ColumnarDataSet getDataSet() {
+            return ColumnarDataSet.this;
+        }
+
+        /**
+         * Sets a value without declaring a {@link DataSetColumn} for the cell
+         */
+        public void set(String label, Object value) {
+            ColumnarDataSet.this.set(index, label, value);
+        }
+
+        @Override
+        public void addColumnValue(DataSetColumn column, Object value) {
+            set(column.getName(), value);
+        }
+
+        @Override
+        public Object getColumnValue(String columnName) {
+            return get(index, columnName);
+        }
+
+        @Override
+        public Object getColumnValue(DataSetColumn column) {
+            return get(index, column.getName());
+        }
+
+        @Override
+        public Map<DataSetColumn, Object> getColumnValues() {
+            Map<DataSetColumn, Object> ret = new LinkedHashMap<DataSetColumn, Object>();
+            for (Column column : columns) {
+                ret.put(column.column, column.get(index));
+            }
+            return ret;
+        }
+    }
+}
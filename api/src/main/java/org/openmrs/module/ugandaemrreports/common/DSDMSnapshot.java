@@ -0,0 +1,142 @@
+package org.openmrs.module.ugandaemrreports.common;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * What the DSDM cohorts and data of a period need to know about each patient, so that they filter it rather than
+ * query the database: whether they were enrolled into a program during the period, had good adherence in the 6
+ * months before it, were in clinical stage 1 or 2, had a suppressed viral load in the 12 months before it or a non
+ * suppressed one during it, were in care during it, and their current DSDM model and the date they were enrolled into
+ * it. Patients are kept in a sorted array of ids, with their facts as bits of a parallel array and their model as an
+ * index into the model names.
+ */
+public class DSDMSnapshot {
+
+    public static final int ENROLLED = 1;
+
+    public static final int GOOD_ADHERENCE = 1 << 1;
+
+    public static final int CLINICAL_STAGE_1_OR_2 = 1 << 2;
+
+    public static final int VIRALLY_SUPPRESSED = 1 << 3;
+
+    public static final int UNSUPPRESSED_VL = 1 << 4;
+
+    public static final int IN_CARE = 1 << 5;
+
+    private final Date startDate;
+
+    private final Date endDate;
+
+    private final int[] patientIds;
+
+    private final int[] facts;
+
+    private final int[] models;
+
+    private final long[] modelEnrollmentDates;
+
+    private final List<String> modelNames = new ArrayList<String>();
+
+    /**
+     * @param patientIds every patient with a fact or a model
+     */
+    public DSDMSnapshot(Date startDate, Date endDate, Collection<Integer> patientIds) {
+        this.startDate = startDate;
+        this.endDate = endDate;
+        this.patientIds = new int[patientIds.size()];
+        int i = 0;
+        for (Integer patientId : patientIds) {
+            this.patientIds[i++] = patientId;
+        }
+        Arrays.sort(this.patientIds);
+        this.facts = new int[this.patientIds.length];
+        this.models = new int[this.patientIds.length];
+        this.modelEnrollmentDates = new long[this.patientIds.length];
+        Arrays.fill(this.models, -1);
+    }
+
+    public Date getStartDate() {
+        return startDate;
+    }
+
+    public Date getEndDate() {
+        return endDate;
+    }
+
+    public void addFact(Integer patientId, int fact) {
+        int i = indexOf(patientId);
+        if (i >= 0) {
+            facts[i] |= fact;
+        }
+    }
+
+    /**
+     * Sets the DSDM model of the patient; enrolments are set in the order they took place, so the last one set is the
+     * current model
+     */
+    public void setModel(Integer patientId, String modelName, Date enrollmentDate) {
+        int i = indexOf(patientId);
+        if (i < 0 || enrollmentDate == null) {
+            return;
+        }
+        int model = modelNames.indexOf(modelName);
+        if (model < 0) {
+            model = modelNames.size();
+            modelNames.add(modelName);
+        }
+        models[i] = model;
+        modelEnrollmentDates[i] = enrollmentDate.getTime();
+    }
+
+    /**
+     * @return the patients with the fact
+     */
+    public Set<Integer> getPatientsWith(int fact) {
+        Set<Integer> ret = new TreeSet<Integer>();
+        for (int i = 0; i < patientIds.length; i++) {
+            if ((facts[i] & fact) != 0) {
+                ret.add(patientIds[i]);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * @return the patients with a DSDM model
+     */
+    public List<Integer> getPatientsWithModel() {
+        List<Integer> ret = new ArrayList<Integer>();
+        for (int i = 0; i < patientIds.length; i++) {
+            if (models[i] >= 0) {
+                ret.add(patientIds[i]);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * @return the current DSDM model of the patient, or null if they have none
+     */
+    public DSDMModel getModel(Integer patientId) {
+        int i = indexOf(patientId);
+        if (i < 0 || models[i] < 0) {
+            return null;
+        }
+        return new DSDMModel(new Date(modelEnrollmentDates[i]), modelNames.get(models[i]));
+    }
+
+    public int size() {
+        return patientIds.length;
+    }
+
+    private int indexOf(Integer patientId) {
+        return patientId == null ? -1 : Arrays.binarySearch(patientIds, patientId);
+    }
+}
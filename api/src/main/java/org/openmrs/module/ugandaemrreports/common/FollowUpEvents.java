@@ -0,0 +1,18 @@
+package org.openmrs.module.ugandaemrreports.common;
+
+import java.util.Date;
+
+/**
+ * The follow up obs and death dates of a cohort as read by FollowUpMatrices#loadFollowUp, shared by the
+ * {@link FollowUpMatrix} of monthly and quarterly statuses and the {@link FollowUpStatuses} of other periods
+ */
+public interface FollowUpEvents {
+
+    void addReturnVisitDate(Integer patientId, Date returnVisitDate);
+
+    void addTransferOut(Integer patientId, Date obsDatetime);
+
+    void addArtStartDate(Integer patientId, Date artStartDate);
+
+    void setDeathDate(Integer patientId, Date deathDate);
+}
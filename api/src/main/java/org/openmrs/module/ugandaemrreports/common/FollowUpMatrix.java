@@ -0,0 +1,296 @@
+package org.openmrs.module.ugandaemrreports.common;
+
+import org.openmrs.Obs;
+import org.openmrs.module.reporting.common.TimeQualifier;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The follow up of a cohort in consecutive months or quarters from a start date, e.g. the quarters after ART start
+ * in the ART register, worked out from one scan of the patients' encounters and follow up obs. The register columns
+ * that show a patient's status in one of the periods read from it instead of querying once per column.
+ * <p>
+ * Periods are counted from the one the start date falls in (0) and cover whole days, so an encounter on the last day
+ * of a quarter falls in that quarter.
+ */
+public class FollowUpMatrix implements FollowUpEvents {
+
+    /**
+     * The months 0 to 72 of the ART register
+     */
+    public static final int DEFAULT_MONTHS = 73;
+
+    /**
+     * The quarters of the pre-ART register
+     */
+    public static final int DEFAULT_QUARTERS = 16;
+
+    private static final int NONE = Integer.MIN_VALUE;
+
+    private final Enums.Period period;
+
+    /**
+     * The first day of each period, and the day after the last period
+     */
+    private final int[] boundaries;
+
+    private final Map<Integer, Row> rows = new HashMap<Integer, Row>();
+
+    private final ConcurrentMap<String, Map<Integer, Obs>> obsByEncounter = new ConcurrentHashMap<String, Map<Integer, Obs>>();
+
+    public FollowUpMatrix(Enums.Period period, Date startDate, int numberOfPeriods) {
+        if (period != Enums.Period.MONTHLY && period != Enums.Period.QUARTERLY) {
+            throw new IllegalArgumentException("Only monthly and quarterly follow up is supported, not " + period);
+        }
+        this.period = period;
+        PeriodCalendar calendar = PeriodCalendar.getInstance();
+        boundaries = new int[numberOfPeriods + 1];
+        int day = calendar.epochDay(startDate);
+        if (period == Enums.Period.MONTHLY) {
+            int first = calendar.month(day);
+            for (int i = 0; i <= numberOfPeriods; i++) {
+                boundaries[i] = calendar.firstDayOfMonth(first + i);
+            }
+        } else {
+            int first = calendar.quarter(day);
+            for (int i = 0; i <= numberOfPeriods; i++) {
+                boundaries[i] = calendar.firstDayOfQuarter(first + i);
+            }
+        }
+    }
+
+    /**
+     * @return the number of periods worked out when a register does not say how many it shows
+     */
+    public static int defaultNumberOfPeriods(Enums.Period period) {
+        return period == Enums.Period.MONTHLY ? DEFAULT_MONTHS : DEFAULT_QUARTERS;
+    }
+
+    public Enums.Period getPeriod() {
+        return period;
+    }
+
+    public int getNumberOfPeriods() {
+        return boundaries.length - 1;
+    }
+
+    public boolean covers(int periodToAdd) {
+        return periodToAdd >= 0 && periodToAdd < getNumberOfPeriods();
+    }
+
+    public Date getFirstDay() {
+        return toDate(boundaries[0]);
+    }
+
+    public Date getLastDay() {
+        return toDate(boundaries[boundaries.length - 1] - 1);
+    }
+
+    /**
+     * Adds an encounter of the patient; encounters are added in the order they took place
+     */
+    public void addEncounter(Integer patientId, Integer encounterId, Date encounterDatetime) {
+        int day = PeriodCalendar.getInstance().epochDay(encounterDatetime);
+        int i = PeriodCalendar.indexOf(day, boundaries);
+        if (i < 0) {
+            return;
+        }
+        Row row = getOrCreateRow(patientId);
+        if (row.firstEncounter[i] == 0) {
+            row.firstEncounter[i] = encounterId;
+        }
+        row.lastEncounter[i] = encounterId;
+        row.lastEncounterDay[i] = day;
+    }
+
+    @Override
+    public void addReturnVisitDate(Integer patientId, Date returnVisitDate) {
+        Row row = getOrCreateRow(patientId);
+        if (row.returnVisitDays.length == row.returnVisits) {
+            row.returnVisitDays = Arrays.copyOf(row.returnVisitDays, Math.max(4, row.returnVisits * 2));
+        }
+        row.returnVisitDays[row.returnVisits++] = PeriodCalendar.getInstance().epochDay(returnVisitDate);
+        row.sorted = false;
+    }
+
+    @Override
+    public void addTransferOut(Integer patientId, Date obsDatetime) {
+        Row row = getOrCreateRow(patientId);
+        int day = PeriodCalendar.getInstance().epochDay(obsDatetime);
+        if (row.transferOutDay == NONE || day < row.transferOutDay) {
+            row.transferOutDay = day;
+        }
+    }
+
+    @Override
+    public void addArtStartDate(Integer patientId, Date artStartDate) {
+        Row row = getOrCreateRow(patientId);
+        int day = PeriodCalendar.getInstance().epochDay(artStartDate);
+        if (row.artStartDay == NONE || day < row.artStartDay) {
+            row.artStartDay = day;
+        }
+    }
+
+    @Override
+    public void setDeathDate(Integer patientId, Date deathDate) {
+        getOrCreateRow(patientId).deathDay = PeriodCalendar.getInstance().epochDay(deathDate);
+    }
+
+    /**
+     * @return the patients with any follow up in the matrix
+     */
+    public Set<Integer> getPatientIds() {
+        return rows.keySet();
+    }
+
+    /**
+     * @return the first or last encounter of the patient in the period, or null if there is none
+     */
+    public Integer getEncounterId(Integer patientId, int periodToAdd, TimeQualifier which) {
+        Row row = rows.get(patientId);
+        if (row == null || !covers(periodToAdd)) {
+            return null;
+        }
+        int encounterId = which == TimeQualifier.FIRST ? row.firstEncounter[periodToAdd] : row.lastEncounter[periodToAdd];
+        return encounterId == 0 ? null : encounterId;
+    }
+
+    /**
+     * @return the first or last encounters of every patient in every period
+     */
+    public Set<Integer> getEncounterIds(TimeQualifier which) {
+        Set<Integer> ret = new HashSet<Integer>();
+        for (Row row : rows.values()) {
+            for (int encounterId : which == TimeQualifier.FIRST ? row.firstEncounter : row.lastEncounter) {
+                if (encounterId != 0) {
+                    ret.add(encounterId);
+                }
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * @return the status of the patient at the end of the period as the FU status columns show it, see
+     * {@link org.openmrs.module.ugandaemrreports.definition.data.converter.LastSeenConverter}
+     */
+    public PatientData getStatus(Integer patientId, int periodToAdd) {
+        PatientData ret = new PatientData();
+        ret.setPeriod(period);
+        int startDay = boundaries[periodToAdd];
+        int endDay = boundaries[periodToAdd + 1] - 1;
+        ret.setPeriodDate(toDate(endDay));
+
+        Row row = rows.get(patientId);
+        if (row == null) {
+            return ret;
+        }
+        if (row.lastEncounterDay[periodToAdd] != NONE) {
+            ret.setEncounterDate(toDate(row.lastEncounterDay[periodToAdd]));
+        }
+        if (row.returnVisits > 0) {
+            if (!row.sorted) {
+                Arrays.sort(row.returnVisitDays, 0, row.returnVisits);
+                row.sorted = true;
+            }
+            // the last return visit date on or before the end of the period, and the first one after it
+            int after = firstAfter(row.returnVisitDays, row.returnVisits, endDay);
+            if (after > 0) {
+                ret.setNumberOfSinceLastVisit(endDay - row.returnVisitDays[after - 1]);
+            }
+            if (after < row.returnVisits) {
+                ret.setNextVisitDate(toDate(row.returnVisitDays[after]));
+            }
+        }
+        if (row.deathDay != NONE && row.deathDay >= startDay && row.deathDay <= endDay) {
+            ret.setDeathDate(toDate(row.deathDay));
+        }
+        if (row.transferOutDay != NONE && row.transferOutDay <= endDay) {
+            ret.setTransferredOut(true);
+        }
+        if (row.artStartDay != NONE) {
+            ret.setArtStartDate(toDate(row.artStartDay));
+        }
+        return ret;
+    }
+
+    /**
+     * @return the obs loaded for the encounters of the matrix under the given key, by encounter, or null if they have
+     * not been loaded
+     */
+    public Map<Integer, Obs> getObs(String key) {
+        return obsByEncounter.get(key);
+    }
+
+    public void putObs(String key, Map<Integer, Obs> obs) {
+        obsByEncounter.put(key, obs);
+    }
+
+    private Row getOrCreateRow(Integer patientId) {
+        Row row = rows.get(patientId);
+        if (row == null) {
+            row = new Row(getNumberOfPeriods());
+            rows.put(patientId, row);
+        }
+        return row;
+    }
+
+    /**
+     * @return the index of the first of the sorted days that is after the given day
+     */
+    private static int firstAfter(int[] days, int length, int day) {
+        int low = 0;
+        int high = length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (days[mid] <= day) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static Date toDate(int epochDay) {
+        return PeriodCalendar.getInstance().toLocalDate(epochDay).toDate();
+    }
+
+    /**
+     * The follow up of one patient, by period
+     */
+    private static class Row {
+
+        private final int[] firstEncounter;
+
+        private final int[] lastEncounter;
+
+        private final int[] lastEncounterDay;
+
+        private int[] returnVisitDays = new int[0];
+
+        private int returnVisits = 0;
+
+        private boolean sorted = true;
+
+        private int transferOutDay = NONE;
+
+        private int artStartDay = NONE;
+
+        private int deathDay = NONE;
+
+        private Row(int periods) {
+            firstEncounter = new int[periods];
+            lastEncounter = new int[periods];
+            lastEncounterDay = new int[periods];
+            Arrays.fill(lastEncounterDay, NONE);
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package org.openmrs.module.ugandaemrreports.common;
+
+import org.joda.time.Days;
+import org.joda.time.LocalDate;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+
+/**
+ * The FU status of each patient of a cohort at the end of a period other than a month or a quarter (those are read
+ * from the {@link FollowUpMatrix}), folded from the typed rows of the FU status queries into one {@link PatientData}
+ * per patient. Patients are kept in a sorted array of ids with their statuses in a parallel array, so that rows are
+ * matched to patients by binary search and nothing is kept per row.
+ */
+public class FollowUpStatuses implements FollowUpEvents {
+
+    private final Enums.Period period;
+
+    private final Date startDate;
+
+    private final Date endDate;
+
+    private final int[] patientIds;
+
+    private final PatientData[] statuses;
+
+    private final Date[] lastReturnVisitDates;
+
+    /**
+     * @param startDate the first day of the period
+     * @param endDate   the last day of the period
+     */
+    public FollowUpStatuses(Enums.Period period, Date startDate, Date endDate, Collection<Integer> patientIds) {
+        this.period = period;
+        this.startDate = startDate;
+        this.endDate = endDate;
+        this.patientIds = new int[patientIds.size()];
+        int i = 0;
+        for (Integer patientId : patientIds) {
+            this.patientIds[i++] = patientId;
+        }
+        Arrays.sort(this.patientIds);
+        this.statuses = new PatientData[this.patientIds.length];
+        this.lastReturnVisitDates = new Date[this.patientIds.length];
+    }
+
+    public Date getStartDate() {
+        return startDate;
+    }
+
+    public Date getEndDate() {
+        return endDate;
+    }
+
+    /**
+     * Adds an encounter of the patient in the period
+     */
+    public void addEncounter(Integer patientId, Date encounterDatetime) {
+        encounterDatetime = day(encounterDatetime);
+        PatientData status = statusOf(patientId);
+        if (status != null && encounterDatetime != null && (status.getEncounterDate() == null || encounterDatetime.after(status.getEncounterDate()))) {
+            status.setEncounterDate(encounterDatetime);
+        }
+    }
+
+    /**
+     * Adds a return visit date given to the patient: the latest one on or before the end of the period gives the
+     * number of days since it, the earliest one after it the next visit date
+     */
+    @Override
+    public void addReturnVisitDate(Integer patientId, Date returnVisitDate) {
+        int i = indexOf(patientId);
+        if (i < 0 || returnVisitDate == null) {
+            return;
+        }
+        returnVisitDate = day(returnVisitDate);
+        PatientData status = getOrCreate(i);
+        if (returnVisitDate.after(endDate)) {
+            if (status.getNextVisitDate() == null || returnVisitDate.before(status.getNextVisitDate())) {
+                status.setNextVisitDate(returnVisitDate);
+            }
+        } else if (lastReturnVisitDates[i] == null || returnVisitDate.after(lastReturnVisitDates[i])) {
+            lastReturnVisitDates[i] = returnVisitDate;
+            status.setNumberOfSinceLastVisit(Days.daysBetween(new LocalDate(returnVisitDate), new LocalDate(endDate)).getDays());
+        }
+    }
+
+    /**
+     * Marks the patient transferred out if the transfer out was recorded on or before the end of the period
+     */
+    @Override
+    public void addTransferOut(Integer patientId, Date obsDatetime) {
+        if (obsDatetime != null && !obsDatetime.after(endDate)) {
+            PatientData status = statusOf(patientId);
+            if (status != null) {
+                status.setTransferredOut(true);
+            }
+        }
+    }
+
+    /**
+     * Sets the ART start date of the patient, keeping the earliest if more than one was recorded
+     */
+    @Override
+    public void addArtStartDate(Integer patientId, Date artStartDate) {
+        artStartDate = day(artStartDate);
+        PatientData status = statusOf(patientId);
+        if (status != null && artStartDate != null && (status.getArtStartDate() == null || artStartDate.before(status.getArtStartDate()))) {
+            status.setArtStartDate(artStartDate);
+        }
+    }
+
+    /**
+     * Sets the death date of the patient if they died during the period
+     */
+    @Override
+    public void setDeathDate(Integer patientId, Date deathDate) {
+        deathDate = day(deathDate);
+        if (deathDate != null && !deathDate.before(startDate) && !deathDate.after(endDate)) {
+            PatientData status = statusOf(patientId);
+            if (status != null) {
+                status.setDeathDate(deathDate);
+            }
+        }
+    }
+
+    public int size() {
+        return patientIds.length;
+    }
+
+    public Integer getPatientId(int i) {
+        return patientIds[i];
+    }
+
+    /**
+     * @return the status of the i-th patient by id, with nothing but the period set if no rows were added for them
+     */
+    public PatientData getStatus(int i) {
+        return getOrCreate(i);
+    }
+
+    /**
+     * @return the status of the patient, or null if they are not in the cohort
+     */
+    public PatientData getStatusOf(Integer patientId) {
+        return statusOf(patientId);
+    }
+
+    private PatientData statusOf(Integer patientId) {
+        int i = indexOf(patientId);
+        return i < 0 ? null : getOrCreate(i);
+    }
+
+    private PatientData getOrCreate(int i) {
+        PatientData ret = statuses[i];
+        if (ret == null) {
+            ret = new PatientData();
+            ret.setPatientId(patientIds[i]);
+            ret.setPeriod(period);
+            ret.setPeriodDate(endDate);
+            statuses[i] = ret;
+        }
+        return ret;
+    }
+
+    /**
+     * @return the start of the day of the date, as the statuses hold days
+     */
+    private static Date day(Date date) {
+        return date == null ? null : new LocalDate(date).toDate();
+    }
+
+    private int indexOf(Integer patientId) {
+        return patientId == null ? -1 : Arrays.binarySearch(patientIds, patientId);
+    }
+}
@@ -0,0 +1,201 @@
+package org.openmrs.module.ugandaemrreports.common;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * What the EID due lists and register need to know about an exposed infant: the birth date, the PCR and rapid test
+ * dates and results, the breast feeding statuses recorded and the mother, as linked by a parent relationship
+ */
+public class InfantTimeline {
+
+    public static final int SECOND_PCR_WEEKS_AFTER_BREAST_FEEDING = 6;
+
+    public static final int SECOND_PCR_MONTHS_FROM_BIRTH = 14;
+
+    private final Integer patientId;
+
+    private Date birthdate;
+
+    private Date firstPcrDate;
+
+    private Integer firstPcrResult;
+
+    private Date secondPcrDate;
+
+    private Integer secondPcrResult;
+
+    private Date rapidTestDate;
+
+    private Integer rapidTestResult;
+
+    private Integer motherId;
+
+    private String motherName;
+
+    private String motherPhone;
+
+    private final List<BreastFeedingStatus> breastFeedingStatuses = new ArrayList<BreastFeedingStatus>();
+
+    public InfantTimeline(Integer patientId) {
+        this.patientId = patientId;
+    }
+
+    public Integer getPatientId() {
+        return patientId;
+    }
+
+    public Date getBirthdate() {
+        return birthdate;
+    }
+
+    public void setBirthdate(Date birthdate) {
+        this.birthdate = birthdate;
+    }
+
+    public Date getFirstPcrDate() {
+        return firstPcrDate;
+    }
+
+    public void setFirstPcrDate(Date firstPcrDate) {
+        this.firstPcrDate = firstPcrDate;
+    }
+
+    /**
+     * @return the concept id of the result of the first PCR
+     */
+    public Integer getFirstPcrResult() {
+        return firstPcrResult;
+    }
+
+    public void setFirstPcrResult(Integer firstPcrResult) {
+        this.firstPcrResult = firstPcrResult;
+    }
+
+    public Date getSecondPcrDate() {
+        return secondPcrDate;
+    }
+
+    public void setSecondPcrDate(Date secondPcrDate) {
+        this.secondPcrDate = secondPcrDate;
+    }
+
+    public Integer getSecondPcrResult() {
+        return secondPcrResult;
+    }
+
+    public void setSecondPcrResult(Integer secondPcrResult) {
+        this.secondPcrResult = secondPcrResult;
+    }
+
+    public Date getRapidTestDate() {
+        return rapidTestDate;
+    }
+
+    public void setRapidTestDate(Date rapidTestDate) {
+        this.rapidTestDate = rapidTestDate;
+    }
+
+    public Integer getRapidTestResult() {
+        return rapidTestResult;
+    }
+
+    public void setRapidTestResult(Integer rapidTestResult) {
+        this.rapidTestResult = rapidTestResult;
+    }
+
+    public Integer getMotherId() {
+        return motherId;
+    }
+
+    public void setMotherId(Integer motherId) {
+        this.motherId = motherId;
+    }
+
+    /**
+     * @return the full preferred name of the mother
+     */
+    public String getMotherName() {
+        return motherName;
+    }
+
+    public void setMotherName(String motherName) {
+        this.motherName = motherName;
+    }
+
+    public String getMotherPhone() {
+        return motherPhone;
+    }
+
+    public void setMotherPhone(String motherPhone) {
+        this.motherPhone = motherPhone;
+    }
+
+    /**
+     * Adds a breast feeding status, in the order they were recorded
+     *
+     * @param stopped true if the infant was no longer breast feeding
+     */
+    public void addBreastFeedingStatus(Date obsDatetime, Date encounterDatetime, boolean stopped) {
+        breastFeedingStatuses.add(new BreastFeedingStatus(obsDatetime, encounterDatetime, stopped));
+    }
+
+    /**
+     * @param durationType d, w, m or y for days, weeks, months or years; days if null
+     * @return the date the given duration after birth, or null if the birth date is unknown
+     */
+    public Date getDateFromBirth(int duration, String durationType) {
+        if (birthdate == null) {
+            return null;
+        }
+        Calendar cal = Calendar.getInstance();
+        cal.setTime(birthdate);
+        if (durationType == null || durationType.equals("d")) {
+            cal.add(Calendar.DAY_OF_YEAR, duration);
+        } else if (durationType.equals("w")) {
+            cal.add(Calendar.WEEK_OF_YEAR, duration);
+        } else if (durationType.equals("m")) {
+            cal.add(Calendar.MONTH, duration);
+        } else if (durationType.equals("y")) {
+            cal.add(Calendar.YEAR, duration);
+        }
+        return cal.getTime();
+    }
+
+    /**
+     * @return 6 weeks after the visit the infant stopped breast feeding, if that was the last status recorded on or
+     * before the date, otherwise 14 months after birth
+     */
+    public Date getSecondPcrDueDate(Date onOrBefore) {
+        BreastFeedingStatus last = null;
+        for (BreastFeedingStatus status : breastFeedingStatuses) {
+            if (onOrBefore == null || !status.obsDatetime.after(onOrBefore)) {
+                last = status;
+            }
+        }
+        if (last != null && last.stopped) {
+            Calendar cal = Calendar.getInstance();
+            cal.setTime(last.encounterDatetime);
+            cal.add(Calendar.WEEK_OF_YEAR, SECOND_PCR_WEEKS_AFTER_BREAST_FEEDING);
+            return cal.getTime();
+        }
+        return getDateFromBirth(SECOND_PCR_MONTHS_FROM_BIRTH, "m");
+    }
+
+    private static class BreastFeedingStatus {
+
+        private final Date obsDatetime;
+
+        private final Date encounterDatetime;
+
+        private final boolean stopped;
+
+        private BreastFeedingStatus(Date obsDatetime, Date encounterDatetime, boolean stopped) {
+            this.obsDatetime = obsDatetime;
+            this.encounterDatetime = encounterDatetime;
+            this.stopped = stopped;
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package org.openmrs.module.ugandaemrreports.common;
+
+import java.util.List;
+
+/**
+ * Receives the obs of the IAC encounters of a cohort one patient at a time, as they are read from the database (see
+ * UgandaEMRReportsService#getNonSuppressingData). The rows are still being read when it is called, so it must not
+ * query the database itself.
+ */
+public interface NonSuppressingDataHandler {
+
+    /**
+     * @param data the obs of the patient's IAC encounters, ordered by encounter and obs
+     */
+    void handle(Integer patientId, List<PatientNonSuppressingData> data);
+}
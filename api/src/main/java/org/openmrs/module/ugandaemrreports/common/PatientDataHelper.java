@@ -24,6 +24,11 @@ public class PatientDataHelper {
         if (value == null) {
             value = "";
         }
+        if (row instanceof ColumnarDataSet.ColumnarRow) {
+            // the data set declares each column once
+            ((ColumnarDataSet.ColumnarRow) row).set(label, value);
+            return;
+        }
         DataSetColumn c = new DataSetColumn(label, label, value.getClass());
         row.addColumnValue(c, value);
     }
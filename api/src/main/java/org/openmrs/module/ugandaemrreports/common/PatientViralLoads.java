@@ -0,0 +1,89 @@
+package org.openmrs.module.ugandaemrreports.common;
+
+import java.util.Date;
+
+/**
+ * The latest and previous viral load tests of a patient, as kept in the viral load index
+ */
+public class PatientViralLoads {
+
+    private final Integer patientId;
+
+    private ViralLoadTest latest;
+
+    private ViralLoadTest previous;
+
+    public PatientViralLoads(Integer patientId) {
+        this.patientId = patientId;
+    }
+
+    public PatientViralLoads(Integer patientId, ViralLoadTest latest, ViralLoadTest previous) {
+        this.patientId = patientId;
+        this.latest = latest;
+        this.previous = previous;
+    }
+
+    public Integer getPatientId() {
+        return patientId;
+    }
+
+    public ViralLoadTest getLatest() {
+        return latest;
+    }
+
+    public ViralLoadTest getPrevious() {
+        return previous;
+    }
+
+    /**
+     * Adds a test of the patient, keeping it if it is one of the two latest added so far
+     */
+    public void add(ViralLoadTest test) {
+        if (latest == null || test.isAfter(latest)) {
+            previous = latest;
+            latest = test;
+        } else if (previous == null || test.isAfter(previous)) {
+            previous = test;
+        }
+    }
+
+    /**
+     * @return true if the latest test on or before the date is known from the two latest tests, i.e. one of them is on
+     * or before it or the patient has had no other test
+     */
+    public boolean knowsLatestOnOrBefore(Date date) {
+        return previous == null || !previous.getDate().after(date) || !latest.getDate().after(date);
+    }
+
+    /**
+     * @return the latest test on or before the date, or null if there is none; only reliable if
+     * {@link #knowsLatestOnOrBefore(Date)}
+     */
+    public ViralLoadTest getLatestOnOrBefore(Date date) {
+        if (latest != null && !latest.getDate().after(date)) {
+            return latest;
+        }
+        if (previous != null && !previous.getDate().after(date)) {
+            return previous;
+        }
+        return null;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof PatientViralLoads)) {
+            return false;
+        }
+        PatientViralLoads other = (PatientViralLoads) o;
+        return patientId.equals(other.patientId) && (latest == null ? other.latest == null : latest.equals(other.latest))
+                && (previous == null ? other.previous == null : previous.equals(other.previous));
+    }
+
+    @Override
+    public int hashCode() {
+        return patientId.hashCode();
+    }
+}
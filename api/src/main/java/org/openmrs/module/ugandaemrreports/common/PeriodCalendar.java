@@ -0,0 +1,317 @@
+package org.openmrs.module.ugandaemrreports.common;
+
+import org.apache.commons.lang.StringUtils;
+import org.joda.time.LocalDate;
+import org.openmrs.api.context.Context;
+
+import java.util.Date;
+import java.util.TimeZone;
+
+/**
+ * Maps days to the months, quarters and years they fall in through tables worked out once for a range of years, so
+ * that the registers can bucket every obs of every patient without creating dates or formatting strings. Days are
+ * counted from 1970-01-01 (epoch days), months and quarters from the start of year 0 (year * 12 + month - 1 and
+ * year * 4 + quarter - 1), and the labels of months ("yyyyMM"), quarters ("yyyyQn") and years are created once each.
+ * Days outside the range are worked out with java.time instead of the tables.
+ */
+public class PeriodCalendar {
+
+    public static final String GP_YEARS = "ugandaemrreports.periodCalendarYears";
+
+    private static final int DEFAULT_FIRST_YEAR = 1900;
+
+    private static final int DEFAULT_LAST_YEAR = 2100;
+
+    private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+    private static volatile PeriodCalendar instance;
+
+    private final int firstYear;
+
+    private final int lastYear;
+
+    private final int firstDay;
+
+    /**
+     * The month of each day of the range, counted from the first month of the range
+     */
+    private final short[] monthOfDay;
+
+    /**
+     * The first day of each month of the range, and the day after the range
+     */
+    private final int[] monthStart;
+
+    private final String[] monthLabels;
+
+    private final String[] quarterLabels;
+
+    private final String[] yearLabels;
+
+    public PeriodCalendar(int firstYear, int lastYear) {
+        if (lastYear < firstYear || (lastYear - firstYear + 1) * 12 > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid range of years " + firstYear + "-" + lastYear);
+        }
+        this.firstYear = firstYear;
+        this.lastYear = lastYear;
+        int months = (lastYear - firstYear + 1) * 12;
+        monthStart = new int[months + 1];
+        for (int m = 0; m <= months; m++) {
+            monthStart[m] = (int) java.time.LocalDate.of(firstYear + m / 12, m % 12 + 1, 1).toEpochDay();
+        }
+        firstDay = monthStart[0];
+        monthOfDay = new short[monthStart[months] - firstDay];
+        for (short m = 0; m < months; m++) {
+            for (int day = monthStart[m]; day < monthStart[m + 1]; day++) {
+                monthOfDay[day - firstDay] = m;
+            }
+        }
+        monthLabels = new String[months];
+        quarterLabels = new String[months / 3];
+        yearLabels = new String[months / 12];
+    }
+
+    /**
+     * @return the calendar for the range of years in the global property (e.g. "1900-2100"), or the default range
+     */
+    public static PeriodCalendar getInstance() {
+        if (instance == null) {
+            synchronized (PeriodCalendar.class) {
+                if (instance == null) {
+                    instance = create();
+                }
+            }
+        }
+        return instance;
+    }
+
+    private static PeriodCalendar create() {
+        int first = DEFAULT_FIRST_YEAR;
+        int last = DEFAULT_LAST_YEAR;
+        try {
+            String years = Context.getAdministrationService().getGlobalProperty(GP_YEARS);
+            if (StringUtils.isNotBlank(years)) {
+                String[] range = years.trim().split("\\s*-\\s*");
+                first = Integer.parseInt(range[0]);
+                last = Integer.parseInt(range[1]);
+            }
+        }
+        catch (Exception e) {
+            // the default range, e.g. outside of OpenMRS
+        }
+        return new PeriodCalendar(first, last);
+    }
+
+    /**
+     * @return the day of the date in the server's time zone
+     */
+    public int epochDay(Date date) {
+        long millis = date.getTime();
+        return (int) Math.floorDiv(millis + TimeZone.getDefault().getOffset(millis), MILLIS_PER_DAY);
+    }
+
+    /**
+     * @return the day of a date formatted as yyyy-MM-dd
+     * @throws IllegalArgumentException if the date is not formatted that way
+     */
+    public int epochDay(String date) {
+        if (!isIsoDate(date)) {
+            throw new IllegalArgumentException("Not a yyyy-MM-dd date: " + date);
+        }
+        return epochDay(digits(date, 0, 4), digits(date, 5, 7), digits(date, 8, 10));
+    }
+
+    /**
+     * @throws IllegalArgumentException if there is no such day
+     */
+    public int epochDay(int year, int monthOfYear, int dayOfMonth) {
+        if (monthOfYear < 1 || monthOfYear > 12) {
+            throw new IllegalArgumentException("Invalid month " + year + "-" + monthOfYear + "-" + dayOfMonth);
+        }
+        if (year < firstYear || year > lastYear) {
+            try {
+                return (int) java.time.LocalDate.of(year, monthOfYear, dayOfMonth).toEpochDay();
+            }
+            catch (java.time.DateTimeException e) {
+                throw new IllegalArgumentException("Invalid day " + year + "-" + monthOfYear + "-" + dayOfMonth, e);
+            }
+        }
+        int m = (year - firstYear) * 12 + monthOfYear - 1;
+        if (dayOfMonth < 1 || dayOfMonth > monthStart[m + 1] - monthStart[m]) {
+            throw new IllegalArgumentException("Invalid day " + year + "-" + monthOfYear + "-" + dayOfMonth);
+        }
+        return monthStart[m] + dayOfMonth - 1;
+    }
+
+    /**
+     * @return true if the string is a date formatted as yyyy-MM-dd
+     */
+    public static boolean isIsoDate(String date) {
+        if (date == null || date.length() != 10 || date.charAt(4) != '-' || date.charAt(7) != '-') {
+            return false;
+        }
+        for (int i = 0; i < 10; i++) {
+            if (i != 4 && i != 7 && !Character.isDigit(date.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the month of the day, counted from the start of year 0
+     */
+    public int month(int epochDay) {
+        int i = epochDay - firstDay;
+        if (i < 0 || i >= monthOfDay.length) {
+            java.time.LocalDate date = java.time.LocalDate.ofEpochDay(epochDay);
+            return date.getYear() * 12 + date.getMonthValue() - 1;
+        }
+        return firstYear * 12 + monthOfDay[i];
+    }
+
+    /**
+     * @return the quarter of the day, counted from the start of year 0
+     */
+    public int quarter(int epochDay) {
+        return month(epochDay) / 3;
+    }
+
+    public int year(int epochDay) {
+        return month(epochDay) / 12;
+    }
+
+    /**
+     * @return the month of the day as a number formatted yyyyMM, e.g. 201903
+     */
+    public int monthKey(int epochDay) {
+        int month = month(epochDay);
+        return (month / 12) * 100 + month % 12 + 1;
+    }
+
+    public int firstDayOfMonth(int month) {
+        return monthStart(month);
+    }
+
+    public int lastDayOfMonth(int month) {
+        return monthStart(month + 1) - 1;
+    }
+
+    public int firstDayOfQuarter(int quarter) {
+        return monthStart(quarter * 3);
+    }
+
+    public int lastDayOfQuarter(int quarter) {
+        return monthStart(quarter * 3 + 3) - 1;
+    }
+
+    /**
+     * @return the first day of the quarter the given number of quarters before the quarter of the day
+     */
+    public int firstDayOfQuarterBefore(int epochDay, int quarters) {
+        return firstDayOfQuarter(quarter(epochDay) - quarters);
+    }
+
+    /**
+     * @return the index of the range the day falls in, given the first day of each range in ascending order and the
+     * day after the last range, or -1 if it falls in none
+     */
+    public static int indexOf(int epochDay, int[] boundaries) {
+        if (boundaries.length < 2 || epochDay < boundaries[0] || epochDay >= boundaries[boundaries.length - 1]) {
+            return -1;
+        }
+        int low = 0;
+        int high = boundaries.length - 2;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (boundaries[mid] <= epochDay) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return the month of the day formatted yyyyMM
+     */
+    public String monthLabel(int epochDay) {
+        int month = month(epochDay);
+        int i = month - firstYear * 12;
+        if (i < 0 || i >= monthLabels.length) {
+            return formatMonth(month);
+        }
+        String label = monthLabels[i];
+        if (label == null) {
+            label = formatMonth(month);
+            monthLabels[i] = label;
+        }
+        return label;
+    }
+
+    /**
+     * @return the quarter of the day formatted yyyyQn, e.g. 2019Q1
+     */
+    public String quarterLabel(int epochDay) {
+        int quarter = quarter(epochDay);
+        int i = quarter - firstYear * 4;
+        if (i < 0 || i >= quarterLabels.length) {
+            return formatQuarter(quarter);
+        }
+        String label = quarterLabels[i];
+        if (label == null) {
+            label = formatQuarter(quarter);
+            quarterLabels[i] = label;
+        }
+        return label;
+    }
+
+    public String yearLabel(int epochDay) {
+        int year = year(epochDay);
+        int i = year - firstYear;
+        if (i < 0 || i >= yearLabels.length) {
+            return String.valueOf(year);
+        }
+        String label = yearLabels[i];
+        if (label == null) {
+            label = String.valueOf(year);
+            yearLabels[i] = label;
+        }
+        return label;
+    }
+
+    public LocalDate toLocalDate(int epochDay) {
+        int month = month(epochDay);
+        return new LocalDate(month / 12, month % 12 + 1, epochDay - monthStart(month) + 1);
+    }
+
+    public int epochDay(LocalDate date) {
+        return epochDay(date.getYear(), date.getMonthOfYear(), date.getDayOfMonth());
+    }
+
+    private int monthStart(int month) {
+        int i = month - firstYear * 12;
+        if (i < 0 || i >= monthStart.length) {
+            return (int) java.time.LocalDate.of(Math.floorDiv(month, 12), Math.floorMod(month, 12) + 1, 1).toEpochDay();
+        }
+        return monthStart[i];
+    }
+
+    private static String formatMonth(int month) {
+        int monthOfYear = month % 12 + 1;
+        return (month / 12) + (monthOfYear < 10 ? "0" : "") + monthOfYear;
+    }
+
+    private static String formatQuarter(int quarter) {
+        return (quarter / 4) + "Q" + (quarter % 4 + 1);
+    }
+
+    private static int digits(String s, int from, int to) {
+        int ret = 0;
+        for (int i = from; i < to; i++) {
+            ret = ret * 10 + (s.charAt(i) - '0');
+        }
+        return ret;
+    }
+}
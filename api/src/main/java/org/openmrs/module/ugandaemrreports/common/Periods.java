@@ -1,5 +1,7 @@
 package org.openmrs.module.ugandaemrreports.common;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.collections.MapUtils;
 import org.joda.time.DateTime;
@@ -14,6 +16,12 @@ import java.util.*;
  */
 public class Periods {
 
+    /**
+     * The day ranges of each interval map in use, so that they are worked out once per map rather than once per date;
+     * maps are compared by identity and dropped once no longer used
+     */
+    private static final Cache<TreeMap<String, Interval>, DayRanges> DAY_RANGES = CacheBuilder.newBuilder().weakKeys().build();
+
     public static LocalDate quarterStartFor(LocalDate date) {
         return date.withDayOfMonth(1).withMonthOfYear((((date.getMonthOfYear() - 1) / 3) * 3) + 1);
     }
@@ -31,25 +39,14 @@ public class Periods {
     }
 
     public static List<LocalDate> addQuarters(LocalDate date, Integer numberOfQuarters) {
-        LocalDate endDate = quarterEndFor(date);
-        LocalDate startDate = quarterStartFor(date);
-
-        LocalDate beginningDate = startDate.plusMonths(numberOfQuarters * 3);
-
-        LocalDate endingDate = endDate.plusMonths(numberOfQuarters * 3);
-
-        return Arrays.asList(beginningDate, endingDate);
+        PeriodCalendar calendar = PeriodCalendar.getInstance();
+        int quarter = calendar.quarter(calendar.epochDay(date)) + numberOfQuarters;
+        return Arrays.asList(calendar.toLocalDate(calendar.firstDayOfQuarter(quarter)),
+                calendar.toLocalDate(calendar.lastDayOfQuarter(quarter)));
     }
 
     public static List<LocalDate> subtractQuarters(LocalDate date, Integer numberOfQuarters) {
-        LocalDate endDate = quarterEndFor(date);
-        LocalDate startDate = quarterStartFor(date);
-
-        LocalDate beginningDate = startDate.minusMonths(numberOfQuarters * 3);
-
-        LocalDate endingDate = endDate.minusMonths(numberOfQuarters * 3);
-
-        return Arrays.asList(beginningDate, endingDate);
+        return addQuarters(date, -numberOfQuarters);
     }
 
     public static List<LocalDate> addMonths(LocalDate date, Integer numberOfMonths) {
@@ -94,14 +91,13 @@ public class Periods {
 
         TreeMap<String, Interval> intervalTreeMap = new TreeMap<String, Interval>();
 
+        PeriodCalendar calendar = PeriodCalendar.getInstance();
+        int firstQuarter = calendar.quarter(calendar.epochDay(workingDate));
         for (int i = 0; i < numbers; i++) {
-            List<LocalDate> localDates = getDatesDuringPeriods(workingDate, i, Enums.Period.QUARTERLY);
-            Collections.sort(localDates);
-            DateTime start = new DateTime(localDates.get(0).getYear(), localDates.get(0).getMonthOfYear(), localDates.get(0).getDayOfMonth(), 0, 0, 0, 0);
-            DateTime end = new DateTime(localDates.get(1).getYear(), localDates.get(1).getMonthOfYear(), localDates.get(1).getDayOfMonth(), 0, 0, 0, 0);
-            Interval interval = new Interval(start, end);
-
-            intervalTreeMap.put(String.valueOf(i), interval);
+            // as before, each interval ends at the start of the last day of its quarter
+            DateTime start = calendar.toLocalDate(calendar.firstDayOfQuarter(firstQuarter + i)).toDateTimeAtStartOfDay();
+            DateTime end = calendar.toLocalDate(calendar.lastDayOfQuarter(firstQuarter + i)).toDateTimeAtStartOfDay();
+            intervalTreeMap.put(String.valueOf(i), new Interval(start, end));
         }
 
         return intervalTreeMap;
@@ -113,27 +109,18 @@ public class Periods {
     }
 
     public static Integer isDateInTheInterval(String date, TreeMap<String, Interval> intervals) {
-        for (Map.Entry<String, Interval> entry : intervals.entrySet()) {
-            String key = entry.getKey();
-            Interval value = entry.getValue();
-            if (isDateInTheInterval(date, value)) {
-                return Integer.valueOf(key);
-            }
-        }
-        return null;
+        String key = dayRangesOf(intervals).keyOf(date);
+        return key == null ? null : Integer.valueOf(key);
     }
 
     public static List<String> listOfDatesInPeriods(TreeMap<String, Interval> periods, List<String> dates) {
         List<String> ps = new ArrayList<String>();
         if (CollectionUtils.isNotEmpty(dates)) {
+            DayRanges ranges = dayRangesOf(periods);
             for (String date : dates) {
-                for (Map.Entry<String, Interval> entry : periods.entrySet()) {
-                    String key = entry.getKey();
-                    Interval value = entry.getValue();
-                    if (isDateInTheInterval(date, value)) {
-                        ps.add(key);
-                        break;
-                    }
+                String key = ranges.keyOf(date);
+                if (key != null) {
+                    ps.add(key);
                 }
             }
         }
@@ -144,22 +131,16 @@ public class Periods {
     public static TreeMap<String, TreeMap<String, String>> listOfDatesInPeriods(TreeMap<String, Interval> periods, TreeMap<String, String> dateValues) {
         TreeMap<String, TreeMap<String, String>> ps = new TreeMap<String, TreeMap<String, String>>();
         if (MapUtils.isNotEmpty(dateValues)) {
+            DayRanges ranges = dayRangesOf(periods);
             for (Map.Entry<String, String> dateValue : dateValues.entrySet()) {
-                for (Map.Entry<String, Interval> entry : periods.entrySet()) {
-                    String key = entry.getKey();
-                    Interval value = entry.getValue();
-                    if (isDateInTheInterval(dateValue.getKey(), value)) {
-                        if (ps.containsKey(key)) {
-                            TreeMap<String, String> oldMap = ps.get(key);
-                            oldMap.put(dateValue.getKey(), dateValue.getValue());
-                            ps.put(key, oldMap);
-                        } else {
-                            TreeMap<String, String> newMap = new TreeMap<String, String>();
-                            newMap.put(dateValue.getKey(), dateValue.getValue());
-                            ps.put(key, newMap);
-                        }
-                        break;
+                String key = ranges.keyOf(dateValue.getKey());
+                if (key != null) {
+                    TreeMap<String, String> values = ps.get(key);
+                    if (values == null) {
+                        values = new TreeMap<String, String>();
+                        ps.put(key, values);
                     }
+                    values.put(dateValue.getKey(), dateValue.getValue());
                 }
             }
         }
@@ -177,4 +158,92 @@ public class Periods {
         }
         return emptyMap;
     }
+
+    /**
+     * @return the day ranges of the intervals, built on the first use of the map and again if its entries changed
+     */
+    private static DayRanges dayRangesOf(TreeMap<String, Interval> periods) {
+        DayRanges ret = DAY_RANGES.getIfPresent(periods);
+        if (ret == null || !ret.isOf(periods)) {
+            ret = new DayRanges(periods);
+            DAY_RANGES.put(periods, ret);
+        }
+        return ret;
+    }
+
+    /**
+     * The intervals of {@link #getQuarters(LocalDate, int)} as ranges of days, so that the interval a yyyy-MM-dd date
+     * falls in is found without parsing it into a DateTime. Intervals that do not start and end at the start of a
+     * day, and dates formatted otherwise, are checked with {@link #isDateInTheInterval(String, Interval)}.
+     */
+    private static class DayRanges {
+
+        private final String[] keys;
+
+        private final Interval[] intervals;
+
+        private final int[] starts;
+
+        private final int[] ends;
+
+        private final boolean byDay;
+
+        private DayRanges(TreeMap<String, Interval> periods) {
+            PeriodCalendar calendar = PeriodCalendar.getInstance();
+            keys = new String[periods.size()];
+            intervals = new Interval[periods.size()];
+            starts = new int[periods.size()];
+            ends = new int[periods.size()];
+            boolean aligned = true;
+            int i = 0;
+            for (Map.Entry<String, Interval> entry : periods.entrySet()) {
+                Interval interval = entry.getValue();
+                aligned &= interval.getStart().getMillisOfDay() == 0 && interval.getEnd().getMillisOfDay() == 0;
+                keys[i] = entry.getKey();
+                intervals[i] = interval;
+                starts[i] = calendar.epochDay(interval.getStart().toLocalDate());
+                ends[i] = calendar.epochDay(interval.getEnd().toLocalDate());
+                i++;
+            }
+            byDay = aligned;
+        }
+
+        /**
+         * @return true if the map still holds the keys and intervals the ranges were built from
+         */
+        private boolean isOf(TreeMap<String, Interval> periods) {
+            if (periods.size() != keys.length) {
+                return false;
+            }
+            int i = 0;
+            for (Map.Entry<String, Interval> entry : periods.entrySet()) {
+                if (!entry.getKey().equals(keys[i]) || entry.getValue() != intervals[i]) {
+                    return false;
+                }
+                i++;
+            }
+            return true;
+        }
+
+        /**
+         * @return the key of the first interval the date falls in, or null if there is none
+         */
+        private String keyOf(String date) {
+            if (byDay && PeriodCalendar.isIsoDate(date)) {
+                int day = PeriodCalendar.getInstance().epochDay(date);
+                for (int i = 0; i < starts.length; i++) {
+                    if (day >= starts[i] && day < ends[i]) {
+                        return keys[i];
+                    }
+                }
+                return null;
+            }
+            for (int i = 0; i < intervals.length; i++) {
+                if (isDateInTheInterval(date, intervals[i])) {
+                    return keys[i];
+                }
+            }
+            return null;
+        }
+    }
 }
@@ -3,7 +3,6 @@ package org.openmrs.module.ugandaemrreports.common;
 import org.joda.time.DateTimeZone;
 import org.joda.time.LocalDate;
 import org.joda.time.format.DateTimeFormat;
-import org.openmrs.module.reporting.common.DateUtil;
 
 import java.util.Date;
 
@@ -12,12 +11,16 @@ import java.util.Date;
 public class StubDate {
 
     public static LocalDate dateOf(String date) {
+        if (PeriodCalendar.isIsoDate(date)) {
+            PeriodCalendar calendar = PeriodCalendar.getInstance();
+            return calendar.toLocalDate(calendar.epochDay(date));
+        }
         return DateTimeFormat.forPattern("yyyy-MM-dd").withZone(DateTimeZone.UTC).parseDateTime(date).toLocalDate();
     }
 
     public static LocalDate dateOf(Date date) {
-        String d = DateUtil.formatDate(date, "yyyy-MM-dd");
-        return dateOf(d);
+        PeriodCalendar calendar = PeriodCalendar.getInstance();
+        return calendar.toLocalDate(calendar.epochDay(date));
     }
 
 }
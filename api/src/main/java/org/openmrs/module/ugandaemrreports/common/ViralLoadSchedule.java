@@ -0,0 +1,234 @@
+package org.openmrs.module.ugandaemrreports.common;
+
+import org.joda.time.LocalDate;
+import org.joda.time.Years;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * When a patient on ART is next due for a viral load test, worked out by {@link #schedule()} from the guideline
+ * rules the due and overdue for viral load lists follow:
+ * <ul>
+ * <li>the first test 6 months after ART start</li>
+ * <li>then every 12 months, or every 6 months for children (14 years and below)</li>
+ * <li>every 6 months while pregnant or breastfeeding, i.e. when the last test was taken during a pregnancy</li>
+ * <li>3 months after a non suppressed result (1000 copies and above), for the repeat test after IAC</li>
+ * <li>at the first visit a patient is pregnant after the last test, e.g. the first ANC visit</li>
+ * </ul>
+ * The earliest date given by the rules that apply is the due date.
+ */
+public class ViralLoadSchedule {
+
+    public static final double NON_SUPPRESSED_COPIES = 1000;
+
+    public static final int CHILD_MAX_AGE = 14;
+
+    public enum Reason {
+        FIRST, ROUTINE, CHILD, PREGNANT, NON_SUPPRESSED
+    }
+
+    private final Integer patientId;
+
+    private Date birthdate;
+
+    private Date artStartDate;
+
+    private Date lastViralLoadDate;
+
+    private Double lastViralLoadCopies;
+
+    private Date pregnancyDate;
+
+    private Date exitDate;
+
+    private Date nextDueDate;
+
+    private Reason reason;
+
+    private final List<Date> pregnantOn = new ArrayList<Date>();
+
+    public ViralLoadSchedule(Integer patientId) {
+        this.patientId = patientId;
+    }
+
+    public Integer getPatientId() {
+        return patientId;
+    }
+
+    public Date getBirthdate() {
+        return birthdate;
+    }
+
+    public void setBirthdate(Date birthdate) {
+        this.birthdate = birthdate;
+    }
+
+    public Date getArtStartDate() {
+        return artStartDate;
+    }
+
+    public void setArtStartDate(Date artStartDate) {
+        this.artStartDate = artStartDate;
+    }
+
+    public Date getLastViralLoadDate() {
+        return lastViralLoadDate;
+    }
+
+    public void setLastViralLoadDate(Date lastViralLoadDate) {
+        this.lastViralLoadDate = lastViralLoadDate;
+    }
+
+    public Double getLastViralLoadCopies() {
+        return lastViralLoadCopies;
+    }
+
+    public void setLastViralLoadCopies(Double lastViralLoadCopies) {
+        this.lastViralLoadCopies = lastViralLoadCopies;
+    }
+
+    public void setLastViralLoad(ViralLoadTest test) {
+        lastViralLoadDate = test != null ? test.getDate() : null;
+        lastViralLoadCopies = test != null ? test.getValueNumeric() : null;
+    }
+
+    /**
+     * @return the first visit the patient was pregnant after the last test (or after ART start if there is none)
+     */
+    public Date getPregnancyDate() {
+        return pregnancyDate;
+    }
+
+    public void setPregnancyDate(Date pregnancyDate) {
+        this.pregnancyDate = pregnancyDate;
+    }
+
+    /**
+     * Adds a visit at which the patient was pregnant
+     */
+    public void addPregnantOn(Date date) {
+        pregnantOn.add(date);
+    }
+
+    /**
+     * @return the date the patient died or was transferred out, whichever is earlier
+     */
+    public Date getExitDate() {
+        return exitDate;
+    }
+
+    public void setExitDate(Date exitDate) {
+        this.exitDate = exitDate;
+    }
+
+    /**
+     * Sets the exit date to the day of the given date if it is earlier than the one set
+     */
+    public void addExitDate(Date date) {
+        if (date != null && (exitDate == null || date.before(exitDate))) {
+            exitDate = new LocalDate(date).toDate();
+        }
+    }
+
+    public Date getNextDueDate() {
+        return nextDueDate;
+    }
+
+    public void setNextDueDate(Date nextDueDate) {
+        this.nextDueDate = nextDueDate;
+    }
+
+    public Reason getReason() {
+        return reason;
+    }
+
+    public void setReason(Reason reason) {
+        this.reason = reason;
+    }
+
+    /**
+     * @return true if the patient is due for a test on or before dueBy and had not died or been transferred out by
+     * activeOn
+     */
+    public boolean isDueBy(Date dueBy, Date activeOn) {
+        return isDueBetween(null, dueBy, activeOn);
+    }
+
+    /**
+     * @param dueFrom the first due date included, or null for none
+     * @return true if the patient is due for a test from dueFrom to dueBy and had not died or been transferred out by
+     * activeOn
+     */
+    public boolean isDueBetween(Date dueFrom, Date dueBy, Date activeOn) {
+        return nextDueDate != null && (dueFrom == null || !nextDueDate.before(dueFrom)) && !nextDueDate.after(dueBy)
+                && (exitDate == null || exitDate.after(activeOn));
+    }
+
+    /**
+     * Works out the next due date and its reason from the ART start date, the last test, the birth date and the
+     * visits the patient was pregnant at; patients who have not started ART are not due
+     */
+    public void schedule() {
+        schedule(null);
+    }
+
+    /**
+     * Works out the next due date as it was on the given date, e.g. the end of a past period: ART started and visits
+     * the patient was pregnant at after it are left out. The last test set must be the last one on or before it.
+     *
+     * @param asOf the date, or null to take everything into account
+     */
+    public void schedule(Date asOf) {
+        nextDueDate = null;
+        reason = null;
+        pregnancyDate = null;
+        if (artStartDate == null || (asOf != null && artStartDate.after(asOf))) {
+            return;
+        }
+        LocalDate artStart = new LocalDate(artStartDate);
+        // tests before ART start do not count
+        LocalDate last = lastViralLoadDate != null && !new LocalDate(lastViralLoadDate).isBefore(artStart) ?
+                new LocalDate(lastViralLoadDate) : null;
+        LocalDate since = last != null ? last : artStart;
+
+        LocalDate pregnant = null;
+        boolean testedWhilePregnant = false;
+        for (Date date : pregnantOn) {
+            if (asOf != null && date.after(asOf)) {
+                continue;
+            }
+            LocalDate day = new LocalDate(date);
+            if (day.isAfter(since) && (pregnant == null || day.isBefore(pregnant))) {
+                pregnant = day;
+            }
+            if (last != null && !day.isAfter(last) && day.isAfter(last.minusMonths(6))) {
+                testedWhilePregnant = true;
+            }
+        }
+        pregnancyDate = pregnant != null ? pregnant.toDate() : null;
+
+        if (last == null) {
+            due(artStart.plusMonths(6), Reason.FIRST);
+        } else if (lastViralLoadCopies != null && lastViralLoadCopies >= NON_SUPPRESSED_COPIES) {
+            due(last.plusMonths(3), Reason.NON_SUPPRESSED);
+        } else if (testedWhilePregnant) {
+            due(last.plusMonths(6), Reason.PREGNANT);
+        } else if (birthdate != null && Years.yearsBetween(new LocalDate(birthdate), last.plusMonths(6)).getYears() <= CHILD_MAX_AGE) {
+            due(last.plusMonths(6), Reason.CHILD);
+        } else {
+            due(last.plusMonths(12), Reason.ROUTINE);
+        }
+        if (pregnant != null) {
+            due(pregnant, Reason.PREGNANT);
+        }
+    }
+
+    private void due(LocalDate date, Reason why) {
+        if (nextDueDate == null || date.toDate().before(nextDueDate)) {
+            nextDueDate = date.toDate();
+            reason = why;
+        }
+    }
+}
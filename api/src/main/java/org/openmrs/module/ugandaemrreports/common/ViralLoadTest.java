@@ -0,0 +1,79 @@
+package org.openmrs.module.ugandaemrreports.common;
+
+import java.util.Date;
+
+/**
+ * A viral load test of a patient: the encounter it was recorded in, the date of the test (the viral load date, or
+ * the date of the copies obs when the encounter has no viral load date) and its numeric (copies) and coded results
+ */
+public class ViralLoadTest {
+
+    private final Integer encounterId;
+
+    private final Date date;
+
+    private final Double valueNumeric;
+
+    private final Integer valueCoded;
+
+    public ViralLoadTest(Integer encounterId, Date date, Double valueNumeric, Integer valueCoded) {
+        this.encounterId = encounterId;
+        this.date = date;
+        this.valueNumeric = valueNumeric;
+        this.valueCoded = valueCoded;
+    }
+
+    public Integer getEncounterId() {
+        return encounterId;
+    }
+
+    public Date getDate() {
+        return date;
+    }
+
+    public Double getValueNumeric() {
+        return valueNumeric;
+    }
+
+    public Integer getValueCoded() {
+        return valueCoded;
+    }
+
+    /**
+     * @return true if this test is later than the other one, tests on the same date being ordered by encounter
+     */
+    public boolean isAfter(ViralLoadTest other) {
+        int ret = date.compareTo(other.date);
+        if (ret == 0 && encounterId != null && other.encounterId != null) {
+            ret = encounterId.compareTo(other.encounterId);
+        }
+        return ret > 0;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ViralLoadTest)) {
+            return false;
+        }
+        ViralLoadTest other = (ViralLoadTest) o;
+        return equal(encounterId, other.encounterId) && date.getTime() == other.date.getTime()
+                && equal(valueNumeric, other.valueNumeric) && equal(valueCoded, other.valueCoded);
+    }
+
+    @Override
+    public int hashCode() {
+        return date.hashCode() * 31 + (encounterId != null ? encounterId : 0);
+    }
+
+    @Override
+    public String toString() {
+        return "encounter " + encounterId + " on " + date + ": " + valueNumeric + "/" + valueCoded;
+    }
+
+    private static boolean equal(Object a, Object b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
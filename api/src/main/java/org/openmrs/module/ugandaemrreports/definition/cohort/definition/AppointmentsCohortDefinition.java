@@ -0,0 +1,48 @@
+package org.openmrs.module.ugandaemrreports.definition.cohort.definition;
+
+import org.openmrs.EncounterType;
+import org.openmrs.module.reporting.cohort.definition.BaseCohortDefinition;
+import org.openmrs.module.reporting.definition.configuration.ConfigurationProperty;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Patients with a return visit scheduled from the start to the end date, from the appointment index. With encounter
+ * types, only the return visits given at encounters of those types are included.
+ */
+public class AppointmentsCohortDefinition extends BaseCohortDefinition {
+
+    @ConfigurationProperty
+    private Date startDate;
+
+    @ConfigurationProperty
+    private Date endDate;
+
+    @ConfigurationProperty
+    private List<EncounterType> encounterTypes;
+
+    public Date getStartDate() {
+        return startDate;
+    }
+
+    public void setStartDate(Date startDate) {
+        this.startDate = startDate;
+    }
+
+    public Date getEndDate() {
+        return endDate;
+    }
+
+    public void setEndDate(Date endDate) {
+        this.endDate = endDate;
+    }
+
+    public List<EncounterType> getEncounterTypes() {
+        return encounterTypes;
+    }
+
+    public void setEncounterTypes(List<EncounterType> encounterTypes) {
+        this.encounterTypes = encounterTypes;
+    }
+}
@@ -0,0 +1,48 @@
+package org.openmrs.module.ugandaemrreports.definition.cohort.definition;
+
+import org.openmrs.module.reporting.cohort.definition.BaseCohortDefinition;
+import org.openmrs.module.reporting.definition.configuration.ConfigurationProperty;
+
+import java.util.Date;
+
+/**
+ * Patients on ART due for a viral load test between the start and end date, and still active then, from the viral
+ * load schedule. With grace months, only the patients due more than that many months before the start date (or on
+ * or before that many months before the end date when there is no start date) are included, i.e. the overdue, who
+ * are never among the due of the same period.
+ */
+public class ViralLoadDueCohortDefinition extends BaseCohortDefinition {
+
+    @ConfigurationProperty(required = false)
+    private Date startDate;
+
+    @ConfigurationProperty
+    private Date endDate;
+
+    @ConfigurationProperty
+    private Integer graceMonths = 0;
+
+    public Date getStartDate() {
+        return startDate;
+    }
+
+    public void setStartDate(Date startDate) {
+        this.startDate = startDate;
+    }
+
+    public Date getEndDate() {
+        return endDate;
+    }
+
+    public void setEndDate(Date endDate) {
+        this.endDate = endDate;
+    }
+
+    public Integer getGraceMonths() {
+        return graceMonths;
+    }
+
+    public void setGraceMonths(Integer graceMonths) {
+        this.graceMonths = graceMonths;
+    }
+}
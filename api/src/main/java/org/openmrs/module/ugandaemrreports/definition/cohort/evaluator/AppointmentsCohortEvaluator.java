@@ -0,0 +1,52 @@
+package org.openmrs.module.ugandaemrreports.definition.cohort.evaluator;
+
+import org.openmrs.EncounterType;
+import org.openmrs.annotation.Handler;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.reporting.cohort.EvaluatedCohort;
+import org.openmrs.module.reporting.cohort.definition.CohortDefinition;
+import org.openmrs.module.reporting.cohort.definition.evaluator.CohortDefinitionEvaluator;
+import org.openmrs.module.reporting.evaluation.EvaluationContext;
+import org.openmrs.module.reporting.evaluation.EvaluationException;
+import org.openmrs.module.ugandaemrreports.api.UgandaEMRReportsService;
+import org.openmrs.module.ugandaemrreports.common.Appointment;
+import org.openmrs.module.ugandaemrreports.definition.cohort.definition.AppointmentsCohortDefinition;
+import org.openmrs.module.ugandaemrreports.evaluation.AppointmentIndex;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Reads the appointments scheduled during the period from the appointment index, see {@link AppointmentIndex}
+ */
+@Handler(supports = {AppointmentsCohortDefinition.class})
+public class AppointmentsCohortEvaluator implements CohortDefinitionEvaluator {
+
+    @Autowired
+    private AppointmentIndex appointmentIndex;
+
+    @Override
+    public EvaluatedCohort evaluate(CohortDefinition cohortDefinition, EvaluationContext context)
+            throws EvaluationException {
+        AppointmentsCohortDefinition cd = (AppointmentsCohortDefinition) cohortDefinition;
+        EvaluatedCohort ret = new EvaluatedCohort(cd, context);
+
+        Set<Integer> encounterTypeIds = null;
+        if (cd.getEncounterTypes() != null && !cd.getEncounterTypes().isEmpty()) {
+            encounterTypeIds = new HashSet<Integer>();
+            for (EncounterType type : cd.getEncounterTypes()) {
+                encounterTypeIds.add(type.getEncounterTypeId());
+            }
+        }
+
+        appointmentIndex.refreshIfDue();
+        for (Appointment appointment : Context.getService(UgandaEMRReportsService.class).getAppointments(context.getBaseCohort(),
+                cd.getStartDate(), cd.getEndDate())) {
+            if (encounterTypeIds == null || encounterTypeIds.contains(appointment.getEncounterTypeId())) {
+                ret.addMember(appointment.getPatientId());
+            }
+        }
+        return ret;
+    }
+}
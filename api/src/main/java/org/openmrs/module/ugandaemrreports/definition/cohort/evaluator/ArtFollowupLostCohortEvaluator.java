@@ -10,6 +10,7 @@ import org.openmrs.module.reporting.evaluation.EvaluationContext;
 import org.openmrs.module.reporting.evaluation.EvaluationException;
 import org.openmrs.module.reporting.evaluation.querybuilder.SqlQueryBuilder;
 import org.openmrs.module.reporting.evaluation.service.EvaluationService;
+import org.openmrs.module.ugandaemrreports.common.Enums;
 import org.openmrs.module.ugandaemrreports.common.StubDate;
 import org.openmrs.module.ugandaemrreports.definition.cohort.definition.ArtFollowupLostCohortDefinition;
 import org.openmrs.module.ugandaemrreports.metadata.HIVMetadata;
@@ -53,6 +54,24 @@ public class ArtFollowupLostCohortEvaluator implements CohortDefinitionEvaluator
             endDate = DateUtil.formatDate(dates.get(1), "yyyy-MM-dd");
         }
 
+        String query = getQuery(startDate, endDate, cd.getPeriodDifference(), cd.getPeriod(), cd.getLostToFollowup());
+
+        SqlQueryBuilder q = new SqlQueryBuilder(query);
+        List<Object[]> results = evaluationService.evaluateToList(q, context);
+
+        for (Object[] row : results) {
+            Integer pId = (Integer) row[0];
+            ret.addMember(pId);
+        }
+
+        return ret;
+    }
+
+    /**
+     * @return the query for the patients who started ART between the given dates and were lost (or missed an
+     * appointment) within the given period after starting
+     */
+    public static String getQuery(String startDate, String endDate, Integer periodDifference, Enums.Period period, boolean lostToFollowup) {
         String query = "SELECT\n" +
                 "  C.person_id\n" +
                 "FROM\n" +
@@ -71,7 +90,7 @@ public class ArtFollowupLostCohortEvaluator implements CohortDefinitionEvaluator
                 "        value_datetime\n" +
                 "      FROM obs\n" +
                 "      WHERE concept_id = 5096) B\n" +
-                String.format("       ON (B.person_id = A.person_id AND B.value_datetime <= DATE_ADD(A.value_datetime, INTERVAL %s %s))\n", cd.getPeriodDifference(), cd.getPeriod()) +
+                String.format("       ON (B.person_id = A.person_id AND B.value_datetime <= DATE_ADD(A.value_datetime, INTERVAL %s %s))\n", periodDifference, period) +
                 "   GROUP BY A.person_id) C INNER JOIN (SELECT\n" +
                 "                                         D.person_id,\n" +
                 "                                         MAX(E.encounter_datetime) AS max_encounter\n" +
@@ -89,23 +108,12 @@ public class ArtFollowupLostCohortEvaluator implements CohortDefinitionEvaluator
                 "                                           ON (E.patient_id = D.person_id AND\n" +
                 "                                               E.encounter_datetime <= DATE_ADD(D.value_datetime, INTERVAL 1 QUARTER))\n" +
                 "                                       GROUP BY D.person_id) F\n";
-        if (cd.getLostToFollowup()) {
+        if (lostToFollowup) {
             query = query + "    ON (F.person_id = C.person_id AND datediff(F.max_encounter, C.dt) >= 90)";
         } else {
             query = query + "    ON (F.person_id = C.person_id AND datediff(F.max_encounter, C.dt) BETWEEN 7 AND 89 )";
 
         }
-
-        SqlQueryBuilder q = new SqlQueryBuilder(query);
-        List<Object[]> results = evaluationService.evaluateToList(q, context);
-
-        for (Object[] row : results) {
-            Integer pId = (Integer) row[0];
-            ret.addMember(pId);
-        }
-
-        return ret;
+        return query;
     }
-
-
 }
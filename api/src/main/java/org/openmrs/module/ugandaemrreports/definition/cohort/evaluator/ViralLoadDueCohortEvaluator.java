@@ -0,0 +1,54 @@
+package org.openmrs.module.ugandaemrreports.definition.cohort.evaluator;
+
+import org.openmrs.annotation.Handler;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.reporting.cohort.EvaluatedCohort;
+import org.openmrs.module.reporting.cohort.definition.CohortDefinition;
+import org.openmrs.module.reporting.cohort.definition.evaluator.CohortDefinitionEvaluator;
+import org.openmrs.module.reporting.common.DateUtil;
+import org.openmrs.module.reporting.common.DurationUnit;
+import org.openmrs.module.reporting.evaluation.EvaluationContext;
+import org.openmrs.module.reporting.evaluation.EvaluationException;
+import org.openmrs.module.ugandaemrreports.api.UgandaEMRReportsService;
+import org.openmrs.module.ugandaemrreports.definition.cohort.definition.ViralLoadDueCohortDefinition;
+import org.openmrs.module.ugandaemrreports.evaluation.ViralLoadIndex;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.Date;
+
+/**
+ * Looks the patients up in the viral load schedule, see {@link ViralLoadIndex}
+ */
+@Handler(supports = {ViralLoadDueCohortDefinition.class})
+public class ViralLoadDueCohortEvaluator implements CohortDefinitionEvaluator {
+
+    @Autowired
+    private ViralLoadIndex viralLoadIndex;
+
+    @Override
+    public EvaluatedCohort evaluate(CohortDefinition cohortDefinition, EvaluationContext context)
+            throws EvaluationException {
+        ViralLoadDueCohortDefinition cd = (ViralLoadDueCohortDefinition) cohortDefinition;
+
+        Date startDate = cd.getStartDate() != null ? DateUtil.getStartOfDay(cd.getStartDate()) : null;
+        Date endDate = DateUtil.getStartOfDay(cd.getEndDate());
+        int graceMonths = cd.getGraceMonths() != null ? cd.getGraceMonths() : 0;
+        Date dueFrom;
+        Date dueBy;
+        if (graceMonths == 0) {
+            dueFrom = startDate;
+            dueBy = endDate;
+        } else if (startDate != null) {
+            // overdue: due before the period by more than the grace months
+            dueFrom = null;
+            dueBy = DateUtil.adjustDate(DateUtil.adjustDate(startDate, -graceMonths, DurationUnit.MONTHS), -1, DurationUnit.DAYS);
+        } else {
+            dueFrom = null;
+            dueBy = DateUtil.adjustDate(endDate, -graceMonths, DurationUnit.MONTHS);
+        }
+
+        viralLoadIndex.refreshIfDue();
+        return new EvaluatedCohort(Context.getService(UgandaEMRReportsService.class)
+                .getPatientsDueForViralLoad(context.getBaseCohort(), dueFrom, dueBy, endDate), cd, context);
+    }
+}
@@ -33,6 +33,13 @@ public class FUStatusPatientDataDefinition extends BaseDataDefinition implements
     @ConfigurationProperty
     private int periodToAdd = 0;
 
+    /**
+     * The number of periods shown by the register the column is part of, all of which are worked out together (0 for
+     * the default of the period, see FollowUpMatrix)
+     */
+    @ConfigurationProperty
+    private int numberOfPeriods = 0;
+
     public Date getStartDate() {
         return startDate;
     }
@@ -56,4 +63,12 @@ public class FUStatusPatientDataDefinition extends BaseDataDefinition implements
     public void setPeriodToAdd(int periodToAdd) {
         this.periodToAdd = periodToAdd;
     }
+
+    public int getNumberOfPeriods() {
+        return numberOfPeriods;
+    }
+
+    public void setNumberOfPeriods(int numberOfPeriods) {
+        this.numberOfPeriods = numberOfPeriods;
+    }
 }
@@ -36,6 +36,13 @@ public class ObsForPersonInPeriodDataDefinition extends BaseDataDefinition imple
     @ConfigurationProperty
     private int periodToAdd = 0;
 
+    /**
+     * The number of periods shown by the register the column is part of, all of which are worked out together (0 for
+     * the default of the period, see FollowUpMatrix)
+     */
+    @ConfigurationProperty
+    private int numberOfPeriods = 0;
+
 
     public ObsForPersonInPeriodDataDefinition() {
         super();
@@ -105,4 +112,12 @@ public class ObsForPersonInPeriodDataDefinition extends BaseDataDefinition imple
     public void setPeriodToAdd(int periodToAdd) {
         this.periodToAdd = periodToAdd;
     }
+
+    public int getNumberOfPeriods() {
+        return numberOfPeriods;
+    }
+
+    public void setNumberOfPeriods(int numberOfPeriods) {
+        this.numberOfPeriods = numberOfPeriods;
+    }
 }
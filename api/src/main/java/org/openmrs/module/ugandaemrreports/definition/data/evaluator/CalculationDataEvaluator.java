@@ -24,10 +24,10 @@ import org.openmrs.calculation.result.CalculationResult;
 import org.openmrs.calculation.result.CalculationResultMap;
 import org.openmrs.module.reporting.data.patient.EvaluatedPatientData;
 import org.openmrs.module.reporting.data.patient.definition.PatientDataDefinition;
-import org.openmrs.module.reporting.data.patient.evaluator.PatientDataEvaluator;
 import org.openmrs.module.reporting.evaluation.EvaluationContext;
 import org.openmrs.module.reporting.evaluation.EvaluationException;
 import org.openmrs.module.ugandaemrreports.definition.data.definition.CalculationDataDefinition;
+import org.openmrs.module.ugandaemrreports.evaluation.BatchedPatientDataEvaluator;
 
 import java.util.Date;
 import java.util.Map;
@@ -36,12 +36,13 @@ import java.util.Map;
  * Evaluates a {@link org.openmrs.module.ugandaemrreports.definition.data.definition.CalculationDataDefinition} to produce a PatientData
  */
 @Handler(supports = CalculationDataDefinition.class, order = 50)
-public class CalculationDataEvaluator implements PatientDataEvaluator {
+public class CalculationDataEvaluator extends BatchedPatientDataEvaluator {
 
     /**
-     * @see PatientDataEvaluator#evaluate(org.openmrs.module.reporting.data.patient.definition.PatientDataDefinition, org.openmrs.module.reporting.evaluation.EvaluationContext)
+     * @see BatchedPatientDataEvaluator#evaluateBatch(org.openmrs.module.reporting.data.patient.definition.PatientDataDefinition, org.openmrs.module.reporting.evaluation.EvaluationContext)
      */
-    public EvaluatedPatientData evaluate(PatientDataDefinition definition, EvaluationContext context) throws EvaluationException {
+    @Override
+    protected EvaluatedPatientData evaluateBatch(PatientDataDefinition definition, EvaluationContext context) throws EvaluationException {
 
         CalculationDataDefinition def = (CalculationDataDefinition) definition;
         EvaluatedPatientData c = new EvaluatedPatientData(def, context);
@@ -75,4 +76,12 @@ public class CalculationDataEvaluator implements PatientDataEvaluator {
 
         return c;
     }
+
+    /**
+     * Calculation results can hold obs and encounters, so the session is kept between batches
+     */
+    @Override
+    protected boolean isSessionClearedBetweenBatches(PatientDataDefinition definition) {
+        return false;
+    }
 }
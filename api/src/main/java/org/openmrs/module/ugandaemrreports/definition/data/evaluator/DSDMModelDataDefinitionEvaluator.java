@@ -6,42 +6,27 @@ import org.openmrs.annotation.Handler;
 import org.openmrs.module.reporting.data.patient.EvaluatedPatientData;
 import org.openmrs.module.reporting.data.patient.definition.PatientDataDefinition;
 import org.openmrs.module.reporting.data.patient.evaluator.PatientDataEvaluator;
-import org.openmrs.module.reporting.data.patient.evaluator.SqlPatientDataEvaluator;
-import org.openmrs.module.reporting.data.patient.service.PatientDataService;
 import org.openmrs.module.reporting.evaluation.EvaluationContext;
 import org.openmrs.module.reporting.evaluation.EvaluationException;
-import org.openmrs.module.reporting.evaluation.querybuilder.SqlQueryBuilder;
-import org.openmrs.module.reporting.evaluation.service.EvaluationService;
 import org.openmrs.module.ugandaemrreports.common.DSDMModel;
+import org.openmrs.module.ugandaemrreports.common.DSDMSnapshot;
 import org.openmrs.module.ugandaemrreports.definition.data.definition.DSDMModelDataDefinition;
 import org.openmrs.module.ugandaemrreports.definition.data.definition.FUStatusPatientDataDefinition;
-import org.openmrs.module.ugandaemrreports.library.HIVPatientDataLibrary;
-import org.openmrs.module.ugandaemrreports.metadata.HIVMetadata;
+import org.openmrs.module.ugandaemrreports.evaluation.DSDMSnapshots;
 import org.springframework.beans.factory.annotation.Autowired;
 
 import java.util.Date;
-import java.util.List;
 
 /**
+ * The current DSDM model of each patient and the date they were enrolled into it, from the DSDM snapshot of the
+ * report period (the startDate and endDate parameters), so that it is shared with the DSDM cohorts of the report
  */
 @Handler(supports = DSDMModelDataDefinition.class, order = 50)
 public class DSDMModelDataDefinitionEvaluator implements PatientDataEvaluator {
     protected static final Log log = LogFactory.getLog(FUStatusPatientDataDefinition.class);
 
     @Autowired
-    private HIVPatientDataLibrary hivLibrary;
-
-    @Autowired
-    private PatientDataService patientDataService;
-
-    @Autowired
-    private EvaluationService evaluationService;
-
-    @Autowired
-    private SqlPatientDataEvaluator sqlPatientDataEvaluator;
-
-    @Autowired
-    private HIVMetadata hivMetadata;
+    private DSDMSnapshots dsdmSnapshots;
 
     @Override
     public EvaluatedPatientData evaluate(PatientDataDefinition definition, EvaluationContext context) throws EvaluationException {
@@ -49,34 +34,21 @@ public class DSDMModelDataDefinitionEvaluator implements PatientDataEvaluator {
 
         EvaluatedPatientData c = new EvaluatedPatientData(def, context);
 
-
-        String query = String.format("Select pg.patient_id, p.name,pg.date_enrolled \n" +
-                "from patient_program as pg\n" +
-                "Inner join program p on p.program_id=pg.program_id\n" +
-                "where p.uuid IN ('de5d54ae-c304-11e8-9ad0-529269fb1459','de5d5b34-c304-11e8-9ad0-529269fb1459','de5d5896-c304-11e8-9ad0-529269fb1459',\n" +
-                "'de5d5da0-c304-11e8-9ad0-529269fb1459','de5d6034-c304-11e8-9ad0-529269fb1459')");
-
-
-        SqlQueryBuilder q = new SqlQueryBuilder(query);
-
-        List<Object[]> results = evaluationService.evaluateToList(q, context);
-
-
-        for (Object[] row : results) {
-            Integer patientId = Integer.valueOf(String.valueOf(row[0]));
-            String progId = String.valueOf(row[1]);
-            Date obs_datetime = (Date) (row[2]) ;
-            if(obs_datetime!=null)
-            {
-                c.addData(patientId, new DSDMModel(obs_datetime,progId));
-            }
-            else
-            {
-                c.addData(patientId,null);
+        DSDMSnapshot snapshot = dsdmSnapshots.getSnapshot(getDate(context, "startDate"), getDate(context, "endDate"), context);
+        Iterable<Integer> patientIds = context.getBaseCohort() != null ? context.getBaseCohort().getMemberIds() : snapshot.getPatientsWithModel();
+        for (Integer patientId : patientIds) {
+            DSDMModel model = snapshot.getModel(patientId);
+            if (model != null) {
+                c.addData(patientId, model);
             }
         }
 
         return c;
     }
 
+    private Date getDate(EvaluationContext context, String parameter) {
+        Object value = context.getParameterValue(parameter);
+        return value instanceof Date ? (Date) value : null;
+    }
+
 }
@@ -3,54 +3,42 @@ package org.openmrs.module.ugandaemrreports.definition.data.evaluator;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.joda.time.LocalDate;
-import org.openmrs.Obs;
+import org.openmrs.Encounter;
 import org.openmrs.annotation.Handler;
 import org.openmrs.module.reporting.common.DateUtil;
 import org.openmrs.module.reporting.data.patient.EvaluatedPatientData;
 import org.openmrs.module.reporting.data.patient.definition.PatientDataDefinition;
-import org.openmrs.module.reporting.data.patient.definition.SqlPatientDataDefinition;
 import org.openmrs.module.reporting.data.patient.evaluator.PatientDataEvaluator;
-import org.openmrs.module.reporting.data.patient.evaluator.SqlPatientDataEvaluator;
-import org.openmrs.module.reporting.data.patient.service.PatientDataService;
 import org.openmrs.module.reporting.evaluation.EvaluationContext;
 import org.openmrs.module.reporting.evaluation.EvaluationException;
 import org.openmrs.module.reporting.evaluation.querybuilder.HqlQueryBuilder;
 import org.openmrs.module.reporting.evaluation.service.EvaluationService;
 import org.openmrs.module.ugandaemrreports.common.Enums;
-import org.openmrs.module.ugandaemrreports.common.PatientData;
+import org.openmrs.module.ugandaemrreports.common.FollowUpMatrix;
+import org.openmrs.module.ugandaemrreports.common.FollowUpStatuses;
 import org.openmrs.module.ugandaemrreports.common.Periods;
 import org.openmrs.module.ugandaemrreports.common.StubDate;
 import org.openmrs.module.ugandaemrreports.definition.data.definition.FUStatusPatientDataDefinition;
-import org.openmrs.module.ugandaemrreports.library.HIVPatientDataLibrary;
-import org.openmrs.module.ugandaemrreports.library.PatientDatasets;
-import org.openmrs.module.ugandaemrreports.metadata.HIVMetadata;
+import org.openmrs.module.ugandaemrreports.evaluation.FollowUpMatrices;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import java.util.Collection;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 /**
+ * Monthly and quarterly statuses are read from the {@link FollowUpMatrix} of the cohort, shared by every FU status
+ * column of the register, other periods are read into {@link FollowUpStatuses} from typed queries of the cohort
  */
 @Handler(supports = FUStatusPatientDataDefinition.class, order = 50)
 public class FUStatusPatientDataDefinitionEvaluator implements PatientDataEvaluator {
     protected static final Log log = LogFactory.getLog(FUStatusPatientDataDefinition.class);
 
-    @Autowired
-    private HIVPatientDataLibrary hivLibrary;
-
-    @Autowired
-    private PatientDataService patientDataService;
-
     @Autowired
     private EvaluationService evaluationService;
 
     @Autowired
-    private SqlPatientDataEvaluator sqlPatientDataEvaluator;
-
-    @Autowired
-    private HIVMetadata hivMetadata;
+    private FollowUpMatrices followUpMatrices;
 
     @Override
     public EvaluatedPatientData evaluate(PatientDataDefinition definition, EvaluationContext context) throws EvaluationException {
@@ -64,101 +52,60 @@ public class FUStatusPatientDataDefinitionEvaluator implements PatientDataEvalua
 
         Enums.Period period = def.getPeriod();
 
-        Map<Integer, Date> m = new HashMap<Integer, Date>();
+        if (period == Enums.Period.MONTHLY || period == Enums.Period.QUARTERLY) {
+            FollowUpMatrix matrix = followUpMatrices.getMatrix(def.getStartDate(), period, def.getPeriodToAdd(),
+                    def.getNumberOfPeriods(), context);
+            for (Integer pId : matrix.getPatientIds()) {
+                c.addData(pId, matrix.getStatus(pId, def.getPeriodToAdd()));
+            }
+            return c;
+        }
 
         LocalDate workingDate = StubDate.dateOf(DateUtil.formatDate(def.getStartDate(), "yyyy-MM-dd"));
 
         List<LocalDate> periods = Periods.getDatesDuringPeriods(workingDate, def.getPeriodToAdd(), period);
 
-        LocalDate localStartDate = periods.get(0);
-        LocalDate localEndDate = periods.get(1);
-
-        HqlQueryBuilder artStartQuery = new HqlQueryBuilder();
-        artStartQuery.select("o.personId", "MIN(o.valueDatetime)");
-        artStartQuery.from(Obs.class, "o");
-        artStartQuery.wherePersonIn("o.personId", context);
-        artStartQuery.whereIn("o.concept", hivMetadata.getConceptList("99161"));
-        artStartQuery.groupBy("o.personId");
-
-
-        if (period == Enums.Period.QUARTERLY) {
-            m = getPatientDateMap(artStartQuery, context);
+        FollowUpStatuses statuses = load(new FollowUpStatuses(period, periods.get(0).toDate(), periods.get(1).toDate(),
+                getPatientIds(context)), context);
+        for (int i = 0; i < statuses.size(); i++) {
+            c.addData(statuses.getPatientId(i), statuses.getStatus(i));
         }
+        return c;
+    }
 
-
-        SqlPatientDataDefinition sqlPatientDataDefinition = PatientDatasets.getFUStatus(localStartDate.toDate(), localEndDate.toDate());
-        EvaluatedPatientData data = sqlPatientDataEvaluator.evaluate(sqlPatientDataDefinition, context);
-
-
-        Map<Integer, Object> evaluatedData = data.getData();
-
-        for (Integer pId : evaluatedData.keySet()) {
-            Object o = evaluatedData.get(pId);
-            if (o != null) {
-                String dt = (String) o;
-
-                if (dt != null) {
-                    String[] splitString = dt.split(",");
-                    String s0 = splitString[0];
-                    String s1 = splitString[1];
-                    String s2 = splitString[2];
-                    String s3 = splitString[3];
-                    String s4 = splitString[4];
-                    String s5 = splitString[5];
-
-                    PatientData patientData = new PatientData();
-                    patientData.setPeriod(period);
-                    patientData.setPeriodDate(localEndDate.toDate());
-
-                    if (m.containsKey(pId)) {
-                        patientData.setArtStartDate(m.get(pId));
-                    }
-
-                    if (!s0.equalsIgnoreCase("-")) {
-                        Date encounterDate = DateUtil.parseDate(s0, "yyyy-MM-dd");
-                        patientData.setEncounterDate(encounterDate);
-                    }
-
-                    if (!s1.equalsIgnoreCase("-")) {
-                        Integer numberOfSinceLastVisit = Integer.valueOf(s1);
-                        patientData.setNumberOfSinceLastVisit(numberOfSinceLastVisit);
-                    }
-
-                    if (!s2.equalsIgnoreCase("-")) {
-                        Date deathDate = DateUtil.parseDate(s2, "yyyy-MM-dd");
-                        patientData.setDeathDate(deathDate);
-                    }
-
-                    if (!s3.equalsIgnoreCase("-")) {
-                        boolean transferredOut = true;
-                        patientData.setTransferredOut(transferredOut);
-                    }
-
-                    if (!s4.equalsIgnoreCase("-")) {
-                        Date nextVisitDate = DateUtil.parseDate(s4, "yyyy-MM-dd");
-                        patientData.setNextVisitDate(nextVisitDate);
-                    }
-
-                    if (!s5.equalsIgnoreCase("-")) {
-                        Date artStartDate = DateUtil.parseDate(s5, "yyyy-MM-dd");
-                        patientData.setArtStartDate(artStartDate);
-                    }
-
-                    c.addData(pId, patientData);
-                } else {
-                    c.addData(pId, new PatientData());
-                }
-            }
+    /**
+     * @return the patients of the base cohort, or every patient with an encounter if there is none
+     */
+    private Collection<Integer> getPatientIds(EvaluationContext context) {
+        if (context.getBaseCohort() != null) {
+            return context.getBaseCohort().getMemberIds();
         }
-        return c;
+        HqlQueryBuilder q = new HqlQueryBuilder();
+        q.select("distinct e.patient.patientId");
+        q.from(Encounter.class, "e");
+        return evaluationService.evaluateToList(q, Integer.class, context);
     }
 
-    protected Map<Integer, Date> getPatientDateMap(HqlQueryBuilder query, EvaluationContext context) {
-        Map<Integer, Date> m = new HashMap<Integer, Date>();
-        List<Object[]> queryResults = evaluationService.evaluateToList(query, context);
-        for (Object[] row : queryResults) {
-            m.put((Integer) row[0], (Date) row[1]);
+    /**
+     * Fills the statuses from one query of the cohort's last encounters in the period, and its follow up obs and
+     * death dates, each returning typed columns
+     */
+    private FollowUpStatuses load(FollowUpStatuses statuses, EvaluationContext context) {
+        if (statuses.size() == 0) {
+            return statuses;
         }
-        return m;
+
+        HqlQueryBuilder encounters = new HqlQueryBuilder();
+        encounters.select("e.patient.patientId", "max(e.encounterDatetime)");
+        encounters.from(Encounter.class, "e");
+        encounters.wherePersonIn("e.patient.patientId", context);
+        encounters.whereBetweenInclusive("e.encounterDatetime", statuses.getStartDate(), statuses.getEndDate());
+        encounters.groupBy("e.patient.patientId");
+        for (Object[] row : evaluationService.evaluateToList(encounters, context)) {
+            statuses.addEncounter((Integer) row[0], (Date) row[1]);
+        }
+
+        followUpMatrices.loadFollowUp(statuses, context);
+        return statuses;
     }
 }
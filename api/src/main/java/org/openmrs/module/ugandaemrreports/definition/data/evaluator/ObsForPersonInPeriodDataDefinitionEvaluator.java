@@ -8,16 +8,18 @@ import org.openmrs.Obs;
 import org.openmrs.annotation.Handler;
 //import org.openmrs.module.ugandaemrreports.common.Period;
 import org.openmrs.module.ugandaemrreports.common.Enums;
+import org.openmrs.module.ugandaemrreports.common.FollowUpMatrix;
 import org.openmrs.module.ugandaemrreports.common.Periods;
 import org.openmrs.module.ugandaemrreports.common.StubDate;
 import org.openmrs.module.ugandaemrreports.definition.data.definition.ObsForPersonInPeriodDataDefinition;
+import org.openmrs.module.ugandaemrreports.evaluation.BatchedPatientDataEvaluator;
+import org.openmrs.module.ugandaemrreports.evaluation.FollowUpMatrices;
 import org.openmrs.module.ugandaemrreports.metadata.HIVMetadata;
 import org.openmrs.module.reporting.common.DateUtil;
 import org.openmrs.module.reporting.common.ListMap;
 import org.openmrs.module.reporting.common.TimeQualifier;
 import org.openmrs.module.reporting.data.patient.EvaluatedPatientData;
 import org.openmrs.module.reporting.data.patient.definition.PatientDataDefinition;
-import org.openmrs.module.reporting.data.patient.evaluator.PatientDataEvaluator;
 import org.openmrs.module.reporting.evaluation.EvaluationContext;
 import org.openmrs.module.reporting.evaluation.EvaluationException;
 import org.openmrs.module.reporting.evaluation.querybuilder.HqlQueryBuilder;
@@ -27,9 +29,11 @@ import org.springframework.beans.factory.annotation.Autowired;
 import java.util.*;
 
 /**
+ * The obs of the first or last encounter in a month or quarter are read from the {@link FollowUpMatrix} of the
+ * cohort, shared by every follow up column of the register, other definitions are queried batch by batch
  */
 @Handler(supports = ObsForPersonInPeriodDataDefinition.class, order = 50)
-public class ObsForPersonInPeriodDataDefinitionEvaluator implements PatientDataEvaluator {
+public class ObsForPersonInPeriodDataDefinitionEvaluator extends BatchedPatientDataEvaluator {
     protected static final Log log = LogFactory.getLog(ObsForPersonInPeriodDataDefinitionEvaluator.class);
 
     @Autowired
@@ -38,9 +42,38 @@ public class ObsForPersonInPeriodDataDefinitionEvaluator implements PatientDataE
     @Autowired
     private HIVMetadata hivMetadata;
 
+    @Autowired
+    private FollowUpMatrices followUpMatrices;
+
     @Override
     public EvaluatedPatientData evaluate(PatientDataDefinition definition, EvaluationContext context) throws EvaluationException {
         ObsForPersonInPeriodDataDefinition def = (ObsForPersonInPeriodDataDefinition) definition;
+        if (!isReadFromMatrix(def) || (context.getBaseCohort() != null && context.getBaseCohort().isEmpty())) {
+            return super.evaluate(definition, context);
+        }
+
+        EvaluatedPatientData c = new EvaluatedPatientData(def, context);
+        FollowUpMatrix matrix = followUpMatrices.getMatrix(def.getStartDate(), def.getPeriod(), def.getPeriodToAdd(),
+                def.getNumberOfPeriods(), context);
+        Map<Integer, Obs> obs = followUpMatrices.getObs(matrix, def.getQuestion(), def.getAnswers(), def.getWhichEncounter(), context);
+        for (Integer pId : matrix.getPatientIds()) {
+            Integer encounterId = matrix.getEncounterId(pId, def.getPeriodToAdd(), def.getWhichEncounter());
+            if (encounterId != null && obs.containsKey(encounterId)) {
+                c.addData(pId, obs.get(encounterId));
+            }
+        }
+        return c;
+    }
+
+    private boolean isReadFromMatrix(ObsForPersonInPeriodDataDefinition def) {
+        return (def.getPeriod() == Enums.Period.MONTHLY || def.getPeriod() == Enums.Period.QUARTERLY)
+                && def.getQuestion() != null
+                && (def.getWhichEncounter() == TimeQualifier.FIRST || def.getWhichEncounter() == TimeQualifier.LAST);
+    }
+
+    @Override
+    protected EvaluatedPatientData evaluateBatch(PatientDataDefinition definition, EvaluationContext context) throws EvaluationException {
+        ObsForPersonInPeriodDataDefinition def = (ObsForPersonInPeriodDataDefinition) definition;
 
         EvaluatedPatientData c = new EvaluatedPatientData(def, context);
 
@@ -71,6 +104,7 @@ public class ObsForPersonInPeriodDataDefinitionEvaluator implements PatientDataE
         }
 
         encounterQuery.from(Encounter.class, "e");
+        encounterQuery.wherePersonIn("e.patient.patientId", context);
 
         if (period != null) {
             encounterQuery.groupBy("e.patient.patientId");
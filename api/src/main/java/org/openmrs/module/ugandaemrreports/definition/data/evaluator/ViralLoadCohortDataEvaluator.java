@@ -2,30 +2,47 @@ package org.openmrs.module.ugandaemrreports.definition.data.evaluator;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.joda.time.DateTime;
 import org.joda.time.LocalDate;
+import org.joda.time.Months;
+import org.openmrs.Obs;
 import org.openmrs.annotation.Handler;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.reporting.common.DateUtil;
 import org.openmrs.module.reporting.data.patient.EvaluatedPatientData;
 import org.openmrs.module.reporting.data.patient.definition.PatientDataDefinition;
 import org.openmrs.module.reporting.data.patient.evaluator.PatientDataEvaluator;
 import org.openmrs.module.reporting.evaluation.EvaluationContext;
 import org.openmrs.module.reporting.evaluation.EvaluationException;
-import org.openmrs.module.reporting.evaluation.querybuilder.SqlQueryBuilder;
+import org.openmrs.module.reporting.evaluation.querybuilder.HqlQueryBuilder;
 import org.openmrs.module.reporting.evaluation.service.EvaluationService;
+import org.openmrs.module.ugandaemrreports.api.UgandaEMRReportsService;
 import org.openmrs.module.ugandaemrreports.common.StubDate;
 import org.openmrs.module.ugandaemrreports.common.ViralLoad;
+import org.openmrs.module.ugandaemrreports.common.ViralLoadTest;
 import org.openmrs.module.ugandaemrreports.definition.data.definition.ViralLoadCohortDataDefinition;
+import org.openmrs.module.ugandaemrreports.evaluation.ViralLoadIndex;
 import org.springframework.beans.factory.annotation.Autowired;
 
-import java.util.List;
+import java.util.Map;
 
 
+/**
+ * Evaluates to the ART start date and the latest viral load on or before the end date of each patient, one entry per
+ * ART start date obs, reading the viral loads from the viral load index (see {@link ViralLoadIndex})
+ */
 @Handler(supports = {ViralLoadCohortDataDefinition.class})
 public class ViralLoadCohortDataEvaluator
         implements PatientDataEvaluator {
     protected static final Log log = LogFactory.getLog(ViralLoadCohortDataEvaluator.class);
+    private static final int ART_START_DATE = 99161;
+
     @Autowired
     private EvaluationService evaluationService;
 
+    @Autowired
+    private ViralLoadIndex viralLoadIndex;
+
     public EvaluatedPatientData evaluate(PatientDataDefinition definition, EvaluationContext context)
             throws EvaluationException {
         ViralLoadCohortDataDefinition def = (ViralLoadCohortDataDefinition) definition;
@@ -38,10 +55,45 @@ public class ViralLoadCohortDataEvaluator
 
         LocalDate endDate = StubDate.dateOf(def.getEndDate());
 
-        String endDateString = endDate.toString("yyyy-MM-dd");
+        viralLoadIndex.refreshIfDue();
+        Map<Integer, ViralLoadTest> viralLoads = Context.getService(UgandaEMRReportsService.class)
+                .getLatestViralLoads(context.getBaseCohort(), DateUtil.getEndOfDay(endDate.toDate()));
+        if (viralLoads.isEmpty()) {
+            return c;
+        }
+
+        HqlQueryBuilder q = new HqlQueryBuilder();
+        q.select("o.personId", "o.valueDatetime");
+        q.from(Obs.class, "o");
+        q.whereEqual("o.concept.conceptId", ART_START_DATE);
+        q.whereNotNull("o.valueDatetime");
+        q.wherePersonIn("o.personId", context);
+
+        DateTime reportDate = endDate.toDateTimeAtStartOfDay();
+        Integer i = 1;
+        for (Object[] row : evaluationService.evaluateToList(q, context)) {
+            Integer patientId = (Integer) row[0];
+            ViralLoadTest test = viralLoads.get(patientId);
+            if (test == null) {
+                continue;
+            }
+            DateTime artStartDate = new DateTime(row[1]);
+            Integer valueCoded = test.getValueCoded() != null ? test.getValueCoded() : -1;
+            Double valueNumeric = test.getValueNumeric() != null ? test.getValueNumeric() : -1.0;
+            c.addData(i, new ViralLoad(patientId, Months.monthsBetween(artStartDate, reportDate).getMonths(),
+                    Months.monthsBetween(artStartDate, new DateTime(test.getDate())).getMonths(), valueCoded, valueNumeric));
 
+            i = i + 1;
+        }
+        return c;
+    }
 
-        String query = "SELECT\n" +
+    /**
+     * @return the query for the ART start date and the latest viral load on or before the given date of each patient,
+     * as evaluated before the viral load index, e.g. to compare the two
+     */
+    public static String getQuery(String endDateString) {
+        return "SELECT\n" +
                 "  C.person_id,\n" +
                 String.format("  TIMESTAMPDIFF(MONTH, C.value_datetime, '%s')             AS months_btn_art_and_report,\n", endDateString) +
                 "  TIMESTAMPDIFF(MONTH, C.value_datetime, B.value_datetime) AS months_btn_art_and_viral,\n" +
@@ -88,23 +140,5 @@ public class ViralLoadCohortDataEvaluator
                 "                           vln.voided = 0)\n" +
                 "   GROUP BY A.person_id) B\n" +
                 "    ON (B.person_id = C.person_id)";
-
-
-        SqlQueryBuilder q = new SqlQueryBuilder();
-        q.append(query);
-
-        List<Object[]> results = this.evaluationService.evaluateToList(q, context);
-        Integer i = 1;
-        for (Object[] row : results) {
-            Integer patientId = Integer.valueOf(String.valueOf(row[0]));
-            Integer monthsBetweenReportDateAndArt = Integer.valueOf(String.valueOf(row[1]));
-            Integer monthsBetweenArtAndViralLoad = Integer.valueOf(String.valueOf(row[2]));
-            Integer valueCoded = Integer.valueOf(String.valueOf(row[3]));
-            Double valueNumeric = Double.valueOf(String.valueOf(row[4]));
-            c.addData(i, new ViralLoad(patientId, monthsBetweenReportDateAndArt, monthsBetweenArtAndViralLoad, valueCoded, valueNumeric));
-
-            i = i + 1;
-        }
-        return c;
     }
-}
\ No newline at end of file
+}
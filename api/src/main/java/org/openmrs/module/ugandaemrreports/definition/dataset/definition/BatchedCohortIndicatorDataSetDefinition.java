@@ -0,0 +1,17 @@
+package org.openmrs.module.ugandaemrreports.definition.dataset.definition;
+
+import org.openmrs.module.reporting.dataset.definition.CohortIndicatorDataSetDefinition;
+
+/**
+ * A cohort indicator data set whose cells are counted together: each distinct cohort behind its indicators is
+ * evaluated once and every cell is worked out from it by intersecting the dimension option cohorts in memory.
+ * Columns are added exactly as on a {@link CohortIndicatorDataSetDefinition}.
+ */
+public class BatchedCohortIndicatorDataSetDefinition extends CohortIndicatorDataSetDefinition {
+
+    public static final long serialVersionUID = 1L;
+
+    public BatchedCohortIndicatorDataSetDefinition() {
+        super();
+    }
+}
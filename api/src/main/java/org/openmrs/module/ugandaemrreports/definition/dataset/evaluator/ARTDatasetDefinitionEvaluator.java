@@ -9,13 +9,13 @@ import org.openmrs.annotation.Handler;
 import org.openmrs.module.reporting.common.DateUtil;
 import org.openmrs.module.reporting.dataset.DataSet;
 import org.openmrs.module.reporting.dataset.DataSetRow;
-import org.openmrs.module.reporting.dataset.SimpleDataSet;
 import org.openmrs.module.reporting.dataset.definition.DataSetDefinition;
 import org.openmrs.module.reporting.dataset.definition.evaluator.DataSetEvaluator;
 import org.openmrs.module.reporting.evaluation.EvaluationContext;
 import org.openmrs.module.reporting.evaluation.EvaluationException;
 import org.openmrs.module.ugandaemrreports.common.*;
 import org.openmrs.module.ugandaemrreports.definition.dataset.definition.ARTDatasetDefinition;
+import org.openmrs.module.ugandaemrreports.evaluation.CancellationToken;
 import org.openmrs.module.ugandaemrreports.metadata.HIVMetadata;
 import org.springframework.beans.factory.annotation.Autowired;
 
@@ -35,7 +35,7 @@ public class ARTDatasetDefinitionEvaluator implements DataSetEvaluator {
 
     @Override
     public DataSet evaluate(DataSetDefinition dataSetDefinition, EvaluationContext context) throws EvaluationException {
-        SimpleDataSet dataSet = new SimpleDataSet(dataSetDefinition, context);
+        ColumnarDataSet dataSet = new ColumnarDataSet(dataSetDefinition, context);
         ARTDatasetDefinition definition = (ARTDatasetDefinition) dataSetDefinition;
 
         Integer currentMonth = Integer.valueOf(getObsPeriod(new Date(), Enums.Period.MONTHLY));
@@ -245,8 +245,10 @@ public class ARTDatasetDefinitionEvaluator implements DataSetEvaluator {
 
             PatientDataHelper pdh = new PatientDataHelper();
 
+            CancellationToken token = CancellationToken.of(context);
             for (Map.Entry<Integer, Date> patient : entries) {
-                DataSetRow row = new DataSetRow();
+                token.check();
+                DataSetRow row = dataSet.newRow();
 
                 Integer key = patient.getKey();
 
@@ -477,7 +479,6 @@ public class ARTDatasetDefinitionEvaluator implements DataSetEvaluator {
                     }
 
                 }
-                dataSet.addRow(row);
             }
         } catch (SQLException | ClassNotFoundException e) {
             e.printStackTrace();
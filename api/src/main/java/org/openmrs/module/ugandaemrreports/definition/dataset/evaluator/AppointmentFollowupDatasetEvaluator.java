@@ -1,5 +1,6 @@
 package org.openmrs.module.ugandaemrreports.definition.dataset.evaluator;
 
+import org.openmrs.Cohort;
 import org.openmrs.annotation.Handler;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.reporting.common.DateUtil;
@@ -14,13 +15,17 @@ import org.openmrs.module.reporting.evaluation.EvaluationContext;
 import org.openmrs.module.reporting.evaluation.EvaluationException;
 import org.openmrs.module.reporting.evaluation.querybuilder.SqlQueryBuilder;
 import org.openmrs.module.reporting.evaluation.service.EvaluationService;
+import org.openmrs.module.ugandaemrreports.api.UgandaEMRReportsService;
+import org.openmrs.module.ugandaemrreports.common.Appointment;
 import org.openmrs.module.ugandaemrreports.common.PatientDataHelper;
 import org.openmrs.module.ugandaemrreports.definition.data.definition.EncounterObsDataDefinition;
 import org.openmrs.module.ugandaemrreports.definition.dataset.definition.AppointmentFollowupDatasetDefinition;
+import org.openmrs.module.ugandaemrreports.evaluation.AppointmentIndex;
 import org.openmrs.module.ugandaemrreports.reporting.metadata.Dictionary;
 import org.openmrs.module.ugandaemrreports.reporting.metadata.Metadata;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
@@ -35,6 +40,9 @@ public class AppointmentFollowupDatasetEvaluator implements DataSetEvaluator {
     @Autowired
     private EvaluationService evaluationService;
 
+    @Autowired
+    private AppointmentIndex appointmentIndex;
+
     @Override
     public DataSet evaluate(DataSetDefinition dataSetDefinition, EvaluationContext context) throws EvaluationException {
         SimpleDataSet dataSet = new SimpleDataSet(dataSetDefinition, context);
@@ -43,7 +51,7 @@ public class AppointmentFollowupDatasetEvaluator implements DataSetEvaluator {
         Date startDate = definition.getStartDate();
         Date endDate = definition.getEndDate();
 
-        Map<String, String> answers = new HashMap<>();
+        Map<String, String> answers = new HashMap<String, String>();
         answers.put("160525", "Pre ART");
         answers.put("160524", "ART");
         answers.put("160526", "HIV Exposed Infant");
@@ -90,10 +98,7 @@ public class AppointmentFollowupDatasetEvaluator implements DataSetEvaluator {
                 "         ex.encounter_type NOT IN (SELECT et.encounter_type_id\n" +
                 "                                   FROM encounter_type et\n" +
                 "                                   WHERE et.uuid IN ('dc551efc-024d-4c40-aeb8-2147c4033778'))) AS visits,\n" +
-                "(SELECT DATE(MAX(o.value_datetime))\n" +
-                "   FROM obs o\n" +
-                "   WHERE o.voided = 0 AND o.person_id = e.patient_id AND o.value_datetime < e.encounter_datetime\n" +
-                "         AND o.concept_id = 5096)                                                   AS appointment\n" +
+                "  e.encounter_datetime\n" +
                 "FROM encounter e\n" +
                 "WHERE e.voided = 0\n" +
                 "      AND e.encounter_type IN (SELECT et.encounter_type_id\n" +
@@ -116,6 +121,22 @@ public class AppointmentFollowupDatasetEvaluator implements DataSetEvaluator {
 
         List<Object[]> results = evaluationService.evaluateToList(q, context);
 
+        // the return visit dates of the patients followed up, from the appointment index
+        Cohort patients = new Cohort();
+        for (Object[] r : results) {
+            patients.addMember(((Number) r[0]).intValue());
+        }
+        appointmentIndex.refreshIfDue();
+        Map<Integer, List<Date>> scheduledDates = new HashMap<Integer, List<Date>>();
+        for (Appointment a : Context.getService(UgandaEMRReportsService.class).getAppointments(patients, null, null)) {
+            List<Date> dates = scheduledDates.get(a.getPatientId());
+            if (dates == null) {
+                dates = new ArrayList<Date>();
+                scheduledDates.put(a.getPatientId(), dates);
+            }
+            dates.add(a.getScheduledDate());
+        }
+
         PatientDataHelper pdh = new PatientDataHelper();
 
         for (Object[] r : results) {
@@ -129,7 +150,7 @@ public class AppointmentFollowupDatasetEvaluator implements DataSetEvaluator {
             String names = String.valueOf(r[5]);
             String obs = String.valueOf(r[6]);
             String visits = String.valueOf(r[7]);
-            String appointment = String.valueOf(r[8]);
+            String appointment = getLastAppointmentBefore(scheduledDates.get(((Number) r[0]).intValue()), (Date) r[8]);
             Map<String, String> processedObs = processString3(obs, answers);
 
             String clinicNo = processString(identifiers).get("e1731641-30ab-102d-86b0-7a5022ba4115");
@@ -157,4 +178,19 @@ public class AppointmentFollowupDatasetEvaluator implements DataSetEvaluator {
         }
         return dataSet;
     }
+
+    /**
+     * @return the latest of the scheduled dates before the given date, or null if there is none
+     */
+    private String getLastAppointmentBefore(List<Date> scheduledDates, Date before) {
+        Date ret = null;
+        if (scheduledDates != null) {
+            for (Date scheduled : scheduledDates) {
+                if (scheduled.before(before) && (ret == null || scheduled.after(ret))) {
+                    ret = scheduled;
+                }
+            }
+        }
+        return ret != null ? DateUtil.formatDate(ret, "yyyy-MM-dd") : null;
+    }
 }
@@ -0,0 +1,229 @@
+package org.openmrs.module.ugandaemrreports.definition.dataset.evaluator;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.Cohort;
+import org.openmrs.annotation.Handler;
+import org.openmrs.module.reporting.cohort.definition.CohortDefinition;
+import org.openmrs.module.reporting.cohort.definition.service.CohortDefinitionService;
+import org.openmrs.module.reporting.dataset.DataSet;
+import org.openmrs.module.reporting.dataset.MapDataSet;
+import org.openmrs.module.reporting.dataset.definition.CohortIndicatorDataSetDefinition;
+import org.openmrs.module.reporting.dataset.definition.CohortIndicatorDataSetDefinition.CohortIndicatorAndDimensionColumn;
+import org.openmrs.module.reporting.dataset.definition.DataSetDefinition;
+import org.openmrs.module.reporting.dataset.definition.evaluator.CohortIndicatorDataSetEvaluator;
+import org.openmrs.module.reporting.dataset.definition.evaluator.DataSetEvaluator;
+import org.openmrs.module.reporting.evaluation.EvaluationContext;
+import org.openmrs.module.reporting.evaluation.EvaluationException;
+import org.openmrs.module.reporting.evaluation.EvaluationUtil;
+import org.openmrs.module.reporting.evaluation.parameter.Mapped;
+import org.openmrs.module.reporting.indicator.CohortIndicator;
+import org.openmrs.module.reporting.indicator.CohortIndicatorResult;
+import org.openmrs.module.reporting.indicator.dimension.CohortIndicatorAndDimensionResult;
+import org.openmrs.module.reporting.indicator.dimension.CohortDefinitionDimension;
+import org.openmrs.module.reporting.indicator.dimension.CohortDimensionResult;
+import org.openmrs.module.reporting.indicator.dimension.service.DimensionService;
+import org.openmrs.module.ugandaemrreports.definition.dataset.definition.BatchedCohortIndicatorDataSetDefinition;
+import org.openmrs.module.ugandaemrreports.evaluation.CancellationToken;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Evaluates a {@link BatchedCohortIndicatorDataSetDefinition}. Columns are grouped by the cohort definition and
+ * parameter values behind their indicator, each group's cohort is evaluated once, each dimension once, and every
+ * cell is the size of the group's cohort intersected with its dimension option cohorts. Cells are
+ * {@link CohortIndicatorAndDimensionResult}s as the stock evaluator gives, so that their patients can still be drilled
+ * down to, with their count worked out once per combination of cohort and options. Data sets holding anything other
+ * than plain count indicators are handed to the stock evaluator.
+ */
+@Handler(supports = {BatchedCohortIndicatorDataSetDefinition.class}, order = 50)
+public class BatchedCohortIndicatorDataSetEvaluator implements DataSetEvaluator {
+
+    protected static final Log log = LogFactory.getLog(BatchedCohortIndicatorDataSetEvaluator.class);
+
+    @Autowired
+    private CohortDefinitionService cohortDefinitionService;
+
+    @Autowired
+    private DimensionService dimensionService;
+
+    @Override
+    public DataSet evaluate(DataSetDefinition dataSetDefinition, EvaluationContext context) throws EvaluationException {
+        CohortIndicatorDataSetDefinition dsd = (CohortIndicatorDataSetDefinition) dataSetDefinition;
+        context = context == null ? new EvaluationContext() : context;
+
+        if (!isBatchable(dsd)) {
+            log.debug("Data set " + dsd.getName() + " has indicators other than plain counts, evaluating it column by column");
+            return new CohortIndicatorDataSetEvaluator().evaluate(dsd, context);
+        }
+
+        MapDataSet ret = new MapDataSet(dsd, context);
+        ret.setName(dsd.getName());
+        ret.setDescription(dsd.getDescription());
+
+        Map<String, Set<Integer>> cohorts = new HashMap<String, Set<Integer>>();
+        Map<String, CohortIndicatorResult> indicatorResults = new HashMap<String, CohortIndicatorResult>();
+        Map<String, CohortDimensionResult> dimensions = new HashMap<String, CohortDimensionResult>();
+        Map<String, Set<Integer>> optionCohorts = new HashMap<String, Set<Integer>>();
+        Map<String, Integer> counts = new HashMap<String, Integer>();
+
+        CancellationToken token = CancellationToken.of(context);
+        for (CohortIndicatorAndDimensionColumn column : dsd.getColumns()) {
+            token.check();
+            Mapped<? extends CohortIndicator> indicator = column.getIndicator();
+            EvaluationContext indicatorContext = EvaluationUtil.cloneForChild(context, indicator);
+            Mapped<? extends CohortDefinition> cohortDefinition = indicator.getParameterizable().getCohortDefinition();
+            EvaluationContext cohortContext = EvaluationUtil.cloneForChild(indicatorContext, cohortDefinition);
+
+            String cohortKey = cohortDefinition.getParameterizable().getUuid() + new TreeMap<String, Object>(cohortContext.getParameterValues());
+            Set<Integer> members = cohorts.get(cohortKey);
+            if (members == null) {
+                Cohort cohort = cohortDefinitionService.evaluate(cohortDefinition.getParameterizable(), cohortContext);
+                members = new HashSet<Integer>(cohort.getMemberIds());
+                cohorts.put(cohortKey, members);
+            }
+
+            String indicatorKey = indicator.getParameterizable().getUuid() + cohortKey;
+            CohortIndicatorResult indicatorResult = indicatorResults.get(indicatorKey);
+            if (indicatorResult == null) {
+                indicatorResult = new CohortIndicatorResult();
+                indicatorResult.setDefinition(indicator.getParameterizable());
+                indicatorResult.setContext(indicatorContext);
+                for (Integer member : members) {
+                    indicatorResult.getCohortValues().put(member, 1);
+                }
+                indicatorResults.put(indicatorKey, indicatorResult);
+            }
+
+            Map<String, String> options = column.getDimensionOptions() == null ? new TreeMap<String, String>() : new TreeMap<String, String>(column.getDimensionOptions());
+            String countKey = cohortKey + options;
+            Integer count = counts.get(countKey);
+            if (count == null) {
+                if (options.isEmpty()) {
+                    count = members.size();
+                } else {
+                    Set<Integer> inOptions = getOptionCohort(dsd, context, options, dimensions, optionCohorts);
+                    count = countIntersection(members, inOptions);
+                }
+                counts.put(countKey, count);
+            }
+            CountedResult result = new CountedResult(indicatorResult, indicatorContext, count);
+            for (Map.Entry<String, String> option : options.entrySet()) {
+                result.addDimensionResult(dsd.getDimensions().get(option.getKey()).getParameterizable(),
+                        getDimensionOption(dsd, context, option.getKey(), option.getValue(), dimensions));
+            }
+            ret.addData(column, result);
+        }
+
+        log.debug("Data set " + dsd.getName() + ": " + dsd.getColumns().size() + " cells from " + cohorts.size()
+                + " cohorts and " + dimensions.size() + " dimensions");
+        return ret;
+    }
+
+    /**
+     * @return true if every column is a count of a cohort with no location filter
+     */
+    private boolean isBatchable(CohortIndicatorDataSetDefinition dsd) {
+        for (CohortIndicatorAndDimensionColumn column : dsd.getColumns()) {
+            CohortIndicator indicator = column.getIndicator().getParameterizable();
+            if (indicator.getType() != CohortIndicator.IndicatorType.COUNT || indicator.getLocationFilter() != null
+                    || indicator.getCohortDefinition() == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the people in every one of the given dimension options, remembered for each combination of options
+     */
+    private Set<Integer> getOptionCohort(CohortIndicatorDataSetDefinition dsd, EvaluationContext context, Map<String, String> options,
+                                         Map<String, CohortDimensionResult> dimensions, Map<String, Set<Integer>> optionCohorts) throws EvaluationException {
+        String key = options.toString();
+        Set<Integer> ret = optionCohorts.get(key);
+        if (ret != null) {
+            return ret;
+        }
+        for (Map.Entry<String, String> option : options.entrySet()) {
+            Set<Integer> inOption = getDimensionOptionCohort(dsd, context, option.getKey(), option.getValue(), dimensions);
+            if (ret == null) {
+                ret = inOption;
+            } else {
+                Set<Integer> intersection = new HashSet<Integer>();
+                Set<Integer> larger = larger(ret, inOption);
+                for (Integer id : smaller(ret, inOption)) {
+                    if (larger.contains(id)) {
+                        intersection.add(id);
+                    }
+                }
+                ret = intersection;
+            }
+        }
+        optionCohorts.put(key, ret);
+        return ret;
+    }
+
+    private Set<Integer> getDimensionOptionCohort(CohortIndicatorDataSetDefinition dsd, EvaluationContext context, String dimensionKey, String option,
+                                                  Map<String, CohortDimensionResult> dimensions) throws EvaluationException {
+        Cohort cohort = getDimensionOption(dsd, context, dimensionKey, option, dimensions);
+        return cohort.getMemberIds();
+    }
+
+    private Cohort getDimensionOption(CohortIndicatorDataSetDefinition dsd, EvaluationContext context, String dimensionKey, String option,
+                                      Map<String, CohortDimensionResult> dimensions) throws EvaluationException {
+        CohortDimensionResult result = dimensions.get(dimensionKey);
+        if (result == null) {
+            Mapped<CohortDefinitionDimension> dimension = dsd.getDimensions().get(dimensionKey);
+            if (dimension == null) {
+                throw new EvaluationException("dimension " + dimensionKey + " in data set " + dsd.getName());
+            }
+            result = (CohortDimensionResult) dimensionService.evaluate(dimension, context);
+            dimensions.put(dimensionKey, result);
+        }
+        Cohort cohort = result.getOptionCohorts().get(option);
+        return cohort == null ? new Cohort() : cohort;
+    }
+
+    /**
+     * An indicator result whose value is the count worked out for its cohort and options, rather than one worked out
+     * again from its cohorts each time it is read
+     */
+    private static class CountedResult extends CohortIndicatorAndDimensionResult {
+
+        private final Integer count;
+
+        CountedResult(CohortIndicatorResult cohortIndicatorResult, EvaluationContext context, Integer count) {
+            super(cohortIndicatorResult, context);
+            this.count = count;
+        }
+
+        @Override
+        public Number getValue() {
+            return count;
+        }
+    }
+
+    private int countIntersection(Set<Integer> a, Set<Integer> b) {
+        int count = 0;
+        Set<Integer> larger = larger(a, b);
+        for (Integer id : smaller(a, b)) {
+            if (larger.contains(id)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private Set<Integer> smaller(Set<Integer> a, Set<Integer> b) {
+        return a.size() <= b.size() ? a : b;
+    }
+
+    private Set<Integer> larger(Set<Integer> a, Set<Integer> b) {
+        return a.size() <= b.size() ? b : a;
+    }
+}
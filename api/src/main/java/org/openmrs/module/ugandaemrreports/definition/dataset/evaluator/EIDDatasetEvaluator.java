@@ -1,5 +1,7 @@
 package org.openmrs.module.ugandaemrreports.definition.dataset.evaluator;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.joda.time.Months;
 import org.openmrs.*;
 import org.openmrs.annotation.Handler;
@@ -16,11 +18,13 @@ import org.openmrs.module.reporting.dataset.definition.DataSetDefinition;
 import org.openmrs.module.reporting.dataset.definition.evaluator.DataSetEvaluator;
 import org.openmrs.module.reporting.evaluation.EvaluationContext;
 import org.openmrs.module.reporting.evaluation.EvaluationException;
+import org.openmrs.module.ugandaemrreports.common.InfantTimeline;
 import org.openmrs.module.ugandaemrreports.common.PatientDataHelper;
 import org.openmrs.module.ugandaemrreports.common.StubDate;
 import org.openmrs.module.ugandaemrreports.definition.data.definition.EncounterObsDataDefinition;
 import org.openmrs.module.ugandaemrreports.definition.dataset.definition.EIDDatasetDefinition;
 import org.openmrs.module.ugandaemrreports.definition.dataset.definition.HMIS106A1BDataSetDefinition;
+import org.openmrs.module.ugandaemrreports.evaluation.InfantTimelines;
 import org.openmrs.module.ugandaemrreports.metadata.HIVMetadata;
 import org.springframework.beans.factory.annotation.Autowired;
 
@@ -34,9 +38,15 @@ import static org.openmrs.module.ugandaemrreports.reports.Helper.convert;
 @Handler(supports = {EIDDatasetDefinition.class})
 
 public class EIDDatasetEvaluator implements DataSetEvaluator {
+
+    private final Log log = LogFactory.getLog(getClass());
+
     @Autowired
     private HIVMetadata hivMetadata;
 
+    @Autowired
+    private InfantTimelines infantTimelines;
+
     PatientDataHelper pdh = new PatientDataHelper();
 
     @Override
@@ -44,8 +54,9 @@ public class EIDDatasetEvaluator implements DataSetEvaluator {
         SimpleDataSet dataSet = new SimpleDataSet(dataSetDefinition, evaluationContext);
 
         EIDDatasetDefinition definition = (EIDDatasetDefinition) dataSetDefinition;
-        System.out.println(definition.getStartDate());
-        System.out.println(definition.getEndDate());
+        if (log.isDebugEnabled()) {
+            log.debug("Evaluating EID data set from " + definition.getStartDate() + " to " + definition.getEndDate());
+        }
         EncounterObsDataDefinition eidSummaryObsDefinition = new EncounterObsDataDefinition();
         eidSummaryObsDefinition.setEncounterType(hivMetadata.getEIDSummaryPageEncounterType().get(0));
         eidSummaryObsDefinition.setStartDate(definition.getStartDate());
@@ -66,6 +77,7 @@ public class EIDDatasetEvaluator implements DataSetEvaluator {
         Map<Integer, Object> eidEncounters = eidEvaluatedEncounterObs.getData();
         Map<Integer, Object> eidSummaries = eidEvaluatedSummaryObs.getData();
         Map<Integer, Object> patientIdentifiers = patientIdentifierEvaluator.getData();
+        Map<Integer, InfantTimeline> timelines = infantTimelines.getTimelines(eidSummaries.keySet());
 
 
         for (Map.Entry<Integer, Object> data : eidSummaries.entrySet()) {
@@ -75,6 +87,8 @@ public class EIDDatasetEvaluator implements DataSetEvaluator {
             DataSetRow row = new DataSetRow();
             Obs firstObs = summaryObs.get(0);
             Person p = firstObs.getPerson();
+            InfantTimeline timeline = timelines.get(data.getKey());
+            Date birthdate = timeline.getBirthdate();
 
             PatientIdentifier identifier = (PatientIdentifier) patientIdentifiers.get(data.getKey());
 
@@ -83,8 +97,8 @@ public class EIDDatasetEvaluator implements DataSetEvaluator {
             this.pdh.addCol(row, "surname", p.getFamilyName());
             this.pdh.addCol(row, "firstName", p.getGivenName());
             this.pdh.addCol(row, "sex", p.getGender());
-            this.pdh.addCol(row, "dob", DateUtil.formatDate(p.getBirthdate(), "dd/MM/yyyy"));
-            this.pdh.addCol(row, "age", getMonthsBetweenDates(p.getBirthdate(), firstObs.getEncounter().getEncounterDatetime()));
+            this.pdh.addCol(row, "dob", DateUtil.formatDate(birthdate, "dd/MM/yyyy"));
+            this.pdh.addCol(row, "age", getMonthsBetweenDates(birthdate, firstObs.getEncounter().getEncounterDatetime()));
 
             Obs entryPoint = searchObs(summaryObs, 90200);
             Obs nvp = searchObs(summaryObs, 99771);
@@ -99,20 +113,17 @@ public class EIDDatasetEvaluator implements DataSetEvaluator {
             Obs infantARV4PMTCT = searchObs(summaryObs, 99787);
 
             // First PCR
-            Obs firstPCRDate = searchObs(summaryObs, 99606);
+            Date firstPCRDate = timeline.getFirstPcrDate();
             Obs fsAtFirstPCR = searchObs(summaryObs, 99434);
-            Obs firstPCRResult = searchObs(summaryObs, 99435);
             Obs dateFirstPCRGiven2CareGiver = searchObs(summaryObs, 99438);
 
             // Second PCR
-            Obs secondPCRDate = searchObs(summaryObs, 99436);
+            Date secondPCRDate = timeline.getSecondPcrDate();
             Obs fsAtSecondPCR = searchObs(summaryObs, 99794);
-            Obs secondPCRResult = searchObs(summaryObs, 99440);
             Obs dateSecondPCRGiven2CareGiver = searchObs(summaryObs, 99442);
 
             // Rapid Test
-            Obs rapidTestDate = searchObs(summaryObs, 162879);
-            Obs rapidTestResult = searchObs(summaryObs, 162880);
+            Date rapidTestDate = timeline.getRapidTestDate();
 
             // Final outcomes
 
@@ -123,9 +134,9 @@ public class EIDDatasetEvaluator implements DataSetEvaluator {
 
             this.pdh.addCol(row, "entry", entryPoint != null ? convert(String.valueOf(entryPoint.getValueCoded().getConceptId())) : "");
             this.pdh.addCol(row, "nvp", nvp != null ? DateUtil.formatDate(nvp.getValueDatetime(), "dd/MM/yyyy") : "");
-            this.pdh.addCol(row, "nvpAge", getMonthsBetweenDates(p.getBirthdate(), nvp != null ? nvp.getValueDatetime() : null));
+            this.pdh.addCol(row, "nvpAge", getMonthsBetweenDates(birthdate, nvp != null ? nvp.getValueDatetime() : null));
             this.pdh.addCol(row, "cotrim", cotrim != null ? DateUtil.formatDate(cotrim.getValueDatetime(), "dd/MM/yyyy") : "");
-            this.pdh.addCol(row, "cotrimAge", getMonthsBetweenDates(p.getBirthdate(), cotrim != null ? cotrim.getValueDatetime() : null));
+            this.pdh.addCol(row, "cotrimAge", getMonthsBetweenDates(birthdate, cotrim != null ? cotrim.getValueDatetime() : null));
             this.pdh.addCol(row, "motherFirstName", motherFirstName != null ? motherFirstName.getValueText() : "");
             this.pdh.addCol(row, "motherLastName", motherLastName != null ? motherLastName.getValueText() : "");
             this.pdh.addCol(row, "motherANCNo", motherANCNo != null ? motherANCNo.getValueText() : "");
@@ -140,11 +151,11 @@ public class EIDDatasetEvaluator implements DataSetEvaluator {
 
             // First PCR
             this.pdh.addCol(row, "firstPCR", firstPCRDate != null ? "✓" : "");
-            this.pdh.addCol(row, "firstPCRDateCollected", firstPCRDate != null ? DateUtil.formatDate(firstPCRDate.getValueDatetime(), "yyyy-MM-dd") : "");
+            this.pdh.addCol(row, "firstPCRDateCollected", firstPCRDate != null ? DateUtil.formatDate(firstPCRDate, "yyyy-MM-dd") : "");
             this.pdh.addCol(row, "firstPCRDateDispatched", "");
-            this.pdh.addCol(row, "ageAtFirstPCR", getMonthsBetweenDates(p.getBirthdate(), firstPCRDate != null ? firstPCRDate.getValueDatetime() : null));
+            this.pdh.addCol(row, "ageAtFirstPCR", getMonthsBetweenDates(birthdate, firstPCRDate));
             this.pdh.addCol(row, "fsAtFirstPCR", fsAtFirstPCR != null ? convert(String.valueOf(fsAtFirstPCR.getValueCoded().getConceptId())) : "");
-            this.pdh.addCol(row, "firstPCRResult", firstPCRResult != null ? firstPCRResult.getValueCoded().getName().getName() : "");
+            this.pdh.addCol(row, "firstPCRResult", getConceptName(timeline.getFirstPcrResult()));
             this.pdh.addCol(row, "firstPCRResultDateReceived", "");
             this.pdh.addCol(row, "dateFirstPCRGiven2CareGiver", dateFirstPCRGiven2CareGiver != null ?
                     DateUtil.formatDate(dateFirstPCRGiven2CareGiver.getValueDatetime(), "yyyy-MM-dd") : "");
@@ -160,11 +171,11 @@ public class EIDDatasetEvaluator implements DataSetEvaluator {
 
             //Second PCR
             this.pdh.addCol(row, "secondPCR", secondPCRDate != null ? "✓" : "");
-            this.pdh.addCol(row, "secondPCRDateCollected", secondPCRDate != null ? DateUtil.formatDate(secondPCRDate.getValueDatetime(), "yyyy-MM-dd") : "");
+            this.pdh.addCol(row, "secondPCRDateCollected", secondPCRDate != null ? DateUtil.formatDate(secondPCRDate, "yyyy-MM-dd") : "");
             this.pdh.addCol(row, "secondPCRDateDispatched", "");
-            this.pdh.addCol(row, "ageAtSecondPCR", getMonthsBetweenDates(p.getBirthdate(), secondPCRDate != null ? secondPCRDate.getValueDatetime() : null));
+            this.pdh.addCol(row, "ageAtSecondPCR", getMonthsBetweenDates(birthdate, secondPCRDate));
             this.pdh.addCol(row, "fsAtSecondPCR", fsAtSecondPCR != null ? convert(String.valueOf(fsAtSecondPCR.getValueCoded().getConceptId())) : "");
-            this.pdh.addCol(row, "secondPCRResult", secondPCRResult != null ? secondPCRResult.getValueCoded().getName().getName() : "");
+            this.pdh.addCol(row, "secondPCRResult", getConceptName(timeline.getSecondPcrResult()));
             this.pdh.addCol(row, "secondPCRResultDateReceived", "");
             this.pdh.addCol(row, "dateSecondPCRGiven2CareGiver", dateSecondPCRGiven2CareGiver != null ?
                     DateUtil.formatDate(dateSecondPCRGiven2CareGiver.getValueDatetime(), "yyyy-MM-dd") : "");
@@ -180,9 +191,9 @@ public class EIDDatasetEvaluator implements DataSetEvaluator {
 
             // Rapid Test
 
-            this.pdh.addCol(row, "rapidTestDate", rapidTestDate != null ? DateUtil.formatDate(rapidTestDate.getValueDatetime(), "yyyy-MM-dd") : "");
-            this.pdh.addCol(row, "ageAtRapidTest", getMonthsBetweenDates(p.getBirthdate(), rapidTestDate != null ? rapidTestDate.getValueDatetime() : null));
-            this.pdh.addCol(row, "rapidTestResult", rapidTestResult != null ? rapidTestResult.getValueCoded().getName().getName() : "");
+            this.pdh.addCol(row, "rapidTestDate", rapidTestDate != null ? DateUtil.formatDate(rapidTestDate, "yyyy-MM-dd") : "");
+            this.pdh.addCol(row, "ageAtRapidTest", getMonthsBetweenDates(birthdate, rapidTestDate));
+            this.pdh.addCol(row, "rapidTestResult", getConceptName(timeline.getRapidTestResult()));
 
             // Followup
             addColumns(filterMap(encounterObs, 162993), row, "1");
@@ -239,6 +250,10 @@ public class EIDDatasetEvaluator implements DataSetEvaluator {
         return null;
     }
 
+    private String getConceptName(Integer conceptId) {
+        return conceptId != null ? Context.getConceptService().getConcept(conceptId).getName().getName() : "";
+    }
+
     private String getMonthsBetweenDates(Date date1, Date date2) {
         if (date1 != null && date2 != null) {
             return String.valueOf(Months.monthsBetween(StubDate.dateOf(date1), StubDate.dateOf(date2)).getMonths());
@@ -30,6 +30,7 @@ import org.openmrs.module.ugandaemrreports.common.PatientDataHelper;
 import org.openmrs.module.ugandaemrreports.common.Periods;
 import org.openmrs.module.ugandaemrreports.common.StubDate;
 import org.openmrs.module.ugandaemrreports.definition.dataset.definition.HMIS106A1BDataSetDefinition;
+import org.openmrs.module.ugandaemrreports.evaluation.CancellationToken;
 import org.openmrs.module.ugandaemrreports.library.DataFactory;
 import org.openmrs.module.ugandaemrreports.library.HIVCohortDefinitionLibrary;
 import org.openmrs.module.ugandaemrreports.metadata.HIVMetadata;
@@ -128,7 +129,9 @@ public class HMIS106A1BDataSetEvaluator implements DataSetEvaluator {
         int months = 6;
         DecimalFormat df = new DecimalFormat("###.##");
 
+        CancellationToken token = CancellationToken.of(evaluationContext);
         for (int i = 0; i < periods.size(); i++) {
+            token.check();
             if (i > 0) {
                 months = i * 12;
             }
@@ -10,13 +10,13 @@ import org.openmrs.annotation.Handler;
 import org.openmrs.module.reporting.common.DateUtil;
 import org.openmrs.module.reporting.dataset.DataSet;
 import org.openmrs.module.reporting.dataset.DataSetRow;
-import org.openmrs.module.reporting.dataset.SimpleDataSet;
 import org.openmrs.module.reporting.dataset.definition.DataSetDefinition;
 import org.openmrs.module.reporting.dataset.definition.evaluator.DataSetEvaluator;
 import org.openmrs.module.reporting.evaluation.EvaluationContext;
 import org.openmrs.module.reporting.evaluation.EvaluationException;
 import org.openmrs.module.ugandaemrreports.common.*;
 import org.openmrs.module.ugandaemrreports.definition.dataset.definition.PreARTDatasetDefinition;
+import org.openmrs.module.ugandaemrreports.evaluation.CancellationToken;
 
 import java.sql.SQLException;
 import java.util.*;
@@ -30,7 +30,7 @@ public class PreARTDatasetDefinitionEvaluator implements DataSetEvaluator {
 
     @Override
     public DataSet evaluate(DataSetDefinition dataSetDefinition, EvaluationContext context) throws EvaluationException {
-        SimpleDataSet dataSet = new SimpleDataSet(dataSetDefinition, context);
+        ColumnarDataSet dataSet = new ColumnarDataSet(dataSetDefinition, context);
         PreARTDatasetDefinition definition = (PreARTDatasetDefinition) dataSetDefinition;
 
         LocalDate localDate = StubDate.dateOf(definition.getStartDate());
@@ -100,7 +100,9 @@ public class PreARTDatasetDefinitionEvaluator implements DataSetEvaluator {
             Map<Integer, List<PersonDemographics>> demographics = getPatientDemographics(sqlConnection(), patients);
 
             PatientDataHelper pdh = new PatientDataHelper();
+            CancellationToken token = CancellationToken.of(context);
             for (Map.Entry<Integer, Date> patient : entries) {
+                token.check();
                 Integer key = patient.getKey();
                 List<PersonDemographics> personDemographics = demographics.get(key);
                 Map<String, String> patientData = table.column(key);
@@ -141,7 +143,7 @@ public class PreARTDatasetDefinitionEvaluator implements DataSetEvaluator {
 
                 String enrollmentQuarter = getObsPeriod(firstSummaryDate, Enums.Period.QUARTERLY);
 
-                DataSetRow row = new DataSetRow();
+                DataSetRow row = dataSet.newRow();
                 pdh.addCol(row, "Date Enrolled", firstSummaryDate);
                 pdh.addCol(row, "Unique ID no", key);
                 pdh.addCol(row, "Patient Clinic ID", processString(personDemos.getIdentifiers()).get("e1731641-30ab-102d-86b0-7a5022ba4115"));
@@ -289,7 +291,6 @@ public class PreARTDatasetDefinitionEvaluator implements DataSetEvaluator {
                         pdh.addCol(row, "Nutrition" + String.valueOf(i), "");
                     }
                 }
-                dataSet.addRow(row);
             }
         } catch (SQLException | ClassNotFoundException e) {
             e.printStackTrace();
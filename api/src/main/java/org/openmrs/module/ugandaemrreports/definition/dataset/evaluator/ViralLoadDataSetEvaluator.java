@@ -25,12 +25,14 @@ import org.openmrs.module.reporting.dataset.SimpleDataSet;
 import org.openmrs.module.reporting.dataset.definition.DataSetDefinition;
 import org.openmrs.module.reporting.evaluation.EvaluationContext;
 import org.openmrs.module.reporting.evaluation.service.EvaluationService;
+import org.openmrs.module.ugandaemrreports.common.NonSuppressingDataHandler;
 import org.openmrs.module.ugandaemrreports.common.PatientDataHelper;
 import org.openmrs.module.ugandaemrreports.common.PatientNonSuppressingData;
 import org.openmrs.module.ugandaemrreports.common.StubDate;
 import org.openmrs.module.ugandaemrreports.common.ViralLoad;
 import org.openmrs.module.ugandaemrreports.definition.data.definition.NonSuppressingPatientDataDefinition;
 import org.openmrs.module.ugandaemrreports.definition.data.definition.ViralLoadCohortDataDefinition;
+import org.openmrs.module.ugandaemrreports.definition.data.evaluator.NonSuppressingPatientDataEvaluator;
 import org.openmrs.module.ugandaemrreports.definition.dataset.definition.ViralLoadDatasetDefinition;
 import org.openmrs.module.ugandaemrreports.definition.dataset.predicates.NonSuppressedDataFilter;
 import org.openmrs.module.ugandaemrreports.definition.dataset.predicates.ViralLoadNotDetectedFilter;
@@ -51,6 +53,8 @@ public class ViralLoadDataSetEvaluator implements org.openmrs.module.reporting.d
     private CommonCohortDefinitionLibrary commonCohortDefinitionLibrary;
     @Autowired
     private EvaluationService evaluationService;
+    @Autowired
+    private NonSuppressingPatientDataEvaluator nonSuppressingPatientDataEvaluator;
     PatientDataHelper pdh = new PatientDataHelper();
 
     public DataSet evaluate(DataSetDefinition dataSetDefinition, EvaluationContext evaluationContext)
@@ -73,11 +77,11 @@ public class ViralLoadDataSetEvaluator implements org.openmrs.module.reporting.d
 
         EvaluatedPatientData data = Context.getService(PatientDataService.class).evaluate(viralLoadCohortDataDefinition, evaluationContext);
 
-        EvaluatedPatientData nonSuppressingData = Context.getService(PatientDataService.class).evaluate(nonSuppressingPatientDataDefinition, evaluationContext);
+        NonSuppressedCohorts nonSuppressed = new NonSuppressedCohorts(startDate, endDate);
+        nonSuppressingPatientDataEvaluator.evaluate(nonSuppressingPatientDataDefinition, evaluationContext, nonSuppressed);
 
 
         Collection<ViralLoad> viralLoads = convertDataToObjects(data.getData());
-        Collection<PatientNonSuppressingData> nonSuppressed = convertNonSuppressingDataToObjects(nonSuppressingData.getData());
 
         Map<String, Map<String, Integer>> quartersToSubtract = new HashMap<String, Map<String, Integer>>();
 
@@ -186,7 +190,7 @@ public class ViralLoadDataSetEvaluator implements org.openmrs.module.reporting.d
         this.pdh.addCol(anotherEmptyRow, "no", "Repeat VL for the non-suppressed");
         dataSet.addRow(anotherEmptyRow);
 
-        Map<String, List<Cohort>> c = getNonSuppressedCohorts(nonSuppressed, startDate, endDate);
+        Map<String, List<Cohort>> c = nonSuppressed.getCohorts();
 
         for (Map.Entry<String, List<Cohort>> o : c.entrySet()) {
             DataSetRow ds = joinDatasetRows(disaggregation(o.getValue().get(0), aggregates, ""), disaggregation(o.getValue().get(1), aggregates, "1"));
@@ -266,54 +270,42 @@ public class ViralLoadDataSetEvaluator implements org.openmrs.module.reporting.d
         return viralLoads;
     }
 
-    private Collection<PatientNonSuppressingData> convertNonSuppressingDataToObjects(Map<Integer, Object> hashedMap) {
-        Collection<PatientNonSuppressingData> viralLoads = new ArrayList<PatientNonSuppressingData>();
-        for (Map.Entry<Integer, Object> o : hashedMap.entrySet()) {
-            viralLoads.add((PatientNonSuppressingData) o.getValue());
-        }
-
-        return viralLoads;
-    }
+    /**
+     * Works out the IAC indicators of the patients handed to it one at a time, see
+     * {@link NonSuppressingPatientDataEvaluator#evaluate(NonSuppressingPatientDataDefinition, EvaluationContext, NonSuppressingDataHandler)}
+     */
+    private class NonSuppressedCohorts implements NonSuppressingDataHandler {
 
-    private Map<String, List<Cohort>> getNonSuppressedCohorts(Collection<PatientNonSuppressingData> patientNonSuppressingData, Date startDate, Date endDate) {
+        private final Date startDate;
 
-        Date defaultDate = DateUtil.parseDate("1900-01-01", "yyyy-MM-dd");
-        Integer defaultInteger = -1;
-        Double defaultDouble = -1.0;
+        private final Date endDate;
 
-        Set<Integer> indicator1 = new HashSet<Integer>();
-        Set<Integer> indicator2 = new HashSet<Integer>();
+        private final Set<Integer> indicator1 = new HashSet<Integer>();
+        private final Set<Integer> indicator2 = new HashSet<Integer>();
 
-        Set<Integer> indicator3 = new HashSet<Integer>();
-        Set<Integer> indicator4 = new HashSet<Integer>();
+        private final Set<Integer> indicator3 = new HashSet<Integer>();
+        private final Set<Integer> indicator4 = new HashSet<Integer>();
 
-        Set<Integer> indicator5 = new HashSet<Integer>();
-        Set<Integer> indicator6 = new HashSet<Integer>();
+        private final Set<Integer> indicator5 = new HashSet<Integer>();
+        private final Set<Integer> indicator6 = new HashSet<Integer>();
 
-        Set<Integer> indicator7 = new HashSet<Integer>();
-        Set<Integer> indicator8 = new HashSet<Integer>();
+        private final Set<Integer> indicator7 = new HashSet<Integer>();
+        private final Set<Integer> indicator8 = new HashSet<Integer>();
 
-        Map<String, List<Cohort>> cohorts = new HashMap<String, List<Cohort>>();
-
-        Collection<Integer> secondLineDrugsChildren = CollectionUtils.collect(hivMetadata.getSecondLineDrugsChildren(), new BeanToPropertyValueTransformer("conceptId"));
-        Collection<Integer> secondLineDrugsAdults = CollectionUtils.collect(hivMetadata.getSecondLineDrugsAdults(), new BeanToPropertyValueTransformer("conceptId"));
-        Collection<Integer> firstLineDrugsChildren = CollectionUtils.collect(hivMetadata.getFirstLineDrugsChildren(), new BeanToPropertyValueTransformer("conceptId"));
-        Collection<Integer> firstLineDrugsAdults = CollectionUtils.collect(hivMetadata.getSecondLineDrugsAdults(), new BeanToPropertyValueTransformer("conceptId"));
-
-        Integer firstLine = 1;
-
-        Multimap<Integer, PatientNonSuppressingData> grouped = Multimaps.index(patientNonSuppressingData,
-                new Function<PatientNonSuppressingData, Integer>() {
-                    @Override
-                    public Integer apply(PatientNonSuppressingData item) {
-                        return item.getPatientId();
-                    }
-                });
+        private final Collection<Integer> secondLineDrugsChildren = CollectionUtils.collect(hivMetadata.getSecondLineDrugsChildren(), new BeanToPropertyValueTransformer("conceptId"));
+        private final Collection<Integer> secondLineDrugsAdults = CollectionUtils.collect(hivMetadata.getSecondLineDrugsAdults(), new BeanToPropertyValueTransformer("conceptId"));
+        private final Collection<Integer> firstLineDrugsChildren = CollectionUtils.collect(hivMetadata.getFirstLineDrugsChildren(), new BeanToPropertyValueTransformer("conceptId"));
+        private final Collection<Integer> firstLineDrugsAdults = CollectionUtils.collect(hivMetadata.getSecondLineDrugsAdults(), new BeanToPropertyValueTransformer("conceptId"));
 
+        private NonSuppressedCohorts(Date startDate, Date endDate) {
+            this.startDate = startDate;
+            this.endDate = endDate;
+        }
 
-        for (Integer patientId : grouped.keySet()) {
-            Collection<PatientNonSuppressingData> patientData = grouped.get(patientId);
-            PatientNonSuppressingData data = new ArrayList<PatientNonSuppressingData>(patientData).get(0);
+        @Override
+        public void handle(Integer patientId, List<PatientNonSuppressingData> patientData) {
+            PatientNonSuppressingData data = patientData.get(0);
+            Integer firstLine = 1;
 
             Multimap<Integer, PatientNonSuppressingData> groupedByEncounter = Multimaps.index(patientData,
                     new Function<PatientNonSuppressingData, Integer>() {
@@ -325,78 +317,22 @@ public class ViralLoadDataSetEvaluator implements org.openmrs.module.reporting.d
 
             for (Integer encounterId : groupedByEncounter.keySet()) {
 
-                Date resultsReceivedAfterIACDate = defaultDate;
-                Integer qualitativeViralLoadValue = defaultInteger;
-                Double quantitativeViralLoadValue = defaultDouble;
-                Date clinicalDecisionDateValue = defaultDate;
-                Integer clinicalDecisionValue = defaultInteger;
-                Integer regimenValue = defaultInteger;
-                Date regimenStartDateValue = defaultDate;
-                Date lastSessionDate = defaultDate;
-
                 Collection<PatientNonSuppressingData> collection = groupedByEncounter.get(encounterId);
 
-                Collection<PatientNonSuppressingData> sessions = Collections2.filter(collection, new NonSuppressedDataFilter(163154));
-                Collection<PatientNonSuppressingData> resultsReceivedAfterIAC = Collections2.filter(collection, new NonSuppressedDataFilter(163150));
-                Collection<PatientNonSuppressingData> qualitativeViralLoads = Collections2.filter(collection, new NonSuppressedDataFilter(1305));
-                Collection<PatientNonSuppressingData> quantitativeViralLoads = Collections2.filter(collection, new NonSuppressedDataFilter(856));
-                Collection<PatientNonSuppressingData> clinicalDecisionDates = Collections2.filter(collection, new NonSuppressedDataFilter(163167));
-                Collection<PatientNonSuppressingData> clinicalDecisions = Collections2.filter(collection, new NonSuppressedDataFilter(163166));
-                Collection<PatientNonSuppressingData> regimens = Collections2.filter(collection, new NonSuppressedDataFilter(163152));
-                Collection<PatientNonSuppressingData> regimenStartDates = Collections2.filter(collection, new NonSuppressedDataFilter(163172));
-                Collection<PatientNonSuppressingData> adherenceCodes = Collections2.filter(collection, new NonSuppressedDataFilter(90221));
-
-                Collection<Date> sessionDates = CollectionUtils.collect(sessions, new BeanToPropertyValueTransformer("valueDatetime"));
-                List<Date> list = new ArrayList(sessionDates);
-                Collections.sort(list);
-
-                if (!list.isEmpty() && list.size() >= 3) {
-                    lastSessionDate = Iterables.getLast(list);
-                }
-
-                Collection<Integer> adherenceCodeValues = CollectionUtils.collect(adherenceCodes, new BeanToPropertyValueTransformer("valueCoded"));
-
-                Collection<Date> resultsReceivedAfterIACDates = CollectionUtils.collect(resultsReceivedAfterIAC, new BeanToPropertyValueTransformer("valueDatetime"));
-
-                if (resultsReceivedAfterIACDates.size() != 0) {
-                    resultsReceivedAfterIACDate = Iterables.getLast(resultsReceivedAfterIACDates);
-                }
+                List<Date> sessionDates = values(collection, 163154, "valueDatetime");
+                Collections.sort(sessionDates);
 
-                Collection<Integer> qualitativeViralLoadValues = CollectionUtils.collect(qualitativeViralLoads, new BeanToPropertyValueTransformer("valueCoded"));
-
-                if (qualitativeViralLoadValues.size() != 0) {
-                    qualitativeViralLoadValue = Iterables.getLast(qualitativeViralLoadValues);
-                }
-
-                Collection<Double> quantitativeViralLoadValues = CollectionUtils.collect(quantitativeViralLoads, new BeanToPropertyValueTransformer("valueNumeric"));
-
-                if (quantitativeViralLoadValues.size() != 0) {
-                    quantitativeViralLoadValue = Iterables.getLast(quantitativeViralLoadValues);
-                }
+                Date lastSessionDate = sessionDates.size() >= 3 ? Iterables.getLast(sessionDates) : null;
+                Date resultsReceivedAfterIACDate = last(values(collection, 163150, "valueDatetime"));
+                Integer qualitativeViralLoadValue = last(values(collection, 1305, "valueCoded"));
+                Double quantitativeViralLoadValue = last(values(collection, 856, "valueNumeric"));
+                Date clinicalDecisionDateValue = last(values(collection, 163167, "valueDatetime"));
+                Integer clinicalDecisionValue = last(values(collection, 163166, "valueCoded"));
+                Integer regimenValue = last(values(collection, 163152, "valueCoded"));
+                Date regimenStartDateValue = last(values(collection, 163172, "valueDatetime"));
+                List<Integer> adherenceCodeValues = values(collection, 90221, "valueCoded");
 
-                Collection<Date> clinicalDecisionDateValues = CollectionUtils.collect(clinicalDecisionDates, new BeanToPropertyValueTransformer("valueDatetime"));
-
-                if (clinicalDecisionDateValues.size() != 0) {
-                    clinicalDecisionDateValue = Iterables.getLast(clinicalDecisionDateValues);
-                }
-
-                Collection<Integer> clinicalDecisionValues = CollectionUtils.collect(clinicalDecisions, new BeanToPropertyValueTransformer("valueCoded"));
-                if (clinicalDecisionValues.size() != 0) {
-                    clinicalDecisionValue = Iterables.getLast(clinicalDecisionValues);
-                }
-
-                Collection<Integer> regimenValues = CollectionUtils.collect(regimens, new BeanToPropertyValueTransformer("valueCoded"));
-
-                if (regimenValues.size() != 0) {
-                    regimenValue = Iterables.getLast(regimenValues);
-                }
-
-                Collection<Date> regimenStartDateValues = CollectionUtils.collect(regimenStartDates, new BeanToPropertyValueTransformer("valueDatetime"));
-                if (regimenStartDateValues.size() != 0) {
-                    regimenStartDateValue = Iterables.getLast(regimenStartDateValues);
-                }
-
-                if (regimenValue != -1 && !regimenStartDateValue.equals(defaultDate)) {
+                if (regimenValue != null && regimenStartDateValue != null && data.getBirthDate() != null) {
                     Years age = Years.yearsBetween(StubDate.dateOf(data.getBirthDate()), StubDate.dateOf(regimenStartDateValue));
                     if (age.getYears() > 10 && secondLineDrugsAdults.contains(regimenValue) || age.getYears() <= 10 && secondLineDrugsChildren.contains(regimenValue)) {
                         firstLine = 2;
@@ -405,11 +341,9 @@ public class ViralLoadDataSetEvaluator implements org.openmrs.module.reporting.d
                     }
                 }
 
-
-                if (!lastSessionDate.equals(defaultDate) && (startDate.compareTo(lastSessionDate) * lastSessionDate.compareTo(endDate) >= 0)) {
+                if (isInPeriod(lastSessionDate)) {
                     if (adherenceCodeValues.size() >= 3) {
-                        List<Integer> codeList = new ArrayList<Integer>(adherenceCodeValues);
-                        List<Integer> sub = codeList.subList(adherenceCodeValues.size() - 3, adherenceCodeValues.size());
+                        List<Integer> sub = adherenceCodeValues.subList(adherenceCodeValues.size() - 3, adherenceCodeValues.size());
                         Set<Integer> unique = new HashSet<Integer>(sub);
                         if (unique.size() == 1 && sub.get(sub.size() - 1) == 90156) {
                             if (firstLine == 1) {
@@ -421,7 +355,7 @@ public class ViralLoadDataSetEvaluator implements org.openmrs.module.reporting.d
                     }
                 }
 
-                if (!resultsReceivedAfterIACDate.equals(defaultDate) && (startDate.compareTo(resultsReceivedAfterIACDate) * resultsReceivedAfterIACDate.compareTo(endDate) >= 0)) {
+                if (isInPeriod(resultsReceivedAfterIACDate)) {
 
                     if (firstLine == 1) {
                         indicator3.add(patientId);
@@ -429,7 +363,8 @@ public class ViralLoadDataSetEvaluator implements org.openmrs.module.reporting.d
                         indicator4.add(patientId);
                     }
 
-                    if (qualitativeViralLoadValue == 1306 || (quantitativeViralLoadValue < 1000 && quantitativeViralLoadValue > -1)) {
+                    if ((qualitativeViralLoadValue != null && qualitativeViralLoadValue == 1306)
+                            || (quantitativeViralLoadValue != null && quantitativeViralLoadValue < 1000 && quantitativeViralLoadValue >= 0)) {
                         if (firstLine == 1) {
                             indicator5.add(patientId);
                         } else if (firstLine == 2) {
@@ -438,7 +373,7 @@ public class ViralLoadDataSetEvaluator implements org.openmrs.module.reporting.d
                     }
                 }
 
-                if (!clinicalDecisionDateValue.equals(defaultDate) && (startDate.compareTo(clinicalDecisionDateValue) * clinicalDecisionDateValue.compareTo(endDate) >= 0)) {
+                if (isInPeriod(clinicalDecisionDateValue) && clinicalDecisionValue != null) {
                     if (clinicalDecisionValue == 163162) {
                         indicator7.add(patientId);
                     } else if (clinicalDecisionValue == 163164) {
@@ -447,11 +382,37 @@ public class ViralLoadDataSetEvaluator implements org.openmrs.module.reporting.d
                 }
             }
         }
-        cohorts.put("h", Arrays.asList(new Cohort(indicator1), new Cohort(indicator2)));
-        cohorts.put("i", Arrays.asList(new Cohort(indicator3), new Cohort(indicator4)));
-        cohorts.put("j", Arrays.asList(new Cohort(indicator5), new Cohort(indicator6)));
-        cohorts.put("k", Arrays.asList(new Cohort(indicator7), new Cohort(indicator8)));
-        return cohorts;
+
+        private Map<String, List<Cohort>> getCohorts() {
+            Map<String, List<Cohort>> cohorts = new HashMap<String, List<Cohort>>();
+            cohorts.put("h", Arrays.asList(new Cohort(indicator1), new Cohort(indicator2)));
+            cohorts.put("i", Arrays.asList(new Cohort(indicator3), new Cohort(indicator4)));
+            cohorts.put("j", Arrays.asList(new Cohort(indicator5), new Cohort(indicator6)));
+            cohorts.put("k", Arrays.asList(new Cohort(indicator7), new Cohort(indicator8)));
+            return cohorts;
+        }
+
+        private boolean isInPeriod(Date date) {
+            return date != null && startDate.compareTo(date) * date.compareTo(endDate) >= 0;
+        }
+
+        /**
+         * @return the non-null values of the property of the obs of the concept, in the order of the obs
+         */
+        private <T> List<T> values(Collection<PatientNonSuppressingData> data, Integer concept, String property) {
+            Collection<PatientNonSuppressingData> filtered = Collections2.filter(data, new NonSuppressedDataFilter(concept));
+            List<T> ret = new ArrayList<T>();
+            for (Object value : CollectionUtils.collect(filtered, new BeanToPropertyValueTransformer(property))) {
+                if (value != null) {
+                    ret.add((T) value);
+                }
+            }
+            return ret;
+        }
+
+        private <T> T last(List<T> values) {
+            return values.isEmpty() ? null : Iterables.getLast(values);
+        }
     }
 
     private DataSetRow joinDatasetRows(DataSetRow dataSetRow1, DataSetRow dataSetRow2) {
@@ -0,0 +1,182 @@
+package org.openmrs.module.ugandaemrreports.definition.dimension.definition;
+
+import org.openmrs.module.reporting.ReportingConstants;
+import org.openmrs.module.reporting.common.DurationUnit;
+import org.openmrs.module.reporting.definition.configuration.ConfigurationProperty;
+import org.openmrs.module.reporting.indicator.dimension.CohortDefinitionDimension;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A dimension of age bands, genders or both. Unlike a {@link CohortDefinitionDimension} made of age and gender
+ * cohort definitions, which runs a query per option, every option is worked out from one read of the birthdate and
+ * gender of each person, so it can be used in place of one in any cohort indicator data set.
+ */
+public class AgeGenderDimension extends CohortDefinitionDimension {
+
+    public static final String MALE = "M";
+
+    public static final String FEMALE = "F";
+
+    /**
+     * Name of the parameter ages are worked out on
+     */
+    @ConfigurationProperty
+    private String effectiveDateParameter = ReportingConstants.END_DATE_PARAMETER.getName();
+
+    @ConfigurationProperty
+    private List<Option> options = new ArrayList<Option>();
+
+    public AgeGenderDimension() {
+    }
+
+    public AgeGenderDimension(String name) {
+        setName(name);
+    }
+
+    /**
+     * Adds an option of people of the given gender, of any age
+     */
+    public AgeGenderDimension addGender(String key, String gender) {
+        return addOption(key, null, null, null, null, gender);
+    }
+
+    /**
+     * Adds an option of people aged between minAge and maxAge years inclusive on the effective date
+     *
+     * @param minAge the minimum age, or null for no minimum
+     * @param maxAge the maximum age, or null for no maximum
+     * @param gender {@link #MALE}, {@link #FEMALE} or null for both
+     */
+    public AgeGenderDimension addOption(String key, Integer minAge, Integer maxAge, String gender) {
+        return addOption(key, minAge, DurationUnit.YEARS, maxAge, DurationUnit.YEARS, gender);
+    }
+
+    /**
+     * Adds an option of people aged between minAge and maxAge inclusive, in the given units, on the effective date
+     */
+    public AgeGenderDimension addOption(String key, Integer minAge, DurationUnit minAgeUnit, Integer maxAge, DurationUnit maxAgeUnit, String gender) {
+        options.add(new Option(key, minAge, minAgeUnit, maxAge, maxAgeUnit, gender));
+        return this;
+    }
+
+    /**
+     * Adds a male and a female option for an age band, keyed by the prefix followed by "male" and "female"
+     */
+    public AgeGenderDimension addMaleAndFemale(String keyPrefix, Integer minAge, Integer maxAge) {
+        addOption(keyPrefix + "male", minAge, maxAge, MALE);
+        return addOption(keyPrefix + "female", minAge, maxAge, FEMALE);
+    }
+
+    @Override
+    public List<String> getOptionKeys() {
+        List<String> keys = new ArrayList<String>();
+        for (Option option : options) {
+            keys.add(option.getKey());
+        }
+        return keys;
+    }
+
+    public String getEffectiveDateParameter() {
+        return effectiveDateParameter;
+    }
+
+    public void setEffectiveDateParameter(String effectiveDateParameter) {
+        this.effectiveDateParameter = effectiveDateParameter;
+    }
+
+    public List<Option> getOptions() {
+        return options;
+    }
+
+    public void setOptions(List<Option> options) {
+        this.options = options;
+    }
+
+    /**
+     * An age band and gender. Ages follow the AgeCohortDefinition rules: a person is minAge old from the
+     * anniversary of their birth and stops being maxAge old on the anniversary after it.
+     */
+    public static class Option {
+
+        private String key;
+
+        private Integer minAge;
+
+        private DurationUnit minAgeUnit;
+
+        private Integer maxAge;
+
+        private DurationUnit maxAgeUnit;
+
+        private String gender;
+
+        public Option() {
+        }
+
+        public Option(String key, Integer minAge, DurationUnit minAgeUnit, Integer maxAge, DurationUnit maxAgeUnit, String gender) {
+            this.key = key;
+            this.minAge = minAge;
+            this.minAgeUnit = minAgeUnit;
+            this.maxAge = maxAge;
+            this.maxAgeUnit = maxAgeUnit;
+            this.gender = gender;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public void setKey(String key) {
+            this.key = key;
+        }
+
+        public Integer getMinAge() {
+            return minAge;
+        }
+
+        public void setMinAge(Integer minAge) {
+            this.minAge = minAge;
+        }
+
+        public DurationUnit getMinAgeUnit() {
+            return minAgeUnit;
+        }
+
+        public void setMinAgeUnit(DurationUnit minAgeUnit) {
+            this.minAgeUnit = minAgeUnit;
+        }
+
+        public Integer getMaxAge() {
+            return maxAge;
+        }
+
+        public void setMaxAge(Integer maxAge) {
+            this.maxAge = maxAge;
+        }
+
+        public DurationUnit getMaxAgeUnit() {
+            return maxAgeUnit;
+        }
+
+        public void setMaxAgeUnit(DurationUnit maxAgeUnit) {
+            this.maxAgeUnit = maxAgeUnit;
+        }
+
+        public String getGender() {
+            return gender;
+        }
+
+        public void setGender(String gender) {
+            this.gender = gender;
+        }
+
+        /**
+         * @return true if age bounds apply to this option
+         */
+        public boolean isAgeRestricted() {
+            return minAge != null || maxAge != null;
+        }
+    }
+}
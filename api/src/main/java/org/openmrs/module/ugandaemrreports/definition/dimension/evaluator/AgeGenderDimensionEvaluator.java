@@ -0,0 +1,102 @@
+package org.openmrs.module.ugandaemrreports.definition.dimension.evaluator;
+
+import org.openmrs.Cohort;
+import org.openmrs.Person;
+import org.openmrs.annotation.Handler;
+import org.openmrs.module.reporting.ReportingConstants;
+import org.openmrs.module.reporting.common.DateUtil;
+import org.openmrs.module.reporting.common.DurationUnit;
+import org.openmrs.module.reporting.evaluation.EvaluationContext;
+import org.openmrs.module.reporting.evaluation.EvaluationException;
+import org.openmrs.module.reporting.evaluation.querybuilder.HqlQueryBuilder;
+import org.openmrs.module.reporting.evaluation.service.EvaluationService;
+import org.openmrs.module.reporting.indicator.dimension.CohortDimensionResult;
+import org.openmrs.module.reporting.indicator.dimension.Dimension;
+import org.openmrs.module.reporting.indicator.dimension.evaluator.DimensionEvaluator;
+import org.openmrs.module.ugandaemrreports.definition.dimension.definition.AgeGenderDimension;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Evaluates an {@link AgeGenderDimension} with a single query for the birthdate and gender of the people in the base
+ * cohort, placing each person in every option they belong to in one pass
+ */
+@Handler(supports = {AgeGenderDimension.class}, order = 50)
+public class AgeGenderDimensionEvaluator implements DimensionEvaluator {
+
+    @Autowired
+    private EvaluationService evaluationService;
+
+    @Override
+    public CohortDimensionResult evaluate(Dimension dimension, EvaluationContext context) throws EvaluationException {
+        AgeGenderDimension ageGenderDimension = (AgeGenderDimension) dimension;
+        List<AgeGenderDimension.Option> options = ageGenderDimension.getOptions();
+        Date effectiveDate = getEffectiveDate(ageGenderDimension, context);
+
+        // a person is in an option if born on or before its earliest and after its latest birthdate
+        int n = options.size();
+        Date[] latestBirthdate = new Date[n];
+        Date[] earliestBirthdate = new Date[n];
+        Cohort[] cohorts = new Cohort[n];
+        for (int i = 0; i < n; i++) {
+            AgeGenderDimension.Option option = options.get(i);
+            if (option.getMinAge() != null) {
+                latestBirthdate[i] = DateUtil.adjustDate(effectiveDate, -option.getMinAge(), unit(option.getMinAgeUnit()));
+            }
+            if (option.getMaxAge() != null) {
+                earliestBirthdate[i] = DateUtil.adjustDate(effectiveDate, -(option.getMaxAge() + 1), unit(option.getMaxAgeUnit()));
+            }
+            cohorts[i] = new Cohort();
+        }
+
+        HqlQueryBuilder q = new HqlQueryBuilder();
+        q.select("p.personId", "p.gender", "p.birthdate");
+        q.from(Person.class, "p");
+        q.whereEqual("p.voided", false);
+        q.wherePersonIn("p.personId", context);
+
+        for (Object[] row : evaluationService.evaluateToList(q, context)) {
+            Integer personId = (Integer) row[0];
+            String gender = (String) row[1];
+            Date birthdate = (Date) row[2];
+            for (int i = 0; i < n; i++) {
+                AgeGenderDimension.Option option = options.get(i);
+                if (option.getGender() != null && !option.getGender().equals(gender)) {
+                    continue;
+                }
+                if (option.isAgeRestricted()) {
+                    if (birthdate == null) {
+                        continue;
+                    }
+                    if (latestBirthdate[i] != null && birthdate.after(latestBirthdate[i])) {
+                        continue;
+                    }
+                    if (earliestBirthdate[i] != null && !birthdate.after(earliestBirthdate[i])) {
+                        continue;
+                    }
+                }
+                cohorts[i].addMember(personId);
+            }
+        }
+
+        CohortDimensionResult result = new CohortDimensionResult(ageGenderDimension, context);
+        for (int i = 0; i < n; i++) {
+            result.addOptionCohort(options.get(i).getKey(), cohorts[i]);
+        }
+        return result;
+    }
+
+    private Date getEffectiveDate(AgeGenderDimension dimension, EvaluationContext context) {
+        Object value = context.getParameterValue(dimension.getEffectiveDateParameter());
+        if (value == null) {
+            value = context.getParameterValue(ReportingConstants.END_DATE_PARAMETER.getName());
+        }
+        return value instanceof Date ? (Date) value : new Date();
+    }
+
+    private DurationUnit unit(DurationUnit unit) {
+        return unit != null ? unit : DurationUnit.YEARS;
+    }
+}
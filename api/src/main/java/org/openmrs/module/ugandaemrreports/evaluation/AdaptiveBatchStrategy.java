@@ -0,0 +1,71 @@
+package org.openmrs.module.ugandaemrreports.evaluation;
+
+import org.openmrs.OpenmrsObject;
+import org.openmrs.module.reporting.data.patient.definition.PatientDataDefinition;
+import org.openmrs.module.reporting.evaluation.EvaluationContext;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.Map;
+
+/**
+ * Sizes batches so that the data held for one batch fits in a fraction of the heap that is currently free.
+ * The cost of a column is estimated from the type of data its definition produces: lists of obs cost far more per
+ * patient than a date or a number.
+ */
+public class AdaptiveBatchStrategy implements DataEvaluationBatchStrategy {
+
+    public static final int MIN_BATCH_SIZE = 500;
+
+    private static final long VALUE_BYTES_PER_PATIENT = 256;
+
+    private static final long OBJECT_BYTES_PER_PATIENT = 2 * 1024;
+
+    private static final long COLLECTION_BYTES_PER_PATIENT = 16 * 1024;
+
+    private final double heapFraction;
+
+    public AdaptiveBatchStrategy(double heapFraction) {
+        this.heapFraction = heapFraction;
+    }
+
+    @Override
+    public int getBatchSize(PatientDataDefinition definition, int cohortSize, EvaluationContext context) {
+        long budget = (long) (getFreeHeap() * heapFraction);
+        long patients = budget / estimateBytesPerPatient(definition);
+        if (patients >= cohortSize) {
+            return -1;
+        }
+        return (int) Math.max(MIN_BATCH_SIZE, patients);
+    }
+
+    /**
+     * @return the heap that can still be allocated, counting memory the JVM has not yet claimed from the OS
+     */
+    protected long getFreeHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+    }
+
+    /**
+     * @return the estimated memory needed to hold the evaluated value for one patient
+     */
+    protected long estimateBytesPerPatient(PatientDataDefinition definition) {
+        Class<?> type = definition.getDataType();
+        if (type == null) {
+            return OBJECT_BYTES_PER_PATIENT;
+        }
+        if (Collection.class.isAssignableFrom(type) || Map.class.isAssignableFrom(type)) {
+            return COLLECTION_BYTES_PER_PATIENT;
+        }
+        if (Number.class.isAssignableFrom(type) || Date.class.isAssignableFrom(type) || type == String.class
+                || type == Boolean.class) {
+            return VALUE_BYTES_PER_PATIENT;
+        }
+        if (OpenmrsObject.class.isAssignableFrom(type)) {
+            // entities drag their lazily loaded associations into the session with them
+            return OBJECT_BYTES_PER_PATIENT * 2;
+        }
+        return OBJECT_BYTES_PER_PATIENT;
+    }
+}
@@ -0,0 +1,87 @@
+package org.openmrs.module.ugandaemrreports.evaluation;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.ugandaemrreports.api.UgandaEMRReportsService;
+import org.springframework.stereotype.Component;
+
+/**
+ * Keeps the appointment index (the return visits given to each patient, by scheduled date, and the visits that
+ * honoured them) up to date. It is refreshed when the module starts and, before the appointment evaluators read it,
+ * if it was last refreshed longer ago than {@link #GP_REFRESH_MINUTES}; readers see the obs and encounters changed
+ * since the last refresh either way (see UgandaEMRReportsService#getAppointments). Refreshes and rebuilds run one at
+ * a time, each in its own transaction.
+ */
+@Component
+public class AppointmentIndex {
+
+    public static final String GP_REFRESH_MINUTES = "ugandaemrreports.appointmentIndexRefreshMinutes";
+
+    private static final int DEFAULT_REFRESH_MINUTES = 15;
+
+    private static final Log log = LogFactory.getLog(AppointmentIndex.class);
+
+    private final Object lock = new Object();
+
+    private volatile long lastRefreshed;
+
+    /**
+     * Refreshes the index if it was last refreshed longer ago than the refresh interval. Failures are logged rather
+     * than thrown, as the index can be read without refreshing it.
+     */
+    public void refreshIfDue() {
+        if (System.currentTimeMillis() - lastRefreshed < getRefreshMinutes() * 60000L) {
+            return;
+        }
+        synchronized (lock) {
+            if (System.currentTimeMillis() - lastRefreshed < getRefreshMinutes() * 60000L) {
+                return;
+            }
+            try {
+                refresh();
+            }
+            catch (Exception e) {
+                log.warn("Unable to refresh the appointment index", e);
+            }
+        }
+    }
+
+    /**
+     * @return the number of patients updated
+     */
+    public int refresh() {
+        synchronized (lock) {
+            long started = System.currentTimeMillis();
+            int ret = Context.getService(UgandaEMRReportsService.class).refreshAppointmentIndex();
+            lastRefreshed = started;
+            log.debug("Refreshed the appointment index of " + ret + " patients in " + (System.currentTimeMillis() - started) + " ms");
+            return ret;
+        }
+    }
+
+    /**
+     * @return the number of patients indexed
+     */
+    public int rebuild() {
+        synchronized (lock) {
+            long started = System.currentTimeMillis();
+            int ret = Context.getService(UgandaEMRReportsService.class).rebuildAppointmentIndex();
+            lastRefreshed = started;
+            log.info("Rebuilt the appointment index of " + ret + " patients in " + (System.currentTimeMillis() - started) + " ms");
+            return ret;
+        }
+    }
+
+    private int getRefreshMinutes() {
+        String value = Context.getAdministrationService().getGlobalProperty(GP_REFRESH_MINUTES);
+        try {
+            return StringUtils.isBlank(value) ? DEFAULT_REFRESH_MINUTES : Integer.parseInt(value.trim());
+        }
+        catch (NumberFormatException e) {
+            log.warn("Invalid value for " + GP_REFRESH_MINUTES + ": " + value);
+            return DEFAULT_REFRESH_MINUTES;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package org.openmrs.module.ugandaemrreports.evaluation;
+
+import org.openmrs.Cohort;
+import org.openmrs.OpenmrsObject;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.reporting.data.patient.EvaluatedPatientData;
+import org.openmrs.module.reporting.data.patient.definition.PatientDataDefinition;
+import org.openmrs.module.reporting.data.patient.evaluator.PatientDataEvaluator;
+import org.openmrs.module.reporting.evaluation.EvaluationContext;
+import org.openmrs.module.reporting.evaluation.EvaluationException;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Base class for patient data evaluators whose queries are restricted to the base cohort. The cohort is split into
+ * batches sized by the configured {@link DataEvaluationBatchStrategy} and each batch is evaluated on its own, clearing
+ * the hibernate session in between when the evaluated values do not reference persistent objects.
+ */
+public abstract class BatchedPatientDataEvaluator implements PatientDataEvaluator {
+
+    @Autowired
+    private DataEvaluationBatching dataEvaluationBatching;
+
+    @Override
+    public EvaluatedPatientData evaluate(PatientDataDefinition definition, EvaluationContext context) throws EvaluationException {
+        long start = System.currentTimeMillis();
+        Cohort baseCohort = context.getBaseCohort();
+        if (baseCohort == null || baseCohort.isEmpty()) {
+            return evaluateBatch(definition, context);
+        }
+
+        int cohortSize = baseCohort.size();
+        int batchSize = dataEvaluationBatching.getBatchSize(definition, cohortSize, context);
+        if (batchSize <= 0 || batchSize >= cohortSize) {
+            EvaluatedPatientData ret = evaluateBatch(definition, context);
+            dataEvaluationBatching.record(definition, cohortSize, cohortSize, 1, System.currentTimeMillis() - start);
+            return ret;
+        }
+
+        EvaluatedPatientData ret = new EvaluatedPatientData(definition, context);
+        List<Integer> memberIds = new ArrayList<Integer>(baseCohort.getMemberIds());
+        boolean clearSession = isSessionClearedBetweenBatches(definition);
+        int batches = 0;
+        for (int i = 0; i < memberIds.size(); i += batchSize) {
+            EvaluationContext batchContext = context.shallowCopy();
+            batchContext.setBaseCohort(new Cohort(memberIds.subList(i, Math.min(i + batchSize, memberIds.size()))));
+            ret.getData().putAll(evaluateBatch(definition, batchContext).getData());
+            batches++;
+            if (clearSession) {
+                Context.flushSession();
+                Context.clearSession();
+            }
+        }
+        dataEvaluationBatching.record(definition, cohortSize, batchSize, batches, System.currentTimeMillis() - start);
+        return ret;
+    }
+
+    /**
+     * Evaluates the definition for the patients in the base cohort of the given context
+     */
+    protected abstract EvaluatedPatientData evaluateBatch(PatientDataDefinition definition, EvaluationContext context)
+            throws EvaluationException;
+
+    /**
+     * @return whether the session can be cleared after each batch, which is only safe if the evaluated values do not
+     * need to lazily load anything later on
+     */
+    protected boolean isSessionClearedBetweenBatches(PatientDataDefinition definition) {
+        Class<?> type = definition.getDataType();
+        return type != null && !OpenmrsObject.class.isAssignableFrom(type) && !Collection.class.isAssignableFrom(type)
+                && !Map.class.isAssignableFrom(type) && type != Object.class;
+    }
+}
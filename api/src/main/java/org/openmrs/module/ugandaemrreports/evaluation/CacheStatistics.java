@@ -0,0 +1,84 @@
+package org.openmrs.module.ugandaemrreports.evaluation;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hit and miss counters of a cache kept by this module. Caches get their counters with {@link #forCache(String)}
+ * and the counters of all caches are reported with the performance metrics.
+ */
+public class CacheStatistics {
+
+    private static final ConcurrentMap<String, CacheStatistics> caches = new ConcurrentHashMap<String, CacheStatistics>();
+
+    private final String name;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    private CacheStatistics(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @return the counters of the cache with the given name, created the first time they are asked for
+     */
+    public static CacheStatistics forCache(String name) {
+        CacheStatistics statistics = caches.get(name);
+        if (statistics == null) {
+            caches.putIfAbsent(name, new CacheStatistics(name));
+            statistics = caches.get(name);
+        }
+        return statistics;
+    }
+
+    /**
+     * @return the counters of all caches by name
+     */
+    public static Map<String, CacheStatistics> getAll() {
+        return new TreeMap<String, CacheStatistics>(caches);
+    }
+
+    public void hit() {
+        hits.incrementAndGet();
+    }
+
+    public void miss() {
+        misses.incrementAndGet();
+    }
+
+    public void evicted(int count) {
+        evictions.addAndGet(count);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * @return the share of lookups that were hits, or 0 if there were none
+     */
+    public double getHitRatio() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total == 0 ? 0 : (double) h / total;
+    }
+}
@@ -0,0 +1,120 @@
+package org.openmrs.module.ugandaemrreports.evaluation;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.module.reporting.evaluation.EvaluationContext;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Lets a report run be cancelled while it is being evaluated. Each {@link ReportRun} has one, also carried in the
+ * evaluation context under {@link #CONTEXT_KEY}; evaluators call {@link #check()} between rows and definitions, and
+ * the JDBC connections and statements opened by Helper for the run are registered with it (see
+ * {@link ProfilingConnection}) so that cancelling the run cancels its statements and closes its connections rather
+ * than waiting for them to finish.
+ */
+public class CancellationToken {
+
+    public static final String CONTEXT_KEY = "ugandaemrreports.cancellationToken";
+
+    /**
+     * The token of evaluations that are not part of a report run, which are never cancelled
+     */
+    public static final CancellationToken NONE = new CancellationToken();
+
+    private static final Log log = LogFactory.getLog(CancellationToken.class);
+
+    private volatile String reason;
+
+    private final Set<Statement> statements = Collections.newSetFromMap(new ConcurrentHashMap<Statement, Boolean>());
+
+    private final Set<Connection> connections = Collections.newSetFromMap(new ConcurrentHashMap<Connection, Boolean>());
+
+    /**
+     * @return the token in the context, or else that of the report run evaluated on this thread, or {@link #NONE}
+     */
+    public static CancellationToken of(EvaluationContext context) {
+        Object token = context != null ? context.getContextValue(CONTEXT_KEY) : null;
+        return token instanceof CancellationToken ? (CancellationToken) token : current();
+    }
+
+    /**
+     * @return the token of the report run evaluated on this thread, or {@link #NONE}
+     */
+    public static CancellationToken current() {
+        ReportRun run = ReportRunContext.getCurrentRun();
+        return run != null ? run.getCancellationToken() : NONE;
+    }
+
+    public boolean isCancelled() {
+        return reason != null;
+    }
+
+    /**
+     * @throws ReportCancelledException if the run was cancelled or the evaluating thread interrupted
+     */
+    public void check() {
+        if (reason != null) {
+            throw new ReportCancelledException(reason);
+        }
+        if (Thread.currentThread().isInterrupted()) {
+            throw new ReportCancelledException("the evaluating thread was interrupted");
+        }
+    }
+
+    /**
+     * Cancels the run: its statements in progress are cancelled and its connections closed, and its evaluators stop
+     * at their next {@link #check()}
+     */
+    public void cancel(String reason) {
+        if (this == NONE) {
+            return;
+        }
+        this.reason = reason != null ? reason : "cancelled";
+        for (Statement statement : statements) {
+            try {
+                statement.cancel();
+            }
+            catch (SQLException e) {
+                log.debug("Unable to cancel a statement", e);
+            }
+        }
+        for (Connection connection : connections) {
+            try {
+                connection.close();
+            }
+            catch (SQLException e) {
+                log.debug("Unable to close a connection", e);
+            }
+        }
+    }
+
+    public String getReason() {
+        return reason;
+    }
+
+    void register(Statement statement) {
+        if (this != NONE) {
+            statements.add(statement);
+        }
+    }
+
+    void unregister(Statement statement) {
+        statements.remove(statement);
+    }
+
+    void register(Connection connection) {
+        if (this != NONE) {
+            connections.add(connection);
+        }
+    }
+
+    void unregister(Connection connection) {
+        connections.remove(connection);
+    }
+}
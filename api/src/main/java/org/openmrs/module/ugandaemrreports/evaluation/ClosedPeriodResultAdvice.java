@@ -0,0 +1,192 @@
+package org.openmrs.module.ugandaemrreports.evaluation;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.reporting.common.DateUtil;
+import org.openmrs.module.reporting.common.DurationUnit;
+import org.openmrs.module.reporting.dataset.DataSetColumn;
+import org.openmrs.module.reporting.dataset.MapDataSet;
+import org.openmrs.module.reporting.dataset.definition.DataSetDefinition;
+import org.openmrs.module.reporting.evaluation.EvaluationContext;
+import org.openmrs.module.reporting.evaluation.EvaluationUtil;
+import org.openmrs.module.reporting.evaluation.parameter.Mapped;
+import org.openmrs.module.reporting.indicator.IndicatorResult;
+import org.openmrs.module.ugandaemrreports.api.UgandaEMRReportsService;
+import org.openmrs.module.ugandaemrreports.definition.dataset.definition.BatchedCohortIndicatorDataSetDefinition;
+import org.openmrs.module.ugandaemrreports.reports.UgandaEMRReportManager;
+
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Around advice on the DataSetDefinitionService (see config.xml) that answers the evaluation of a
+ * {@link BatchedCohortIndicatorDataSetDefinition} for a period that has ended from the result stored when it was
+ * last evaluated for that period, e.g. a closed month of the HMIS 105 or 106A reopened for DHIS2 reconciliation.
+ * A stored result is used only while nothing it may have been worked out from has been created, changed or voided
+ * since it started to be evaluated (the watermark): obs, encounters and program enrolments dated before the end of
+ * the period, whatever their date before it, so that cumulative indicators such as patients who ever started ART
+ * are invalidated by a backdated correction, and the people and patients, e.g. a corrected birthdate or a voided
+ * patient. Data dated after the period cannot change its counts, so visits entered since do not invalidate it.
+ * <p>
+ * Only the counts of the cells are stored, so a data set answered from the store holds a plain count in each cell
+ * rather than the {@link IndicatorResult} the evaluator gives, and its patients cannot be drilled down to.
+ */
+public class ClosedPeriodResultAdvice implements MethodInterceptor {
+
+    public static final String GP_RESULT_STORE_ENABLED = "ugandaemrreports.closedPeriodResultStoreEnabled";
+
+    public static final String NAME = "closedPeriodResults";
+
+    private final Log log = LogFactory.getLog(getClass());
+
+    private final CacheStatistics statistics = CacheStatistics.forCache(NAME);
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        ReportRun run = ReportRunContext.getCurrentRun();
+        if (run == null || !"evaluate".equals(invocation.getMethod().getName()) || invocation.getArguments().length != 2
+                || !isEnabled()) {
+            return invocation.proceed();
+        }
+
+        Object definition = invocation.getArguments()[0];
+        EvaluationContext context = invocation.getArguments()[1] instanceof EvaluationContext ?
+                (EvaluationContext) invocation.getArguments()[1] : new EvaluationContext();
+        if (definition instanceof Mapped) {
+            Mapped<?> mapped = (Mapped<?>) definition;
+            context = EvaluationUtil.cloneForChild(context, mapped);
+            definition = mapped.getParameterizable();
+        }
+        if (!(definition instanceof BatchedCohortIndicatorDataSetDefinition)) {
+            return invocation.proceed();
+        }
+        BatchedCohortIndicatorDataSetDefinition dsd = (BatchedCohortIndicatorDataSetDefinition) definition;
+
+        Date periodStart = getDate(context, "startDate");
+        Date periodEnd = getDate(context, "endDate");
+        if (periodStart == null || periodEnd == null || !periodEnd.before(DateUtil.getStartOfDay(new Date()))) {
+            return invocation.proceed();
+        }
+        Date periodEndExclusive = DateUtil.getStartOfDay(DateUtil.adjustDate(periodEnd, 1, DurationUnit.DAYS));
+
+        UgandaEMRReportsService service = Context.getService(UgandaEMRReportsService.class);
+        String key;
+        Date watermark;
+        try {
+            key = getKey(run, dsd, context);
+            if (key == null) {
+                return invocation.proceed();
+            }
+            watermark = new Date();
+            DataSetResult stored = service.getDataSetResult(key);
+            if (stored != null && stored.getWatermark() != null && run.getReportDefinitionUuid().equals(stored.getReportDefinitionUuid())
+                    && !service.isDataChangedSince(stored.getWatermark(), periodEndExclusive)) {
+                MapDataSet ret = toDataSet(dsd, context, stored);
+                if (ret != null) {
+                    statistics.hit();
+                    log.debug(run + ": " + dsd.getName() + " answered from the result stored on " + stored.getCreated());
+                    return ret;
+                }
+            }
+            statistics.miss();
+        }
+        catch (Exception e) {
+            // never fail a report because the store could not be read
+            log.warn("Unable to read the stored result of " + dsd.getName() + " for " + run, e);
+            return invocation.proceed();
+        }
+
+        // the watermark is taken before evaluating, so that data changed meanwhile invalidates the stored result
+        Object result = invocation.proceed();
+        if (result instanceof MapDataSet) {
+            save((MapDataSet) result, key, watermark, run, dsd, periodStart, periodEnd, service);
+        }
+        return result;
+    }
+
+    private void save(MapDataSet dataSet, String key, Date watermark, ReportRun run, DataSetDefinition dsd, Date periodStart,
+                      Date periodEnd, UgandaEMRReportsService service) {
+        Map<String, Integer> values = new LinkedHashMap<String, Integer>();
+        for (Map.Entry<DataSetColumn, Object> cell : dataSet.getData().getColumnValues().entrySet()) {
+            // only counts are stored, see BatchedCohortIndicatorDataSetEvaluator
+            Object value = cell.getValue() instanceof IndicatorResult ? ((IndicatorResult) cell.getValue()).getValue() : cell.getValue();
+            if (!(value instanceof Integer)) {
+                return;
+            }
+            values.put(cell.getKey().getName(), (Integer) value);
+        }
+        DataSetResult stored = new DataSetResult();
+        stored.setResultKey(key);
+        stored.setReportDefinitionUuid(run.getReportDefinitionUuid());
+        stored.setDataSetName(dsd.getName());
+        stored.setPeriodStart(periodStart);
+        stored.setPeriodEnd(periodEnd);
+        stored.setWatermark(watermark);
+        stored.setCreated(new Date());
+        stored.setValues(values);
+        try {
+            service.saveDataSetResult(stored);
+        }
+        catch (Exception e) {
+            log.warn("Unable to store the result of " + dsd.getName() + " for " + run, e);
+        }
+    }
+
+    /**
+     * @return the key of the result: the report, the data set's key in it, the parameter values and the version of
+     * the report, so that each request of the same data set and period replaces the stored result rather than adding
+     * one; or null if the data set is not one of the report's, or is evaluated for a base cohort
+     */
+    private String getKey(ReportRun run, DataSetDefinition dsd, EvaluationContext context) {
+        String dataSetKey = run.getDataSetKey(dsd);
+        if (dataSetKey == null || context.getBaseCohort() != null) {
+            return null;
+        }
+        return EvaluationKey.of(run.getReportDefinitionUuid(), context.getParameterValues(), null, dataSetKey,
+                getReportVersion(run.getReportDefinitionUuid()));
+    }
+
+    private String getReportVersion(String reportDefinitionUuid) {
+        for (UgandaEMRReportManager manager : Context.getRegisteredComponents(UgandaEMRReportManager.class)) {
+            if (manager.getUuid().equals(reportDefinitionUuid)) {
+                return manager.getVersion();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the stored cells as a data set of the given definition, or null if they no longer match its columns
+     */
+    private MapDataSet toDataSet(BatchedCohortIndicatorDataSetDefinition dsd, EvaluationContext context, DataSetResult stored) {
+        MapDataSet ret = new MapDataSet(dsd, context);
+        ret.setName(dsd.getName());
+        ret.setDescription(dsd.getDescription());
+        for (DataSetColumn column : dsd.getDataSetColumns()) {
+            Integer value = stored.getValues().get(column.getName());
+            if (value == null) {
+                return null;
+            }
+            ret.addData(column, value);
+        }
+        return ret;
+    }
+
+    private Date getDate(EvaluationContext context, String parameter) {
+        Object value = context.getParameterValue(parameter);
+        return value instanceof Date ? (Date) value : null;
+    }
+
+    private boolean isEnabled() {
+        try {
+            return !"false".equalsIgnoreCase(Context.getAdministrationService().getGlobalProperty(GP_RESULT_STORE_ENABLED));
+        }
+        catch (Exception e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package org.openmrs.module.ugandaemrreports.evaluation;
+
+import org.openmrs.module.reporting.common.DateUtil;
+import org.openmrs.module.reporting.evaluation.EvaluationContext;
+import org.openmrs.module.reporting.evaluation.querybuilder.SqlQueryBuilder;
+import org.openmrs.module.reporting.evaluation.service.EvaluationService;
+import org.openmrs.module.ugandaemrreports.common.DSDMSnapshot;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Builds the {@link DSDMSnapshot} of a period with one query per fact, and keeps it for the rest of the report run so
+ * that every DSDM cohort and data column of a report filters the same snapshot. Like the queries they replace, the
+ * snapshot covers the whole facility, so it is shared whatever the base cohort of a cell.
+ */
+@Component
+public class DSDMSnapshots {
+
+    public static final String NAME = "dsdmSnapshots";
+
+    private static final String DSDM_PROGRAMS = "'de5d54ae-c304-11e8-9ad0-529269fb1459','de5d5b34-c304-11e8-9ad0-529269fb1459'," +
+            "'de5d5896-c304-11e8-9ad0-529269fb1459','de5d5da0-c304-11e8-9ad0-529269fb1459','de5d6034-c304-11e8-9ad0-529269fb1459'";
+
+    private static final String NON_CARE_PROGRAMS = "'19cfd5dd-927f-44ad-8be2-80d8dc5c337d','37811e6c-819f-4e1c-b9cd-89fbd39f4bd4'";
+
+    private static final String ADHERENCE = "dce03b2f-30ab-102d-86b0-7a5022ba4115";
+
+    private static final String VIRAL_LOAD = "dc8d83e3-30ab-102d-86b0-7a5022ba4115";
+
+    private static final int GOOD_ADHERENCE = 90156;
+
+    @Autowired
+    private EvaluationService evaluationService;
+
+    private final CacheStatistics statistics = CacheStatistics.forCache(NAME);
+
+    /**
+     * @param startDate the start of the period, or null for a snapshot of the DSDM models only
+     * @param endDate   the end of the period, or null for a snapshot of the DSDM models only
+     * @return the snapshot of the period built earlier in the report run, or a new one
+     */
+    public DSDMSnapshot getSnapshot(Date startDate, Date endDate, EvaluationContext context) {
+        ReportRun run = ReportRunContext.getCurrentRun();
+        List<Object> key = Arrays.<Object>asList(DateUtil.formatDate(startDate, "yyyy-MM-dd"), DateUtil.formatDate(endDate, "yyyy-MM-dd"));
+        DSDMSnapshot ret = run != null ? run.getDSDMSnapshot(key) : null;
+        if (ret != null) {
+            statistics.hit();
+            return ret;
+        }
+        statistics.miss();
+        ret = load(startDate, endDate, context);
+        if (run != null) {
+            run.putDSDMSnapshot(key, ret);
+        }
+        return ret;
+    }
+
+    private DSDMSnapshot load(Date startDate, Date endDate, EvaluationContext context) {
+        Map<Integer, Integer> facts = new HashMap<Integer, Integer>();
+        List<Object[]> models = evaluationService.evaluateToList(new SqlQueryBuilder("SELECT pg.patient_id, p.name, pg.date_enrolled " +
+                "FROM patient_program pg INNER JOIN program p ON p.program_id = pg.program_id " +
+                "WHERE p.uuid IN (" + DSDM_PROGRAMS + ") ORDER BY pg.date_enrolled, pg.patient_program_id"), context);
+
+        if (startDate != null && endDate != null) {
+            String start = DateUtil.formatDate(startDate, "yyyy-MM-dd");
+            String end = DateUtil.formatDate(endDate, "yyyy-MM-dd");
+
+            addFact(facts, DSDMSnapshot.ENROLLED, String.format("SELECT p.patient_id FROM patient a INNER JOIN patient_program p ON a.patient_id = p.patient_id " +
+                    "WHERE p.date_enrolled BETWEEN '%s' AND '%s' AND p.date_completed IS NULL GROUP BY p.patient_id", start, end), context);
+
+            // good adherence is every adherence assessment of the 6 months being good
+            Map<Integer, Boolean> goodAdherence = new HashMap<Integer, Boolean>();
+            SqlQueryBuilder adherence = new SqlQueryBuilder(String.format("SELECT o.person_id, o.value_coded FROM obs o " +
+                    "WHERE o.concept_id = (SELECT concept_id FROM concept WHERE uuid = '%s') " +
+                    "AND o.obs_datetime >= DATE_SUB('%s', INTERVAL 6 MONTH) AND o.obs_datetime < '%s' AND o.voided = 0", ADHERENCE, start, start));
+            for (Object[] row : evaluationService.evaluateToList(adherence, context)) {
+                if (row[1] == null) {
+                    continue;
+                }
+                Integer patientId = ((Number) row[0]).intValue();
+                boolean good = GOOD_ADHERENCE == ((Number) row[1]).intValue();
+                Boolean was = goodAdherence.get(patientId);
+                goodAdherence.put(patientId, was == null ? good : was && good);
+            }
+            for (Map.Entry<Integer, Boolean> e : goodAdherence.entrySet()) {
+                if (e.getValue()) {
+                    putFact(facts, e.getKey(), DSDMSnapshot.GOOD_ADHERENCE);
+                }
+            }
+
+            addFact(facts, DSDMSnapshot.CLINICAL_STAGE_1_OR_2, String.format("SELECT e.patient_id FROM obs o INNER JOIN encounter e ON o.encounter_id = e.encounter_id " +
+                    "WHERE o.concept_id = 90203 AND o.value_coded IN (90033, 90034) AND o.voided = 0 " +
+                    "AND o.obs_datetime BETWEEN '%s' AND '%s' GROUP BY e.patient_id", start, end), context);
+
+            addFact(facts, DSDMSnapshot.VIRALLY_SUPPRESSED, String.format("SELECT o.person_id FROM obs o " +
+                    "WHERE o.concept_id = (SELECT concept_id FROM concept WHERE uuid = '%s') AND o.value_numeric < 1000 AND o.voided = 0 " +
+                    "AND o.obs_datetime >= DATE_SUB('%s', INTERVAL 12 MONTH) AND o.obs_datetime < '%s' GROUP BY o.person_id", VIRAL_LOAD, start, start), context);
+
+            addFact(facts, DSDMSnapshot.UNSUPPRESSED_VL, String.format("SELECT o.person_id FROM obs o " +
+                    "WHERE o.concept_id = (SELECT concept_id FROM concept WHERE uuid = '%s') AND o.value_numeric >= 1000 AND o.voided = 0 " +
+                    "AND o.obs_datetime BETWEEN '%s' AND '%s' GROUP BY o.person_id", VIRAL_LOAD, start, end), context);
+
+            addFact(facts, DSDMSnapshot.IN_CARE, String.format("SELECT DISTINCT pg.patient_id FROM patient_program pg " +
+                    "INNER JOIN program p ON p.program_id = pg.program_id INNER JOIN encounter e ON e.patient_id = pg.patient_id " +
+                    "WHERE p.uuid NOT IN (" + NON_CARE_PROGRAMS + ") AND e.encounter_datetime BETWEEN '%s' AND '%s'", start, end), context);
+        }
+
+        Set<Integer> patientIds = new TreeSet<Integer>(facts.keySet());
+        for (Object[] row : models) {
+            patientIds.add(((Number) row[0]).intValue());
+        }
+        DSDMSnapshot ret = new DSDMSnapshot(startDate, endDate, new ArrayList<Integer>(patientIds));
+        for (Map.Entry<Integer, Integer> e : facts.entrySet()) {
+            ret.addFact(e.getKey(), e.getValue());
+        }
+        for (Object[] row : models) {
+            ret.setModel(((Number) row[0]).intValue(), String.valueOf(row[1]), (Date) row[2]);
+        }
+        return ret;
+    }
+
+    private void addFact(Map<Integer, Integer> facts, int fact, String sql, EvaluationContext context) {
+        for (Integer patientId : evaluationService.evaluateToList(new SqlQueryBuilder(sql), Integer.class, context)) {
+            putFact(facts, patientId, fact);
+        }
+    }
+
+    private void putFact(Map<Integer, Integer> facts, Integer patientId, int fact) {
+        Integer was = facts.get(patientId);
+        facts.put(patientId, was == null ? fact : was | fact);
+    }
+}
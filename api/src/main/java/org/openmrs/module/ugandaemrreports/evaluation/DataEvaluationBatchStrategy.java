@@ -0,0 +1,18 @@
+package org.openmrs.module.ugandaemrreports.evaluation;
+
+import org.openmrs.module.reporting.data.patient.definition.PatientDataDefinition;
+import org.openmrs.module.reporting.evaluation.EvaluationContext;
+
+/**
+ * Decides how many patients a {@link BatchedPatientDataEvaluator} evaluates at a time
+ */
+public interface DataEvaluationBatchStrategy {
+
+    /**
+     * @param definition the definition being evaluated
+     * @param cohortSize the number of patients in the base cohort
+     * @param context    the evaluation context
+     * @return the number of patients per batch, or a value <= 0 to evaluate the whole cohort at once
+     */
+    int getBatchSize(PatientDataDefinition definition, int cohortSize, EvaluationContext context);
+}
@@ -0,0 +1,171 @@
+package org.openmrs.module.ugandaemrreports.evaluation;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.reporting.data.patient.definition.PatientDataDefinition;
+import org.openmrs.module.reporting.evaluation.EvaluationContext;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Chooses the {@link DataEvaluationBatchStrategy} configured through global properties and keeps a record of the
+ * batch sizes it chose for each report.
+ * <p>
+ * {@link #GP_BATCH_STRATEGY} is either "adaptive" (the default), or a fixed number of patients per batch where a
+ * value <= 0 evaluates the whole cohort at once.
+ */
+@Component
+public class DataEvaluationBatching {
+
+    protected final Log log = LogFactory.getLog(getClass());
+
+    public static final String GP_BATCH_STRATEGY = "ugandaemrreports.dataEvaluationBatchStrategy";
+
+    public static final String GP_HEAP_FRACTION = "ugandaemrreports.dataEvaluationHeapFraction";
+
+    public static final String ADAPTIVE = "adaptive";
+
+    private static final double DEFAULT_HEAP_FRACTION = 0.25;
+
+    private static final int MAX_DECISIONS_PER_REPORT = 100;
+
+    private final Map<String, LinkedList<BatchDecision>> decisions = new HashMap<String, LinkedList<BatchDecision>>();
+
+    /**
+     * @return the strategy currently configured
+     */
+    public DataEvaluationBatchStrategy getStrategy() {
+        String value = Context.getAdministrationService().getGlobalProperty(GP_BATCH_STRATEGY, ADAPTIVE);
+        if (StringUtils.isBlank(value) || ADAPTIVE.equalsIgnoreCase(value.trim())) {
+            return new AdaptiveBatchStrategy(getHeapFraction());
+        }
+        try {
+            return new FixedBatchStrategy(Integer.parseInt(value.trim()));
+        }
+        catch (NumberFormatException e) {
+            log.warn("Invalid value '" + value + "' for " + GP_BATCH_STRATEGY + ", using the adaptive strategy");
+            return new AdaptiveBatchStrategy(getHeapFraction());
+        }
+    }
+
+    private double getHeapFraction() {
+        String value = Context.getAdministrationService().getGlobalProperty(GP_HEAP_FRACTION);
+        try {
+            double fraction = StringUtils.isBlank(value) ? DEFAULT_HEAP_FRACTION : Double.parseDouble(value.trim());
+            return fraction > 0 && fraction <= 1 ? fraction : DEFAULT_HEAP_FRACTION;
+        }
+        catch (NumberFormatException e) {
+            return DEFAULT_HEAP_FRACTION;
+        }
+    }
+
+    /**
+     * @return the batch size to use for the definition, or a value <= 0 for no batching
+     */
+    public int getBatchSize(PatientDataDefinition definition, int cohortSize, EvaluationContext context) {
+        return getStrategy().getBatchSize(definition, cohortSize, context);
+    }
+
+    /**
+     * Records the batch size that was used to evaluate a definition in the current report
+     */
+    public void record(PatientDataDefinition definition, int cohortSize, int batchSize, int batches, long duration) {
+        String report = ReportRunContext.getCurrentReportName();
+        BatchDecision decision = new BatchDecision(definitionName(definition), cohortSize, batchSize, batches, duration);
+        if (log.isDebugEnabled()) {
+            log.debug(report + ": " + decision);
+        }
+        synchronized (decisions) {
+            LinkedList<BatchDecision> l = decisions.get(report);
+            if (l == null) {
+                l = new LinkedList<BatchDecision>();
+                decisions.put(report, l);
+            }
+            l.addLast(decision);
+            if (l.size() > MAX_DECISIONS_PER_REPORT) {
+                l.removeFirst();
+            }
+        }
+    }
+
+    /**
+     * @return the most recent batch decisions, by report name
+     */
+    public Map<String, List<BatchDecision>> getDecisions() {
+        Map<String, List<BatchDecision>> ret = new HashMap<String, List<BatchDecision>>();
+        synchronized (decisions) {
+            for (Map.Entry<String, LinkedList<BatchDecision>> e : decisions.entrySet()) {
+                ret.put(e.getKey(), new ArrayList<BatchDecision>(e.getValue()));
+            }
+        }
+        return ret;
+    }
+
+    private String definitionName(PatientDataDefinition definition) {
+        return StringUtils.isNotBlank(definition.getName()) ? definition.getName() : definition.getClass().getSimpleName();
+    }
+
+    /**
+     * The batch size chosen for one evaluation of a data definition
+     */
+    public static class BatchDecision {
+
+        private final Date date = new Date();
+
+        private final String definition;
+
+        private final int cohortSize;
+
+        private final int batchSize;
+
+        private final int batches;
+
+        private final long duration;
+
+        public BatchDecision(String definition, int cohortSize, int batchSize, int batches, long duration) {
+            this.definition = definition;
+            this.cohortSize = cohortSize;
+            this.batchSize = batchSize;
+            this.batches = batches;
+            this.duration = duration;
+        }
+
+        public Date getDate() {
+            return date;
+        }
+
+        public String getDefinition() {
+            return definition;
+        }
+
+        public int getCohortSize() {
+            return cohortSize;
+        }
+
+        public int getBatchSize() {
+            return batchSize;
+        }
+
+        public int getBatches() {
+            return batches;
+        }
+
+        public long getDuration() {
+            return duration;
+        }
+
+        @Override
+        public String toString() {
+            return definition + ": " + cohortSize + " patients in " + batches + " batch(es) of " + batchSize + " in "
+                    + duration + "ms";
+        }
+    }
+}
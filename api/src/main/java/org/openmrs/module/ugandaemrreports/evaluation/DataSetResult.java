@@ -0,0 +1,103 @@
+package org.openmrs.module.ugandaemrreports.evaluation;
+
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The cells of an indicator data set evaluated for a period that had ended, kept so that the data set is not
+ * evaluated again for the same period until data dated in the period changes (see {@link ClosedPeriodResultAdvice})
+ */
+public class DataSetResult {
+
+    private String resultKey;
+
+    private String reportDefinitionUuid;
+
+    private String dataSetName;
+
+    private Date periodStart;
+
+    private Date periodEnd;
+
+    private Date watermark;
+
+    private Date created;
+
+    private Map<String, Integer> values = new LinkedHashMap<String, Integer>();
+
+    /**
+     * @return the {@link EvaluationKey} of the report, the data set's key in it, its parameter values and the report
+     * version
+     */
+    public String getResultKey() {
+        return resultKey;
+    }
+
+    public void setResultKey(String resultKey) {
+        this.resultKey = resultKey;
+    }
+
+    public String getReportDefinitionUuid() {
+        return reportDefinitionUuid;
+    }
+
+    public void setReportDefinitionUuid(String reportDefinitionUuid) {
+        this.reportDefinitionUuid = reportDefinitionUuid;
+    }
+
+    public String getDataSetName() {
+        return dataSetName;
+    }
+
+    public void setDataSetName(String dataSetName) {
+        this.dataSetName = dataSetName;
+    }
+
+    public Date getPeriodStart() {
+        return periodStart;
+    }
+
+    public void setPeriodStart(Date periodStart) {
+        this.periodStart = periodStart;
+    }
+
+    public Date getPeriodEnd() {
+        return periodEnd;
+    }
+
+    public void setPeriodEnd(Date periodEnd) {
+        this.periodEnd = periodEnd;
+    }
+
+    /**
+     * @return when the data set started to be evaluated; the result holds while no data it may have been worked out
+     * from has been created, changed or voided since
+     */
+    public Date getWatermark() {
+        return watermark;
+    }
+
+    public void setWatermark(Date watermark) {
+        this.watermark = watermark;
+    }
+
+    public Date getCreated() {
+        return created;
+    }
+
+    public void setCreated(Date created) {
+        this.created = created;
+    }
+
+    /**
+     * @return the value of each cell by column name
+     */
+    public Map<String, Integer> getValues() {
+        return values;
+    }
+
+    public void setValues(Map<String, Integer> values) {
+        this.values = values;
+    }
+}
@@ -0,0 +1,183 @@
+package org.openmrs.module.ugandaemrreports.evaluation;
+
+import org.openmrs.Cohort;
+import org.openmrs.OpenmrsObject;
+import org.openmrs.module.reporting.evaluation.BaseDefinition;
+import org.openmrs.module.reporting.evaluation.Definition;
+import org.openmrs.module.reporting.evaluation.EvaluationContext;
+import org.openmrs.module.reporting.evaluation.parameter.Mapped;
+import org.openmrs.module.reporting.evaluation.parameter.Parameter;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A structural fingerprint of a definition evaluated in a context: the class and properties of the definition and
+ * of every definition mapped into it, the values of the parameters it uses and the base cohort.
+ * Two definitions built separately with the same properties have the same fingerprint, unlike their uuids.
+ * Properties of a type that cannot be described by value are described by identity, so they never match.
+ */
+public class DefinitionFingerprint {
+
+    private static final int MAX_DEPTH = 20;
+
+    private static final Pattern EXPRESSION = Pattern.compile("\\$\\{\\s*([A-Za-z_][A-Za-z0-9_.]*)");
+
+    /**
+     * @return the fingerprint of the definition evaluated in the given context
+     */
+    public static String of(Definition definition, EvaluationContext context) {
+        StringBuilder sb = new StringBuilder();
+        describe(definition, sb, 0);
+
+        // the parameters the definition declares and those referenced by the mappings of its children
+        Set<String> used = new TreeSet<String>();
+        for (Parameter parameter : definition.getParameters()) {
+            used.add(parameter.getName());
+        }
+        Matcher m = EXPRESSION.matcher(sb);
+        while (m.find()) {
+            used.add(m.group(1));
+        }
+        sb.append("|parameters{");
+        for (String name : used) {
+            sb.append(name).append('=');
+            describe(context == null ? null : context.getParameterValue(name), sb, 0);
+            sb.append(';');
+        }
+        sb.append("}|base=");
+        describe(context == null ? null : context.getBaseCohort(), sb, 0);
+        return sha1(sb.toString());
+    }
+
+    private static void describe(Object value, StringBuilder sb, int depth) {
+        if (value == null) {
+            sb.append("null");
+        } else if (depth > MAX_DEPTH) {
+            identity(value, sb);
+        } else if (value instanceof String || value instanceof Number || value instanceof Boolean
+                || value instanceof Character || value instanceof Enum) {
+            sb.append(value.getClass().getSimpleName()).append(':').append(value);
+        } else if (value instanceof Date) {
+            sb.append("Date:").append(((Date) value).getTime());
+        } else if (value instanceof Class) {
+            sb.append("Class:").append(((Class) value).getName());
+        } else if (value instanceof Cohort) {
+            Set<Integer> ids = new TreeSet<Integer>(((Cohort) value).getMemberIds());
+            sb.append("Cohort:").append(ids.size()).append(':').append(sha1(ids));
+        } else if (value instanceof OpenmrsObject) {
+            sb.append(value.getClass().getSimpleName()).append(':').append(((OpenmrsObject) value).getUuid());
+        } else if (value instanceof Mapped) {
+            Mapped<?> mapped = (Mapped<?>) value;
+            sb.append("Mapped(");
+            describe(mapped.getParameterizable(), sb, depth + 1);
+            sb.append(',');
+            describe(mapped.getParameterMappings() == null ? null : new TreeMap<String, Object>(mapped.getParameterMappings()), sb, depth + 1);
+            sb.append(')');
+        } else if (value instanceof BaseDefinition) {
+            describeDefinition((Definition) value, sb, depth);
+        } else if (value instanceof Map) {
+            Map<String, String> entries = new TreeMap<String, String>();
+            for (Map.Entry<?, ?> e : ((Map<?, ?>) value).entrySet()) {
+                StringBuilder k = new StringBuilder();
+                StringBuilder v = new StringBuilder();
+                describe(e.getKey(), k, depth + 1);
+                describe(e.getValue(), v, depth + 1);
+                entries.put(k.toString(), v.toString());
+            }
+            sb.append(entries);
+        } else if (value instanceof List) {
+            sb.append('[');
+            for (Object o : (List<?>) value) {
+                describe(o, sb, depth + 1);
+                sb.append(',');
+            }
+            sb.append(']');
+        } else if (value instanceof Collection) {
+            // other collections are unordered, so their elements are described in sorted order
+            Set<String> elements = new TreeSet<String>();
+            for (Object o : (Collection<?>) value) {
+                StringBuilder element = new StringBuilder();
+                describe(o, element, depth + 1);
+                elements.add(element.toString());
+            }
+            sb.append(elements);
+        } else {
+            identity(value, sb);
+        }
+    }
+
+    private static void describeDefinition(BaseDefinition definition, StringBuilder sb, int depth) {
+        sb.append(definition.getClass().getName()).append('{');
+        // every field below BaseDefinition, whose own fields (uuid, name, parameters...) do not change the result
+        for (Class<?> c = definition.getClass(); c != BaseDefinition.class; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                if (Modifier.isStatic(field.getModifiers()) || Modifier.isTransient(field.getModifiers())) {
+                    continue;
+                }
+                field.setAccessible(true);
+                sb.append(field.getName()).append('=');
+                try {
+                    describe(field.get(definition), sb, depth + 1);
+                }
+                catch (IllegalAccessException e) {
+                    identity(definition, sb);
+                }
+                sb.append(';');
+            }
+        }
+        sb.append('}');
+    }
+
+    private static void identity(Object value, StringBuilder sb) {
+        sb.append(value.getClass().getName()).append('@').append(System.identityHashCode(value));
+    }
+
+    private static String sha1(String s) {
+        try {
+            return hex(MessageDigest.getInstance("SHA-1").digest(s.getBytes(StandardCharsets.UTF_8)));
+        }
+        catch (NoSuchAlgorithmException e) {
+            return s;
+        }
+    }
+
+    /**
+     * @return the digest of every one of the ids, in order, so that cohorts with different members never share it
+     */
+    static String sha1(Set<Integer> sortedIds) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            ByteBuffer buffer = ByteBuffer.allocate(4);
+            for (Integer id : sortedIds) {
+                buffer.clear();
+                digest.update(buffer.putInt(id).array());
+            }
+            return hex(digest.digest());
+        }
+        catch (NoSuchAlgorithmException e) {
+            return sortedIds.toString();
+        }
+    }
+
+    private static String hex(byte[] digest) {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : digest) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+}
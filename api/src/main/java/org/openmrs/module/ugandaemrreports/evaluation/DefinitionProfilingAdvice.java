@@ -0,0 +1,71 @@
+package org.openmrs.module.ugandaemrreports.evaluation;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.apache.commons.lang.StringUtils;
+import org.openmrs.module.reporting.cohort.definition.CohortDefinition;
+import org.openmrs.module.reporting.dataset.definition.DataSetDefinition;
+import org.openmrs.module.reporting.evaluation.Definition;
+import org.openmrs.module.reporting.evaluation.EvaluationContext;
+import org.openmrs.module.reporting.evaluation.parameter.Mapped;
+
+/**
+ * Around advice on the data set, cohort, patient data and person data services (see config.xml) that adds every
+ * definition evaluated during a profiled report run to its profile tree, and that stops a cancelled report run
+ * before each definition it evaluates
+ */
+public class DefinitionProfilingAdvice implements MethodInterceptor {
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        Definition definition = getDefinition(invocation);
+        if (definition != null) {
+            Object[] args = invocation.getArguments();
+            CancellationToken.of(args.length > 1 && args[1] instanceof EvaluationContext ? (EvaluationContext) args[1] : null).check();
+        }
+        if (definition == null || !EvaluationProfiler.isProfiling()) {
+            return invocation.proceed();
+        }
+
+        ProfileNode node = EvaluationProfiler.start(getType(definition), getName(definition));
+        Object result;
+        try {
+            result = invocation.proceed();
+        }
+        catch (Throwable t) {
+            EvaluationProfiler.fail(node, t);
+            throw t;
+        }
+        EvaluationProfiler.stop(node, ResultSizes.rows(result), ResultSizes.bytes(result));
+        return result;
+    }
+
+    /**
+     * @return the definition being evaluated, or null if the invocation is not an evaluation
+     */
+    protected Definition getDefinition(MethodInvocation invocation) {
+        if (!"evaluate".equals(invocation.getMethod().getName()) || invocation.getArguments().length == 0) {
+            return null;
+        }
+        Object definition = invocation.getArguments()[0];
+        if (definition instanceof Mapped) {
+            definition = ((Mapped) definition).getParameterizable();
+        }
+        return definition instanceof Definition ? (Definition) definition : null;
+    }
+
+    private String getType(Definition definition) {
+        if (definition instanceof DataSetDefinition) {
+            return ProfileNode.TYPE_DATASET;
+        }
+        if (definition instanceof CohortDefinition) {
+            return ProfileNode.TYPE_COHORT;
+        }
+        return ProfileNode.TYPE_DATA;
+    }
+
+    private String getName(Definition definition) {
+        String type = definition.getClass().getSimpleName();
+        return StringUtils.isBlank(definition.getName()) ? type : definition.getName() + " (" + type + ")";
+    }
+}
@@ -0,0 +1,53 @@
+package org.openmrs.module.ugandaemrreports.evaluation;
+
+import org.openmrs.Cohort;
+import org.openmrs.module.reporting.cohort.EvaluatedCohort;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The cohorts evaluated during one report run, by {@link DefinitionFingerprint}, so that a cohort definition built
+ * again elsewhere in the report with the same properties and parameter values is not evaluated again
+ */
+public class EvaluatedCohortCache {
+
+    public static final String NAME = "evaluatedCohorts";
+
+    private final ConcurrentMap<String, EvaluatedCohort> cohorts = new ConcurrentHashMap<String, EvaluatedCohort>();
+
+    private final AtomicInteger saved = new AtomicInteger();
+
+    private final CacheStatistics statistics = CacheStatistics.forCache(NAME);
+
+    /**
+     * @return a copy of the cohort evaluated earlier in the run with the given fingerprint, or null if there is none
+     */
+    public EvaluatedCohort get(String fingerprint) {
+        EvaluatedCohort cohort = cohorts.get(fingerprint);
+        if (cohort == null) {
+            statistics.miss();
+            return null;
+        }
+        statistics.hit();
+        saved.incrementAndGet();
+        // callers are free to change the cohort they get back
+        return new EvaluatedCohort(new Cohort(cohort.getMemberIds()), cohort.getDefinition(), cohort.getContext());
+    }
+
+    public void put(String fingerprint, EvaluatedCohort cohort) {
+        cohorts.put(fingerprint, new EvaluatedCohort(new Cohort(cohort.getMemberIds()), cohort.getDefinition(), cohort.getContext()));
+    }
+
+    /**
+     * @return the number of evaluations answered from the cache
+     */
+    public int getEvaluationsSaved() {
+        return saved.get();
+    }
+
+    public int size() {
+        return cohorts.size();
+    }
+}
@@ -0,0 +1,67 @@
+package org.openmrs.module.ugandaemrreports.evaluation;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.module.reporting.cohort.EvaluatedCohort;
+import org.openmrs.module.reporting.cohort.definition.CohortDefinition;
+import org.openmrs.module.reporting.evaluation.EvaluationContext;
+import org.openmrs.module.reporting.evaluation.EvaluationUtil;
+import org.openmrs.module.reporting.evaluation.parameter.Mapped;
+
+/**
+ * Around advice on the CohortDefinitionService (see config.xml) that answers the evaluation of a cohort definition
+ * from the {@link EvaluatedCohortCache} of the report run when a definition with the same fingerprint has already
+ * been evaluated in it, e.g. the same encounter and obs cohorts built anew by each MoH 105 indicator
+ */
+public class EvaluatedCohortCacheAdvice implements MethodInterceptor {
+
+    private final Log log = LogFactory.getLog(getClass());
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        ReportRun run = ReportRunContext.getCurrentRun();
+        EvaluatedCohortCache cache = run != null ? run.getEvaluatedCohortCache() : null;
+        if (cache == null || !"evaluate".equals(invocation.getMethod().getName()) || invocation.getArguments().length != 2) {
+            return invocation.proceed();
+        }
+
+        String fingerprint = getFingerprint(invocation.getArguments()[0], invocation.getArguments()[1]);
+        if (fingerprint == null) {
+            return invocation.proceed();
+        }
+        EvaluatedCohort cached = cache.get(fingerprint);
+        if (cached != null) {
+            return cached;
+        }
+        Object result = invocation.proceed();
+        if (result instanceof EvaluatedCohort) {
+            cache.put(fingerprint, (EvaluatedCohort) result);
+        }
+        return result;
+    }
+
+    /**
+     * @return the fingerprint of the cohort definition being evaluated, or null if it cannot be worked out
+     */
+    private String getFingerprint(Object definition, Object context) {
+        try {
+            EvaluationContext evaluationContext = context instanceof EvaluationContext ? (EvaluationContext) context : null;
+            if (definition instanceof Mapped) {
+                Mapped<?> mapped = (Mapped<?>) definition;
+                // the service maps the parameters itself before evaluating the definition
+                evaluationContext = EvaluationUtil.cloneForChild(evaluationContext == null ? new EvaluationContext() : evaluationContext, mapped);
+                definition = mapped.getParameterizable();
+            }
+            if (!(definition instanceof CohortDefinition)) {
+                return null;
+            }
+            return DefinitionFingerprint.of((CohortDefinition) definition, evaluationContext);
+        }
+        catch (Exception e) {
+            log.debug("Unable to fingerprint " + definition, e);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package org.openmrs.module.ugandaemrreports.evaluation;
+
+import org.openmrs.Cohort;
+import org.openmrs.OpenmrsObject;
+import org.openmrs.module.reporting.common.DateUtil;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * A key of an evaluation that is the same for every request of it: the uuid of what is evaluated, the values of its
+ * parameters and its base cohort, and whatever else the caller qualifies it with. Unlike a
+ * {@link DefinitionFingerprint} it does not depend on the definition instance, which each report request loads anew.
+ */
+public class EvaluationKey {
+
+    /**
+     * @return the hex encoded SHA-1 of the uuid, the parameter values in name order, the base cohort and the qualifiers
+     */
+    public static String of(String uuid, Map<String, Object> parameterValues, Cohort baseCohort, String... qualifiers) {
+        StringBuilder sb = new StringBuilder(String.valueOf(uuid));
+        sb.append("|parameters{");
+        if (parameterValues != null) {
+            for (Map.Entry<String, Object> e : new TreeMap<String, Object>(parameterValues).entrySet()) {
+                sb.append(e.getKey()).append('=').append(format(e.getValue())).append(';');
+            }
+        }
+        sb.append("}|base=").append(format(baseCohort));
+        for (String qualifier : qualifiers) {
+            sb.append('|').append(qualifier);
+        }
+        return sha1(sb.toString());
+    }
+
+    private static String format(Object value) {
+        if (value == null) {
+            return "null";
+        }
+        if (value instanceof Date) {
+            return DateUtil.formatDate((Date) value, "yyyy-MM-dd HH:mm:ss.SSS");
+        }
+        if (value instanceof Cohort) {
+            Set<Integer> ids = new TreeSet<Integer>(((Cohort) value).getMemberIds());
+            return "Cohort:" + ids.size() + ":" + DefinitionFingerprint.sha1(ids);
+        }
+        if (value instanceof OpenmrsObject) {
+            // by uuid alone, as a Hibernate proxy and the entity it stands for have different classes
+            return "OpenmrsObject:" + ((OpenmrsObject) value).getUuid();
+        }
+        if (value instanceof Collection) {
+            Set<String> elements = new TreeSet<String>();
+            for (Object o : (Collection<?>) value) {
+                elements.add(format(o));
+            }
+            return elements.toString();
+        }
+        return value.getClass().getSimpleName() + ":" + value;
+    }
+
+    private static String sha1(String s) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(s.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder();
+            for (byte b : digest) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        }
+        catch (NoSuchAlgorithmException e) {
+            return s;
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package org.openmrs.module.ugandaemrreports.evaluation;
+
+import org.apache.commons.lang.StringUtils;
+import org.openmrs.api.context.Context;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Builds the profile tree of the report being evaluated on the current thread. Definition evaluations and queries
+ * call {@link #start(String, String)} before and {@link #stop(ProfileNode, long, long)} after they run; outside of a
+ * report run, or once a run has recorded {@link #MAX_NODES} steps, nothing is recorded and null nodes are handed out.
+ */
+public class EvaluationProfiler {
+
+    public static final String GP_PROFILING_ENABLED = "ugandaemrreports.profilingEnabled";
+
+    public static final int MAX_NODES = 5000;
+
+    private static final int MAX_NAME_LENGTH = 255;
+
+    private static final ThreadLocal<Run> currentRun = new ThreadLocal<Run>();
+
+    /**
+     * Starts profiling a report run on this thread
+     */
+    public static void beginRun(ReportRun run) {
+        if (!isEnabled()) {
+            return;
+        }
+        Run r = new Run();
+        r.root = new ProfileNode(ProfileNode.TYPE_REPORT, run.getReportDefinitionName());
+        r.stack.push(r.root);
+        currentRun.set(r);
+    }
+
+    /**
+     * Stops profiling on this thread
+     *
+     * @return the root of the profile tree, or null if the run was not profiled
+     */
+    public static ProfileNode endRun(Throwable error) {
+        Run r = currentRun.get();
+        currentRun.remove();
+        if (r == null) {
+            return null;
+        }
+        r.root.stop(r.maxRows, -1);
+        if (error != null) {
+            r.root.setError(abbreviate(error.toString()));
+        }
+        return r.root;
+    }
+
+    /**
+     * Starts profiling on a worker thread the steps it runs for the report being profiled on another thread, see
+     * {@link ParallelReportEvaluator}
+     */
+    public static void beginWorker() {
+        Run r = new Run();
+        r.root = new ProfileNode(ProfileNode.TYPE_REPORT, null);
+        r.stack.push(r.root);
+        currentRun.set(r);
+    }
+
+    /**
+     * Stops profiling on a worker thread
+     *
+     * @return the node holding the steps run on the worker, to pass to {@link #attach(ProfileNode)}
+     */
+    public static ProfileNode endWorker() {
+        return endRun(null);
+    }
+
+    /**
+     * Adds the steps profiled on a worker thread under the step currently running on this thread
+     */
+    public static void attach(ProfileNode worker) {
+        Run r = currentRun.get();
+        if (r == null || worker == null) {
+            return;
+        }
+        for (ProfileNode step : worker.getChildren()) {
+            r.stack.peek().addChild(step);
+            r.nodes++;
+        }
+        r.maxRows = Math.max(r.maxRows, worker.getRows());
+    }
+
+    public static boolean isProfiling() {
+        return currentRun.get() != null;
+    }
+
+    /**
+     * Starts a step under the step currently running
+     *
+     * @return the node to pass to {@link #stop(ProfileNode, long, long)}, or null if nothing is being profiled
+     */
+    public static ProfileNode start(String type, String name) {
+        Run r = currentRun.get();
+        if (r == null || r.nodes >= MAX_NODES) {
+            return null;
+        }
+        ProfileNode node = new ProfileNode(type, abbreviate(name));
+        r.stack.peek().addChild(node);
+        r.stack.push(node);
+        r.nodes++;
+        return node;
+    }
+
+    /**
+     * Starts a step that runs the given query. Query steps are leaves: they may still be reading rows when the
+     * next step starts, so steps started after them are not nested under them.
+     */
+    public static ProfileNode startQuery(String type, String query) {
+        Run r = currentRun.get();
+        if (r == null || r.nodes >= MAX_NODES) {
+            return null;
+        }
+        ProfileNode node = new ProfileNode(type, abbreviate(query != null ? query.replaceAll("\\s+", " ").trim() : null));
+        node.setSqlFingerprint(fingerprint(query));
+        r.stack.peek().addChild(node);
+        r.nodes++;
+        return node;
+    }
+
+    /**
+     * Ends a step started with {@link #start(String, String)}
+     */
+    public static void stop(ProfileNode node, long rows, long bytes) {
+        if (node == null) {
+            return;
+        }
+        node.stop(rows, bytes);
+        Run r = currentRun.get();
+        if (r == null) {
+            return;
+        }
+        r.maxRows = Math.max(r.maxRows, rows);
+        // pop any nested step that did not stop because of an exception
+        while (r.stack.contains(node) && r.stack.peek() != r.root) {
+            if (r.stack.pop() == node) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Ends a step that failed
+     */
+    public static void fail(ProfileNode node, Throwable error) {
+        if (node != null) {
+            node.setError(abbreviate(error.toString()));
+            stop(node, -1, -1);
+        }
+    }
+
+    /**
+     * @return a fingerprint of the query text that ignores whitespace and literal values, so the same query run
+     * with different dates or ids has the same fingerprint
+     */
+    public static String fingerprint(String query) {
+        if (query == null) {
+            return null;
+        }
+        String normalized = query.toLowerCase()
+                .replaceAll("'[^']*'", "?")
+                .replaceAll("\\b\\d+(\\.\\d+)?\\b", "?")
+                .replaceAll("\\s+", " ")
+                .trim();
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(normalized.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder();
+            for (int i = 0; i < 8; i++) {
+                hex.append(String.format("%02x", digest[i]));
+            }
+            return hex.toString();
+        }
+        catch (NoSuchAlgorithmException e) {
+            return String.valueOf(normalized.hashCode());
+        }
+    }
+
+    private static boolean isEnabled() {
+        try {
+            return !"false".equalsIgnoreCase(Context.getAdministrationService().getGlobalProperty(GP_PROFILING_ENABLED));
+        }
+        catch (Exception e) {
+            return false;
+        }
+    }
+
+    private static String abbreviate(String s) {
+        return StringUtils.abbreviate(s, MAX_NAME_LENGTH);
+    }
+
+    private static class Run {
+
+        private ProfileNode root;
+
+        private final Deque<ProfileNode> stack = new ArrayDeque<ProfileNode>();
+
+        private int nodes = 1;
+
+        private long maxRows = 0;
+    }
+}
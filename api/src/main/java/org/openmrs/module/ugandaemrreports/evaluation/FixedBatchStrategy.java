@@ -0,0 +1,21 @@
+package org.openmrs.module.ugandaemrreports.evaluation;
+
+import org.openmrs.module.reporting.data.patient.definition.PatientDataDefinition;
+import org.openmrs.module.reporting.evaluation.EvaluationContext;
+
+/**
+ * Uses the same batch size for every definition, a size <= 0 disables batching
+ */
+public class FixedBatchStrategy implements DataEvaluationBatchStrategy {
+
+    private final int batchSize;
+
+    public FixedBatchStrategy(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public int getBatchSize(PatientDataDefinition definition, int cohortSize, EvaluationContext context) {
+        return batchSize;
+    }
+}
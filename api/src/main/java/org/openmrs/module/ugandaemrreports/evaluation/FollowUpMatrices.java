@@ -0,0 +1,172 @@
+package org.openmrs.module.ugandaemrreports.evaluation;
+
+import org.openmrs.Concept;
+import org.openmrs.Encounter;
+import org.openmrs.Obs;
+import org.openmrs.Person;
+import org.openmrs.module.reporting.common.DateUtil;
+import org.openmrs.module.reporting.common.TimeQualifier;
+import org.openmrs.module.reporting.evaluation.EvaluationContext;
+import org.openmrs.module.reporting.evaluation.querybuilder.HqlQueryBuilder;
+import org.openmrs.module.reporting.evaluation.service.EvaluationService;
+import org.openmrs.module.ugandaemrreports.common.Enums;
+import org.openmrs.module.ugandaemrreports.common.FollowUpEvents;
+import org.openmrs.module.ugandaemrreports.common.FollowUpMatrix;
+import org.openmrs.module.ugandaemrreports.metadata.HIVMetadata;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Builds the {@link FollowUpMatrix} of a cohort with a fixed number of queries, whatever the number of periods, and
+ * keeps it for the rest of the report run so that every follow up column of a register reads from the same matrix.
+ * Matrices are kept for the thread that built them, as the obs they hold belong to that thread's session.
+ */
+@Component
+public class FollowUpMatrices {
+
+    public static final String NAME = "followUpMatrices";
+
+    private static final String RETURN_VISIT_DATE = "5096";
+
+    private static final String TRANSFERRED_OUT = "90306";
+
+    private static final String ART_START_DATE = "99161";
+
+    @Autowired
+    private EvaluationService evaluationService;
+
+    @Autowired
+    private HIVMetadata hivMetadata;
+
+    private final CacheStatistics statistics = CacheStatistics.forCache(NAME);
+
+    /**
+     * @param numberOfPeriods the number of periods shown by the register, or 0 for the default of the period
+     * @return the matrix of the base cohort covering at least the periods 0 to periodToAdd
+     */
+    public FollowUpMatrix getMatrix(Date startDate, Enums.Period period, int periodToAdd, int numberOfPeriods,
+                                    EvaluationContext context) {
+        if (numberOfPeriods <= 0) {
+            numberOfPeriods = FollowUpMatrix.defaultNumberOfPeriods(period);
+        }
+        ReportRun run = ReportRunContext.getCurrentRun();
+        Set<Integer> cohort = context.getBaseCohort() != null ? new TreeSet<Integer>(context.getBaseCohort().getMemberIds()) : null;
+        List<Object> key = Arrays.<Object>asList(Thread.currentThread().getId(), DateUtil.formatDate(startDate, "yyyy-MM-dd"),
+                period, cohort);
+        FollowUpMatrix ret = run != null ? run.getFollowUpMatrix(key) : null;
+        if (ret != null && ret.covers(periodToAdd)) {
+            statistics.hit();
+            return ret;
+        }
+        statistics.miss();
+        ret = load(new FollowUpMatrix(period, startDate, Math.max(numberOfPeriods, periodToAdd + 1)), context);
+        if (run != null) {
+            run.putFollowUpMatrix(key, ret);
+        }
+        return ret;
+    }
+
+    /**
+     * @return the first obs of the question (with one of the answers, if given) in each of the first or last
+     * encounters of the periods of the matrix, by encounter
+     */
+    public Map<Integer, Obs> getObs(FollowUpMatrix matrix, Concept question, List<Concept> answers, TimeQualifier which,
+                                    EvaluationContext context) {
+        StringBuilder key = new StringBuilder(which + ":" + question.getConceptId());
+        if (answers != null) {
+            for (Concept answer : answers) {
+                key.append(",").append(answer.getConceptId());
+            }
+        }
+        Map<Integer, Obs> ret = matrix.getObs(key.toString());
+        if (ret != null) {
+            return ret;
+        }
+
+        Set<Integer> encounterIds = matrix.getEncounterIds(which);
+        if (encounterIds.isEmpty()) {
+            ret = Collections.emptyMap();
+        } else {
+            HqlQueryBuilder q = new HqlQueryBuilder();
+            q.select("o.encounter.encounterId", "o");
+            q.from(Obs.class, "o");
+            q.whereEqual("o.concept", question);
+            q.whereIdIn("o.encounter", encounterIds);
+            if (answers != null) {
+                q.whereIn("o.valueCoded", answers);
+            }
+            q.orderAsc("o.obsId");
+
+            ret = new HashMap<Integer, Obs>();
+            for (Object[] row : evaluationService.evaluateToList(q, context)) {
+                if (!ret.containsKey(row[0])) {
+                    ret.put((Integer) row[0], (Obs) row[1]);
+                }
+            }
+        }
+        matrix.putObs(key.toString(), ret);
+        return ret;
+    }
+
+    /**
+     * Fills the matrix from one ordered scan of the cohort's encounters in the periods, and its follow up obs and
+     * death dates
+     */
+    private FollowUpMatrix load(FollowUpMatrix matrix, EvaluationContext context) {
+        HqlQueryBuilder encounters = new HqlQueryBuilder();
+        encounters.select("e.patient.patientId", "e.encounterId", "e.encounterDatetime");
+        encounters.from(Encounter.class, "e");
+        encounters.wherePersonIn("e.patient.patientId", context);
+        encounters.whereBetweenInclusive("e.encounterDatetime", matrix.getFirstDay(), matrix.getLastDay());
+        encounters.orderAsc("e.encounterDatetime").orderAsc("e.encounterId");
+        for (Object[] row : evaluationService.evaluateToList(encounters, context)) {
+            matrix.addEncounter((Integer) row[0], (Integer) row[1], (Date) row[2]);
+        }
+        loadFollowUp(matrix, context);
+        return matrix;
+    }
+
+    /**
+     * Adds the cohort's return visit, transfer out and ART start obs from one query, and its death dates from another
+     */
+    public void loadFollowUp(FollowUpEvents events, EvaluationContext context) {
+        HqlQueryBuilder followUp = new HqlQueryBuilder();
+        followUp.select("o.personId", "o.concept.conceptId", "o.obsDatetime", "o.valueDatetime");
+        followUp.from(Obs.class, "o");
+        followUp.wherePersonIn("o.personId", context);
+        followUp.whereIn("o.concept", hivMetadata.getConceptList(RETURN_VISIT_DATE + "," + TRANSFERRED_OUT + "," + ART_START_DATE));
+        for (Object[] row : evaluationService.evaluateToList(followUp, context)) {
+            Integer personId = (Integer) row[0];
+            String conceptId = String.valueOf(row[1]);
+            Date valueDatetime = (Date) row[3];
+            if (TRANSFERRED_OUT.equals(conceptId)) {
+                events.addTransferOut(personId, (Date) row[2]);
+            } else if (valueDatetime == null) {
+                continue;
+            } else if (RETURN_VISIT_DATE.equals(conceptId)) {
+                events.addReturnVisitDate(personId, valueDatetime);
+            } else {
+                events.addArtStartDate(personId, valueDatetime);
+            }
+        }
+
+        HqlQueryBuilder deaths = new HqlQueryBuilder();
+        deaths.select("p.personId", "p.deathDate");
+        deaths.from(Person.class, "p");
+        deaths.wherePersonIn("p.personId", context);
+        for (Object[] row : evaluationService.evaluateToList(deaths, context)) {
+            if (row[1] != null) {
+                events.setDeathDate((Integer) row[0], (Date) row[1]);
+            }
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package org.openmrs.module.ugandaemrreports.evaluation;
+
+import org.openmrs.Cohort;
+import org.openmrs.Concept;
+import org.openmrs.Obs;
+import org.openmrs.Person;
+import org.openmrs.PersonAttribute;
+import org.openmrs.PersonName;
+import org.openmrs.Relationship;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.reporting.evaluation.EvaluationContext;
+import org.openmrs.module.reporting.evaluation.querybuilder.HqlQueryBuilder;
+import org.openmrs.module.reporting.evaluation.service.EvaluationService;
+import org.openmrs.module.ugandaemrreports.common.InfantTimeline;
+import org.openmrs.module.ugandaemrreports.metadata.HIVMetadata;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Loads the {@link InfantTimeline} of exposed infants with a fixed number of queries, and keeps them for the rest of
+ * the report run so that the EID due lists and register columns of a report share them. Each run loads them anew, so
+ * tests, statuses and mothers recorded before a report is run always show in it.
+ */
+@Component
+public class InfantTimelines {
+
+    public static final String NAME = "infantTimelines";
+
+    private static final String PARENT_RELATIONSHIP_TYPE = "8d91a210-c2cc-11de-8d13-0010c6dffd0f";
+
+    private static final String PHONE_NUMBER_ATTRIBUTE_TYPE = "14d4f066-15f5-102d-96e4-000c29c2a5d7";
+
+    private static final String FIRST_PCR_DATE = "99606";
+
+    private static final String FIRST_PCR_RESULT = "99435";
+
+    private static final String SECOND_PCR_DATE = "99436";
+
+    private static final String SECOND_PCR_RESULT = "99440";
+
+    private static final String RAPID_TEST_DATE = "162879";
+
+    private static final String RAPID_TEST_RESULT = "162880";
+
+    @Autowired
+    private EvaluationService evaluationService;
+
+    @Autowired
+    private HIVMetadata hivMetadata;
+
+    private final CacheStatistics statistics = CacheStatistics.forCache(NAME);
+
+    /**
+     * @return the timelines of the patients, by patient id, loading those not already loaded in the report run
+     */
+    public Map<Integer, InfantTimeline> getTimelines(Collection<Integer> patientIds) {
+        ReportRun run = ReportRunContext.getCurrentRun();
+        Map<Integer, InfantTimeline> ret = new HashMap<Integer, InfantTimeline>();
+        Set<Integer> missing = new HashSet<Integer>();
+        for (Integer patientId : patientIds) {
+            InfantTimeline timeline = run != null ? run.getInfantTimeline(patientId) : null;
+            if (timeline != null) {
+                statistics.hit();
+                ret.put(patientId, timeline);
+            } else {
+                statistics.miss();
+                missing.add(patientId);
+            }
+        }
+        if (!missing.isEmpty()) {
+            Map<Integer, InfantTimeline> loaded = load(missing);
+            if (run != null) {
+                run.putInfantTimelines(loaded);
+            }
+            ret.putAll(loaded);
+        }
+        return ret;
+    }
+
+    /**
+     * Loads the timelines from one query of the infants' birth dates, one each of their test dates and results, one
+     * of their breast feeding statuses, one of their mothers and one each of the mothers' names and phone numbers
+     */
+    private Map<Integer, InfantTimeline> load(Set<Integer> patientIds) {
+        EvaluationContext context = new EvaluationContext();
+        context.setBaseCohort(new Cohort(patientIds));
+
+        Map<Integer, InfantTimeline> ret = new HashMap<Integer, InfantTimeline>();
+        for (Integer patientId : patientIds) {
+            ret.put(patientId, new InfantTimeline(patientId));
+        }
+
+        HqlQueryBuilder birthdates = new HqlQueryBuilder();
+        birthdates.select("p.personId", "p.birthdate");
+        birthdates.from(Person.class, "p");
+        birthdates.wherePersonIn("p.personId", context);
+        for (Object[] row : evaluationService.evaluateToList(birthdates, context)) {
+            ret.get(row[0]).setBirthdate((Date) row[1]);
+        }
+
+        HqlQueryBuilder testDates = new HqlQueryBuilder();
+        testDates.select("o.personId", "o.concept.conceptId", "o.valueDatetime");
+        testDates.from(Obs.class, "o");
+        testDates.wherePersonIn("o.personId", context);
+        testDates.whereIn("o.concept", hivMetadata.getConceptList(FIRST_PCR_DATE + "," + SECOND_PCR_DATE + "," + RAPID_TEST_DATE));
+        testDates.orderAsc("o.obsDatetime").orderAsc("o.obsId");
+        for (Object[] row : evaluationService.evaluateToList(testDates, context)) {
+            InfantTimeline timeline = ret.get(row[0]);
+            String conceptId = String.valueOf(row[1]);
+            if (FIRST_PCR_DATE.equals(conceptId)) {
+                timeline.setFirstPcrDate((Date) row[2]);
+            } else if (SECOND_PCR_DATE.equals(conceptId)) {
+                timeline.setSecondPcrDate((Date) row[2]);
+            } else {
+                timeline.setRapidTestDate((Date) row[2]);
+            }
+        }
+
+        HqlQueryBuilder testResults = new HqlQueryBuilder();
+        testResults.select("o.personId", "o.concept.conceptId", "o.valueCoded.conceptId");
+        testResults.from(Obs.class, "o");
+        testResults.wherePersonIn("o.personId", context);
+        testResults.whereIn("o.concept", hivMetadata.getConceptList(FIRST_PCR_RESULT + "," + SECOND_PCR_RESULT + "," + RAPID_TEST_RESULT));
+        testResults.orderAsc("o.obsDatetime").orderAsc("o.obsId");
+        for (Object[] row : evaluationService.evaluateToList(testResults, context)) {
+            InfantTimeline timeline = ret.get(row[0]);
+            String conceptId = String.valueOf(row[1]);
+            if (FIRST_PCR_RESULT.equals(conceptId)) {
+                timeline.setFirstPcrResult((Integer) row[2]);
+            } else if (SECOND_PCR_RESULT.equals(conceptId)) {
+                timeline.setSecondPcrResult((Integer) row[2]);
+            } else {
+                timeline.setRapidTestResult((Integer) row[2]);
+            }
+        }
+
+        Concept noLongerBreastFeeding = hivMetadata.getBreastFeedingStatusNoLongerBreastFeeding();
+        HqlQueryBuilder breastFeeding = new HqlQueryBuilder();
+        breastFeeding.select("o.personId", "o.obsDatetime", "o.encounter.encounterDatetime", "o.valueCoded.conceptId");
+        breastFeeding.from(Obs.class, "o");
+        breastFeeding.wherePersonIn("o.personId", context);
+        breastFeeding.whereEqual("o.concept", hivMetadata.getBreastFeedingStatus());
+        breastFeeding.orderAsc("o.obsDatetime").orderAsc("o.obsId");
+        for (Object[] row : evaluationService.evaluateToList(breastFeeding, context)) {
+            ret.get(row[0]).addBreastFeedingStatus((Date) row[1], (Date) row[2],
+                    noLongerBreastFeeding != null && noLongerBreastFeeding.getConceptId().equals(row[3]));
+        }
+
+        HqlQueryBuilder mothers = new HqlQueryBuilder();
+        mothers.select("r.personB.personId", "r.personA.personId");
+        mothers.from(Relationship.class, "r");
+        mothers.whereEqual("r.relationshipType", Context.getPersonService().getRelationshipTypeByUuid(PARENT_RELATIONSHIP_TYPE));
+        mothers.whereEqual("r.personA.gender", "F");
+        mothers.wherePersonIn("r.personB.personId", context);
+        mothers.orderAsc("r.relationshipId");
+        Map<Integer, Integer> motherIds = new HashMap<Integer, Integer>();
+        for (Object[] row : evaluationService.evaluateToList(mothers, context)) {
+            ret.get(row[0]).setMotherId((Integer) row[1]);
+            motherIds.put((Integer) row[0], (Integer) row[1]);
+        }
+        if (motherIds.isEmpty()) {
+            return ret;
+        }
+
+        Map<Integer, String> names = new HashMap<Integer, String>();
+        HqlQueryBuilder motherNames = new HqlQueryBuilder();
+        motherNames.select("pn.person.personId", "pn");
+        motherNames.from(PersonName.class, "pn");
+        motherNames.whereIdIn("pn.person", new HashSet<Integer>(motherIds.values()));
+        motherNames.orderDesc("pn.preferred").orderAsc("pn.personNameId");
+        for (Object[] row : evaluationService.evaluateToList(motherNames, context)) {
+            if (!names.containsKey(row[0])) {
+                names.put((Integer) row[0], ((PersonName) row[1]).getFullName());
+            }
+        }
+
+        Map<Integer, String> phones = new HashMap<Integer, String>();
+        HqlQueryBuilder motherPhones = new HqlQueryBuilder();
+        motherPhones.select("pa.person.personId", "pa.value");
+        motherPhones.from(PersonAttribute.class, "pa");
+        motherPhones.whereEqual("pa.attributeType", Context.getPersonService().getPersonAttributeTypeByUuid(PHONE_NUMBER_ATTRIBUTE_TYPE));
+        motherPhones.whereIdIn("pa.person", new HashSet<Integer>(motherIds.values()));
+        motherPhones.orderAsc("pa.personAttributeId");
+        for (Object[] row : evaluationService.evaluateToList(motherPhones, context)) {
+            if (!phones.containsKey(row[0])) {
+                phones.put((Integer) row[0], (String) row[1]);
+            }
+        }
+
+        for (Map.Entry<Integer, Integer> e : motherIds.entrySet()) {
+            InfantTimeline timeline = ret.get(e.getKey());
+            timeline.setMotherName(names.get(e.getValue()));
+            timeline.setMotherPhone(phones.get(e.getValue()));
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,282 @@
+package org.openmrs.module.ugandaemrreports.evaluation;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.OpenmrsObject;
+import org.openmrs.api.context.Context;
+import org.openmrs.api.context.Daemon;
+import org.openmrs.module.DaemonToken;
+import org.openmrs.module.reporting.dataset.DataSet;
+import org.openmrs.module.reporting.dataset.definition.DataSetDefinition;
+import org.openmrs.module.reporting.dataset.definition.service.DataSetDefinitionService;
+import org.openmrs.module.reporting.evaluation.EvaluationContext;
+import org.openmrs.module.reporting.evaluation.EvaluationException;
+import org.openmrs.module.reporting.evaluation.parameter.Mapped;
+import org.openmrs.module.reporting.report.ReportData;
+import org.openmrs.module.reporting.report.definition.ReportDefinition;
+import org.openmrs.module.ugandaemrreports.api.UgandaEMRReportsService;
+import org.openmrs.module.ugandaemrreports.reports.UgandaEMRReportManager;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Evaluates the data sets of a report at the same time on a pool shared by all reports, for the reports whose
+ * manager says their data sets are independent (see {@link UgandaEMRReportManager#isEvaluatedInParallel()}). Each
+ * data set is evaluated in a daemon thread of its own, with its own session and user context, as the user who runs
+ * the report, and with its own copy of the evaluation context; the pool limits how many run at once. Each worker
+ * loads its own data set definition again in its session, rather than the whole report definition, and reads again
+ * the parameter values that are OpenMRS objects, so that no worker touches an entity of another session. The data sets are put in the report data in the
+ * order the report declares them. The run's {@link ReportRun} and its caches are shared by the workers.
+ */
+public class ParallelReportEvaluator {
+
+    public static final String GP_THREADS = "ugandaemrreports.parallelDataSetThreads";
+
+    private static final int DEFAULT_THREADS = 4;
+
+    private static final Log log = LogFactory.getLog(ParallelReportEvaluator.class);
+
+    private static ExecutorService executor;
+
+    private static DaemonToken daemonToken;
+
+    private static int executorThreads;
+
+    /**
+     * @return true if the data sets of the report are to be evaluated at the same time
+     */
+    public static boolean isParallel(ReportDefinition reportDefinition) {
+        if (daemonToken == null || reportDefinition.getBaseCohortDefinition() != null || reportDefinition.getDataSetDefinitions() == null
+                || reportDefinition.getDataSetDefinitions().size() < 2 || getThreads() <= 1) {
+            return false;
+        }
+        for (UgandaEMRReportManager manager : Context.getRegisteredComponents(UgandaEMRReportManager.class)) {
+            if (manager.getUuid().equals(reportDefinition.getUuid())) {
+                return manager.isEvaluatedInParallel();
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Evaluates the report as the ReportDefinitionService does, with its data sets evaluated at the same time
+     */
+    public static ReportData evaluate(ReportDefinition reportDefinition, EvaluationContext context, final ReportRun run)
+            throws EvaluationException {
+        final String systemId = Context.isAuthenticated() ? Context.getAuthenticatedUser().getSystemId() : null;
+        final boolean profiling = EvaluationProfiler.isProfiling();
+        ExecutorService pool = getExecutor();
+
+        Map<String, Future<Worker>> futures = new LinkedHashMap<String, Future<Worker>>();
+        for (Map.Entry<String, Mapped<? extends DataSetDefinition>> e : reportDefinition.getDataSetDefinitions().entrySet()) {
+            futures.put(e.getKey(), pool.submit(new Worker(e.getKey(), e.getValue(), copy(context), systemId, run, profiling)));
+        }
+
+        ReportData ret = new ReportData();
+        ret.setDefinition(reportDefinition);
+        ret.setContext(context);
+        Map<String, DataSet> dataSets = new LinkedHashMap<String, DataSet>();
+        try {
+            for (Map.Entry<String, Future<Worker>> e : futures.entrySet()) {
+                Worker worker = e.getValue().get();
+                EvaluationProfiler.attach(worker.profile);
+                if (worker.error != null) {
+                    throw new EvaluationException("data set " + e.getKey(), worker.error);
+                }
+                dataSets.put(e.getKey(), worker.result);
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new EvaluationException("report " + reportDefinition.getName(), e);
+        }
+        catch (ExecutionException e) {
+            throw new EvaluationException("report " + reportDefinition.getName(), e.getCause());
+        }
+        finally {
+            for (Future<Worker> future : futures.values()) {
+                future.cancel(true);
+            }
+        }
+        ret.setDataSets(dataSets);
+        return ret;
+    }
+
+    /**
+     * @return a copy of the context that shares nothing the evaluation of a data set changes, e.g. its cache
+     */
+    private static EvaluationContext copy(EvaluationContext context) {
+        EvaluationContext ret = new EvaluationContext(context.getEvaluationDate());
+        ret.setBaseCohort(context.getBaseCohort());
+        ret.setParameterValues(new HashMap<String, Object>(context.getParameterValues()));
+        ret.setContextValues(new HashMap<String, Object>(context.getContextValues()));
+        return ret;
+    }
+
+    /**
+     * Sets the token the workers are started as daemon threads with, when the module starts; reports are not
+     * evaluated in parallel without it
+     */
+    public static void setDaemonToken(DaemonToken token) {
+        daemonToken = token;
+    }
+
+    private static synchronized ExecutorService getExecutor() {
+        int threads = getThreads();
+        if (executor == null || threads != executorThreads) {
+            if (executor != null) {
+                // running evaluations finish on the old pool
+                executor.shutdown();
+            }
+            final AtomicInteger count = new AtomicInteger();
+            executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "ugandaemrreports-dataset-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            executorThreads = threads;
+        }
+        return executor;
+    }
+
+    /**
+     * Stops the pool when the module stops
+     */
+    public static synchronized void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    private static int getThreads() {
+        try {
+            String value = Context.getAdministrationService().getGlobalProperty(GP_THREADS);
+            return StringUtils.isBlank(value) ? DEFAULT_THREADS : Integer.parseInt(value.trim());
+        }
+        catch (Exception e) {
+            return DEFAULT_THREADS;
+        }
+    }
+
+    /**
+     * Evaluates one data set in a daemon thread, holding a thread of the pool until it is done
+     */
+    private static class Worker implements Callable<Worker> {
+
+        private final String key;
+
+        private final Mapped<? extends DataSetDefinition> definition;
+
+        private final EvaluationContext context;
+
+        private final String systemId;
+
+        private final ReportRun run;
+
+        private final boolean profiling;
+
+        private DataSet result;
+
+        private Exception error;
+
+        private ProfileNode profile;
+
+        private Worker(String key, Mapped<? extends DataSetDefinition> definition, EvaluationContext context, String systemId,
+                       ReportRun run, boolean profiling) {
+            this.key = key;
+            this.definition = definition;
+            this.context = context;
+            this.systemId = systemId;
+            this.run = run;
+            this.profiling = profiling;
+        }
+
+        @Override
+        public Worker call() {
+            Thread thread = Daemon.runInDaemonThread(new Runnable() {
+                @Override
+                public void run() {
+                    evaluate();
+                }
+            }, daemonToken);
+            try {
+                thread.join();
+            }
+            catch (InterruptedException e) {
+                // the report was cancelled or failed, so the data set is not waited for
+                thread.interrupt();
+                Thread.currentThread().interrupt();
+                error = e;
+            }
+            return this;
+        }
+
+        private void evaluate() {
+            try {
+                if (systemId != null) {
+                    Context.becomeUser(systemId);
+                }
+                ReportRunContext.setCurrentRun(run);
+                if (profiling) {
+                    EvaluationProfiler.beginWorker();
+                }
+                result = Context.getService(DataSetDefinitionService.class).evaluate(reload(definition), reload(context));
+            }
+            catch (Exception e) {
+                log.debug("Unable to evaluate data set " + key + " for " + run, e);
+                error = e;
+            }
+            finally {
+                if (profiling) {
+                    profile = EvaluationProfiler.endWorker();
+                }
+                ReportRunContext.clear();
+            }
+        }
+
+        /**
+         * @return the data set definition loaded in this session with the report's mappings, or the one given if the
+         * data set definition is not saved
+         */
+        private Mapped<? extends DataSetDefinition> reload(Mapped<? extends DataSetDefinition> definition) {
+            DataSetDefinition dataSetDefinition = definition.getParameterizable();
+            if (dataSetDefinition == null || dataSetDefinition.getUuid() == null) {
+                return definition;
+            }
+            DataSetDefinition ret = Context.getService(DataSetDefinitionService.class).getDefinitionByUuid(dataSetDefinition.getUuid());
+            return ret != null ? new Mapped<DataSetDefinition>(ret, definition.getParameterMappings()) : definition;
+        }
+
+        private EvaluationContext reload(EvaluationContext context) {
+            UgandaEMRReportsService service = Context.getService(UgandaEMRReportsService.class);
+            for (Map.Entry<String, Object> e : context.getParameterValues().entrySet()) {
+                if (e.getValue() instanceof OpenmrsObject) {
+                    e.setValue(service.reload((OpenmrsObject) e.getValue()));
+                } else if (e.getValue() instanceof List) {
+                    List<Object> values = new ArrayList<Object>();
+                    for (Object value : (List<?>) e.getValue()) {
+                        values.add(value instanceof OpenmrsObject ? service.reload((OpenmrsObject) value) : value);
+                    }
+                    e.setValue(values);
+                }
+            }
+            return context;
+        }
+    }
+}
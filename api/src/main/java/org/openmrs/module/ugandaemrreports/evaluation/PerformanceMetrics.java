@@ -0,0 +1,126 @@
+package org.openmrs.module.ugandaemrreports.evaluation;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.ugandaemrreports.api.UgandaEMRReportsService;
+import org.springframework.stereotype.Component;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects the performance metrics of report runs, database connections and caches for monitoring
+ */
+@Component
+public class PerformanceMetrics {
+
+    /**
+     * The most runs aggregated at once, enough for a month of runs at a busy facility
+     */
+    public static final int MAX_RUNS = 10000;
+
+    private static final String C3P0_POOLS = "com.mchange.v2.c3p0:type=PooledDataSource,*";
+
+    private static final String[] C3P0_ATTRIBUTES = {"maxPoolSize", "numConnectionsDefaultUser",
+            "numBusyConnectionsDefaultUser", "numIdleConnectionsDefaultUser", "numThreadsAwaitingCheckoutDefaultUser"};
+
+    private final Log log = LogFactory.getLog(getClass());
+
+    /**
+     * @param since the earliest start of the runs to aggregate
+     * @return all metrics, keyed by section
+     */
+    public Map<String, Object> getMetrics(Date since) {
+        Map<String, Object> metrics = new LinkedHashMap<String, Object>();
+        metrics.put("since", since);
+        metrics.put("reportRuns", getReportRuns(since));
+        metrics.put("connectionPools", getConnectionPools());
+        metrics.put("caches", getCaches());
+        return metrics;
+    }
+
+    /**
+     * @return the run statistics of every report run since the given date
+     */
+    public List<Map<String, Object>> getReportRuns(Date since) {
+        Map<String, ReportRunStatistics> byReport = new LinkedHashMap<String, ReportRunStatistics>();
+        for (ReportProfile profile : Context.getService(UgandaEMRReportsService.class).getReportProfiles(null, since, MAX_RUNS)) {
+            ReportRunStatistics statistics = byReport.get(profile.getReportDefinitionUuid());
+            if (statistics == null) {
+                statistics = new ReportRunStatistics(profile.getReportDefinitionUuid());
+                byReport.put(profile.getReportDefinitionUuid(), statistics);
+            }
+            statistics.add(profile);
+        }
+
+        List<Map<String, Object>> reportRuns = new ArrayList<Map<String, Object>>();
+        for (ReportRunStatistics statistics : byReport.values()) {
+            Map<String, Object> m = new LinkedHashMap<String, Object>();
+            m.put("reportDefinitionUuid", statistics.getReportDefinitionUuid());
+            m.put("reportName", statistics.getReportName());
+            m.put("runs", statistics.getRuns());
+            m.put("failures", statistics.getFailures());
+            m.put("p50Duration", statistics.getDurationPercentile(50));
+            m.put("p95Duration", statistics.getDurationPercentile(95));
+            m.put("peakRows", statistics.getPeakRows());
+            m.put("lastRun", statistics.getLastRun());
+            reportRuns.add(m);
+        }
+        return reportRuns;
+    }
+
+    /**
+     * @return the state of the c3p0 pools OpenMRS connects through, and of the connections this module opens itself
+     */
+    public Map<String, Object> getConnectionPools() {
+        Map<String, Object> pools = new LinkedHashMap<String, Object>();
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            for (ObjectName name : server.queryNames(new ObjectName(C3P0_POOLS), null)) {
+                Map<String, Object> pool = new LinkedHashMap<String, Object>();
+                for (String attribute : C3P0_ATTRIBUTES) {
+                    try {
+                        pool.put(attribute, server.getAttribute(name, attribute));
+                    }
+                    catch (Exception e) {
+                        log.debug("Unable to read " + attribute + " of " + name, e);
+                    }
+                }
+                pools.put(name.getKeyProperty("name") != null ? name.getKeyProperty("name") : name.toString(), pool);
+            }
+        }
+        catch (Exception e) {
+            log.warn("Unable to read the connection pool state", e);
+        }
+
+        Map<String, Object> module = new LinkedHashMap<String, Object>();
+        module.put("openConnections", ProfilingConnection.getOpenConnections());
+        module.put("openedConnections", ProfilingConnection.getOpenedConnections());
+        pools.put("ugandaemrreports", module);
+        return pools;
+    }
+
+    /**
+     * @return the hit and miss counts of the caches this module keeps
+     */
+    public List<Map<String, Object>> getCaches() {
+        List<Map<String, Object>> caches = new ArrayList<Map<String, Object>>();
+        for (CacheStatistics statistics : CacheStatistics.getAll().values()) {
+            Map<String, Object> m = new LinkedHashMap<String, Object>();
+            m.put("name", statistics.getName());
+            m.put("hits", statistics.getHits());
+            m.put("misses", statistics.getMisses());
+            m.put("evictions", statistics.getEvictions());
+            m.put("hitRatio", statistics.getHitRatio());
+            caches.add(m);
+        }
+        return caches;
+    }
+}
@@ -0,0 +1,148 @@
+package org.openmrs.module.ugandaemrreports.evaluation;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One timed step of a report evaluation: a definition being evaluated or a query being run. Nodes form a tree
+ * rooted at the report itself.
+ */
+public class ProfileNode {
+
+    public static final String TYPE_REPORT = "report";
+
+    public static final String TYPE_DATASET = "dataset";
+
+    public static final String TYPE_COHORT = "cohort";
+
+    public static final String TYPE_DATA = "data";
+
+    public static final String TYPE_QUERY = "query";
+
+    public static final String TYPE_SQL = "sql";
+
+    private Integer nodeId;
+
+    private String type;
+
+    private String name;
+
+    private String sqlFingerprint;
+
+    private long duration;
+
+    private long rows = -1;
+
+    private long bytes = -1;
+
+    private String error;
+
+    private transient long startNanos;
+
+    private List<ProfileNode> children = new ArrayList<ProfileNode>();
+
+    public ProfileNode() {
+    }
+
+    public ProfileNode(String type, String name) {
+        this.type = type;
+        this.name = name;
+        this.startNanos = System.nanoTime();
+    }
+
+    /**
+     * Stops the clock on this node
+     */
+    public void stop(long rows, long bytes) {
+        this.duration = (System.nanoTime() - startNanos) / 1000000;
+        this.rows = rows;
+        this.bytes = bytes;
+    }
+
+    public void addChild(ProfileNode child) {
+        children.add(child);
+    }
+
+    /**
+     * @return the number of nodes in the tree rooted at this node
+     */
+    public int size() {
+        int size = 1;
+        for (ProfileNode child : children) {
+            size += child.size();
+        }
+        return size;
+    }
+
+    public Integer getNodeId() {
+        return nodeId;
+    }
+
+    public void setNodeId(Integer nodeId) {
+        this.nodeId = nodeId;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getSqlFingerprint() {
+        return sqlFingerprint;
+    }
+
+    public void setSqlFingerprint(String sqlFingerprint) {
+        this.sqlFingerprint = sqlFingerprint;
+    }
+
+    public long getDuration() {
+        return duration;
+    }
+
+    public void setDuration(long duration) {
+        this.duration = duration;
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    public void setRows(long rows) {
+        this.rows = rows;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public void setBytes(long bytes) {
+        this.bytes = bytes;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    public List<ProfileNode> getChildren() {
+        return children;
+    }
+
+    public void setChildren(List<ProfileNode> children) {
+        this.children = children;
+    }
+}
@@ -0,0 +1,260 @@
+package org.openmrs.module.ugandaemrreports.evaluation;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Wraps a JDBC connection so that the statements run on it while a report is being profiled show up in the profile,
+ * with the number of rows read from them and an estimate of the memory those rows take. Also counts the
+ * connections that are still open, since Helper opens its own outside of the connection pool.
+ * <p>
+ * A connection opened for a report run is registered with the {@link CancellationToken} of the run, as are its
+ * statements while they are open, so that cancelling the run stops them; its statements are given the run's
+ * {@link ReportRun#getStatementTimeout() timeout}, and the run is checked for cancellation before each statement and
+ * every {@link #CHECK_INTERVAL_ROWS} rows read.
+ */
+public class ProfilingConnection {
+
+    private static final int CHECK_INTERVAL_ROWS = 1024;
+
+    private static final AtomicInteger openConnections = new AtomicInteger();
+
+    private static final AtomicLong openedConnections = new AtomicLong();
+
+    /**
+     * @return a connection that profiles the statements run on the given connection
+     */
+    public static Connection wrap(Connection connection) {
+        openConnections.incrementAndGet();
+        openedConnections.incrementAndGet();
+        ReportRun run = ReportRunContext.getCurrentRun();
+        CancellationToken token = CancellationToken.current();
+        token.register(connection);
+        return proxy(Connection.class, connection,
+                new ConnectionHandler(connection, token, run != null ? run.getStatementTimeout() : 0));
+    }
+
+    /**
+     * @return the number of wrapped connections that have not been closed yet
+     */
+    public static int getOpenConnections() {
+        return openConnections.get();
+    }
+
+    /**
+     * @return the number of connections wrapped since startup
+     */
+    public static long getOpenedConnections() {
+        return openedConnections.get();
+    }
+
+    private static <T> T proxy(Class<T> type, Object target, InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(ProfilingConnection.class.getClassLoader(), new Class<?>[]{type}, handler));
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        }
+        catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * @return the error to throw for a failure of a statement of a cancelled run, so that it reads as the cancellation
+     * rather than as the error the driver gives for a cancelled statement or closed connection
+     */
+    private static Throwable translate(Throwable t, CancellationToken token) {
+        return token.isCancelled() && t instanceof SQLException ? new ReportCancelledException(token.getReason()) : t;
+    }
+
+    private static class ConnectionHandler implements InvocationHandler {
+
+        private final Connection connection;
+
+        private final CancellationToken token;
+
+        private final int statementTimeout;
+
+        private boolean closed = false;
+
+        ConnectionHandler(Connection connection, CancellationToken token, int statementTimeout) {
+            this.connection = connection;
+            this.token = token;
+            this.statementTimeout = statementTimeout;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if ("close".equals(method.getName()) && !closed) {
+                closed = true;
+                openConnections.decrementAndGet();
+                token.unregister(connection);
+            }
+            Object result;
+            try {
+                result = ProfilingConnection.invoke(connection, method, args);
+            }
+            catch (Throwable t) {
+                throw translate(t, token);
+            }
+            if ("prepareStatement".equals(method.getName())) {
+                String sql = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : null;
+                return proxy(PreparedStatement.class, result, newStatementHandler((Statement) result, sql));
+            }
+            if ("createStatement".equals(method.getName())) {
+                return proxy(Statement.class, result, newStatementHandler((Statement) result, null));
+            }
+            return result;
+        }
+
+        private StatementHandler newStatementHandler(Statement statement, String preparedSql) throws SQLException {
+            if (statementTimeout > 0) {
+                statement.setQueryTimeout(statementTimeout);
+            }
+            token.register(statement);
+            return new StatementHandler(statement, preparedSql, token);
+        }
+    }
+
+    private static class StatementHandler implements InvocationHandler {
+
+        private final Statement statement;
+
+        private final String preparedSql;
+
+        private final CancellationToken token;
+
+        private ResultSetHandler resultSetHandler;
+
+        StatementHandler(Statement statement, String preparedSql, CancellationToken token) {
+            this.statement = statement;
+            this.preparedSql = preparedSql;
+            this.token = token;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if ("close".equals(method.getName())) {
+                token.unregister(statement);
+                if (resultSetHandler != null) {
+                    resultSetHandler.stop();
+                }
+            }
+            if (!method.getName().startsWith("execute")) {
+                return ProfilingConnection.invoke(statement, method, args);
+            }
+            token.check();
+            if (!EvaluationProfiler.isProfiling()) {
+                Object result;
+                try {
+                    result = ProfilingConnection.invoke(statement, method, args);
+                }
+                catch (Throwable t) {
+                    throw translate(t, token);
+                }
+                if (result instanceof ResultSet && token != CancellationToken.NONE) {
+                    resultSetHandler = new ResultSetHandler((ResultSet) result, null, token);
+                    return proxy(ResultSet.class, result, resultSetHandler);
+                }
+                return result;
+            }
+            String sql = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : preparedSql;
+            ProfileNode node = EvaluationProfiler.startQuery(ProfileNode.TYPE_SQL, sql);
+            Object result;
+            try {
+                result = ProfilingConnection.invoke(statement, method, args);
+            }
+            catch (Throwable t) {
+                EvaluationProfiler.fail(node, t);
+                throw translate(t, token);
+            }
+            if (result instanceof ResultSet) {
+                resultSetHandler = new ResultSetHandler((ResultSet) result, node, token);
+                return proxy(ResultSet.class, result, resultSetHandler);
+            }
+            EvaluationProfiler.stop(node, result instanceof Integer ? (Integer) result : -1, -1);
+            return result;
+        }
+    }
+
+    private static class ResultSetHandler implements InvocationHandler {
+
+        private final ResultSet resultSet;
+
+        private final ProfileNode node;
+
+        private final CancellationToken token;
+
+        private long rows = 0;
+
+        private long rowBytes = -1;
+
+        private boolean stopped = false;
+
+        /**
+         * @param node the profile of the statement, or null if it is not being profiled
+         */
+        ResultSetHandler(ResultSet resultSet, ProfileNode node, CancellationToken token) {
+            this.resultSet = resultSet;
+            this.node = node;
+            this.token = token;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            Object result;
+            try {
+                result = ProfilingConnection.invoke(resultSet, method, args);
+            }
+            catch (Throwable t) {
+                throw translate(t, token);
+            }
+            if ("next".equals(method.getName())) {
+                if (Boolean.TRUE.equals(result)) {
+                    rows++;
+                    if (rows % CHECK_INTERVAL_ROWS == 0) {
+                        token.check();
+                    }
+                    if (rowBytes < 0 && node != null) {
+                        // the first row stands in for the width of all of them
+                        rowBytes = estimateRowBytes();
+                    }
+                }
+                else {
+                    stop();
+                }
+            }
+            else if ("close".equals(method.getName())) {
+                stop();
+            }
+            return result;
+        }
+
+        private long estimateRowBytes() {
+            try {
+                return ResultSizes.bytes(resultSet);
+            }
+            catch (SQLException e) {
+                return 0;
+            }
+        }
+
+        private void stop() {
+            if (!stopped && node != null) {
+                stopped = true;
+                EvaluationProfiler.stop(node, rows, rows * Math.max(rowBytes, 0));
+            }
+        }
+    }
+}
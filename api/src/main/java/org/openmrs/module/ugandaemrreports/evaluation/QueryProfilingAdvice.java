@@ -0,0 +1,47 @@
+package org.openmrs.module.ugandaemrreports.evaluation;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.openmrs.module.reporting.evaluation.EvaluationContext;
+import org.openmrs.module.reporting.query.QueryBuilder;
+
+/**
+ * Around advice on the EvaluationService (see config.xml) that adds the HQL and SQL queries run during a profiled
+ * report run to its profile tree, and that stops a cancelled report run before each query it runs
+ */
+public class QueryProfilingAdvice implements MethodInterceptor {
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        Object[] args = invocation.getArguments();
+        if (!invocation.getMethod().getName().startsWith("evaluateTo") || args.length == 0
+                || !(args[0] instanceof QueryBuilder)) {
+            return invocation.proceed();
+        }
+        CancellationToken.of(args.length > 1 && args[1] instanceof EvaluationContext ? (EvaluationContext) args[1] : null).check();
+        if (!EvaluationProfiler.isProfiling()) {
+            return invocation.proceed();
+        }
+
+        ProfileNode node = EvaluationProfiler.startQuery(ProfileNode.TYPE_QUERY, getQuery(args[0]));
+        Object result;
+        try {
+            result = invocation.proceed();
+        }
+        catch (Throwable t) {
+            EvaluationProfiler.fail(node, t);
+            throw t;
+        }
+        EvaluationProfiler.stop(node, ResultSizes.rows(result), ResultSizes.bytes(result));
+        return result;
+    }
+
+    private String getQuery(Object queryBuilder) {
+        String query = queryBuilder.toString();
+        // builders that do not print their query are named by their type
+        if (query == null || query.startsWith(queryBuilder.getClass().getName() + "@")) {
+            return queryBuilder.getClass().getSimpleName();
+        }
+        return query;
+    }
+}
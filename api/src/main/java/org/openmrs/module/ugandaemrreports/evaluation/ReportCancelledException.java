@@ -0,0 +1,15 @@
+package org.openmrs.module.ugandaemrreports.evaluation;
+
+import org.openmrs.api.APIException;
+
+/**
+ * Thrown by evaluators that find their report run cancelled, see {@link CancellationToken}
+ */
+public class ReportCancelledException extends APIException {
+
+    private static final long serialVersionUID = 1L;
+
+    public ReportCancelledException(String reason) {
+        super("The report run was cancelled: " + reason);
+    }
+}
@@ -0,0 +1,133 @@
+package org.openmrs.module.ugandaemrreports.evaluation;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.reporting.common.DateUtil;
+import org.openmrs.module.reporting.evaluation.EvaluationContext;
+import org.openmrs.module.reporting.evaluation.EvaluationUtil;
+import org.openmrs.module.reporting.evaluation.parameter.Mapped;
+import org.openmrs.module.reporting.report.definition.ReportDefinition;
+import org.openmrs.module.ugandaemrreports.api.UgandaEMRReportsService;
+
+import java.util.Date;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Around advice on the ReportDefinitionService (see config.xml) that marks the start and end of a report evaluation,
+ * so that evaluators further down the call stack know which report they are evaluating for, and that saves the
+ * run with its profile when profiling is enabled. The run is listed with the runs in progress while it is evaluated,
+ * and its {@link CancellationToken} put in the evaluation context, so that it can be cancelled.
+ */
+public class ReportEvaluationAdvice implements MethodInterceptor {
+
+    public static final String GP_COHORT_CACHE_ENABLED = "ugandaemrreports.evaluatedCohortCacheEnabled";
+
+    private final Log log = LogFactory.getLog(getClass());
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        ReportDefinition reportDefinition = getReportDefinition(invocation);
+        if (reportDefinition == null || ReportRunContext.getCurrentRun() != null) {
+            return invocation.proceed();
+        }
+
+        Object[] args = invocation.getArguments();
+        EvaluationContext context = args.length > 1 && args[1] instanceof EvaluationContext ? (EvaluationContext) args[1] : null;
+
+        ReportRun run = new ReportRun(reportDefinition, context);
+        if (isCohortCacheEnabled()) {
+            run.setEvaluatedCohortCache(new EvaluatedCohortCache());
+        }
+        if (context != null) {
+            context.addContextValue(CancellationToken.CONTEXT_KEY, run.getCancellationToken());
+        }
+        ReportRunContext.setCurrentRun(run);
+        ReportRunContext.started(run);
+        EvaluationProfiler.beginRun(run);
+        Throwable error = null;
+        try {
+            if (ParallelReportEvaluator.isParallel(reportDefinition)) {
+                EvaluationContext reportContext = context != null ? context : new EvaluationContext();
+                if (args[0] instanceof Mapped) {
+                    reportContext = EvaluationUtil.cloneForChild(reportContext, (Mapped<?>) args[0]);
+                }
+                return ParallelReportEvaluator.evaluate(reportDefinition, reportContext, run);
+            }
+            return invocation.proceed();
+        } catch (Throwable t) {
+            error = t;
+            throw t;
+        } finally {
+            if (context != null) {
+                // the token holds the run's connections, so it is not left in the context the report data keeps
+                context.getContextValues().remove(CancellationToken.CONTEXT_KEY);
+            }
+            ReportRunContext.finished(run);
+            ReportRunContext.clear();
+            saveProfile(run, EvaluationProfiler.endRun(error), error);
+            if (run.getEvaluatedCohortCache() != null) {
+                log.info(run + ": " + run.getEvaluatedCohortCache().getEvaluationsSaved() + " cohort evaluations saved by "
+                        + run.getEvaluatedCohortCache().size() + " cached cohorts");
+            }
+        }
+    }
+
+    private boolean isCohortCacheEnabled() {
+        try {
+            return !"false".equalsIgnoreCase(Context.getAdministrationService().getGlobalProperty(GP_COHORT_CACHE_ENABLED));
+        }
+        catch (Exception e) {
+            return false;
+        }
+    }
+
+    private void saveProfile(ReportRun run, ProfileNode root, Throwable error) {
+        ReportProfile profile = new ReportProfile();
+        profile.setReportDefinitionUuid(run.getReportDefinitionUuid());
+        profile.setReportName(run.getReportDefinitionName());
+        profile.setParameters(formatParameters(run.getParameterValues()));
+        profile.setStarted(run.getStarted());
+        // runs are recorded without their steps when profiling is disabled
+        profile.setDuration(root != null ? root.getDuration() : System.currentTimeMillis() - run.getStarted().getTime());
+        profile.setStatus(error == null ? ReportProfile.STATUS_COMPLETED
+                : run.getCancellationToken().isCancelled() ? ReportProfile.STATUS_CANCELLED : ReportProfile.STATUS_FAILED);
+        profile.setRows(root != null ? root.getRows() : -1);
+        profile.setDataSource(run.getDataSource());
+        profile.setReplicaLag(run.getReplicaLag());
+        profile.setRoot(root);
+        try {
+            Context.getService(UgandaEMRReportsService.class).saveReportProfile(profile);
+        } catch (Exception e) {
+            // never fail a report because its profile could not be saved
+            log.warn("Unable to save the evaluation profile of " + run, e);
+        }
+    }
+
+    private String formatParameters(Map<String, Object> parameterValues) {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Object> e : new TreeMap<String, Object>(parameterValues).entrySet()) {
+            Object value = e.getValue() instanceof Date ? DateUtil.formatDate((Date) e.getValue(), "yyyy-MM-dd") : e.getValue();
+            sb.append(sb.length() == 0 ? "" : ", ").append(e.getKey()).append("=").append(value);
+        }
+        return StringUtils.abbreviate(sb.toString(), 1000);
+    }
+
+    /**
+     * @return the report definition being evaluated, or null if the invocation is not a report evaluation
+     */
+    protected static ReportDefinition getReportDefinition(MethodInvocation invocation) {
+        if (!"evaluate".equals(invocation.getMethod().getName()) || invocation.getArguments().length == 0) {
+            return null;
+        }
+        Object definition = invocation.getArguments()[0];
+        if (definition instanceof Mapped) {
+            definition = ((Mapped) definition).getParameterizable();
+        }
+        return definition instanceof ReportDefinition ? (ReportDefinition) definition : null;
+    }
+}
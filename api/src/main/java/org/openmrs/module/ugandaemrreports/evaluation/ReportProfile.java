@@ -0,0 +1,134 @@
+package org.openmrs.module.ugandaemrreports.evaluation;
+
+import java.util.Date;
+
+/**
+ * The profile of one report run: what was run, how long it took and the tree of steps it was made of
+ */
+public class ReportProfile {
+
+    public static final String STATUS_COMPLETED = "COMPLETED";
+
+    public static final String STATUS_FAILED = "FAILED";
+
+    public static final String STATUS_CANCELLED = "CANCELLED";
+
+    private Integer reportProfileId;
+
+    private String reportDefinitionUuid;
+
+    private String reportName;
+
+    private String parameters;
+
+    private Date started;
+
+    private long duration;
+
+    private String status;
+
+    private long rows;
+
+    private String dataSource;
+
+    private Long replicaLag;
+
+    private ProfileNode root;
+
+    public Integer getReportProfileId() {
+        return reportProfileId;
+    }
+
+    public void setReportProfileId(Integer reportProfileId) {
+        this.reportProfileId = reportProfileId;
+    }
+
+    public String getReportDefinitionUuid() {
+        return reportDefinitionUuid;
+    }
+
+    public void setReportDefinitionUuid(String reportDefinitionUuid) {
+        this.reportDefinitionUuid = reportDefinitionUuid;
+    }
+
+    public String getReportName() {
+        return reportName;
+    }
+
+    public void setReportName(String reportName) {
+        this.reportName = reportName;
+    }
+
+    public String getParameters() {
+        return parameters;
+    }
+
+    public void setParameters(String parameters) {
+        this.parameters = parameters;
+    }
+
+    public Date getStarted() {
+        return started;
+    }
+
+    public void setStarted(Date started) {
+        this.started = started;
+    }
+
+    public long getDuration() {
+        return duration;
+    }
+
+    public void setDuration(long duration) {
+        this.duration = duration;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    /**
+     * @return the largest number of rows returned by any step of the run
+     */
+    public long getRows() {
+        return rows;
+    }
+
+    public void setRows(long rows) {
+        this.rows = rows;
+    }
+
+    /**
+     * @return the database the run read report data from, primary or replica, or null if it read none over JDBC
+     */
+    public String getDataSource() {
+        return dataSource;
+    }
+
+    public void setDataSource(String dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * @return how many seconds the reporting replica was behind the primary during the run, or null if unknown
+     */
+    public Long getReplicaLag() {
+        return replicaLag;
+    }
+
+    public void setReplicaLag(Long replicaLag) {
+        this.replicaLag = replicaLag;
+    }
+
+    public ProfileNode getRoot() {
+        return root;
+    }
+
+    public void setRoot(ProfileNode root) {
+        this.root = root;
+    }
+}
@@ -0,0 +1,166 @@
+package org.openmrs.module.ugandaemrreports.evaluation;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.reporting.evaluation.EvaluationContext;
+import org.openmrs.module.reporting.evaluation.EvaluationUtil;
+import org.openmrs.module.reporting.evaluation.parameter.Mapped;
+import org.openmrs.module.reporting.report.definition.ReportDefinition;
+import org.openmrs.module.ugandaemrreports.api.UgandaEMRReportsService;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Around advice on the ReportDefinitionService (see config.xml), registered before {@link ReportEvaluationAdvice},
+ * that coordinates the report evaluations running at the same time, e.g. the same HMIS 106A month run by several
+ * data officers at month end:
+ * <ul>
+ * <li>an evaluation of a report with the same uuid, parameter values and base cohort (the same
+ * {@link EvaluationKey}) as one already in progress waits for that one and gets its result</li>
+ * <li>no more than the configured number of heavy reports, those whose last profiled run took longer than the
+ * configured time or that have never been profiled, are evaluated at once; the others wait in turn</li>
+ * </ul>
+ */
+public class ReportRequestCoordinator implements MethodInterceptor {
+
+    public static final String GP_MAX_CONCURRENT_HEAVY_REPORTS = "ugandaemrreports.maxConcurrentHeavyReports";
+
+    public static final String GP_HEAVY_REPORT_SECONDS = "ugandaemrreports.heavyReportSeconds";
+
+    private static final int DEFAULT_MAX_CONCURRENT_HEAVY_REPORTS = 2;
+
+    private static final int DEFAULT_HEAVY_REPORT_SECONDS = 60;
+
+    private static final ConcurrentMap<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<String, CompletableFuture<Object>>();
+
+    private static int permits;
+
+    private static Semaphore heavyReports;
+
+    private final Log log = LogFactory.getLog(getClass());
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        ReportDefinition reportDefinition = ReportEvaluationAdvice.getReportDefinition(invocation);
+        // reports evaluated within a report are part of its run
+        if (reportDefinition == null || ReportRunContext.getCurrentRun() != null) {
+            return invocation.proceed();
+        }
+
+        String key = getKey(invocation, reportDefinition);
+        if (key == null) {
+            return invocation.proceed();
+        }
+        CompletableFuture<Object> result = new CompletableFuture<Object>();
+        CompletableFuture<Object> leader = inFlight.putIfAbsent(key, result);
+        if (leader != null) {
+            log.info(reportDefinition.getName() + " with the same parameters is already being evaluated, waiting for its result");
+            try {
+                return leader.get();
+            }
+            catch (ExecutionException e) {
+                throw e.getCause();
+            }
+        }
+
+        try {
+            Object ret = evaluate(invocation, reportDefinition);
+            result.complete(ret);
+            return ret;
+        }
+        catch (Throwable t) {
+            result.completeExceptionally(t);
+            throw t;
+        }
+        finally {
+            inFlight.remove(key, result);
+        }
+    }
+
+    private Object evaluate(MethodInvocation invocation, ReportDefinition reportDefinition) throws Throwable {
+        if (!isHeavy(reportDefinition)) {
+            return invocation.proceed();
+        }
+        Semaphore semaphore = getHeavyReports();
+        if (semaphore == null) {
+            return invocation.proceed();
+        }
+        if (!semaphore.tryAcquire()) {
+            log.info(reportDefinition.getName() + " queued behind " + permits + " heavy reports being evaluated");
+            semaphore.acquire();
+        }
+        try {
+            return invocation.proceed();
+        }
+        finally {
+            semaphore.release();
+        }
+    }
+
+    /**
+     * @return the key of the report, its parameter values and base cohort, or null if it cannot be worked out
+     */
+    private String getKey(MethodInvocation invocation, ReportDefinition reportDefinition) {
+        try {
+            Object[] args = invocation.getArguments();
+            EvaluationContext context = args.length > 1 && args[1] instanceof EvaluationContext ? (EvaluationContext) args[1] : new EvaluationContext();
+            if (args[0] instanceof Mapped) {
+                context = EvaluationUtil.cloneForChild(context, (Mapped<?>) args[0]);
+            }
+            // each request loads its own definition, so it is told apart by uuid rather than by instance
+            return EvaluationKey.of(reportDefinition.getUuid(), context.getParameterValues(), context.getBaseCohort());
+        }
+        catch (Exception e) {
+            log.debug("Unable to key " + reportDefinition.getName(), e);
+            return null;
+        }
+    }
+
+    /**
+     * @return true if the last profiled run of the report took longer than the configured time, or if it has none
+     */
+    private boolean isHeavy(ReportDefinition reportDefinition) {
+        try {
+            List<ReportProfile> last = Context.getService(UgandaEMRReportsService.class).getReportProfiles(reportDefinition.getUuid(), null, 1);
+            return last.isEmpty() || last.get(0).getDuration() > getIntegerProperty(GP_HEAVY_REPORT_SECONDS, DEFAULT_HEAVY_REPORT_SECONDS) * 1000L;
+        }
+        catch (Exception e) {
+            return true;
+        }
+    }
+
+    /**
+     * @return the semaphore sized from the global property, or null if the number of heavy reports is not limited
+     */
+    private static synchronized Semaphore getHeavyReports() {
+        int configured = getIntegerProperty(GP_MAX_CONCURRENT_HEAVY_REPORTS, DEFAULT_MAX_CONCURRENT_HEAVY_REPORTS);
+        if (configured <= 0) {
+            return null;
+        }
+        // reports already running release the permits of the semaphore they acquired
+        if (heavyReports == null || configured != permits) {
+            heavyReports = new Semaphore(configured, true);
+            permits = configured;
+        }
+        return heavyReports;
+    }
+
+    private static int getIntegerProperty(String name, int defaultValue) {
+        try {
+            String value = Context.getAdministrationService().getGlobalProperty(name);
+            return StringUtils.isBlank(value) ? defaultValue : Integer.parseInt(value.trim());
+        }
+        catch (Exception e) {
+            return defaultValue;
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package org.openmrs.module.ugandaemrreports.evaluation;
+
+import org.openmrs.module.reporting.dataset.definition.DataSetDefinition;
+import org.openmrs.module.reporting.evaluation.EvaluationContext;
+import org.openmrs.module.reporting.evaluation.parameter.Mapped;
+import org.openmrs.module.reporting.report.definition.ReportDefinition;
+import org.openmrs.module.ugandaemrreports.common.DSDMSnapshot;
+import org.openmrs.module.ugandaemrreports.common.FollowUpMatrix;
+import org.openmrs.module.ugandaemrreports.common.InfantTimeline;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A single evaluation of a report definition, available to evaluators on the evaluating thread through
+ * {@link ReportRunContext}
+ */
+public class ReportRun {
+
+    private final String id = UUID.randomUUID().toString();
+
+    private final String reportDefinitionUuid;
+
+    private final String reportDefinitionName;
+
+    private final Map<String, Object> parameterValues;
+
+    private final Map<String, String> dataSetKeys = new HashMap<String, String>();
+
+    private final Date started;
+
+    private EvaluatedCohortCache evaluatedCohortCache;
+
+    private final CancellationToken cancellationToken = new CancellationToken();
+
+    private volatile Integer statementTimeout;
+
+    private volatile String dataSource;
+
+    private volatile Long replicaLag;
+
+    private final boolean replicaAllowed;
+
+    private final ConcurrentMap<Object, FollowUpMatrix> followUpMatrices = new ConcurrentHashMap<Object, FollowUpMatrix>();
+
+    private final ConcurrentMap<Object, DSDMSnapshot> dsdmSnapshots = new ConcurrentHashMap<Object, DSDMSnapshot>();
+
+    private final ConcurrentMap<Integer, InfantTimeline> infantTimelines = new ConcurrentHashMap<Integer, InfantTimeline>();
+
+    public ReportRun(ReportDefinition reportDefinition, EvaluationContext context) {
+        this.reportDefinitionUuid = reportDefinition.getUuid();
+        this.reportDefinitionName = reportDefinition.getName();
+        this.parameterValues = context != null && context.getParameterValues() != null ?
+                new HashMap<String, Object>(context.getParameterValues()) : new HashMap<String, Object>();
+        this.started = new Date();
+        this.replicaAllowed = ReportingDataSource.readsOnlyOverJdbc(reportDefinition);
+        if (reportDefinition.getDataSetDefinitions() != null) {
+            for (Map.Entry<String, Mapped<? extends DataSetDefinition>> e : reportDefinition.getDataSetDefinitions().entrySet()) {
+                if (e.getValue() != null && e.getValue().getParameterizable() != null) {
+                    dataSetKeys.put(e.getValue().getParameterizable().getUuid(), e.getKey());
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the id the run is cancelled by, see ReportRunContext#getActiveRuns()
+     */
+    public String getId() {
+        return id;
+    }
+
+    public String getReportDefinitionUuid() {
+        return reportDefinitionUuid;
+    }
+
+    public String getReportDefinitionName() {
+        return reportDefinitionName;
+    }
+
+    public Map<String, Object> getParameterValues() {
+        return parameterValues;
+    }
+
+    /**
+     * @return the key the report gives the data set definition, or null if it is not one of the report's
+     */
+    public String getDataSetKey(DataSetDefinition dataSetDefinition) {
+        return dataSetKeys.get(dataSetDefinition.getUuid());
+    }
+
+    public Date getStarted() {
+        return started;
+    }
+
+    /**
+     * @return the cohorts evaluated so far in this run, or null if they are not being cached
+     */
+    public EvaluatedCohortCache getEvaluatedCohortCache() {
+        return evaluatedCohortCache;
+    }
+
+    public void setEvaluatedCohortCache(EvaluatedCohortCache evaluatedCohortCache) {
+        this.evaluatedCohortCache = evaluatedCohortCache;
+    }
+
+    public CancellationToken getCancellationToken() {
+        return cancellationToken;
+    }
+
+    /**
+     * @return the query timeout in seconds of the JDBC statements of the run, or 0 for none, see
+     * {@link StatementTimeouts}
+     */
+    public int getStatementTimeout() {
+        if (statementTimeout == null) {
+            statementTimeout = StatementTimeouts.getSeconds(reportDefinitionUuid);
+        }
+        return statementTimeout;
+    }
+
+    /**
+     * @return the database the run reads report data from over JDBC, see {@link ReportingDataSource}, or null if it
+     * has not read any yet
+     */
+    public String getDataSource() {
+        return dataSource;
+    }
+
+    public void setDataSource(String dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * @return true if the report reads all its data over JDBC, so that it may read it from the replica
+     */
+    public boolean isReplicaAllowed() {
+        return replicaAllowed;
+    }
+
+    /**
+     * @return how many seconds the reporting replica was behind the primary when the run first read report data, or
+     * null if there is no replica or it could not be checked
+     */
+    public Long getReplicaLag() {
+        return replicaLag;
+    }
+
+    public void setReplicaLag(Long replicaLag) {
+        this.replicaLag = replicaLag;
+    }
+
+    /**
+     * @return the follow up matrix built earlier in this run under the given key, see {@link FollowUpMatrices}
+     */
+    public FollowUpMatrix getFollowUpMatrix(Object key) {
+        return followUpMatrices.get(key);
+    }
+
+    public void putFollowUpMatrix(Object key, FollowUpMatrix matrix) {
+        followUpMatrices.put(key, matrix);
+    }
+
+    /**
+     * @return the DSDM snapshot built earlier in this run under the given key, see {@link DSDMSnapshots}
+     */
+    public DSDMSnapshot getDSDMSnapshot(Object key) {
+        return dsdmSnapshots.get(key);
+    }
+
+    public void putDSDMSnapshot(Object key, DSDMSnapshot snapshot) {
+        dsdmSnapshots.put(key, snapshot);
+    }
+
+    /**
+     * @return the timeline of the infant loaded earlier in this run, see {@link InfantTimelines}
+     */
+    public InfantTimeline getInfantTimeline(Integer patientId) {
+        return infantTimelines.get(patientId);
+    }
+
+    public void putInfantTimelines(Map<Integer, InfantTimeline> timelines) {
+        infantTimelines.putAll(timelines);
+    }
+
+    @Override
+    public String toString() {
+        return reportDefinitionName + " " + parameterValues;
+    }
+}
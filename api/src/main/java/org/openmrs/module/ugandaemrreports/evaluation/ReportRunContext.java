@@ -0,0 +1,64 @@
+package org.openmrs.module.ugandaemrreports.evaluation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Holds the {@link ReportRun} being evaluated on the current thread, and the runs in progress on any thread so that
+ * they can be cancelled
+ */
+public class ReportRunContext {
+
+    /**
+     * Name used for evaluations that are not part of a report, e.g. a cohort evaluated on its own
+     */
+    public static final String AD_HOC = "Ad hoc evaluation";
+
+    private static final ThreadLocal<ReportRun> currentRun = new ThreadLocal<ReportRun>();
+
+    private static final ConcurrentMap<String, ReportRun> activeRuns = new ConcurrentHashMap<String, ReportRun>();
+
+    public static ReportRun getCurrentRun() {
+        return currentRun.get();
+    }
+
+    public static void setCurrentRun(ReportRun run) {
+        currentRun.set(run);
+    }
+
+    public static void clear() {
+        currentRun.remove();
+    }
+
+    /**
+     * @return the name of the report being evaluated on this thread, or {@link #AD_HOC}
+     */
+    public static String getCurrentReportName() {
+        ReportRun run = currentRun.get();
+        return run != null ? run.getReportDefinitionName() : AD_HOC;
+    }
+
+    /**
+     * Adds a run to the runs in progress, until it is {@link #finished(ReportRun)}
+     */
+    public static void started(ReportRun run) {
+        activeRuns.put(run.getId(), run);
+    }
+
+    public static void finished(ReportRun run) {
+        activeRuns.remove(run.getId());
+    }
+
+    public static List<ReportRun> getActiveRuns() {
+        return new ArrayList<ReportRun>(activeRuns.values());
+    }
+
+    /**
+     * @return the run in progress with the id, or null if there is none
+     */
+    public static ReportRun getActiveRun(String id) {
+        return id != null ? activeRuns.get(id) : null;
+    }
+}
@@ -0,0 +1,92 @@
+package org.openmrs.module.ugandaemrreports.evaluation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Aggregated durations, row counts and failures of the runs of one report definition
+ */
+public class ReportRunStatistics {
+
+    private final String reportDefinitionUuid;
+
+    private String reportName;
+
+    private int runs;
+
+    private int failures;
+
+    private long peakRows = -1;
+
+    private Date lastRun;
+
+    private final List<Long> durations = new ArrayList<Long>();
+
+    private boolean sorted = true;
+
+    public ReportRunStatistics(String reportDefinitionUuid) {
+        this.reportDefinitionUuid = reportDefinitionUuid;
+    }
+
+    /**
+     * Adds a run to the statistics
+     */
+    public void add(ReportProfile profile) {
+        runs++;
+        if (ReportProfile.STATUS_FAILED.equals(profile.getStatus())) {
+            failures++;
+        }
+        else {
+            // failed runs stop early, so only completed ones count towards the durations
+            durations.add(profile.getDuration());
+            sorted = false;
+        }
+        peakRows = Math.max(peakRows, profile.getRows());
+        if (lastRun == null || profile.getStarted().after(lastRun)) {
+            lastRun = profile.getStarted();
+            reportName = profile.getReportName();
+        }
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return the duration of completed runs at the given percentile (nearest rank), or -1 if none completed
+     */
+    public long getDurationPercentile(double percentile) {
+        if (durations.isEmpty()) {
+            return -1;
+        }
+        if (!sorted) {
+            Collections.sort(durations);
+            sorted = true;
+        }
+        int rank = (int) Math.ceil(percentile / 100 * durations.size());
+        return durations.get(Math.min(Math.max(rank, 1), durations.size()) - 1);
+    }
+
+    public String getReportDefinitionUuid() {
+        return reportDefinitionUuid;
+    }
+
+    public String getReportName() {
+        return reportName;
+    }
+
+    public int getRuns() {
+        return runs;
+    }
+
+    public int getFailures() {
+        return failures;
+    }
+
+    public long getPeakRows() {
+        return peakRows;
+    }
+
+    public Date getLastRun() {
+        return lastRun;
+    }
+}
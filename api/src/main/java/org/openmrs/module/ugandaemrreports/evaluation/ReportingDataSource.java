@@ -0,0 +1,209 @@
+package org.openmrs.module.ugandaemrreports.evaluation;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.reporting.dataset.definition.DataSetDefinition;
+import org.openmrs.module.reporting.evaluation.parameter.Mapped;
+import org.openmrs.module.reporting.report.definition.ReportDefinition;
+import org.openmrs.module.ugandaemrreports.definition.dataset.definition.ARTDatasetDefinition;
+import org.openmrs.module.ugandaemrreports.definition.dataset.definition.EWIPillPickupDataSetDefinition;
+import org.openmrs.module.ugandaemrreports.definition.dataset.definition.HCTDataExportDatasetDefinition;
+import org.openmrs.module.ugandaemrreports.definition.dataset.definition.HCTDatasetDefinition;
+import org.openmrs.module.ugandaemrreports.definition.dataset.definition.PreARTDatasetDefinition;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * Decides which database the report queries Helper runs over JDBC read from. When a replica is configured in the
+ * runtime properties ({@link #PROPERTY_REPLICA_URL}, and optionally {@link #PROPERTY_REPLICA_USERNAME} and
+ * {@link #PROPERTY_REPLICA_PASSWORD}, which default to those of the primary), they read from it so that month end
+ * reporting does not slow down data entry on the primary. They read from the primary instead when the replica cannot
+ * be reached, is not replicating, or is further behind than {@link #PROPERTY_MAX_LAG_SECONDS}. A database that is
+ * not a replica at all counts as up to date, so a second local MySQL can stand in for one.
+ * <p>
+ * The reporting framework's own queries, e.g. those of SQL cohorts and EvaluationService, always read the primary. So
+ * that a run never mixes data from the two, only runs of reports that read all their data over JDBC, see
+ * {@link #readsOnlyOverJdbc(ReportDefinition)}, use the replica; the JDBC queries of other reports, and of
+ * evaluations outside of a report run, read the primary.
+ * <p>
+ * The replica is checked once per report run, and the database used and the replica lag are recorded on the run and
+ * saved with its profile. Checking the lag needs the REPLICATION CLIENT privilege on the replica; without it the
+ * primary is used and a warning is logged once.
+ */
+public class ReportingDataSource {
+
+    public static final String PROPERTY_REPLICA_URL = "ugandaemrreports.replica.url";
+
+    public static final String PROPERTY_REPLICA_USERNAME = "ugandaemrreports.replica.username";
+
+    public static final String PROPERTY_REPLICA_PASSWORD = "ugandaemrreports.replica.password";
+
+    public static final String PROPERTY_MAX_LAG_SECONDS = "ugandaemrreports.replica.maxLagSeconds";
+
+    public static final String PRIMARY = "primary";
+
+    public static final String REPLICA = "replica";
+
+    private static final long DEFAULT_MAX_LAG_SECONDS = 30;
+
+    /**
+     * MySQL's error code for a statement that needs a privilege the user does not have
+     */
+    private static final int ER_SPECIFIC_ACCESS_DENIED = 1227;
+
+    private static final String DRIVER = "com.mysql.jdbc.Driver";
+
+    private static final Log log = LogFactory.getLog(ReportingDataSource.class);
+
+    private static volatile boolean privilegeWarned;
+
+    /**
+     * Data sets whose evaluators read all their data over JDBC through Helper#sqlConnection
+     */
+    private static final Set<Class<?>> JDBC_DATA_SETS = new HashSet<Class<?>>(Arrays.<Class<?>>asList(ARTDatasetDefinition.class,
+            PreARTDatasetDefinition.class, EWIPillPickupDataSetDefinition.class, HCTDatasetDefinition.class,
+            HCTDataExportDatasetDefinition.class));
+
+    /**
+     * @return true if the report has no base cohort and only data sets whose evaluators read all their data over
+     * JDBC, so that it can read everything from the replica
+     */
+    public static boolean readsOnlyOverJdbc(ReportDefinition reportDefinition) {
+        if (reportDefinition.getBaseCohortDefinition() != null || reportDefinition.getDataSetDefinitions() == null
+                || reportDefinition.getDataSetDefinitions().isEmpty()) {
+            return false;
+        }
+        for (Mapped<? extends DataSetDefinition> mapped : reportDefinition.getDataSetDefinitions().values()) {
+            if (mapped == null || mapped.getParameterizable() == null || !JDBC_DATA_SETS.contains(mapped.getParameterizable().getClass())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the driver, url and credentials of the database to read report data from, as taken by
+     * Helper#getDatabaseConnection; read only is set to true for the replica
+     */
+    public static Properties getConnectionProperties() {
+        Properties runtime = Context.getRuntimeProperties();
+        Properties props = new Properties();
+        props.setProperty("driver.class", DRIVER);
+        if (REPLICA.equals(getDecision(runtime).dataSource)) {
+            props.setProperty("driver.url", runtime.getProperty(PROPERTY_REPLICA_URL));
+            props.setProperty("user", runtime.getProperty(PROPERTY_REPLICA_USERNAME, runtime.getProperty("connection.username")));
+            props.setProperty("password", runtime.getProperty(PROPERTY_REPLICA_PASSWORD, runtime.getProperty("connection.password")));
+            props.setProperty("readOnly", "true");
+        } else {
+            props.setProperty("driver.url", runtime.getProperty("connection.url"));
+            props.setProperty("user", runtime.getProperty("connection.username"));
+            props.setProperty("password", runtime.getProperty("connection.password"));
+        }
+        return props;
+    }
+
+    private static Decision getDecision(Properties runtime) {
+        ReportRun run = ReportRunContext.getCurrentRun();
+        if (StringUtils.isBlank(runtime.getProperty(PROPERTY_REPLICA_URL)) || run == null || !run.isReplicaAllowed()) {
+            return Decision.PRIMARY_ONLY;
+        }
+        synchronized (run) {
+            if (run.getDataSource() == null) {
+                Decision decision = decide(runtime);
+                run.setDataSource(decision.dataSource);
+                run.setReplicaLag(decision.replicaLag);
+            }
+            return new Decision(run.getDataSource(), run.getReplicaLag());
+        }
+    }
+
+    private static Decision decide(Properties runtime) {
+        Long lag = null;
+        try {
+            lag = getReplicaLag(runtime);
+        }
+        catch (SQLException e) {
+            if (e.getErrorCode() != ER_SPECIFIC_ACCESS_DENIED) {
+                log.warn("Unable to reach the reporting replica, reading report data from the primary database", e);
+            } else if (!privilegeWarned) {
+                privilegeWarned = true;
+                log.warn("The reporting replica user needs the REPLICATION CLIENT privilege to check the replica lag, " +
+                        "reading report data from the primary database: " + e.getMessage());
+            }
+        }
+        catch (Exception e) {
+            log.warn("Unable to reach the reporting replica, reading report data from the primary database", e);
+        }
+        long maxLag = getMaxLagSeconds(runtime);
+        String dataSource = lag != null && lag <= maxLag ? REPLICA : PRIMARY;
+        if (lag != null && lag > maxLag) {
+            log.warn("The reporting replica is " + lag + " s behind, more than " + maxLag + " s, reading report data from the primary database");
+        }
+        return new Decision(dataSource, lag);
+    }
+
+    /**
+     * @return the number of seconds the replica is behind the primary, 0 if it is not a replica, or null if it is not
+     * replicating
+     */
+    private static Long getReplicaLag(Properties runtime) throws ClassNotFoundException, SQLException {
+        Class.forName(DRIVER);
+        Properties props = new Properties();
+        props.setProperty("user", runtime.getProperty(PROPERTY_REPLICA_USERNAME, runtime.getProperty("connection.username")));
+        props.setProperty("password", runtime.getProperty(PROPERTY_REPLICA_PASSWORD, runtime.getProperty("connection.password")));
+        props.setProperty("connectTimeout", "5000");
+        Connection connection = DriverManager.getConnection(runtime.getProperty(PROPERTY_REPLICA_URL), props);
+        try {
+            Statement statement = connection.createStatement();
+            try {
+                ResultSet rs = statement.executeQuery("SHOW SLAVE STATUS");
+                if (!rs.next()) {
+                    return 0L;
+                }
+                long lag = rs.getLong("Seconds_Behind_Master");
+                return rs.wasNull() ? null : lag;
+            }
+            finally {
+                statement.close();
+            }
+        }
+        finally {
+            connection.close();
+        }
+    }
+
+    private static long getMaxLagSeconds(Properties runtime) {
+        String value = runtime.getProperty(PROPERTY_MAX_LAG_SECONDS);
+        try {
+            return StringUtils.isBlank(value) ? DEFAULT_MAX_LAG_SECONDS : Long.parseLong(value.trim());
+        }
+        catch (NumberFormatException e) {
+            log.warn("Invalid value for " + PROPERTY_MAX_LAG_SECONDS + ": " + value);
+            return DEFAULT_MAX_LAG_SECONDS;
+        }
+    }
+
+    private static class Decision {
+
+        private static final Decision PRIMARY_ONLY = new Decision(PRIMARY, null);
+
+        private final String dataSource;
+
+        private final Long replicaLag;
+
+        private Decision(String dataSource, Long replicaLag) {
+            this.dataSource = dataSource;
+            this.replicaLag = replicaLag;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package org.openmrs.module.ugandaemrreports.evaluation;
+
+import org.apache.commons.lang.StringUtils;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An index on an OpenMRS table that the queries of this module's evaluators rely on. The indexes are created by the
+ * module's liquibase changesets; {@link #ALL} lists the same indexes so that their presence and use can be checked
+ * when the module starts.
+ */
+public class ReportingIndex {
+
+    /**
+     * Obs of a concept by date value, e.g. ART start (99161), return visit (5096) and viral load (163023) dates
+     */
+    public static final ReportingIndex OBS_CONCEPT_VALUE_DATETIME = new ReportingIndex(
+            "ugandaemrreports_obs_concept_value_datetime", "obs", "concept_id", "value_datetime");
+
+    /**
+     * Obs of a concept by patient, e.g. the viral load results of the patients of a cohort
+     */
+    public static final ReportingIndex OBS_CONCEPT_PERSON = new ReportingIndex(
+            "ugandaemrreports_obs_concept_person", "obs", "concept_id", "person_id");
+
+    /**
+     * Encounters of a type by date, e.g. ART card visits during a period
+     */
+    public static final ReportingIndex ENCOUNTER_TYPE_DATETIME = new ReportingIndex(
+            "ugandaemrreports_encounter_type_datetime", "encounter", "encounter_type", "encounter_datetime");
+
+    /**
+     * Obs of a concept by creation, e.g. the viral load obs entered since the viral load index was last refreshed
+     */
+    public static final ReportingIndex OBS_CONCEPT_DATE_CREATED = new ReportingIndex(
+            "ugandaemrreports_obs_concept_date_created", "obs", "concept_id", "date_created");
+
+    /**
+     * Encounters by creation, e.g. the visits entered since the appointment index was last refreshed
+     */
+    public static final ReportingIndex ENCOUNTER_DATE_CREATED = new ReportingIndex(
+            "ugandaemrreports_encounter_date_created", "encounter", "date_created");
+
+    /**
+     * Encounters by last change, e.g. the visits voided or moved since the appointment index was last refreshed
+     */
+    public static final ReportingIndex ENCOUNTER_DATE_CHANGED = new ReportingIndex(
+            "ugandaemrreports_encounter_date_changed", "encounter", "date_changed");
+
+    public static final List<ReportingIndex> ALL = Collections.unmodifiableList(Arrays.asList(
+            OBS_CONCEPT_VALUE_DATETIME, OBS_CONCEPT_PERSON, ENCOUNTER_TYPE_DATETIME, OBS_CONCEPT_DATE_CREATED,
+            ENCOUNTER_DATE_CREATED, ENCOUNTER_DATE_CHANGED));
+
+    private final String name;
+
+    private final String table;
+
+    private final List<String> columns;
+
+    public ReportingIndex(String name, String table, String... columns) {
+        this.name = name;
+        this.table = table;
+        this.columns = Collections.unmodifiableList(Arrays.asList(columns));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getTable() {
+        return table;
+    }
+
+    public List<String> getColumns() {
+        return columns;
+    }
+
+    /**
+     * @return true if an index on the given columns, in order, serves the same lookups as this one
+     */
+    public boolean isCoveredBy(List<String> indexColumns) {
+        if (indexColumns.size() < columns.size()) {
+            return false;
+        }
+        for (int i = 0; i < columns.size(); i++) {
+            if (!columns.get(i).equalsIgnoreCase(indexColumns.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return name + " on " + table + " (" + StringUtils.join(columns, ", ") + ")";
+    }
+}
@@ -0,0 +1,52 @@
+package org.openmrs.module.ugandaemrreports.evaluation;
+
+/**
+ * Whether a {@link ReportingIndex} exists in the database and how often it has been read since the server started
+ */
+public class ReportingIndexStatus {
+
+    private final ReportingIndex index;
+
+    private final String existingIndex;
+
+    private final Long reads;
+
+    /**
+     * @param existingIndex the name of the index that covers it, or null if there is none
+     * @param reads the rows read through that index since the server started, or null if MySQL does not track it
+     */
+    public ReportingIndexStatus(ReportingIndex index, String existingIndex, Long reads) {
+        this.index = index;
+        this.existingIndex = existingIndex;
+        this.reads = reads;
+    }
+
+    public ReportingIndex getIndex() {
+        return index;
+    }
+
+    public String getExistingIndex() {
+        return existingIndex;
+    }
+
+    public Long getReads() {
+        return reads;
+    }
+
+    public boolean isMissing() {
+        return existingIndex == null;
+    }
+
+    public boolean isUnused() {
+        return existingIndex != null && reads != null && reads == 0;
+    }
+
+    @Override
+    public String toString() {
+        if (isMissing()) {
+            return index + ": missing";
+        }
+        return index + ": " + (existingIndex.equals(index.getName()) ? "present" : "covered by " + existingIndex)
+                + (reads != null ? ", " + reads + " reads" : "");
+    }
+}
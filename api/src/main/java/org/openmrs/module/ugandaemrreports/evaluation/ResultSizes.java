@@ -0,0 +1,145 @@
+package org.openmrs.module.ugandaemrreports.evaluation;
+
+import org.openmrs.module.reporting.cohort.EvaluatedCohort;
+import org.openmrs.module.reporting.data.EvaluatedData;
+import org.openmrs.module.reporting.dataset.DataSet;
+import org.openmrs.module.reporting.dataset.MapDataSet;
+import org.openmrs.module.reporting.dataset.SimpleDataSet;
+import org.openmrs.module.ugandaemrreports.common.ColumnarDataSet;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Map;
+
+/**
+ * Rough row counts and memory estimates of evaluation results, for profiling. Sizes follow a 64 bit JVM with
+ * compressed references and are meant to compare steps with each other, not to be exact.
+ */
+public class ResultSizes {
+
+    private static final int OBJECT_HEADER = 16;
+
+    private static final int REFERENCE = 4;
+
+    private static final int ENTITY = 256;
+
+    /**
+     * @return the number of rows in an evaluation result, or -1 if it is not known
+     */
+    public static long rows(Object result) {
+        if (result == null) {
+            return 0;
+        }
+        if (result instanceof Collection) {
+            return ((Collection) result).size();
+        }
+        if (result instanceof Map) {
+            return ((Map) result).size();
+        }
+        if (result instanceof EvaluatedCohort) {
+            return ((EvaluatedCohort) result).size();
+        }
+        if (result instanceof EvaluatedData) {
+            return ((EvaluatedData) result).getData().size();
+        }
+        if (result instanceof SimpleDataSet) {
+            return ((SimpleDataSet) result).getRows().size();
+        }
+        if (result instanceof ColumnarDataSet) {
+            return ((ColumnarDataSet) result).size();
+        }
+        if (result instanceof MapDataSet) {
+            return 1;
+        }
+        if (result instanceof DataSet) {
+            return -1;
+        }
+        return 1;
+    }
+
+    /**
+     * @return the estimated memory held by an evaluation result
+     */
+    public static long bytes(Object result) {
+        if (result == null) {
+            return 0;
+        }
+        if (result instanceof EvaluatedCohort) {
+            // boxed integers in a hash set
+            return ((EvaluatedCohort) result).size() * 48L;
+        }
+        if (result instanceof EvaluatedData) {
+            return bytes(((EvaluatedData) result).getData());
+        }
+        if (result instanceof SimpleDataSet) {
+            return bytes(((SimpleDataSet) result).getRows());
+        }
+        if (result instanceof ColumnarDataSet) {
+            // the column arrays, whatever the rows, as rows are views created when read
+            long size = OBJECT_HEADER;
+            for (Object array : ((ColumnarDataSet) result).getColumnArrays()) {
+                size += REFERENCE + bytes(array);
+            }
+            return size;
+        }
+        if (result instanceof int[]) {
+            return OBJECT_HEADER + ((int[]) result).length * 4L;
+        }
+        if (result instanceof double[]) {
+            return OBJECT_HEADER + ((double[]) result).length * 8L;
+        }
+        if (result instanceof BitSet) {
+            return OBJECT_HEADER + ((BitSet) result).size() / 8;
+        }
+        if (result instanceof org.openmrs.module.reporting.dataset.DataSetRow) {
+            return bytes(((org.openmrs.module.reporting.dataset.DataSetRow) result).getColumnValues());
+        }
+        if (result instanceof String) {
+            return OBJECT_HEADER + 24 + ((String) result).length() * 2L;
+        }
+        if (result instanceof Number || result instanceof Boolean || result instanceof Character) {
+            return OBJECT_HEADER + 8;
+        }
+        if (result instanceof Date) {
+            return OBJECT_HEADER + 16;
+        }
+        if (result instanceof Object[]) {
+            long size = OBJECT_HEADER;
+            for (Object o : (Object[]) result) {
+                size += REFERENCE + bytes(o);
+            }
+            return size;
+        }
+        if (result instanceof Collection) {
+            long size = OBJECT_HEADER;
+            for (Object o : (Collection) result) {
+                size += REFERENCE + OBJECT_HEADER + bytes(o);
+            }
+            return size;
+        }
+        if (result instanceof Map) {
+            long size = OBJECT_HEADER;
+            for (Object o : ((Map) result).entrySet()) {
+                Map.Entry e = (Map.Entry) o;
+                size += 32 + bytes(e.getKey()) + bytes(e.getValue());
+            }
+            return size;
+        }
+        return ENTITY;
+    }
+
+    /**
+     * @return the estimated memory of the current row of a result set
+     */
+    public static long bytes(ResultSet rs) throws SQLException {
+        int columns = rs.getMetaData().getColumnCount();
+        long size = OBJECT_HEADER;
+        for (int i = 1; i <= columns; i++) {
+            size += REFERENCE + bytes(rs.getObject(i));
+        }
+        return size;
+    }
+}
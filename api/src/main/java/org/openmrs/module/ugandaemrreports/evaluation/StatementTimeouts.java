@@ -0,0 +1,49 @@
+package org.openmrs.module.ugandaemrreports.evaluation;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.api.context.Context;
+
+/**
+ * The query timeout set on the JDBC statements Helper runs for a report, from {@link #GP_STATEMENT_TIMEOUT_SECONDS}:
+ * a comma separated list of a number of seconds for all reports and report definition uuid=seconds pairs for the
+ * reports that need more or less, e.g. "600, &lt;report uuid&gt;=1800". 0 or blank means no timeout.
+ */
+public class StatementTimeouts {
+
+    public static final String GP_STATEMENT_TIMEOUT_SECONDS = "ugandaemrreports.statementTimeoutSeconds";
+
+    private static final Log log = LogFactory.getLog(StatementTimeouts.class);
+
+    /**
+     * @return the timeout in seconds of the statements of the report, or 0 for none
+     */
+    public static int getSeconds(String reportDefinitionUuid) {
+        String value;
+        try {
+            value = Context.getAdministrationService().getGlobalProperty(GP_STATEMENT_TIMEOUT_SECONDS);
+        }
+        catch (Exception e) {
+            return 0;
+        }
+        if (StringUtils.isBlank(value)) {
+            return 0;
+        }
+        int ret = 0;
+        for (String entry : value.split(",")) {
+            String[] parts = entry.trim().split("=");
+            try {
+                if (parts.length == 1 && StringUtils.isNotBlank(parts[0])) {
+                    ret = Integer.parseInt(parts[0].trim());
+                } else if (parts.length == 2 && parts[0].trim().equals(reportDefinitionUuid)) {
+                    return Integer.parseInt(parts[1].trim());
+                }
+            }
+            catch (NumberFormatException e) {
+                log.warn("Invalid entry '" + entry + "' in " + GP_STATEMENT_TIMEOUT_SECONDS);
+            }
+        }
+        return ret;
+    }
+}
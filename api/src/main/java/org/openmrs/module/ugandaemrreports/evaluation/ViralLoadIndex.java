@@ -0,0 +1,101 @@
+package org.openmrs.module.ugandaemrreports.evaluation;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.ugandaemrreports.api.UgandaEMRReportsService;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Keeps the viral load index (the latest and previous viral load test of each patient) and the viral load schedule
+ * worked out from it (the next viral load due date of each patient on ART) up to date. They are refreshed when the
+ * module starts and, before the viral load evaluators read them, if they were last refreshed longer ago than
+ * {@link #GP_REFRESH_MINUTES}; readers see the obs changed since the last refresh either way (see
+ * UgandaEMRReportsService#getLatestViralLoads), refreshing only keeps those few. Refreshes and rebuilds run one at a
+ * time, each in its own transaction.
+ */
+@Component
+public class ViralLoadIndex {
+
+    public static final String GP_REFRESH_MINUTES = "ugandaemrreports.viralLoadIndexRefreshMinutes";
+
+    private static final int DEFAULT_REFRESH_MINUTES = 15;
+
+    private static final Log log = LogFactory.getLog(ViralLoadIndex.class);
+
+    private final Object lock = new Object();
+
+    private volatile long lastRefreshed;
+
+    /**
+     * Refreshes the index if it was last refreshed longer ago than the refresh interval. Failures are logged rather
+     * than thrown, as the index can be read without refreshing it.
+     */
+    public void refreshIfDue() {
+        if (System.currentTimeMillis() - lastRefreshed < getRefreshMinutes() * 60000L) {
+            return;
+        }
+        synchronized (lock) {
+            if (System.currentTimeMillis() - lastRefreshed < getRefreshMinutes() * 60000L) {
+                return;
+            }
+            try {
+                refresh();
+            }
+            catch (Exception e) {
+                log.warn("Unable to refresh the viral load index", e);
+            }
+        }
+    }
+
+    /**
+     * @return the number of patients updated
+     */
+    public int refresh() {
+        synchronized (lock) {
+            long started = System.currentTimeMillis();
+            int ret = Context.getService(UgandaEMRReportsService.class).refreshViralLoadIndex();
+            lastRefreshed = started;
+            log.debug("Refreshed the viral load index of " + ret + " patients in " + (System.currentTimeMillis() - started) + " ms");
+            return ret;
+        }
+    }
+
+    /**
+     * @return the number of patients indexed
+     */
+    public int rebuild() {
+        synchronized (lock) {
+            long started = System.currentTimeMillis();
+            int ret = Context.getService(UgandaEMRReportsService.class).rebuildViralLoadIndex();
+            lastRefreshed = started;
+            log.info("Rebuilt the viral load index of " + ret + " patients in " + (System.currentTimeMillis() - started) + " ms");
+            return ret;
+        }
+    }
+
+    /**
+     * @return the patients whose tests in the index differ from their obs
+     */
+    public List<Integer> check() {
+        List<Integer> ret = Context.getService(UgandaEMRReportsService.class).checkViralLoadIndex();
+        if (!ret.isEmpty()) {
+            log.warn("The viral load index differs from the obs of " + ret.size() + " patients, e.g. " + ret.subList(0, Math.min(10, ret.size())));
+        }
+        return ret;
+    }
+
+    private int getRefreshMinutes() {
+        String value = Context.getAdministrationService().getGlobalProperty(GP_REFRESH_MINUTES);
+        try {
+            return StringUtils.isBlank(value) ? DEFAULT_REFRESH_MINUTES : Integer.parseInt(value.trim());
+        }
+        catch (NumberFormatException e) {
+            log.warn("Invalid value for " + GP_REFRESH_MINUTES + ": " + value);
+            return DEFAULT_REFRESH_MINUTES;
+        }
+    }
+}
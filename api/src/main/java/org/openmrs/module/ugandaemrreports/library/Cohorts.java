@@ -26,36 +26,50 @@ public class Cohorts {
     public Log log = LogFactory.getLog(getClass());
 
     public static SqlCohortDefinition getPatientsWhoEnrolledInCareInYear() {
-        SqlCohortDefinition patientsStartedCareInYear = new SqlCohortDefinition("select e.patient_id from encounter e inner join encounter_type et on(e.encounter_type = et.encounter_type_id and et.uuid = '8d5b27bc-c2cc-11de-8d13-0010c6dffd0f' and YEAR(:startDate) = YEAR(e.encounter_datetime) and e.voided = 0)");
+        SqlCohortDefinition patientsStartedCareInYear = new SqlCohortDefinition("select e.patient_id from encounter e inner join encounter_type et on(e.encounter_type = et.encounter_type_id and et.uuid = '8d5b27bc-c2cc-11de-8d13-0010c6dffd0f' and " + inPeriod("e.encounter_datetime", ":startDate", "YEAR") + " and e.voided = 0)");
         patientsStartedCareInYear.addParameter(new Parameter("startDate", "startDate", Date.class));
         return patientsStartedCareInYear;
     }
 
     public static SqlCohortDefinition getPatientsWhoEnrolledInCareUntilDate() {
-        SqlCohortDefinition patientsStartedCareByDate = new SqlCohortDefinition("select e.patient_id from encounter e INNER JOIN encounter_type et ON e.encounter_type = et.encounter_type_id where e.voided = false and et.uuid = '8d5b27bc-c2cc-11de-8d13-0010c6dffd0f' AND (TO_DAYS(e.encounter_datetime) < TO_DAYS(:endDate))");
+        SqlCohortDefinition patientsStartedCareByDate = new SqlCohortDefinition("select e.patient_id from encounter e INNER JOIN encounter_type et ON e.encounter_type = et.encounter_type_id where e.voided = false and et.uuid = '8d5b27bc-c2cc-11de-8d13-0010c6dffd0f' AND e.encounter_datetime < DATE(:endDate)");
 
         patientsStartedCareByDate.addParameter(new Parameter("endDate", "endDate", Date.class));
         return patientsStartedCareByDate;
     }
 
     public static SqlCohortDefinition getPatientHavingARTDuringMonth() {
-        SqlCohortDefinition patientsStartedCareInYear = new SqlCohortDefinition("select o.person_id from obs o where o.voided = false and o.concept_id in (99161) and (EXTRACT(YEAR_MONTH FROM :startDate) = EXTRACT(YEAR_MONTH FROM o.value_datetime) OR EXTRACT(YEAR_MONTH FROM :startDate) = EXTRACT(YEAR_MONTH FROM o.obs_datetime)) group by o.person_id");
+        SqlCohortDefinition patientsStartedCareInYear = new SqlCohortDefinition("select o.person_id from obs o where o.voided = false and o.concept_id in (99161) and " + inPeriod("o.value_datetime", ":startDate", "MONTH") +
+                " union select o.person_id from obs o where o.voided = false and o.concept_id in (99161) and " + inPeriod("o.obs_datetime", ":startDate", "MONTH"));
         patientsStartedCareInYear.addParameter(new Parameter("startDate", "startDate", Date.class));
         return patientsStartedCareInYear;
     }
 
+    /**
+     * Patients who started ART between the start and end date with an encounter without a return visit date in their
+     * first year on ART. The encounters are bounded by the period too, so they are read through the date index.
+     */
     public static SqlCohortDefinition getPatientsWithAtLeastOneMissedAppointmentAfterArtStartDate() {
-        SqlCohortDefinition sqlCohortDefinition = new SqlCohortDefinition("select e.patient_id from encounter e inner join obs oi on(oi.concept_id = 99161 and oi.person_id = e.patient_id and e.encounter_datetime  BETWEEN oi.value_datetime and DATE_ADD(oi.value_datetime, INTERVAL 1 YEAR)) where e.encounter_id not in (select o.encounter_id from obs o where o.concept_id = 90069 group by o.encounter_id ) group by e.patient_id");
+        SqlCohortDefinition sqlCohortDefinition = new SqlCohortDefinition("select e.patient_id from obs oi inner join encounter e on(oi.person_id = e.patient_id and e.encounter_datetime  BETWEEN oi.value_datetime and DATE_ADD(oi.value_datetime, INTERVAL 1 YEAR) and e.voided = false) where oi.concept_id = 99161 and oi.voided = false and oi.value_datetime BETWEEN :startDate and :endDate and e.encounter_datetime BETWEEN :startDate and DATE_ADD(:endDate, INTERVAL 1 YEAR) and not exists (select 1 from obs o where o.encounter_id = e.encounter_id and o.concept_id = 90069) group by e.patient_id");
+        sqlCohortDefinition.addParameter(new Parameter("startDate", "startDate", Date.class));
+        sqlCohortDefinition.addParameter(new Parameter("endDate", "endDate", Date.class));
         return sqlCohortDefinition;
     }
 
+    /**
+     * Patients who started ART between the start and end date with an encounter with a return visit date in their
+     * first year on ART
+     */
     public static SqlCohortDefinition getPatientsWithAtLeastOneScheduledVisitAfterArtStartDate() {
-        SqlCohortDefinition sqlCohortDefinition = new SqlCohortDefinition("select e.patient_id from encounter e inner join obs oi on(oi.concept_id = 99161 and oi.person_id = e.patient_id and e.encounter_datetime  BETWEEN oi.value_datetime and DATE_ADD(oi.value_datetime, INTERVAL 1 YEAR)) where e.encounter_id in (select o.encounter_id from obs o where o.concept_id = 90069 group by o.encounter_id ) group by e.patient_id");
+        SqlCohortDefinition sqlCohortDefinition = new SqlCohortDefinition("select e.patient_id from obs oi inner join encounter e on(oi.person_id = e.patient_id and e.encounter_datetime  BETWEEN oi.value_datetime and DATE_ADD(oi.value_datetime, INTERVAL 1 YEAR) and e.voided = false) where oi.concept_id = 99161 and oi.voided = false and oi.value_datetime BETWEEN :startDate and :endDate and e.encounter_datetime BETWEEN :startDate and DATE_ADD(:endDate, INTERVAL 1 YEAR) and exists (select 1 from obs o where o.encounter_id = e.encounter_id and o.concept_id = 90069) group by e.patient_id");
+        sqlCohortDefinition.addParameter(new Parameter("startDate", "startDate", Date.class));
+        sqlCohortDefinition.addParameter(new Parameter("endDate", "endDate", Date.class));
         return sqlCohortDefinition;
     }
 
     public static SqlCohortDefinition getPatientHavingARTBeforeMonth() {
-        SqlCohortDefinition patientsStartedCareInYear = new SqlCohortDefinition("select o.person_id from obs o where o.voided = false and o.concept_id in (99161) and (EXTRACT(YEAR_MONTH FROM :startDate) < EXTRACT(YEAR_MONTH FROM o.value_datetime) OR EXTRACT(YEAR_MONTH FROM :startDate) < EXTRACT(YEAR_MONTH FROM o.obs_datetime)) group by o.person_id");
+        SqlCohortDefinition patientsStartedCareInYear = new SqlCohortDefinition("select o.person_id from obs o where o.voided = false and o.concept_id in (99161) and o.value_datetime >= " + nextPeriodStart(":startDate", "MONTH") +
+                " union select o.person_id from obs o where o.voided = false and o.concept_id in (99161) and o.obs_datetime >= " + nextPeriodStart(":startDate", "MONTH"));
         patientsStartedCareInYear.addParameter(new Parameter("startDate", "startDate", Date.class));
         return patientsStartedCareInYear;
     }
@@ -72,13 +86,6 @@ public class Cohorts {
     public static SqlCohortDefinition getPatientsWithObsDuringQuarter(Concept concept, Integer periodToAdd, String period) {
         String encounterQuery = makeEncounterQuery(periodToAdd, period);
 
-        String dateString = "DATE_ADD(:startDate,INTERVAL " + periodToAdd + " " + period + ")";
-        String currentPeriod = period + "(" + dateString + ")";
-        String currentYear = "YEAR(" + dateString + ")";
-
-        String workingPeriod = period + "(e.encounter_datetime)";
-        String workingYear = "YEAR(e.encounter_datetime)";
-
         SqlCohortDefinition patientsStartedCareInYear = new SqlCohortDefinition("select o.person_id from obs o where concept_id = " + concept.getId() + " and o.encounter_id in (" + encounterQuery + ")");
         patientsStartedCareInYear.addParameter(new Parameter("startDate", "startDate", Date.class));
         return patientsStartedCareInYear;
@@ -86,19 +93,47 @@ public class Cohorts {
 
     private static String makeEncounterQuery(Integer periodToAdd, String period) {
         String dateString = "DATE_ADD(:startDate,INTERVAL " + periodToAdd + " " + period + ")";
-        String currentPeriod = period + "(" + dateString + ")";
-        String currentYear = "YEAR(" + dateString + ")";
-
-        String workingPeriod = period + "(e.encounter_datetime)";
-        String workingYear = "YEAR(e.encounter_datetime)";
-
-        String condition = currentYear + " = " + workingYear + " and " + currentPeriod + " = " + workingPeriod;
+        String condition = inPeriod("e.encounter_datetime", dateString, period);
 
         String query = "select e.encounter_id from encounter e where e.voided = false and " + condition + " group by e.patient_id";
 
         return query;
     }
 
+    /**
+     * A range condition that the column falls in the same year, quarter or month as the date. Unlike comparing
+     * YEAR(column) or EXTRACT(YEAR_MONTH FROM column) with the date's, it leaves the column bare so an index on it
+     * can be used.
+     */
+    static String inPeriod(String column, String date, String period) {
+        String periodStart = periodStart(date, period);
+        if (periodStart == null) {
+            return "YEAR(" + date + ") = YEAR(" + column + ") and " + period + "(" + date + ") = " + period + "(" + column + ")";
+        }
+        return column + " >= " + periodStart + " and " + column + " < " + nextPeriodStart(date, period);
+    }
+
+    /**
+     * @return SQL for the first day of the year, quarter or month the date falls in, or null for any other period
+     */
+    static String periodStart(String date, String period) {
+        String yearStart = "MAKEDATE(YEAR(" + date + "), 1)";
+        if ("YEAR".equalsIgnoreCase(period)) {
+            return yearStart;
+        }
+        if ("QUARTER".equalsIgnoreCase(period) || "MONTH".equalsIgnoreCase(period)) {
+            return "DATE_ADD(" + yearStart + ", INTERVAL " + period + "(" + date + ") - 1 " + period + ")";
+        }
+        return null;
+    }
+
+    /**
+     * @return SQL for the first day of the year, quarter or month after the one the date falls in
+     */
+    static String nextPeriodStart(String date, String period) {
+        return "DATE_ADD(" + periodStart(date, period) + ", INTERVAL 1 " + period + ")";
+    }
+
     public static CodedObsCohortDefinition createCodedObsCohortDefinition(Concept question, Concept value,
                                                                           SetComparator setComparator,
                                                                           BaseObsCohortDefinition.TimeModifier timeModifier) {
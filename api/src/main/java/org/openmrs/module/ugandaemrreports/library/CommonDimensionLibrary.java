@@ -10,6 +10,7 @@ import org.openmrs.module.reporting.evaluation.parameter.Mapped;
 import org.openmrs.module.reporting.evaluation.parameter.Parameter;
 import org.openmrs.module.reporting.indicator.dimension.CohortDefinitionDimension;
 import org.openmrs.module.ugandaemrreports.UgandaEMRReportUtil;
+import org.openmrs.module.ugandaemrreports.definition.dimension.definition.AgeGenderDimension;
 import org.openmrs.module.ugandaemrreports.metadata.HIVMetadata;
 import org.openmrs.module.ugandaemrreports.reporting.library.cohort.CommonCohortLibrary;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -91,236 +92,42 @@ public class CommonDimensionLibrary extends BaseDefinitionLibrary<CohortDefiniti
      * @return the dimension
      */
     public CohortDefinitionDimension get106aAgeGenderGroup() {
-        CohortDefinitionDimension ageGenderDimension = new CohortDefinitionDimension();
-
-        CohortDefinition below2Years = cohortDefinitionLibrary.below2Years();
-        CohortDefinition between2And4Years = cohortDefinitionLibrary.between2And5Years();
-        CohortDefinition between5And14Years = cohortDefinitionLibrary.between5And14Years();
-        CohortDefinition above15Years = cohortDefinitionLibrary.above15Years();
-
-        CohortDefinition males = cohortDefinitionLibrary.males();
-        CohortDefinition females = cohortDefinitionLibrary.females();
-
-
-        CohortDefinition a = df.getPatientsInAll(below2Years, males);
-        CohortDefinition b = df.getPatientsInAll(below2Years, females);
-        CohortDefinition c = df.getPatientsInAll(between2And4Years, males);
-        CohortDefinition d = df.getPatientsInAll(between2And4Years, females);
-
-        CohortDefinition e = df.getPatientsInAll(between5And14Years, males);
-        CohortDefinition f = df.getPatientsInAll(between5And14Years, females);
-        CohortDefinition g = df.getPatientsInAll(above15Years, males);
-        CohortDefinition h = df.getPatientsInAll(above15Years, females);
-
+        AgeGenderDimension ageGenderDimension = new AgeGenderDimension();
         ageGenderDimension.addParameter(ReportingConstants.END_DATE_PARAMETER);
-        ageGenderDimension.addCohortDefinition("below2male", Mapped.mapStraightThrough(a));
-        ageGenderDimension.addCohortDefinition("below2female", Mapped.mapStraightThrough(b));
-        ageGenderDimension.addCohortDefinition("between2and5male", Mapped.mapStraightThrough(c));
-        ageGenderDimension.addCohortDefinition("between2and5female", Mapped.mapStraightThrough(d));
-        ageGenderDimension.addCohortDefinition("between5and14male", Mapped.mapStraightThrough(e));
-        ageGenderDimension.addCohortDefinition("between5and14female", Mapped.mapStraightThrough(f));
-        ageGenderDimension.addCohortDefinition("above15male", Mapped.mapStraightThrough(g));
-        ageGenderDimension.addCohortDefinition("above15female", Mapped.mapStraightThrough(h));
-        ageGenderDimension.addCohortDefinition("child", Mapped.mapStraightThrough(cohortDefinitionLibrary.agedBetween(0, 14)));
-        ageGenderDimension.addCohortDefinition("adult", Mapped.mapStraightThrough(cohortDefinitionLibrary.agedAtLeast(15)));
+        ageGenderDimension.addMaleAndFemale("below2", null, 1);
+        ageGenderDimension.addMaleAndFemale("between2and5", 2, 4);
+        ageGenderDimension.addMaleAndFemale("between5and14", 5, 14);
+        ageGenderDimension.addMaleAndFemale("above15", 15, null);
+        ageGenderDimension.addOption("child", 0, 14, null);
+        ageGenderDimension.addOption("adult", 15, null, null);
         return ageGenderDimension;
     }
 
     public CohortDefinitionDimension getTxCurrentAgeGenderGroup() {
-        CohortDefinitionDimension ageGenderDimension = new CohortDefinitionDimension();
-
-        CohortDefinition below1Year = cohortDefinitionLibrary.below1Year();
-        CohortDefinition between1And4Years = cohortDefinitionLibrary.between1And4years();
-        CohortDefinition between5And9Years = cohortDefinitionLibrary.between5And9years();
-        CohortDefinition between10And14Years = cohortDefinitionLibrary.between10And14years();
-        CohortDefinition between15And19Years = cohortDefinitionLibrary.between15And19years();
-        CohortDefinition between20And24Years = cohortDefinitionLibrary.between20And24years();
-        CohortDefinition between25And29Years =cohortDefinitionLibrary.between25And29years();
-        CohortDefinition between30And34Years =cohortDefinitionLibrary.between30And34years();
-        CohortDefinition between35And39Years =cohortDefinitionLibrary.between35And39years();
-        CohortDefinition between40And44Years =cohortDefinitionLibrary.between40And44years();
-        CohortDefinition between45And49Years =cohortDefinitionLibrary.between45And49years();
-        CohortDefinition above50Years = cohortDefinitionLibrary.above50Years();
-
-        CohortDefinition males = cohortDefinitionLibrary.males();
-        CohortDefinition females = cohortDefinitionLibrary.females();
-
-
-        CohortDefinition a = df.getPatientsInAll(below1Year, males);
-        CohortDefinition b = df.getPatientsInAll(below1Year, females);
-        CohortDefinition c = df.getPatientsInAll(between1And4Years, males);
-        CohortDefinition d = df.getPatientsInAll(between1And4Years, females);
-        CohortDefinition e = df.getPatientsInAll(between5And9Years, males);
-        CohortDefinition f = df.getPatientsInAll(between5And9Years, females);
-        CohortDefinition g = df.getPatientsInAll(between10And14Years, males);
-        CohortDefinition h = df.getPatientsInAll(between10And14Years, females);
-        CohortDefinition i = df.getPatientsInAll(between15And19Years, males);
-        CohortDefinition j = df.getPatientsInAll(between15And19Years, females);
-        CohortDefinition k = df.getPatientsInAll(between20And24Years, males);
-        CohortDefinition l = df.getPatientsInAll(between20And24Years, females);
-        CohortDefinition m = df.getPatientsInAll(between25And29Years, males);
-        CohortDefinition n = df.getPatientsInAll(between25And29Years, females);
-        CohortDefinition o = df.getPatientsInAll(between30And34Years, males);
-        CohortDefinition p = df.getPatientsInAll(between30And34Years, females);
-        CohortDefinition q = df.getPatientsInAll(between35And39Years, males);
-        CohortDefinition r = df.getPatientsInAll(between35And39Years, females);
-        CohortDefinition s = df.getPatientsInAll(between40And44Years, males);
-        CohortDefinition t = df.getPatientsInAll(between40And44Years, females);
-        CohortDefinition w = df.getPatientsInAll(between45And49Years, males);
-        CohortDefinition x = df.getPatientsInAll(between45And49Years, females);
-        CohortDefinition u= df.getPatientsInAll(above50Years, males);
-        CohortDefinition v = df.getPatientsInAll(above50Years, females);
-
-
-
-
+        AgeGenderDimension ageGenderDimension = new AgeGenderDimension();
         ageGenderDimension.addParameter(ReportingConstants.END_DATE_PARAMETER);
-        ageGenderDimension.addCohortDefinition("below1male", Mapped.mapStraightThrough(a));
-        ageGenderDimension.addCohortDefinition("below1female", Mapped.mapStraightThrough(b));
-        ageGenderDimension.addCohortDefinition("between1and4male", Mapped.mapStraightThrough(c));
-        ageGenderDimension.addCohortDefinition("between1and4female", Mapped.mapStraightThrough(d));
-        ageGenderDimension.addCohortDefinition("between5and9male", Mapped.mapStraightThrough(e));
-        ageGenderDimension.addCohortDefinition("between5and9female", Mapped.mapStraightThrough(f));
-        ageGenderDimension.addCohortDefinition("between10and14male", Mapped.mapStraightThrough(g));
-        ageGenderDimension.addCohortDefinition("between10and14female", Mapped.mapStraightThrough(h));
-        ageGenderDimension.addCohortDefinition("between15and19male", Mapped.mapStraightThrough(i));
-        ageGenderDimension.addCohortDefinition("between15and19female", Mapped.mapStraightThrough(j));
-        ageGenderDimension.addCohortDefinition("between20and24male", Mapped.mapStraightThrough(k));
-        ageGenderDimension.addCohortDefinition("between20and24female", Mapped.mapStraightThrough(l));
-        ageGenderDimension.addCohortDefinition("between25and29male", Mapped.mapStraightThrough(m));
-        ageGenderDimension.addCohortDefinition("between25and29female", Mapped.mapStraightThrough(n));
-        ageGenderDimension.addCohortDefinition("between30and34male", Mapped.mapStraightThrough(o));
-        ageGenderDimension.addCohortDefinition("between30and34female", Mapped.mapStraightThrough(p));
-        ageGenderDimension.addCohortDefinition("between35and39male", Mapped.mapStraightThrough(q));
-        ageGenderDimension.addCohortDefinition("between35and39female", Mapped.mapStraightThrough(r));
-        ageGenderDimension.addCohortDefinition("between40and44male", Mapped.mapStraightThrough(s));
-        ageGenderDimension.addCohortDefinition("between40and44female", Mapped.mapStraightThrough(t));
-        ageGenderDimension.addCohortDefinition("between45and49male", Mapped.mapStraightThrough(w));
-        ageGenderDimension.addCohortDefinition("between45and49female", Mapped.mapStraightThrough(x));
-        ageGenderDimension.addCohortDefinition("above50male", Mapped.mapStraightThrough(u));
-        ageGenderDimension.addCohortDefinition("above50female", Mapped.mapStraightThrough(v));
-
-
-
-          return ageGenderDimension;
+        addMerAgeBands(ageGenderDimension);
+        return ageGenderDimension;
     }
 
     public CohortDefinitionDimension getCBSAdultReportAgeGenderGroup() {
-        CohortDefinitionDimension ageGenderDimension = new CohortDefinitionDimension();
-
-        CohortDefinition below5Years = cohortDefinitionLibrary.below5Years();
-        CohortDefinition between5And14Years = cohortDefinitionLibrary.between5And14Years();
-        CohortDefinition above15Years = cohortDefinitionLibrary.above15Years();
-
-        CohortDefinition males = cohortDefinitionLibrary.males();
-        CohortDefinition females = cohortDefinitionLibrary.females();
-
-        CohortDefinition a = df.getPatientsInAll(below5Years, males);
-        CohortDefinition b = df.getPatientsInAll(below5Years, females);
-
-        CohortDefinition e = df.getPatientsInAll(between5And14Years, males);
-        CohortDefinition f = df.getPatientsInAll(between5And14Years, females);
-        CohortDefinition g = df.getPatientsInAll(above15Years, males);
-        CohortDefinition h = df.getPatientsInAll(above15Years, females);
-
+        AgeGenderDimension ageGenderDimension = new AgeGenderDimension();
         ageGenderDimension.addParameter(ReportingConstants.END_DATE_PARAMETER);
-        ageGenderDimension.addCohortDefinition("below5male", Mapped.mapStraightThrough(a));
-        ageGenderDimension.addCohortDefinition("below5female", Mapped.mapStraightThrough(b));
-        ageGenderDimension.addCohortDefinition("between5and14male", Mapped.mapStraightThrough(e));
-        ageGenderDimension.addCohortDefinition("between5and14female", Mapped.mapStraightThrough(f));
-        ageGenderDimension.addCohortDefinition("above15male", Mapped.mapStraightThrough(g));
-        ageGenderDimension.addCohortDefinition("above15female", Mapped.mapStraightThrough(h));
+        ageGenderDimension.addMaleAndFemale("below5", null, 4);
+        ageGenderDimension.addMaleAndFemale("between5and14", 5, 14);
+        ageGenderDimension.addMaleAndFemale("above15", 15, null);
         return ageGenderDimension;
     }
 
     public CohortDefinitionDimension getTxNewAgeGenderGroup() {
-        CohortDefinitionDimension ageGenderDimension = new CohortDefinitionDimension();
-
-        CohortDefinition below1Year = cohortDefinitionLibrary.below1Year();
-        CohortDefinition between1And4Years = cohortDefinitionLibrary.between1And4years();
-        CohortDefinition between5And9Years = cohortDefinitionLibrary.between5And9years();
-        CohortDefinition between10And14Years = cohortDefinitionLibrary.between10And14years();
-        CohortDefinition between15And19Years = cohortDefinitionLibrary.between15And19years();
-        CohortDefinition between20And24Years = cohortDefinitionLibrary.between20And24years();
-        CohortDefinition between25And29Years =cohortDefinitionLibrary.between25And29years();
-        CohortDefinition between30And34Years =cohortDefinitionLibrary.between30And34years();
-        CohortDefinition between35And39Years =cohortDefinitionLibrary.between35And39years();
-        CohortDefinition between40And44Years =cohortDefinitionLibrary.between40And44years();
-        CohortDefinition between45And49Years =cohortDefinitionLibrary.between45And49years();
-        CohortDefinition above50Years = cohortDefinitionLibrary.above50Years();
-
-        CohortDefinition males = cohortDefinitionLibrary.males();
-        CohortDefinition females = cohortDefinitionLibrary.females();
-
-
-        CohortDefinition a = df.getPatientsInAll(below1Year, males);
-        CohortDefinition b = df.getPatientsInAll(below1Year, females);
-        CohortDefinition c = df.getPatientsInAll(between1And4Years, males);
-        CohortDefinition d = df.getPatientsInAll(between1And4Years, females);
-        CohortDefinition e = df.getPatientsInAll(between5And9Years, males);
-        CohortDefinition f = df.getPatientsInAll(between5And9Years, females);
-        CohortDefinition g = df.getPatientsInAll(between10And14Years, males);
-        CohortDefinition h = df.getPatientsInAll(between10And14Years, females);
-        CohortDefinition i = df.getPatientsInAll(between15And19Years, males);
-        CohortDefinition j = df.getPatientsInAll(between15And19Years, females);
-        CohortDefinition k = df.getPatientsInAll(between20And24Years, males);
-        CohortDefinition l = df.getPatientsInAll(between20And24Years, females);
-
-        CohortDefinition ba= df.getPatientsInAll(between25And29Years, males);
-        CohortDefinition bb = df.getPatientsInAll(between25And29Years, females);
-
-        CohortDefinition bc= df.getPatientsInAll(between30And34Years, males);
-        CohortDefinition bd = df.getPatientsInAll(between30And34Years, females);
-
-        CohortDefinition be= df.getPatientsInAll(between35And39Years, males);
-        CohortDefinition bf = df.getPatientsInAll(between35And39Years, females);
-
-        CohortDefinition bg= df.getPatientsInAll(between40And44Years, males);
-        CohortDefinition bh = df.getPatientsInAll(between40And44Years, females);
-
-        CohortDefinition bi= df.getPatientsInAll(between45And49Years, males);
-        CohortDefinition bj= df.getPatientsInAll(between45And49Years, females);
-
-        CohortDefinition u= df.getPatientsInAll(above50Years, males);
-        CohortDefinition v = df.getPatientsInAll(above50Years, females);
-
-
-
-
+        AgeGenderDimension ageGenderDimension = new AgeGenderDimension();
         ageGenderDimension.addParameter(ReportingConstants.END_DATE_PARAMETER);
-        ageGenderDimension.addCohortDefinition("below1male", Mapped.mapStraightThrough(a));
-        ageGenderDimension.addCohortDefinition("below1female", Mapped.mapStraightThrough(b));
-        ageGenderDimension.addCohortDefinition("between1and4male", Mapped.mapStraightThrough(c));
-        ageGenderDimension.addCohortDefinition("between1and4female", Mapped.mapStraightThrough(d));
-        ageGenderDimension.addCohortDefinition("between5and9male", Mapped.mapStraightThrough(e));
-        ageGenderDimension.addCohortDefinition("between5and9female", Mapped.mapStraightThrough(f));
-        ageGenderDimension.addCohortDefinition("between10and14male", Mapped.mapStraightThrough(g));
-        ageGenderDimension.addCohortDefinition("between10and14female", Mapped.mapStraightThrough(h));
-        ageGenderDimension.addCohortDefinition("between15and19male", Mapped.mapStraightThrough(i));
-        ageGenderDimension.addCohortDefinition("between15and19female", Mapped.mapStraightThrough(j));
-        ageGenderDimension.addCohortDefinition("between20and24male", Mapped.mapStraightThrough(k));
-        ageGenderDimension.addCohortDefinition("between20and24female", Mapped.mapStraightThrough(l));
-        ageGenderDimension.addCohortDefinition("above50male", Mapped.mapStraightThrough(u));
-        ageGenderDimension.addCohortDefinition("above50female", Mapped.mapStraightThrough(v));
-
-        ageGenderDimension.addCohortDefinition("between25and29male", Mapped.mapStraightThrough(ba));
-        ageGenderDimension.addCohortDefinition("between25and29female", Mapped.mapStraightThrough(bb));
-        ageGenderDimension.addCohortDefinition("between30and34male", Mapped.mapStraightThrough(bc));
-        ageGenderDimension.addCohortDefinition("between30and34female", Mapped.mapStraightThrough(bd));
-        ageGenderDimension.addCohortDefinition("between35and39male", Mapped.mapStraightThrough(be));
-        ageGenderDimension.addCohortDefinition("between35and39female", Mapped.mapStraightThrough(bf));
-        ageGenderDimension.addCohortDefinition("between40and44male", Mapped.mapStraightThrough(bg));
-        ageGenderDimension.addCohortDefinition("between40and44female", Mapped.mapStraightThrough(bh));
-        ageGenderDimension.addCohortDefinition("between45and49male", Mapped.mapStraightThrough(bi));
-        ageGenderDimension.addCohortDefinition("between45and49female", Mapped.mapStraightThrough(bj));
-
-        ageGenderDimension.addCohortDefinition("child", Mapped.mapStraightThrough(cohortDefinitionLibrary.agedBetween(0, 14)));
-        ageGenderDimension.addCohortDefinition("adult", Mapped.mapStraightThrough(cohortDefinitionLibrary.agedAtLeast(15)));
-
-        ageGenderDimension.addCohortDefinition("male",Mapped.mapStraightThrough(males));
-        ageGenderDimension.addCohortDefinition("female",Mapped.mapStraightThrough(females));
+        addMerAgeBands(ageGenderDimension);
+        ageGenderDimension.addOption("child", 0, 14, null);
+        ageGenderDimension.addOption("adult", 15, null, null);
+        ageGenderDimension.addGender("male", AgeGenderDimension.MALE);
+        ageGenderDimension.addGender("female", AgeGenderDimension.FEMALE);
         return ageGenderDimension;
-
     }
 
     public CohortDefinitionDimension getProgramsDimensionGroup() {
@@ -488,158 +295,54 @@ public class CommonDimensionLibrary extends BaseDefinitionLibrary<CohortDefiniti
     }
 
     public CohortDefinitionDimension getTxTBAgeGenderGroup() {
-        CohortDefinitionDimension ageGenderDimension = new CohortDefinitionDimension();
-
-        CohortDefinition below15Years = cohortDefinitionLibrary.agedAtMost(14);
-        CohortDefinition atleast15Years = cohortDefinitionLibrary.above15Years();
-
-
-        CohortDefinition males = cohortDefinitionLibrary.males();
-        CohortDefinition females = cohortDefinitionLibrary.females();
-
-
-        CohortDefinition a = df.getPatientsInAll(below15Years, males);
-        CohortDefinition b = df.getPatientsInAll(below15Years, females);
-        CohortDefinition c = df.getPatientsInAll(atleast15Years, males);
-        CohortDefinition d = df.getPatientsInAll(atleast15Years, females);
-
-
-
+        AgeGenderDimension ageGenderDimension = new AgeGenderDimension();
         ageGenderDimension.addParameter(ReportingConstants.END_DATE_PARAMETER);
-        ageGenderDimension.addCohortDefinition("below15male", Mapped.mapStraightThrough(a));
-        ageGenderDimension.addCohortDefinition("below15female", Mapped.mapStraightThrough(b));
-        ageGenderDimension.addCohortDefinition("above15+male", Mapped.mapStraightThrough(c));
-        ageGenderDimension.addCohortDefinition("above15+female", Mapped.mapStraightThrough(d));
-
-        ageGenderDimension.addCohortDefinition("child", Mapped.mapStraightThrough(cohortDefinitionLibrary.agedBetween(0, 14)));
-        ageGenderDimension.addCohortDefinition("adult", Mapped.mapStraightThrough(cohortDefinitionLibrary.agedAtLeast(15)));
+        ageGenderDimension.addMaleAndFemale("below15", null, 14);
+        ageGenderDimension.addMaleAndFemale("above15+", 15, null);
+        ageGenderDimension.addOption("child", 0, 14, null);
+        ageGenderDimension.addOption("adult", 15, null, null);
         return ageGenderDimension;
     }
 
-
     public CohortDefinitionDimension getTB_STATAndTB_ARTAgeGenderGroup(){
-        CohortDefinitionDimension ageGenderDimension = new CohortDefinitionDimension();
-
-        CohortDefinition below1Year = cohortDefinitionLibrary.below1Year();
-        CohortDefinition between1And4Years = cohortDefinitionLibrary.between1And4years();
-        CohortDefinition between5And9Years = cohortDefinitionLibrary.between5And9years();
-        CohortDefinition between10And14Years = cohortDefinitionLibrary.between10And14years();
-        CohortDefinition between15And19Years = cohortDefinitionLibrary.between15And19years();
-        CohortDefinition between20And24Years = cohortDefinitionLibrary.between20And24years();
-        CohortDefinition between25And29Years =cohortDefinitionLibrary.between25And29years();
-        CohortDefinition between30And34Years = cohortDefinitionLibrary.between30And34years();
-        CohortDefinition between35And39Years = cohortDefinitionLibrary.between35And39years();
-        CohortDefinition between40And44Years = cohortDefinitionLibrary.agedBetween(40,44);;
-        CohortDefinition between45And49Years = cohortDefinitionLibrary.agedBetween(45,49);;
-        CohortDefinition above50Years = cohortDefinitionLibrary.above50Years();
-
-
-        CohortDefinition males = cohortDefinitionLibrary.males();
-        CohortDefinition females = cohortDefinitionLibrary.females();
-
-
-        CohortDefinition a = df.getPatientsInAll(below1Year, males);
-        CohortDefinition b = df.getPatientsInAll(below1Year, females);
-        CohortDefinition c = df.getPatientsInAll(between1And4Years, males);
-        CohortDefinition d = df.getPatientsInAll(between1And4Years, females);
-        CohortDefinition e = df.getPatientsInAll(between5And9Years, males);
-        CohortDefinition f = df.getPatientsInAll(between5And9Years, females);
-        CohortDefinition g = df.getPatientsInAll(between10And14Years, males);
-        CohortDefinition h = df.getPatientsInAll(between10And14Years, females);
-        CohortDefinition i = df.getPatientsInAll(between15And19Years, males);
-        CohortDefinition j = df.getPatientsInAll(between15And19Years, females);
-        CohortDefinition k = df.getPatientsInAll(between20And24Years, males);
-        CohortDefinition l = df.getPatientsInAll(between20And24Years, females);
-        CohortDefinition m = df.getPatientsInAll(between25And29Years, males);
-        CohortDefinition n = df.getPatientsInAll(between25And29Years, females);
-        CohortDefinition o = df.getPatientsInAll(between30And34Years, males);
-        CohortDefinition p = df.getPatientsInAll(between30And34Years, females);
-        CohortDefinition q = df.getPatientsInAll(between35And39Years, males);
-        CohortDefinition r = df.getPatientsInAll(between35And39Years, females);
-        CohortDefinition s = df.getPatientsInAll(between40And44Years, males);
-        CohortDefinition t = df.getPatientsInAll(between40And44Years, females);
-        CohortDefinition u = df.getPatientsInAll(between45And49Years, males);
-        CohortDefinition v = df.getPatientsInAll(between45And49Years, females);
-        CohortDefinition w= df.getPatientsInAll(above50Years, males);
-        CohortDefinition x = df.getPatientsInAll(above50Years, females);
-
+        AgeGenderDimension ageGenderDimension = new AgeGenderDimension();
         ageGenderDimension.addParameter(ReportingConstants.END_DATE_PARAMETER);
-        ageGenderDimension.addCohortDefinition("below1male", Mapped.mapStraightThrough(a));
-        ageGenderDimension.addCohortDefinition("below1female", Mapped.mapStraightThrough(b));
-        ageGenderDimension.addCohortDefinition("between1and4male", Mapped.mapStraightThrough(c));
-        ageGenderDimension.addCohortDefinition("between1and4female", Mapped.mapStraightThrough(d));
-        ageGenderDimension.addCohortDefinition("between5and9male", Mapped.mapStraightThrough(e));
-        ageGenderDimension.addCohortDefinition("between5and9female", Mapped.mapStraightThrough(f));
-        ageGenderDimension.addCohortDefinition("between10and14male", Mapped.mapStraightThrough(g));
-        ageGenderDimension.addCohortDefinition("between10and14female", Mapped.mapStraightThrough(h));
-        ageGenderDimension.addCohortDefinition("between15and19male", Mapped.mapStraightThrough(i));
-        ageGenderDimension.addCohortDefinition("between15and19female", Mapped.mapStraightThrough(j));
-        ageGenderDimension.addCohortDefinition("between20and24male", Mapped.mapStraightThrough(k));
-        ageGenderDimension.addCohortDefinition("between20and24female", Mapped.mapStraightThrough(l));
-        ageGenderDimension.addCohortDefinition("between25and29male", Mapped.mapStraightThrough(m));
-        ageGenderDimension.addCohortDefinition("between25and29female", Mapped.mapStraightThrough(n));
-        ageGenderDimension.addCohortDefinition("between30and34male", Mapped.mapStraightThrough(o));
-        ageGenderDimension.addCohortDefinition("between30and34female", Mapped.mapStraightThrough(p));
-        ageGenderDimension.addCohortDefinition("between35and39male", Mapped.mapStraightThrough(q));
-        ageGenderDimension.addCohortDefinition("between35and39female", Mapped.mapStraightThrough(r));
-        ageGenderDimension.addCohortDefinition("between40and44male", Mapped.mapStraightThrough(s));
-        ageGenderDimension.addCohortDefinition("between40and44female", Mapped.mapStraightThrough(t));
-        ageGenderDimension.addCohortDefinition("between45and49male", Mapped.mapStraightThrough(u));
-        ageGenderDimension.addCohortDefinition("between45and49female", Mapped.mapStraightThrough(v));
-        ageGenderDimension.addCohortDefinition("above50male", Mapped.mapStraightThrough(w));
-        ageGenderDimension.addCohortDefinition("above50female", Mapped.mapStraightThrough(x));
-
+        addMerAgeBands(ageGenderDimension);
         return ageGenderDimension;
-
     }
 
     public CohortDefinitionDimension getPMTCT_STAT_AgeGenderGroup() {
-        CohortDefinitionDimension ageGenderDimension = new CohortDefinitionDimension();
-
-        CohortDefinition below10Years = cohortDefinitionLibrary.below10Years();
-        CohortDefinition between10And14Years = cohortDefinitionLibrary.between10And14years();
-        CohortDefinition between15And19Years = cohortDefinitionLibrary.between15And19years();
-        CohortDefinition between20And24Years = cohortDefinitionLibrary.between20And24years();
-        CohortDefinition between25And29Years = cohortDefinitionLibrary.between25And29years();
-        CohortDefinition between30And34Years = cohortDefinitionLibrary.between30And34years();
-        CohortDefinition between35And39Years =cohortDefinitionLibrary.between35And39years();
-        CohortDefinition between40And44Years =cohortDefinitionLibrary.between40And44years();
-        CohortDefinition between45And49Years =cohortDefinitionLibrary.between45And49years();
-        CohortDefinition above50Years = cohortDefinitionLibrary.above50Years();
-
-
-
-        CohortDefinition females = cohortDefinitionLibrary.females();
-
-
-        CohortDefinition b = df.getPatientsInAll(below10Years, females);
-        CohortDefinition d = df.getPatientsInAll(between10And14Years, females);
-        CohortDefinition f = df.getPatientsInAll(between15And19Years, females);
-        CohortDefinition h = df.getPatientsInAll(between20And24Years, females);
-        CohortDefinition j = df.getPatientsInAll(between25And29Years, females);
-        CohortDefinition l = df.getPatientsInAll(between30And34Years, females);
-        CohortDefinition n = df.getPatientsInAll(between35And39Years, females);
-        CohortDefinition p = df.getPatientsInAll(between40And44Years, females);
-        CohortDefinition r = df.getPatientsInAll(between45And49Years, females);
-        CohortDefinition v = df.getPatientsInAll(above50Years, females);
-
-
-
+        AgeGenderDimension ageGenderDimension = new AgeGenderDimension();
         ageGenderDimension.addParameter(ReportingConstants.END_DATE_PARAMETER);
-        ageGenderDimension.addCohortDefinition("below10female", Mapped.mapStraightThrough(b));
-        ageGenderDimension.addCohortDefinition("between10and14female", Mapped.mapStraightThrough(d));
-        ageGenderDimension.addCohortDefinition("between15and19female", Mapped.mapStraightThrough(f));
-        ageGenderDimension.addCohortDefinition("between20and24female", Mapped.mapStraightThrough(h));
-        ageGenderDimension.addCohortDefinition("between25and29female", Mapped.mapStraightThrough(j));
-        ageGenderDimension.addCohortDefinition("between30and34female", Mapped.mapStraightThrough(l));
-        ageGenderDimension.addCohortDefinition("between35and39female", Mapped.mapStraightThrough(n));
-        ageGenderDimension.addCohortDefinition("between40and44female",Mapped.mapStraightThrough(p));
-        ageGenderDimension.addCohortDefinition("between45and49female",Mapped.mapStraightThrough(r));
-        ageGenderDimension.addCohortDefinition("above50female", Mapped.mapStraightThrough(v));
-
-
-        ageGenderDimension.addCohortDefinition("female",Mapped.mapStraightThrough(females));
+        ageGenderDimension.addOption("below10female", null, 9, AgeGenderDimension.FEMALE);
+        ageGenderDimension.addOption("between10and14female", 10, 14, AgeGenderDimension.FEMALE);
+        ageGenderDimension.addOption("between15and19female", 15, 19, AgeGenderDimension.FEMALE);
+        ageGenderDimension.addOption("between20and24female", 20, 24, AgeGenderDimension.FEMALE);
+        ageGenderDimension.addOption("between25and29female", 25, 29, AgeGenderDimension.FEMALE);
+        ageGenderDimension.addOption("between30and34female", 30, 34, AgeGenderDimension.FEMALE);
+        ageGenderDimension.addOption("between35and39female", 35, 39, AgeGenderDimension.FEMALE);
+        ageGenderDimension.addOption("between40and44female", 40, 44, AgeGenderDimension.FEMALE);
+        ageGenderDimension.addOption("between45and49female", 45, 49, AgeGenderDimension.FEMALE);
+        ageGenderDimension.addOption("above50female", 50, null, AgeGenderDimension.FEMALE);
+        ageGenderDimension.addGender("female", AgeGenderDimension.FEMALE);
         return ageGenderDimension;
+    }
 
+    /**
+     * Adds the MER age bands (below 1, five year bands from 1 to 49 and 50+) for males and females
+     */
+    private void addMerAgeBands(AgeGenderDimension dimension) {
+        dimension.addMaleAndFemale("below1", 0, 0);
+        dimension.addMaleAndFemale("between1and4", 1, 4);
+        dimension.addMaleAndFemale("between5and9", 5, 9);
+        dimension.addMaleAndFemale("between10and14", 10, 14);
+        dimension.addMaleAndFemale("between15and19", 15, 19);
+        dimension.addMaleAndFemale("between20and24", 20, 24);
+        dimension.addMaleAndFemale("between25and29", 25, 29);
+        dimension.addMaleAndFemale("between30and34", 30, 34);
+        dimension.addMaleAndFemale("between35and39", 35, 39);
+        dimension.addMaleAndFemale("between40and44", 40, 44);
+        dimension.addMaleAndFemale("between45and49", 45, 49);
+        dimension.addMaleAndFemale("above50", 50, null);
     }
 }
@@ -1306,12 +1306,12 @@ public class DataFactory {
 
 
    /* public CohortDefinition getAtLeastOneMissedAfterArt() {
-        return convert(Cohorts.getPatientsWithAtLeastOneMissedAppointmentAfterArtStartDate(), null);
+        return convert(Cohorts.getPatientsWithAtLeastOneMissedAppointmentAfterArtStartDate(), ObjectUtil.toMap("startDate=startDate,endDate=endDate"));
 
     }
 
     public CohortDefinition getAtLeastOneScheduledAfterArt() {
-        return convert(Cohorts.getPatientsWithAtLeastOneScheduledVisitAfterArtStartDate(), null);
+        return convert(Cohorts.getPatientsWithAtLeastOneScheduledVisitAfterArtStartDate(), ObjectUtil.toMap("startDate=startDate,endDate=endDate"));
 
     }*/
 
@@ -1363,6 +1363,28 @@ public class DataFactory {
         return convert(cd, ObjectUtil.toMap("startDate=startDate,endDate=endDate"));
     }
 
+    public CohortDefinition getPatientsWithAppointmentsBetween(List<EncounterType> encounterTypes) {
+        AppointmentsCohortDefinition cd = new AppointmentsCohortDefinition();
+        cd.setEncounterTypes(encounterTypes);
+        cd.addParameter(new Parameter("startDate", "startDate", Date.class));
+        cd.addParameter(new Parameter("endDate", "endDate", Date.class));
+        return convert(cd, ObjectUtil.toMap("startDate=startDate,endDate=endDate"));
+    }
+
+    public CohortDefinition getPatientsDueForViralLoadDuringPeriod() {
+        ViralLoadDueCohortDefinition cd = new ViralLoadDueCohortDefinition();
+        cd.addParameter(new Parameter("startDate", "startDate", Date.class));
+        cd.addParameter(new Parameter("endDate", "endDate", Date.class));
+        return convert(cd, ObjectUtil.toMap("startDate=startDate,endDate=endDate"));
+    }
+
+    public CohortDefinition getPatientsOverdueForViralLoad(Integer graceMonths) {
+        ViralLoadDueCohortDefinition cd = new ViralLoadDueCohortDefinition();
+        cd.setGraceMonths(graceMonths);
+        cd.addParameter(new Parameter("endDate", "endDate", Date.class));
+        return convert(cd, ObjectUtil.toMap("endDate=endDate"));
+    }
+
     public PatientDataDefinition getValueDatetimeObsOfEncounterDuringPeriod(Concept question, List<EncounterType> encounterTypes, TimeQualifier timeQualifier, DataConverter converter) {
         ObsForPersonDataDefinition def = PatientColumns.createObsForPersonData(question, encounterTypes, Arrays.asList("onOrBefore", "onOrAfter"), timeQualifier);
         return createPatientDataDefinition(def, converter, Parameters.combineParameters(Parameters.ON_OR_AFTER_START_DATE, Parameters.ON_OR_BEFORE_END_DATE));
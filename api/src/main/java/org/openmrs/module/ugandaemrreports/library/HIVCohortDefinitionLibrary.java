@@ -431,6 +431,20 @@ public class HIVCohortDefinitionLibrary extends BaseDefinitionLibrary<CohortDefi
                 Arrays.asList(hivMetadata.getARTEncounterEncounterType()),BaseObsCohortDefinition.TimeModifier.LAST,monthsBack);
     }
 
+    /**
+     * @return active patients on ART due for viral load during the period, from the viral load schedule
+     */
+    public CohortDefinition getPatientsDueForViralLoad() {
+        return df.getPatientsDueForViralLoadDuringPeriod();
+    }
+
+    /**
+     * @return active patients on ART due for viral load a month or more before the end date
+     */
+    public CohortDefinition getPatientsOverdueForViralLoad() {
+        return df.getPatientsOverdueForViralLoad(1);
+    }
+
     public CohortDefinition getPatientsWithLastViralLoadByEndDate(){
         return df.getPatientsWhoseObsValueDateIsByEndDate(hivMetadata.getViralLoadDate(),
                 Arrays.asList(hivMetadata.getARTEncounterEncounterType()),BaseObsCohortDefinition.TimeModifier.ANY
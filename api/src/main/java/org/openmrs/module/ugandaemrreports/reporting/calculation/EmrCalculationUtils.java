@@ -26,11 +26,15 @@ import org.openmrs.calculation.patient.PatientCalculation;
 import org.openmrs.calculation.patient.PatientCalculationService;
 import org.openmrs.calculation.result.CalculationResult;
 import org.openmrs.calculation.result.CalculationResultMap;
+import org.openmrs.module.ugandaemrreports.common.InfantTimeline;
+import org.openmrs.module.ugandaemrreports.evaluation.InfantTimelines;
 import org.openmrs.module.ugandaemrreports.reporting.utils.CalculationUtils;
 import org.openmrs.util.OpenmrsUtil;
 
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Calculation utility methods, also used by some reporting classes
@@ -177,4 +181,13 @@ public class EmrCalculationUtils {
 		DateTime d2 = new DateTime(calculationContext.getNow().getTime());
 		return Days.daysBetween(d1, d2).getDays();
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Fetches the timelines of exposed infants, loaded once per report run for all the EID calculations
+	 * @param cohort the patient ids
+	 * @return the timelines by patient id
+	 */
+	public static Map<Integer, InfantTimeline> infantTimelines(Collection<Integer> cohort) {
+		return Context.getRegisteredComponents(InfantTimelines.class).get(0).getTimelines(cohort);
+	}
+}
@@ -1,15 +1,14 @@
 package org.openmrs.module.ugandaemrreports.reporting.calculation.eid;
 
-import java.util.Calendar;
 import java.util.Collection;
 import java.util.Map;
 
-import org.openmrs.api.PatientService;
-import org.openmrs.api.context.Context;
 import org.openmrs.calculation.patient.PatientCalculationContext;
 import org.openmrs.calculation.result.CalculationResultMap;
 import org.openmrs.calculation.result.SimpleResult;
+import org.openmrs.module.ugandaemrreports.common.InfantTimeline;
 import org.openmrs.module.ugandaemrreports.reporting.calculation.AbstractPatientCalculation;
+import org.openmrs.module.ugandaemrreports.reporting.calculation.EmrCalculationUtils;
 
 /**
  * A computation from the date of birth of a patient
@@ -22,27 +21,13 @@ public class DateFromBirthDateCalculation extends AbstractPatientCalculation {
 		CalculationResultMap ret = new CalculationResultMap();
 		Integer duration = (params != null && params.containsKey("duration")) ? (Integer) params.get("duration") : 0;
 		String durationType = (params != null && params.containsKey("durationType")) ? (String) params.get("durationType") : null;
-		PatientService patientService = Context.getPatientService();
-		
 		
+		Map<Integer, InfantTimeline> timelines = EmrCalculationUtils.infantTimelines(cohort);
 		for (int ptId : cohort) {
-			Calendar cal = Calendar.getInstance();
-			cal.setTime(patientService.getPatient(ptId).getBirthdate());
-			
-			if (durationType == null || durationType.equals("d")) {
-				cal.add(Calendar.DAY_OF_YEAR, duration);
-			}
-			if (durationType.equals("w")) {
-				cal.add(Calendar.WEEK_OF_YEAR, duration);
-			}
-			if (durationType.equals("m")) {
-				cal.add(Calendar.MONTH, duration);
-			}
-			if (durationType.equals("y")) {
-				cal.add(Calendar.YEAR, duration);
+			InfantTimeline timeline = timelines.get(ptId);
+			if (timeline != null && timeline.getBirthdate() != null) {
+				ret.put(ptId, new SimpleResult(timeline.getDateFromBirth(duration, durationType), this));
 			}
-			
-			ret.put(ptId, new SimpleResult(cal.getTime(), this));
 		}
 		return ret;
 	}
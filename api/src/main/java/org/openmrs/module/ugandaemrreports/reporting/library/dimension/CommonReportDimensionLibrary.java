@@ -18,8 +18,10 @@ import static org.openmrs.module.ugandaemrreports.reporting.utils.ReportUtils.ma
 
 import java.util.Date;
 
+import org.openmrs.module.reporting.common.DurationUnit;
 import org.openmrs.module.reporting.evaluation.parameter.Parameter;
 import org.openmrs.module.reporting.indicator.dimension.CohortDefinitionDimension;
+import org.openmrs.module.ugandaemrreports.definition.dimension.definition.AgeGenderDimension;
 import org.openmrs.module.ugandaemrreports.library.Moh105CohortLibrary;
 import org.openmrs.module.ugandaemrreports.reporting.library.cohort.CommonCohortLibrary;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -43,10 +45,9 @@ public class CommonReportDimensionLibrary {
      * @return the dimension
      */
     public CohortDefinitionDimension gender() {
-        CohortDefinitionDimension dim = new CohortDefinitionDimension();
-        dim.setName("gender");
-        dim.addCohortDefinition("M", map(commonCohortLibrary.males()));
-        dim.addCohortDefinition("F", map(commonCohortLibrary.females()));
+        AgeGenderDimension dim = new AgeGenderDimension("gender");
+        dim.addGender("M", AgeGenderDimension.MALE);
+        dim.addGender("F", AgeGenderDimension.FEMALE);
         return dim;
     }
 
@@ -55,13 +56,12 @@ public class CommonReportDimensionLibrary {
      * @return the dimension
      */
     public CohortDefinitionDimension get106AgeGroups() {
-        CohortDefinitionDimension dim = new CohortDefinitionDimension();
-        dim.setName("age groups (<2, 2-4, 5-14,15+)");
+        AgeGenderDimension dim = new AgeGenderDimension("age groups (<2, 2-4, 5-14,15+)");
         dim.addParameter(new Parameter("effectiveDate", "Effective Date", Date.class));
-        dim.addCohortDefinition("<2", map(commonCohortLibrary.agedAtMost(1), "effectiveDate=${endDate}"));
-        dim.addCohortDefinition("2-<5", map(commonCohortLibrary.agedAtLeastAgedAtMost(2, 4), "effectiveDate=${endDate}"));
-        dim.addCohortDefinition("5-14", map(commonCohortLibrary.agedAtLeastAgedAtMost(5,14), "effectiveDate=${endDate}"));
-        dim.addCohortDefinition("15+", map(commonCohortLibrary.agedAtLeast(15), "effectiveDate=${endDate}"));
+        dim.addOption("<2", null, 1, null);
+        dim.addOption("2-<5", 2, 4, null);
+        dim.addOption("5-14", 5, 14, null);
+        dim.addOption("15+", 15, null, null);
         return dim;
     }
     
@@ -70,11 +70,10 @@ public class CommonReportDimensionLibrary {
      * @return
      */
 	public CohortDefinitionDimension getMOHDefinedChildrenAndAdultAgeGroups() {
-        CohortDefinitionDimension dim = new CohortDefinitionDimension();
-        dim.setName("age groups (<15, 15+)");
+        AgeGenderDimension dim = new AgeGenderDimension("age groups (<15, 15+)");
         dim.addParameter(new Parameter("effectiveDate", "Effective Date", Date.class));
-        dim.addCohortDefinition("<15", map(commonCohortLibrary.MoHChildren(), "effectiveDate=${endDate}"));
-        dim.addCohortDefinition("15+", map(commonCohortLibrary.MoHAdult(), "effectiveDate=${endDate}"));
+        dim.addOption("<15", null, 14, null);
+        dim.addOption("15+", 15, null, null);
         return dim;
 	}
 
@@ -83,12 +82,12 @@ public class CommonReportDimensionLibrary {
      * @return the dimension
      */
     public CohortDefinitionDimension standardAgeGroupsForAnc() {
-        CohortDefinitionDimension dim = new CohortDefinitionDimension();
-        dim.setName("age groups (10-19, 20-24, 25+)");
+        AgeGenderDimension dim = new AgeGenderDimension("age groups (10-19, 20-24, 25+)");
         dim.addParameter(new Parameter("onDate", "On Date", Date.class));
-        dim.addCohortDefinition("10-19", map(commonCohortLibrary.agedAtLeastAgedAtMost(10, 19), "effectiveDate=${onDate}"));
-        dim.addCohortDefinition("20-24", map(commonCohortLibrary.agedAtLeastAgedAtMost(20, 24), "effectiveDate=${onDate}"));
-        dim.addCohortDefinition("25+", map(commonCohortLibrary.agedAtLeast(25), "effectiveDate=${onDate}"));
+        dim.setEffectiveDateParameter("onDate");
+        dim.addOption("10-19", 10, 19, null);
+        dim.addOption("20-24", 20, 24, null);
+        dim.addOption("25+", 25, null, null);
         return dim;
     }
         
@@ -97,46 +96,42 @@ public class CommonReportDimensionLibrary {
      * @return the dimension
      */
 	public CohortDefinitionDimension standardAgeGroupsForMaternity() {
-        CohortDefinitionDimension dim = new CohortDefinitionDimension();
-        dim.setName("age groups (10-19, 20-24, >=25)");
+        AgeGenderDimension dim = new AgeGenderDimension("age groups (10-19, 20-24, >=25)");
         dim.addParameter(new Parameter("onDate", "On Date", Date.class));
-        dim.addCohortDefinition("10-19", map(commonCohortLibrary.agedAtLeastAgedAtMost(10,19), "effectiveDate=${endDate}"));
-        dim.addCohortDefinition("20-24", map(commonCohortLibrary.agedAtLeastAgedAtMost(20,24), "effectiveDate=${endDate}"));
-        dim.addCohortDefinition("25+", map(commonCohortLibrary.agedAtLeast(25), "effectiveDate=${endDate}"));
+        dim.addOption("10-19", 10, 19, null);
+        dim.addOption("20-24", 20, 24, null);
+        dim.addOption("25+", 25, null, null);
         return dim;
 	}
 
 	public CohortDefinitionDimension standardAgeGroupsForOutPatient() {
-        CohortDefinitionDimension dim = new CohortDefinitionDimension();
-        dim.setName("age groups (0-28Days, 29Days-4Yrs, 5-59Yrs, >=60)");
+        AgeGenderDimension dim = new AgeGenderDimension("age groups (0-28Days, 29Days-4Yrs, 5-59Yrs, >=60)");
         dim.addParameter(new Parameter("effectiveDate", "Effective Date", Date.class));
-        dim.addCohortDefinition("Between0And28Days", map(commonCohortLibrary.agedAtLeastDaysAgedAtMostDays(0,28), "effectiveDate=${endDate}"));
-        dim.addCohortDefinition("Between29DaysAnd4Yrs", map(commonCohortLibrary.agedAtLeastDaysAgedAtMostYears(29,4), "effectiveDate=${endDate}"));
-        dim.addCohortDefinition("Between5And59Yrs", map(commonCohortLibrary.agedAtLeastAgedAtMost(5, 59), "effectiveDate=${endDate}"));
-        dim.addCohortDefinition("GreaterOrEqualTo60Yrs", map(commonCohortLibrary.agedAtLeast(60), "effectiveDate=${endDate}"));
+        dim.addOption("Between0And28Days", 0, DurationUnit.DAYS, 28, DurationUnit.DAYS, null);
+        dim.addOption("Between29DaysAnd4Yrs", 29, DurationUnit.DAYS, 4, DurationUnit.YEARS, null);
+        dim.addOption("Between5And59Yrs", 5, 59, null);
+        dim.addOption("GreaterOrEqualTo60Yrs", 60, null, null);
         return dim;
 	}
 
 	public CohortDefinitionDimension drugUseAgeGroups() {
-        CohortDefinitionDimension dim = new CohortDefinitionDimension();
-        dim.setName("age groups (10-19Yrs, 20-24Yrs, >=25)");
+        AgeGenderDimension dim = new AgeGenderDimension("age groups (10-19Yrs, 20-24Yrs, >=25)");
         dim.addParameter(new Parameter("effectiveDate", "Effective Date", Date.class));
-        dim.addCohortDefinition("Between10And19Yrs", map(commonCohortLibrary.agedAtLeastAgedAtMost(10, 19), "effectiveDate=${endDate}"));
-        dim.addCohortDefinition("Between20And24Yrs", map(commonCohortLibrary.agedAtLeastAgedAtMost(20, 24), "effectiveDate=${endDate}"));
-        dim.addCohortDefinition("GreaterOrEqualTo25Yrs", map(commonCohortLibrary.agedAtLeast(25), "effectiveDate=${endDate}"));
+        dim.addOption("Between10And19Yrs", 10, 19, null);
+        dim.addOption("Between20And24Yrs", 20, 24, null);
+        dim.addOption("GreaterOrEqualTo25Yrs", 25, null, null);
         return dim;
 	}
 
 	public CohortDefinitionDimension htcAgeGroups() {
-        CohortDefinitionDimension dim = new CohortDefinitionDimension();
-        dim.setName("age groups (18Months-4Years, 5-9Yrs, 10-14Yrs, 15-18Yrs, 19-49Yrs, >49Yrs)");
+        AgeGenderDimension dim = new AgeGenderDimension("age groups (18Months-4Years, 5-9Yrs, 10-14Yrs, 15-18Yrs, 19-49Yrs, >49Yrs)");
         dim.addParameter(new Parameter("effectiveDate", "Effective Date", Date.class));
-        dim.addCohortDefinition("Between18MonthsAnd4Years", map(commonCohortLibrary.agedAtLeastMonthsAgedAtMostYears(18,4), "effectiveDate=${endDate}"));
-        dim.addCohortDefinition("Between5And9Yrs", map(commonCohortLibrary.agedAtLeastAgedAtMost(5,9), "effectiveDate=${endDate}"));
-        dim.addCohortDefinition("Between10And14Yrs", map(commonCohortLibrary.agedAtLeastAgedAtMost(10, 14), "effectiveDate=${endDate}"));
-        dim.addCohortDefinition("Between15And18Yrs", map(commonCohortLibrary.agedAtLeastAgedAtMost(15, 18), "effectiveDate=${endDate}"));
-        dim.addCohortDefinition("Between19And49Yrs", map(commonCohortLibrary.agedAtLeastAgedAtMost(19, 49), "effectiveDate=${endDate}"));
-        dim.addCohortDefinition("GreaterThan49Yrs", map(commonCohortLibrary.agedAtLeast(50), "effectiveDate=${endDate}"));
+        dim.addOption("Between18MonthsAnd4Years", 18, DurationUnit.MONTHS, 4, DurationUnit.YEARS, null);
+        dim.addOption("Between5And9Yrs", 5, 9, null);
+        dim.addOption("Between10And14Yrs", 10, 14, null);
+        dim.addOption("Between15And18Yrs", 15, 18, null);
+        dim.addOption("Between19And49Yrs", 19, 49, null);
+        dim.addOption("GreaterThan49Yrs", 50, null, null);
         return dim;
 	}
 	
@@ -145,14 +140,14 @@ public class CommonReportDimensionLibrary {
      * @return a dimension
      */
     public CohortDefinitionDimension standardAgeGroupsForSmc() {
-        CohortDefinitionDimension dim = new CohortDefinitionDimension();
-        dim.setName("age groups (<2, 2<5, 5<15, 15-49, >49)");
+        AgeGenderDimension dim = new AgeGenderDimension("age groups (<2, 2<5, 5<15, 15-49, >49)");
         dim.addParameter(new Parameter("onDate", "On Date", Date.class));
-        dim.addCohortDefinition("<2", map(commonCohortLibrary.agedAtMost(2), "effectiveDate=${onDate}"));
-        dim.addCohortDefinition("2<5", map(commonCohortLibrary.agedAtLeastAgedAtMost(3, 4), "effectiveDate=${onDate}"));
-        dim.addCohortDefinition("5<15", map(commonCohortLibrary.agedAtLeastAgedAtMost(6, 14), "effectiveDate=${onDate}"));
-        dim.addCohortDefinition("15-49", map(commonCohortLibrary.agedAtLeastAgedAtMost(15, 49), "effectiveDate=${onDate}"));
-        dim.addCohortDefinition("49+", map(commonCohortLibrary.agedAtLeast(49), "effectiveDate=${onDate}"));
+        dim.setEffectiveDateParameter("onDate");
+        dim.addOption("<2", null, 2, null);
+        dim.addOption("2<5", 3, 4, null);
+        dim.addOption("5<15", 6, 14, null);
+        dim.addOption("15-49", 15, 49, null);
+        dim.addOption("49+", 49, null, null);
         return dim;
     }
     /**
@@ -4,7 +4,6 @@ import com.google.common.base.Splitter;
 import com.google.common.collect.*;
 import org.apache.commons.lang3.StringUtils;
 import org.joda.time.LocalDate;
-import org.openmrs.api.context.Context;
 import org.openmrs.module.reporting.ReportingConstants;
 import org.openmrs.module.reporting.cohort.definition.CohortDefinition;
 import org.openmrs.module.reporting.common.DateUtil;
@@ -12,6 +11,8 @@ import org.openmrs.module.reporting.dataset.definition.CohortIndicatorDataSetDef
 import org.openmrs.module.reporting.evaluation.parameter.Mapped;
 import org.openmrs.module.reporting.indicator.CohortIndicator;
 import org.openmrs.module.ugandaemrreports.common.*;
+import org.openmrs.module.ugandaemrreports.evaluation.ProfilingConnection;
+import org.openmrs.module.ugandaemrreports.evaluation.ReportingDataSource;
 
 import java.sql.*;
 import java.util.*;
@@ -401,15 +402,17 @@ public class Helper {
     }
 
     public static String getObsPeriod(Date period, Enums.Period periodType) {
-        LocalDate localDate = StubDate.dateOf(period);
+        PeriodCalendar calendar = PeriodCalendar.getInstance();
+        int day = calendar.epochDay(period);
 
         if (periodType == Enums.Period.YEARLY) {
-            return localDate.toString("yyyy");
+            return calendar.yearLabel(day);
         } else if (periodType == Enums.Period.MONTHLY) {
-            return localDate.toString("yyyyMM");
+            return calendar.monthLabel(day);
         } else if (periodType == Enums.Period.QUARTERLY) {
-            return String.valueOf(localDate.getYear()) + "Q" + String.valueOf(((localDate.getMonthOfYear() - 1) / 3) + 1);
+            return calendar.quarterLabel(day);
         } else if (periodType == Enums.Period.WEEKLY) {
+            LocalDate localDate = calendar.toLocalDate(day);
             return localDate.getWeekyear() + "W" + localDate.weekOfWeekyear().get();
         }
 
@@ -481,7 +484,11 @@ public class Helper {
         String username = props.getProperty("user");
         String password = props.getProperty("password");
         Class.forName(driverClassName);
-        return DriverManager.getConnection(driverURL, username, password);
+        Connection connection = DriverManager.getConnection(driverURL, username, password);
+        if ("true".equals(props.getProperty("readOnly"))) {
+            connection.setReadOnly(true);
+        }
+        return ProfilingConnection.wrap(connection);
     }
 
     public static ObsData viralLoad(List<ObsData> vls, Integer no) {
@@ -721,14 +728,12 @@ public class Helper {
 
     }
 
+    /**
+     * @return a connection to the reporting replica if one is configured and up to date, otherwise to the primary
+     * database, see {@link ReportingDataSource}
+     */
     public static Connection sqlConnection() throws SQLException, ClassNotFoundException {
-
-        Properties props = new Properties();
-        props.setProperty("driver.class", "com.mysql.jdbc.Driver");
-        props.setProperty("driver.url", Context.getRuntimeProperties().getProperty("connection.url"));
-        props.setProperty("user", Context.getRuntimeProperties().getProperty("connection.username"));
-        props.setProperty("password", Context.getRuntimeProperties().getProperty("connection.password"));
-        return getDatabaseConnection(props);
+        return getDatabaseConnection(ReportingDataSource.getConnectionProperties());
     }
 
     public static Observation searchObservations(List<Observation> observations, Predicate<Observation> predicate) {
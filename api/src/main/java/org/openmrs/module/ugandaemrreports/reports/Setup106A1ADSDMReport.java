@@ -9,6 +9,7 @@ import org.openmrs.module.reporting.indicator.CohortIndicator;
 import org.openmrs.module.reporting.indicator.dimension.CohortDefinitionDimension;
 import org.openmrs.module.reporting.report.ReportDesign;
 import org.openmrs.module.reporting.report.definition.ReportDefinition;
+import org.openmrs.module.ugandaemrreports.definition.dataset.definition.BatchedCohortIndicatorDataSetDefinition;
 import org.openmrs.module.ugandaemrreports.library.CommonCohortDefinitionLibrary;
 import org.openmrs.module.ugandaemrreports.library.CommonDimensionLibrary;
 import org.openmrs.module.ugandaemrreports.library.DataFactory;
@@ -84,7 +85,7 @@ public class Setup106A1ADSDMReport extends UgandaEMRDataExportManager {
         rd.setDescription(getDescription());
         rd.setParameters(getParameters());
 
-        CohortIndicatorDataSetDefinition dsd = new CohortIndicatorDataSetDefinition();
+        CohortIndicatorDataSetDefinition dsd = new BatchedCohortIndicatorDataSetDefinition();
 
         dsd.setParameters(getParameters());
         rd.addDataSetDefinition("indicators", Mapped.mapStraightThrough(dsd));
@@ -356,7 +357,7 @@ public class Setup106A1ADSDMReport extends UgandaEMRDataExportManager {
 
     @Override
     public String getVersion() {
-        return "0.44.1";
+        return "0.44.3";
     }
 
 }
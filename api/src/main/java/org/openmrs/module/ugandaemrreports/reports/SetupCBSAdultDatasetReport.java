@@ -83,6 +83,11 @@ public class SetupCBSAdultDatasetReport extends UgandaEMRDataExportManager {
         return rd;
     }
 
+    @Override
+    public boolean isEvaluatedInParallel() {
+        return true;
+    }
+
     public String getVersion() {
         return "2.0.7";
     }
@@ -11,6 +11,7 @@ import org.openmrs.module.reporting.indicator.CohortIndicator;
 import org.openmrs.module.reporting.indicator.dimension.CohortDefinitionDimension;
 import org.openmrs.module.reporting.report.ReportDesign;
 import org.openmrs.module.reporting.report.definition.ReportDefinition;
+import org.openmrs.module.ugandaemrreports.definition.dataset.definition.BatchedCohortIndicatorDataSetDefinition;
 import org.openmrs.module.ugandaemrreports.library.CommonCohortDefinitionLibrary;
 import org.openmrs.module.ugandaemrreports.library.CommonDimensionLibrary;
 import org.openmrs.module.ugandaemrreports.library.DataFactory;
@@ -92,7 +93,7 @@ public class SetupCBSAdultReport extends UgandaEMRDataExportManager {
         rd.setDescription(getDescription());
         rd.setParameters(getParameters());
 
-        CohortIndicatorDataSetDefinition dsd = new CohortIndicatorDataSetDefinition();
+        CohortIndicatorDataSetDefinition dsd = new BatchedCohortIndicatorDataSetDefinition();
 
         String olderThan;
 
@@ -231,6 +232,6 @@ public class SetupCBSAdultReport extends UgandaEMRDataExportManager {
 
     @Override
     public String getVersion() {
-        return "0.34";
+        return "0.36";
     }
 }
@@ -17,6 +17,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
+import org.openmrs.module.ugandaemrreports.definition.dataset.definition.BatchedCohortIndicatorDataSetDefinition;
 import org.openmrs.module.ugandaemrreports.library.DataFactory;
 import org.openmrs.module.ugandaemrreports.library.EIDCohortDefinitionLibrary;
 import org.openmrs.module.reporting.cohort.definition.CohortDefinition;
@@ -79,7 +80,7 @@ public class SetupCBSEIDReport extends UgandaEMRDataExportManager {
 
 		rd.setBaseCohortDefinition(Mapped.mapStraightThrough(eidCohorts.getPatientsWithAnEIDNumber()));
 
-		CohortIndicatorDataSetDefinition dsd = new CohortIndicatorDataSetDefinition();
+		CohortIndicatorDataSetDefinition dsd = new BatchedCohortIndicatorDataSetDefinition();
 		dsd.setParameters(getParameters());
 		rd.addDataSetDefinition("cohort", Mapped.mapStraightThrough(dsd));
 
@@ -231,6 +232,6 @@ public class SetupCBSEIDReport extends UgandaEMRDataExportManager {
 
 	@Override
 	public String getVersion() {
-		return "0.1";
+		return "0.2";
 	}
 }
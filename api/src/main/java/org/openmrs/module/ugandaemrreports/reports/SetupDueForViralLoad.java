@@ -2,9 +2,7 @@ package org.openmrs.module.ugandaemrreports.reports;
 
 import org.openmrs.Concept;
 import org.openmrs.EncounterType;
-import org.openmrs.module.reporting.cohort.definition.BaseObsCohortDefinition;
 import org.openmrs.module.reporting.cohort.definition.CohortDefinition;
-import org.openmrs.module.reporting.common.RangeComparator;
 import org.openmrs.module.reporting.common.TimeQualifier;
 import org.openmrs.module.reporting.data.converter.DataConverter;
 import org.openmrs.module.reporting.data.patient.definition.PatientDataDefinition;
@@ -21,9 +19,6 @@ import org.openmrs.module.ugandaemrreports.definition.data.converter.BirthDateCo
 import org.openmrs.module.ugandaemrreports.library.*;
 import org.openmrs.module.ugandaemrreports.metadata.HIVMetadata;
 import org.openmrs.module.ugandaemrreports.reporting.dataset.definition.SharedDataDefintion;
-import org.openmrs.module.ugandaemrreports.reporting.metadata.Dictionary;
-import org.openmrs.module.ugandaemrreports.reporting.metadata.Metadata;
-import org.openmrs.module.ugandaemrreports.reporting.utils.CoreUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
@@ -134,41 +129,7 @@ public class SetupDueForViralLoad extends UgandaEMRDataExportManager {
 
         PatientDataSetDefinition dsd = new PatientDataSetDefinition();
 
-        CohortDefinition onArtDuringQuarter = hivCohortDefinitionLibrary.getPatientsHavingRegimenDuringPeriod();
-        CohortDefinition onArtBeforeQuarter = hivCohortDefinitionLibrary.getPatientsHavingRegimenBeforePeriod();
-        CohortDefinition onArt = df.getPatientsInAny(onArtBeforeQuarter,onArtDuringQuarter);
-        CohortDefinition onArtAnd1stANC = df.getPatientsInAll(onArt,anc1stVisitDuringPeriod());
-        CohortDefinition onARTFor6Months = hivCohortDefinitionLibrary.getPatientsWhoStartedArtMonthsAgo("6m");
-        CohortDefinition viralLoadDuringperiod = hivCohortDefinitionLibrary.getPatientsWithViralLoadDuringPeriod();
-        CohortDefinition viralLoadByEndOfPeriod = hivCohortDefinitionLibrary.getPatientsWithLastViralLoadByEndDate();
-        CohortDefinition onEMTCTDuringPeriod = df.getPatientsWithCodedObsDuringPeriod(hivMetadata.getEMTCTAtEnrollment(),
-                Arrays.asList(hivMetadata.getARTEncounterEncounterType()),Arrays.asList(hivMetadata.getYes()), BaseObsCohortDefinition.TimeModifier.FIRST);
-
-        CohortDefinition startedEMTCTLast6Months =df.getPatientsWithCodedObsDuringPeriod(hivMetadata.getEMTCTAtEnrollment(),
-                                                        Arrays.asList(hivMetadata.getARTEncounterEncounterType()),Arrays.asList(hivMetadata.getYes()),"6m", BaseObsCohortDefinition.TimeModifier.FIRST);
-        CohortDefinition adultsDueForViralLoad = df.getPatientsInAll(commonCohortDefinitionLibrary.MoHAdult(),
-                hivCohortDefinitionLibrary.getPatientsWhoseLastViralLoadWasMonthsAgoFromPeriod("12m"));
-
-        CohortDefinition childDueForViralLoad = df.getPatientsInAll(commonCohortDefinitionLibrary.MoHChildren(),
-                hivCohortDefinitionLibrary.getPatientsWhoseLastViralLoadWasMonthsAgoFromPeriod("6m"));
-        CohortDefinition firstANCOrEMTCTDuringPeriod = df.getPatientsInAny(onArtAnd1stANC,onEMTCTDuringPeriod);
-
-        CohortDefinition firstANCOrEMTCTAndNoViralLoadTaken = df.getPatientsNotIn(firstANCOrEMTCTDuringPeriod,viralLoadDuringperiod);
-        CohortDefinition hadFirstAncOrEmtct6MonthsFromPeriod = df.getPatientsInAny(anc1stVisit6MonthsFromPeriod(), startedEMTCTLast6Months);
-
-        CohortDefinition hadFirstAncOrEmtct6MonthsFromPeriodAndLastViralLoadWas6MonthsAgo =df.getPatientsInAll(hadFirstAncOrEmtct6MonthsFromPeriod,
-                hivCohortDefinitionLibrary.getPatientsWhoseLastViralLoadWasMonthsAgoFromPeriod("6m"));
-
-        CohortDefinition deadPatients = df.getDeadPatientsDuringPeriod();
-        CohortDefinition transferedOut = hivCohortDefinitionLibrary.getPatientsTransferredOutDuringPeriod();
-        CohortDefinition patientsDeadAndtransferedOut =df.getPatientsInAny(deadPatients,transferedOut);
-
-
-        CohortDefinition onArtFor6MonthsAndNoViralLoadTaken = df.getPatientsNotIn(onARTFor6Months,viralLoadByEndOfPeriod);
-        CohortDefinition dueForViralLoad = df.getPatientsInAny(onArtFor6MonthsAndNoViralLoadTaken,childDueForViralLoad,adultsDueForViralLoad,
-                firstANCOrEMTCTAndNoViralLoadTaken,hadFirstAncOrEmtct6MonthsFromPeriodAndLastViralLoadWas6MonthsAgo);
-
-        CohortDefinition activeAndDueForViralLoad = df.getPatientsNotIn(dueForViralLoad,patientsDeadAndtransferedOut);
+        CohortDefinition activeAndDueForViralLoad = hivCohortDefinitionLibrary.getPatientsDueForViralLoad();
         dsd.setName(getName());
         dsd.setParameters(getParameters());
         dsd.addRowFilter(Mapped.mapStraightThrough(activeAndDueForViralLoad));
@@ -196,19 +157,6 @@ public class SetupDueForViralLoad extends UgandaEMRDataExportManager {
         return rd;
     }
 
-    public CohortDefinition anc1stVisitDuringPeriod(){
-        return cohortLibrary.femaleAndHasAncVisit(0.0, 1.0);
-    }
-
-    public CohortDefinition anc1stVisit6MonthsFromPeriod(){
-        return df.getPatientsWithNumericObsDuringPeriod(getConcept("801b8959-4b2a-46c0-a28f-f7d3fc8b98bb"),
-                Arrays.asList(CoreUtils.getEncounterType(Metadata.EncounterType.ANC_ENCOUNTER)),"6m", RangeComparator.GREATER_THAN,0.0,RangeComparator.LESS_EQUAL,1.0, BaseObsCohortDefinition.TimeModifier.FIRST);
-    }
-
-    private Concept getConcept(String uuid) {
-        return Dictionary.getConcept(uuid);
-    }
-
     public PatientDataDefinition getObsDuringPeriod(Concept question, List<EncounterType> encounterTypes, TimeQualifier timeQualifier, String startDateolderThan, DataConverter converter) {
         ObsForPersonDataDefinition def = PatientColumns.createObsForPersonData(question, encounterTypes, Arrays.asList("onOrBefore", "onOrAfter"), timeQualifier);
         String startDate = Parameters.createParameterBeforeDuration("onOrAfter", "startDate", startDateolderThan);
@@ -218,7 +166,7 @@ public class SetupDueForViralLoad extends UgandaEMRDataExportManager {
 
     @Override
     public String getVersion() {
-        return "2.0.7";
+        return "2.0.9";
     }
 }
 
@@ -158,6 +158,11 @@ public class SetupEWIPillPickupReport extends UgandaEMRDataExportManager {
         return dsd;
     }
 
+    @Override
+    public boolean isEvaluatedInParallel() {
+        return true;
+    }
+
     @Override
     public String getVersion() {
         return "0.4.5";
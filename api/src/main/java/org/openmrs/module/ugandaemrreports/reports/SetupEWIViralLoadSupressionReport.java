@@ -28,6 +28,7 @@ import org.openmrs.module.reporting.evaluation.parameter.Parameter;
 import org.openmrs.module.reporting.indicator.CohortIndicator;
 import org.openmrs.module.reporting.report.ReportDesign;
 import org.openmrs.module.reporting.report.definition.ReportDefinition;
+import org.openmrs.module.ugandaemrreports.definition.dataset.definition.BatchedCohortIndicatorDataSetDefinition;
 import org.openmrs.module.ugandaemrreports.common.StubDate;
 import org.openmrs.module.ugandaemrreports.data.converter.*;
 import org.openmrs.module.ugandaemrreports.definition.data.converter.BirthDateConverter;
@@ -145,7 +146,7 @@ public class SetupEWIViralLoadSupressionReport extends UgandaEMRDataExportManage
         rd.addDataSetDefinition("HC", Mapped.mapStraightThrough(healthFacilityName()));
         String params = "startDate=${startDate},endDate=${endDate}";
 
-        CohortIndicatorDataSetDefinition cd = new CohortIndicatorDataSetDefinition();
+        CohortIndicatorDataSetDefinition cd = new BatchedCohortIndicatorDataSetDefinition();
         rd.addDataSetDefinition("CD", Mapped.mapStraightThrough(cd));
         PatientDataSetDefinition dsd = new PatientDataSetDefinition();
         dsd.setParameters(getParameters());
@@ -207,8 +208,13 @@ public class SetupEWIViralLoadSupressionReport extends UgandaEMRDataExportManage
         return dsd;
     }
 
+    @Override
+    public boolean isEvaluatedInParallel() {
+        return true;
+    }
+
     @Override
     public String getVersion() {
-        return "1.7.0";
+        return "1.7.1";
     }
 }
@@ -175,10 +175,9 @@ public class SetupInfantDueForRapidTest extends UgandaEMRDataExportManager {
 		return cdf;
 	}
 	
-	private DataDefinition getSecondDNAPCRDateFromBreastFeedingDate(String q){
+	private DataDefinition getSecondDNAPCRDateFromBreastFeedingDate(){
 		CalculationDataDefinition cd = new CalculationDataDefinition("", new ExposedInfantSecondDNAPCRDateCalculation());
 		cd.addParameter(new Parameter("onDate", "On Date", Date.class));
-		cd.addCalculationParameter("question", q);
 		return cd;
 	}
 	
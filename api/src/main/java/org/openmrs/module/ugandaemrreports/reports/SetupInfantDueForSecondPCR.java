@@ -103,7 +103,7 @@ public class SetupInfantDueForSecondPCR extends UgandaEMRDataExportManager {
 	
 	@Override
 	public String getVersion() {
-		return "0.1.5";
+		return "0.1.6";
 	}
 	
 	@Override
@@ -149,7 +149,7 @@ public class SetupInfantDueForSecondPCR extends UgandaEMRDataExportManager {
 		dsd.addColumn("1st PCR Date", sdd.definition("1st PCR Date",  hivMetadata.getFirstPCRTestDate()), "onOrAfter=${startDate},onOrBefore=${endDate}", new ObsDataConverter());
 		dsd.addColumn("1st PCR Results", sdd.definition("1st PCR Results",  hivMetadata.getFirstPCRTestResults()), "onOrAfter=${startDate},onOrBefore=${endDate}", new ObsDataConverter());
 		dsd.addColumn("Breastfeeding Status", sdd.definition("Breastfeeding Status",  hivMetadata.getBreastFeedingStatus()), "onOrAfter=${startDate},onOrBefore=${endDate}", new ObsDataConverter());
-		dsd.addColumn("2nd PCR Due Date", getSecondDNAPCRDateFromBreastFeedingDate("151283c0-8ef7-442f-8b03-3d7382a9d9cd"), "onDate=${endDate}", new CalculationResultDataConverter());
+		dsd.addColumn("2nd PCR Due Date", getSecondDNAPCRDateFromBreastFeedingDate(), "onDate=${endDate}", new CalculationResultDataConverter());
 		
 		return dsd;
 	}
@@ -167,10 +167,9 @@ public class SetupInfantDueForSecondPCR extends UgandaEMRDataExportManager {
 		return cdf;
 	}
 	
-	private DataDefinition getSecondDNAPCRDateFromBreastFeedingDate(String q){
+	private DataDefinition getSecondDNAPCRDateFromBreastFeedingDate(){
 		CalculationDataDefinition cd = new CalculationDataDefinition("", new ExposedInfantSecondDNAPCRDateCalculation());
 		cd.addParameter(new Parameter("onDate", "On Date", Date.class));
-		cd.addCalculationParameter("question", q);
 		return cd;
 	}
 	
@@ -20,6 +20,7 @@ import org.openmrs.module.reporting.evaluation.parameter.Parameter;
 import org.openmrs.module.reporting.indicator.CohortIndicator;
 import org.openmrs.module.reporting.report.ReportDesign;
 import org.openmrs.module.reporting.report.definition.ReportDefinition;
+import org.openmrs.module.ugandaemrreports.definition.dataset.definition.BatchedCohortIndicatorDataSetDefinition;
 import org.openmrs.module.ugandaemrreports.definition.dataset.definition.GlobalPropertyParametersDatasetDefinition;
 import org.openmrs.module.ugandaemrreports.library.Moh105IndicatorLibrary;
 import org.openmrs.module.ugandaemrreports.reporting.library.dimension.CommonReportDimensionLibrary;
@@ -105,7 +106,7 @@ public class SetupMOH105Section1Report extends UgandaEMRDataExportManager {
     }
 
     protected DataSetDefinition opdDiagnosis() {
-        CohortIndicatorDataSetDefinition dsd = new CohortIndicatorDataSetDefinition();
+        CohortIndicatorDataSetDefinition dsd = new BatchedCohortIndicatorDataSetDefinition();
         dsd.setParameters(getParameters());
         dsd.addDimension("age", ReportUtils.map(dimensionLibrary.standardAgeGroupsForOutPatient(), "effectiveDate=${endDate}"));
         dsd.addDimension("age1", ReportUtils.map(dimensionLibrary.drugUseAgeGroups(), "effectiveDate=${endDate}"));
@@ -293,9 +294,14 @@ public class SetupMOH105Section1Report extends UgandaEMRDataExportManager {
         dsd.addColumn(key, label, ReportUtils.map(cohortIndicator, PARAMS), dimensionOptions);
     }
 
+    @Override
+    public boolean isEvaluatedInParallel() {
+        return true;
+    }
+
     @Override
     public String getVersion() {
-        return "0.5";
+        return "0.7";
     }
 
     @Override
@@ -106,9 +106,14 @@ public class SetupMoH105Section5Report extends UgandaEMRDataExportManager  {
         return rd;
     }
 
+    @Override
+    public boolean isEvaluatedInParallel() {
+        return true;
+    }
+
     @Override
     public String getVersion() {
-        return "0.1";
+        return "0.2";
     }
 
     @Override
@@ -107,9 +107,14 @@ public class SetupMoH105_21_To_27Report extends UgandaEMRDataExportManager {
         return rd;
     }
 
+    @Override
+    public boolean isEvaluatedInParallel() {
+        return true;
+    }
+
     @Override
     public String getVersion() {
-        return "0.1";
+        return "0.2";
     }
 
     @Override
@@ -98,6 +98,11 @@ public class SetupMoH105_28_To_212Report extends UgandaEMRDataExportManager {
         return rd;
     }
 
+    @Override
+    public boolean isEvaluatedInParallel() {
+        return true;
+    }
+
     @Override
     public String getVersion() {
         return "0.1";
@@ -2,9 +2,7 @@ package org.openmrs.module.ugandaemrreports.reports;
 
 import org.openmrs.Concept;
 import org.openmrs.EncounterType;
-import org.openmrs.module.reporting.cohort.definition.BaseObsCohortDefinition;
 import org.openmrs.module.reporting.cohort.definition.CohortDefinition;
-import org.openmrs.module.reporting.common.RangeComparator;
 import org.openmrs.module.reporting.common.TimeQualifier;
 import org.openmrs.module.reporting.data.converter.DataConverter;
 import org.openmrs.module.reporting.data.patient.definition.PatientDataDefinition;
@@ -21,9 +19,6 @@ import org.openmrs.module.ugandaemrreports.definition.data.converter.BirthDateCo
 import org.openmrs.module.ugandaemrreports.library.*;
 import org.openmrs.module.ugandaemrreports.metadata.HIVMetadata;
 import org.openmrs.module.ugandaemrreports.reporting.dataset.definition.SharedDataDefintion;
-import org.openmrs.module.ugandaemrreports.reporting.metadata.Dictionary;
-import org.openmrs.module.ugandaemrreports.reporting.metadata.Metadata;
-import org.openmrs.module.ugandaemrreports.reporting.utils.CoreUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
@@ -134,41 +129,7 @@ public class SetupOverDueForViralLoadReport extends UgandaEMRDataExportManager {
 
         PatientDataSetDefinition dsd = new PatientDataSetDefinition();
 
-        CohortDefinition onArtDuringQuarter = hivCohortDefinitionLibrary.getPatientsHavingRegimenDuringPeriod();
-        CohortDefinition onArtBeforeQuarter = hivCohortDefinitionLibrary.getPatientsHavingRegimenBeforePeriod();
-        CohortDefinition onArt = df.getPatientsInAny(onArtBeforeQuarter,onArtDuringQuarter);
-        CohortDefinition onArtAnd1stANCBeforePeriod = df.getPatientsInAll(onArt,femaleAndHasAncVisitBeforePeriod());
-        CohortDefinition onARTForMoreThan7Months = hivCohortDefinitionLibrary.getPatientsWithArtStartDateByEndDate("7m");
-        CohortDefinition viralLoadByEndOfPeriod = hivCohortDefinitionLibrary.getPatientsWithLastViralLoadByEndDate();
-        CohortDefinition onEMTCTByEndOfPreviousDate = df.getPatientsWithCodedObsByEndDate(hivMetadata.getEMTCTAtEnrollment(),
-                Arrays.asList(hivMetadata.getARTEncounterEncounterType()),Arrays.asList(hivMetadata.getYes()), BaseObsCohortDefinition.TimeModifier.FIRST);
-
-        CohortDefinition startedEMTCTByEndOfPreviousDate =df.getPatientsWithCodedObsByEndDate(hivMetadata.getEMTCTAtEnrollment(),
-                Arrays.asList(hivMetadata.getARTEncounterEncounterType()),Arrays.asList(hivMetadata.getYes()),"7m", BaseObsCohortDefinition.TimeModifier.FIRST);
-        CohortDefinition adultsDueForViralLoad = df.getPatientsInAll(commonCohortDefinitionLibrary.MoHAdult(),
-                hivCohortDefinitionLibrary.getPatientsWhoseLastViralLoadWasMonthsAgoFromEndDate("13m"));
-
-        CohortDefinition childDueForViralLoad = df.getPatientsInAll(commonCohortDefinitionLibrary.MoHChildren(),
-                hivCohortDefinitionLibrary.getPatientsWhoseLastViralLoadWasMonthsAgoFromEndDate("7m"));
-        CohortDefinition firstANCOrEMTCTDuringPeriod = df.getPatientsInAny(onArtAnd1stANCBeforePeriod,onEMTCTByEndOfPreviousDate);
-
-        CohortDefinition firstANCOrEMTCTAndNoViralLoadTaken = df.getPatientsNotIn(firstANCOrEMTCTDuringPeriod,viralLoadByEndOfPeriod);
-        CohortDefinition hadFirstAncOrEmtctByEndOfPreviousDate = df.getPatientsInAny(anc1stVisitMoreThan6MonthsFromPeriod(), startedEMTCTByEndOfPreviousDate);
-
-        CohortDefinition hadFirstAncOrEmtctByEndOfPreviousDateAndLastViralLoadWas6MonthsAgo =df.getPatientsInAll(hadFirstAncOrEmtctByEndOfPreviousDate,
-                df.getPatientsWhoseObsValueDateIsByEndDate(hivMetadata.getViralLoadDate(),
-                        Arrays.asList(hivMetadata.getARTEncounterEncounterType()),BaseObsCohortDefinition.TimeModifier.LAST,"7m"));
-
-        CohortDefinition deadPatients = df.getDeadPatientsByEndDate();
-        CohortDefinition transferedOut = hivCohortDefinitionLibrary.getTransferredOut();
-        CohortDefinition patientsDeadAndtransferedOut =df.getPatientsInAny(deadPatients,transferedOut);
-
-
-        CohortDefinition beenOnArtAndNoViralLoadTaken = df.getPatientsNotIn(onARTForMoreThan7Months,viralLoadByEndOfPeriod);
-        CohortDefinition overdueForViralLoad = df.getPatientsInAny(beenOnArtAndNoViralLoadTaken,childDueForViralLoad,adultsDueForViralLoad,
-                firstANCOrEMTCTAndNoViralLoadTaken,hadFirstAncOrEmtctByEndOfPreviousDateAndLastViralLoadWas6MonthsAgo);
-
-        CohortDefinition activeAndOverDueForViralLoad = df.getPatientsNotIn(overdueForViralLoad,patientsDeadAndtransferedOut);
+        CohortDefinition activeAndOverDueForViralLoad = hivCohortDefinitionLibrary.getPatientsOverdueForViralLoad();
         dsd.setName(getName());
         dsd.setParameters(getParameters());
         dsd.addRowFilter(Mapped.mapStraightThrough(activeAndOverDueForViralLoad));
@@ -196,19 +157,6 @@ public class SetupOverDueForViralLoadReport extends UgandaEMRDataExportManager {
         return rd;
     }
 
-    public CohortDefinition femaleAndHasAncVisitBeforePeriod(){
-        return cohortLibrary.femaleAndHasAncVisitBeforePeriod(0.0, 1.0);
-    }
-
-    public CohortDefinition anc1stVisitMoreThan6MonthsFromPeriod(){
-        return df.getPatientsWithNumericObsByEndOfPreviousDate(hivMetadata.getConcept("801b8959-4b2a-46c0-a28f-f7d3fc8b98bb"),
-                Arrays.asList(CoreUtils.getEncounterType(Metadata.EncounterType.ANC_ENCOUNTER)),"7m", RangeComparator.GREATER_THAN,0.0,RangeComparator.LESS_EQUAL,1.0, BaseObsCohortDefinition.TimeModifier.FIRST);
-    }
-
-    private Concept getConcept(String uuid) {
-        return Dictionary.getConcept(uuid);
-    }
-
     public PatientDataDefinition getObsByEndDate(Concept question, List<EncounterType> encounterTypes, TimeQualifier timeQualifier, DataConverter converter) {
         ObsForPersonDataDefinition def = PatientColumns.createObsForPersonData(question, encounterTypes, Arrays.asList("onOrBefore"), timeQualifier);
         String endDate = Parameters.ON_OR_BEFORE_END_DATE;
@@ -217,7 +165,7 @@ public class SetupOverDueForViralLoadReport extends UgandaEMRDataExportManager {
 
     @Override
     public String getVersion() {
-        return "0.8.o";
+        return "0.8.1";
     }
 }
 
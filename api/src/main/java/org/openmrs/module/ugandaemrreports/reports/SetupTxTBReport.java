@@ -10,6 +10,7 @@ import org.openmrs.module.reporting.indicator.CohortIndicator;
 import org.openmrs.module.reporting.indicator.dimension.CohortDefinitionDimension;
 import org.openmrs.module.reporting.report.ReportDesign;
 import org.openmrs.module.reporting.report.definition.ReportDefinition;
+import org.openmrs.module.ugandaemrreports.definition.dataset.definition.BatchedCohortIndicatorDataSetDefinition;
 import org.openmrs.module.ugandaemrreports.library.*;
 import org.openmrs.module.ugandaemrreports.reporting.library.cohort.ARTCohortLibrary;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -103,7 +104,7 @@ public class SetupTxTBReport extends UgandaEMRDataExportManager {
         rd.setDescription(getDescription());
         rd.setParameters(getParameters());
 
-        CohortIndicatorDataSetDefinition dsd = new CohortIndicatorDataSetDefinition();
+        CohortIndicatorDataSetDefinition dsd = new BatchedCohortIndicatorDataSetDefinition();
 
         dsd.setParameters(getParameters());
         rd.addDataSetDefinition("TX_TB", Mapped.mapStraightThrough(dsd));
@@ -177,6 +178,6 @@ public class SetupTxTBReport extends UgandaEMRDataExportManager {
 
     @Override
     public String getVersion() {
-        return "0.1.2.8";
+        return "0.1.2.10";
     }
 }
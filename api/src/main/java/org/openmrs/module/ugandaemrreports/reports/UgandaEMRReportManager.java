@@ -14,11 +14,20 @@
 
 package org.openmrs.module.ugandaemrreports.reports;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeSet;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.openmrs.module.ugandaemrreports.UgandaEMRReportUtil;
+import org.openmrs.module.ugandaemrreports.evaluation.ParallelReportEvaluator;
 import org.openmrs.module.reporting.common.ObjectUtil;
 import org.openmrs.module.reporting.data.encounter.definition.EncounterDataDefinition;
 import org.openmrs.module.reporting.data.encounter.definition.PatientToEncounterDataDefinition;
@@ -33,6 +42,7 @@ import org.openmrs.module.reporting.evaluation.parameter.Mapped;
 import org.openmrs.module.reporting.evaluation.parameter.Parameterizable;
 import org.openmrs.module.reporting.evaluation.parameter.ParameterizableUtil;
 import org.openmrs.module.reporting.report.ReportDesign;
+import org.openmrs.module.reporting.report.ReportDesignResource;
 import org.openmrs.module.reporting.report.ReportRequest;
 import org.openmrs.module.reporting.report.definition.ReportDefinition;
 import org.openmrs.module.reporting.report.manager.BaseReportManager;
@@ -109,6 +119,76 @@ public abstract class UgandaEMRReportManager extends BaseReportManager {
 		}
 	}
 
+	/**
+	 * @return true if the data sets of this report are independent of each other and may be evaluated at the same
+	 * time, see {@link ParallelReportEvaluator}
+	 */
+	public boolean isEvaluatedInParallel() {
+		return false;
+	}
+
+	/**
+	 * Computes a stable fingerprint of everything that is saved when this report is set up: the version, and the
+	 * renderer, properties and resource bytes (e.g. the Excel template) of every design.
+	 * Two fingerprints are equal only if setting up the report again would store the same designs.
+	 *
+	 * @return a hex encoded SHA-1 fingerprint
+	 */
+	public String getFingerprint() {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-1");
+		}
+		catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-1 is not available", e);
+		}
+		update(digest, getVersion());
+
+		List<ReportDesign> designs = new ArrayList<ReportDesign>(constructReportDesigns(constructReportDefinition()));
+		Collections.sort(designs, new Comparator<ReportDesign>() {
+			@Override
+			public int compare(ReportDesign a, ReportDesign b) {
+				return String.valueOf(a.getUuid()).compareTo(String.valueOf(b.getUuid()));
+			}
+		});
+		for (ReportDesign design : designs) {
+			update(digest, design.getUuid());
+			update(digest, design.getRendererType() != null ? design.getRendererType().getName() : null);
+			if (design.getProperties() != null) {
+				for (String key : new TreeSet<String>(design.getProperties().stringPropertyNames())) {
+					update(digest, key + "=" + design.getProperties().getProperty(key));
+				}
+			}
+			if (design.getResources() == null) {
+				continue;
+			}
+			List<ReportDesignResource> resources = new ArrayList<ReportDesignResource>(design.getResources());
+			Collections.sort(resources, new Comparator<ReportDesignResource>() {
+				@Override
+				public int compare(ReportDesignResource a, ReportDesignResource b) {
+					return String.valueOf(a.getName()).compareTo(String.valueOf(b.getName()));
+				}
+			});
+			for (ReportDesignResource resource : resources) {
+				update(digest, resource.getName());
+				if (resource.getContents() != null) {
+					digest.update(resource.getContents());
+				}
+			}
+		}
+
+		StringBuilder hex = new StringBuilder();
+		for (byte b : digest.digest()) {
+			hex.append(String.format("%02x", b));
+		}
+		return hex.toString();
+	}
+
+	private void update(MessageDigest digest, String value) {
+		digest.update(String.valueOf(value).getBytes(StandardCharsets.UTF_8));
+		digest.update((byte) 0);
+	}
+
 	public <T extends Parameterizable> Mapped<T> map(T parameterizable, String mappings) {
 		if (parameterizable == null) {
 			throw new NullPointerException("Programming error: missing parameterizable");
@@ -0,0 +1,122 @@
+package org.openmrs.module.ugandaemrreports.common;
+
+import org.joda.time.LocalDate;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class PeriodCalendarTest {
+
+	private final PeriodCalendar calendar = new PeriodCalendar(2000, 2030);
+
+	@Test
+	public void epochDay_shouldCountDaysFromTheEpoch() {
+		assertEquals(0, calendar.epochDay(1970, 1, 1));
+		assertEquals(java.time.LocalDate.of(2019, 3, 31).toEpochDay(), calendar.epochDay("2019-03-31"));
+		assertEquals(java.time.LocalDate.of(2020, 2, 29).toEpochDay(), calendar.epochDay(2020, 2, 29));
+		assertEquals(java.time.LocalDate.of(2031, 1, 1).toEpochDay(), calendar.epochDay(new LocalDate(2031, 1, 1)));
+	}
+
+	@Test
+	public void epochDay_shouldRejectMonthsOutsideOneToTwelve() {
+		assertRejected(2019, 13, 1);
+		assertRejected(2019, 0, 1);
+		assertRejected(2000, 0, 1);
+		assertRejected(2030, 13, 1);
+		assertRejected(1990, 13, 1);
+	}
+
+	@Test
+	public void epochDay_shouldNotRollMonthThirteenIntoTheNextYear() {
+		try {
+			int day = calendar.epochDay(2019, 13, 1);
+			fail("2019-13-01 was read as day " + day + ", " + calendar.toLocalDate(day));
+		}
+		catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void epochDay_shouldRejectDaysOutsideTheMonth() {
+		assertRejected(2019, 2, 29);
+		assertRejected(2019, 4, 31);
+		assertRejected(2019, 1, 0);
+		assertRejected(1990, 2, 30);
+	}
+
+	@Test
+	public void epochDay_shouldRejectDatesNotFormattedYearMonthDay() {
+		try {
+			calendar.epochDay("2019/03/31");
+			fail();
+		}
+		catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void month_shouldChangeOnTheFirstDayOfTheMonth() {
+		assertEquals(2019 * 12 + 1, calendar.month(calendar.epochDay(2019, 2, 28)));
+		assertEquals(2019 * 12 + 2, calendar.month(calendar.epochDay(2019, 3, 1)));
+		assertEquals("201902", calendar.monthLabel(calendar.epochDay(2019, 2, 28)));
+		assertEquals("201903", calendar.monthLabel(calendar.epochDay(2019, 3, 1)));
+		assertEquals(201912, calendar.monthKey(calendar.epochDay(2019, 12, 31)));
+		assertEquals(calendar.epochDay(2020, 2, 1), calendar.firstDayOfMonth(2020 * 12 + 1));
+		assertEquals(calendar.epochDay(2020, 2, 29), calendar.lastDayOfMonth(2020 * 12 + 1));
+	}
+
+	@Test
+	public void quarter_shouldChangeOnTheFirstDayOfTheQuarter() {
+		assertEquals(2019 * 4, calendar.quarter(calendar.epochDay(2019, 3, 31)));
+		assertEquals(2019 * 4 + 1, calendar.quarter(calendar.epochDay(2019, 4, 1)));
+		assertEquals("2019Q1", calendar.quarterLabel(calendar.epochDay(2019, 3, 31)));
+		assertEquals("2019Q2", calendar.quarterLabel(calendar.epochDay(2019, 4, 1)));
+		assertEquals(calendar.epochDay(2019, 10, 1), calendar.firstDayOfQuarter(2019 * 4 + 3));
+		assertEquals(calendar.epochDay(2019, 12, 31), calendar.lastDayOfQuarter(2019 * 4 + 3));
+		assertEquals(calendar.epochDay(2018, 10, 1), calendar.firstDayOfQuarterBefore(calendar.epochDay(2019, 2, 15), 1));
+	}
+
+	@Test
+	public void year_shouldChangeOnTheFirstOfJanuary() {
+		assertEquals(2019, calendar.year(calendar.epochDay(2019, 12, 31)));
+		assertEquals(2020, calendar.year(calendar.epochDay(2020, 1, 1)));
+		assertEquals("2019", calendar.yearLabel(calendar.epochDay(2019, 12, 31)));
+		assertEquals(2019 * 4 + 3, calendar.quarter(calendar.epochDay(2019, 12, 31)));
+		assertEquals(2020 * 4, calendar.quarter(calendar.epochDay(2020, 1, 1)));
+	}
+
+	@Test
+	public void month_shouldAgreeWithJavaTimeInsideAndOutsideTheRange() {
+		for (java.time.LocalDate date = java.time.LocalDate.of(1998, 12, 1); date.isBefore(java.time.LocalDate.of(2032, 2, 1));
+				date = date.plusDays(1)) {
+			int day = (int) date.toEpochDay();
+			assertEquals(date.toString(), date.getYear() * 12 + date.getMonthValue() - 1, calendar.month(day));
+			assertEquals(date.toString(), new LocalDate(date.getYear(), date.getMonthValue(), date.getDayOfMonth()),
+					calendar.toLocalDate(day));
+		}
+	}
+
+	@Test
+	public void indexOf_shouldFindTheRangeOfTheDay() {
+		int[] boundaries = { 10, 20, 30 };
+		assertEquals(-1, PeriodCalendar.indexOf(9, boundaries));
+		assertEquals(0, PeriodCalendar.indexOf(10, boundaries));
+		assertEquals(0, PeriodCalendar.indexOf(19, boundaries));
+		assertEquals(1, PeriodCalendar.indexOf(20, boundaries));
+		assertEquals(1, PeriodCalendar.indexOf(29, boundaries));
+		assertEquals(-1, PeriodCalendar.indexOf(30, boundaries));
+	}
+
+	private void assertRejected(int year, int monthOfYear, int dayOfMonth) {
+		try {
+			calendar.epochDay(year, monthOfYear, dayOfMonth);
+			fail(year + "-" + monthOfYear + "-" + dayOfMonth + " was accepted");
+		}
+		catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+}
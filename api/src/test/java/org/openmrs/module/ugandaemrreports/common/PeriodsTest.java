@@ -0,0 +1,97 @@
+package org.openmrs.module.ugandaemrreports.common;
+
+import org.joda.time.DateTime;
+import org.joda.time.Interval;
+import org.joda.time.LocalDate;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class PeriodsTest {
+
+	@Test
+	public void getQuarters_shouldStartEachIntervalOnTheFirstDayOfItsQuarter() {
+		TreeMap<String, Interval> quarters = Periods.getQuarters(new LocalDate(2019, 11, 15), 3);
+
+		assertEquals(new LocalDate(2019, 10, 1), quarters.get("0").getStart().toLocalDate());
+		assertEquals(new LocalDate(2019, 12, 31), quarters.get("0").getEnd().toLocalDate());
+		assertEquals(new LocalDate(2020, 1, 1), quarters.get("1").getStart().toLocalDate());
+		assertEquals(new LocalDate(2020, 6, 30), quarters.get("2").getEnd().toLocalDate());
+	}
+
+	@Test
+	public void isDateInTheInterval_shouldFindTheQuarterOfTheDate() {
+		TreeMap<String, Interval> quarters = Periods.getQuarters(new LocalDate(2019, 11, 15), 3);
+
+		assertNull(Periods.isDateInTheInterval("2019-09-30", quarters));
+		assertEquals(Integer.valueOf(0), Periods.isDateInTheInterval("2019-10-01", quarters));
+		assertEquals(Integer.valueOf(0), Periods.isDateInTheInterval("2019-12-30", quarters));
+		assertEquals(Integer.valueOf(1), Periods.isDateInTheInterval("2020-01-01", quarters));
+		assertEquals(Integer.valueOf(1), Periods.isDateInTheInterval("2020-02-29", quarters));
+		assertNull(Periods.isDateInTheInterval("2020-07-01", quarters));
+	}
+
+	@Test
+	public void isDateInTheInterval_shouldAgreeWithTheIntervalsForEveryDay() {
+		TreeMap<String, Interval> quarters = Periods.getQuarters(new LocalDate(2019, 11, 15), 6);
+
+		for (LocalDate date = new LocalDate(2019, 9, 1); date.isBefore(new LocalDate(2021, 6, 1)); date = date.plusDays(1)) {
+			Integer expected = null;
+			for (Map.Entry<String, Interval> entry : quarters.entrySet()) {
+				if (Periods.isDateInTheInterval(date.toString(), entry.getValue())) {
+					expected = Integer.valueOf(entry.getKey());
+					break;
+				}
+			}
+			assertEquals(date.toString(), expected, Periods.isDateInTheInterval(date.toString(), quarters));
+		}
+	}
+
+	@Test
+	public void isDateInTheInterval_shouldFollowChangesToTheIntervals() {
+		TreeMap<String, Interval> quarters = Periods.getQuarters(new LocalDate(2019, 11, 15), 1);
+		assertEquals(Integer.valueOf(0), Periods.isDateInTheInterval("2019-11-15", quarters));
+
+		quarters.put("0", new Interval(new DateTime(2020, 1, 1, 0, 0), new DateTime(2020, 3, 31, 0, 0)));
+		assertNull(Periods.isDateInTheInterval("2019-11-15", quarters));
+		assertEquals(Integer.valueOf(0), Periods.isDateInTheInterval("2020-02-01", quarters));
+	}
+
+	@Test
+	public void isDateInTheInterval_shouldCheckIntervalsNotStartingAtTheStartOfADay() {
+		TreeMap<String, Interval> periods = new TreeMap<String, Interval>();
+		periods.put("0", new Interval(new DateTime(2019, 1, 1, 12, 0), new DateTime(2019, 2, 1, 0, 0)));
+
+		assertNull(Periods.isDateInTheInterval("2019-01-01", periods));
+		assertEquals(Integer.valueOf(0), Periods.isDateInTheInterval("2019-01-02", periods));
+	}
+
+	@Test
+	public void listOfDatesInPeriods_shouldReturnTheKeyOfEachDateInAPeriod() {
+		TreeMap<String, Interval> quarters = Periods.getQuarters(new LocalDate(2019, 1, 1), 2);
+
+		assertEquals(Arrays.asList("0", "1", "1"), Periods.listOfDatesInPeriods(quarters,
+				Arrays.asList("2019-02-01", "2018-12-31", "2019-04-01", "2019-06-29")));
+	}
+
+	@Test
+	public void addQuarters_shouldCrossYearBoundaries() {
+		assertEquals(Arrays.asList(new LocalDate(2020, 1, 1), new LocalDate(2020, 3, 31)),
+				Periods.addQuarters(new LocalDate(2019, 11, 15), 1));
+		assertEquals(Arrays.asList(new LocalDate(2018, 10, 1), new LocalDate(2018, 12, 31)),
+				Periods.subtractQuarters(new LocalDate(2019, 2, 15), 1));
+	}
+
+	@Test
+	public void addMonths_shouldEndOnTheLastDayOfTheMonth() {
+		assertEquals(Arrays.asList(new LocalDate(2020, 2, 1), new LocalDate(2020, 2, 29)),
+				Periods.addMonths(new LocalDate(2020, 1, 31), 1));
+		assertEquals(Arrays.asList(new LocalDate(2019, 12, 1), new LocalDate(2019, 12, 31)),
+				Periods.subtractMonths(new LocalDate(2020, 1, 15), 1));
+	}
+}
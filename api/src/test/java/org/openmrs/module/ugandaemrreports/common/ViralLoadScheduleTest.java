@@ -0,0 +1,183 @@
+package org.openmrs.module.ugandaemrreports.common;
+
+import org.joda.time.LocalDate;
+import org.junit.Test;
+
+import java.util.Date;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ViralLoadScheduleTest {
+
+	@Test
+	public void schedule_shouldNotBeDueBeforeArtStart() {
+		ViralLoadSchedule schedule = adult();
+		schedule.schedule();
+
+		assertNull(schedule.getNextDueDate());
+		assertNull(schedule.getReason());
+	}
+
+	@Test
+	public void schedule_shouldBeDueSixMonthsAfterArtStartForTheFirstTest() {
+		ViralLoadSchedule schedule = adult();
+		schedule.setArtStartDate(date("2020-01-01"));
+		schedule.schedule();
+
+		assertDue(schedule, "2020-07-01", ViralLoadSchedule.Reason.FIRST);
+	}
+
+	@Test
+	public void schedule_shouldIgnoreATestBeforeArtStart() {
+		ViralLoadSchedule schedule = adult();
+		schedule.setArtStartDate(date("2020-01-01"));
+		schedule.setLastViralLoadDate(date("2019-12-01"));
+		schedule.setLastViralLoadCopies(20d);
+		schedule.schedule();
+
+		assertDue(schedule, "2020-07-01", ViralLoadSchedule.Reason.FIRST);
+	}
+
+	@Test
+	public void schedule_shouldBeDueTwelveMonthsAfterASuppressedTestForAnAdult() {
+		ViralLoadSchedule schedule = adult();
+		schedule.setArtStartDate(date("2019-01-01"));
+		schedule.setLastViralLoadDate(date("2020-01-15"));
+		schedule.setLastViralLoadCopies(20d);
+		schedule.schedule();
+
+		assertDue(schedule, "2021-01-15", ViralLoadSchedule.Reason.ROUTINE);
+	}
+
+	@Test
+	public void schedule_shouldBeDueSixMonthsAfterTheLastTestForAChildOfFourteenAtTheNextTest() {
+		ViralLoadSchedule schedule = new ViralLoadSchedule(1);
+		schedule.setBirthdate(date("2005-03-01"));
+		schedule.setArtStartDate(date("2015-01-01"));
+		schedule.setLastViralLoadDate(date("2019-06-01"));
+		schedule.setLastViralLoadCopies(20d);
+		schedule.schedule();
+
+		assertDue(schedule, "2019-12-01", ViralLoadSchedule.Reason.CHILD);
+	}
+
+	@Test
+	public void schedule_shouldBeRoutineForAChildOlderThanFourteenAtTheNextTest() {
+		ViralLoadSchedule schedule = new ViralLoadSchedule(1);
+		schedule.setBirthdate(date("2005-03-01"));
+		schedule.setArtStartDate(date("2015-01-01"));
+		schedule.setLastViralLoadDate(date("2020-06-01"));
+		schedule.setLastViralLoadCopies(20d);
+		schedule.schedule();
+
+		assertDue(schedule, "2021-06-01", ViralLoadSchedule.Reason.ROUTINE);
+	}
+
+	@Test
+	public void schedule_shouldBeDueSixMonthsAfterATestTakenWhilePregnant() {
+		ViralLoadSchedule schedule = adult();
+		schedule.setArtStartDate(date("2019-01-01"));
+		schedule.addPregnantOn(date("2020-01-10"));
+		schedule.setLastViralLoadDate(date("2020-03-01"));
+		schedule.setLastViralLoadCopies(20d);
+		schedule.schedule();
+
+		assertDue(schedule, "2020-09-01", ViralLoadSchedule.Reason.PREGNANT);
+	}
+
+	@Test
+	public void schedule_shouldBeDueThreeMonthsAfterANonSuppressedTest() {
+		ViralLoadSchedule schedule = adult();
+		schedule.setArtStartDate(date("2019-01-01"));
+		schedule.setLastViralLoadDate(date("2020-01-15"));
+		schedule.setLastViralLoadCopies(ViralLoadSchedule.NON_SUPPRESSED_COPIES);
+		schedule.schedule();
+
+		assertDue(schedule, "2020-04-15", ViralLoadSchedule.Reason.NON_SUPPRESSED);
+	}
+
+	@Test
+	public void schedule_shouldBeDueAtTheFirstVisitPregnantAfterTheLastTest() {
+		ViralLoadSchedule schedule = adult();
+		schedule.setArtStartDate(date("2019-01-01"));
+		schedule.setLastViralLoadDate(date("2020-01-15"));
+		schedule.setLastViralLoadCopies(20d);
+		schedule.addPregnantOn(date("2020-06-01"));
+		schedule.addPregnantOn(date("2020-05-01"));
+		schedule.schedule();
+
+		assertDue(schedule, "2020-05-01", ViralLoadSchedule.Reason.PREGNANT);
+		assertEquals(date("2020-05-01"), schedule.getPregnancyDate());
+	}
+
+	@Test
+	public void schedule_shouldLeaveOutArtStartsAfterTheAsOfDate() {
+		ViralLoadSchedule schedule = adult();
+		schedule.setArtStartDate(date("2020-01-01"));
+		schedule.schedule(date("2019-12-31"));
+
+		assertNull(schedule.getNextDueDate());
+	}
+
+	@Test
+	public void schedule_shouldLeaveOutVisitsPregnantAfterTheAsOfDate() {
+		ViralLoadSchedule schedule = adult();
+		schedule.setArtStartDate(date("2019-01-01"));
+		schedule.setLastViralLoadDate(date("2020-01-15"));
+		schedule.setLastViralLoadCopies(20d);
+		schedule.addPregnantOn(date("2020-05-01"));
+		schedule.schedule(date("2020-03-31"));
+
+		assertDue(schedule, "2021-01-15", ViralLoadSchedule.Reason.ROUTINE);
+		assertNull(schedule.getPregnancyDate());
+	}
+
+	@Test
+	public void isDueBy_shouldBeDueOnTheDueDate() {
+		ViralLoadSchedule schedule = adult();
+		schedule.setArtStartDate(date("2020-01-01"));
+		schedule.schedule();
+
+		assertTrue(schedule.isDueBy(date("2020-07-01"), date("2020-06-30")));
+		assertFalse(schedule.isDueBy(date("2020-06-30"), date("2020-06-30")));
+	}
+
+	@Test
+	public void isDueBetween_shouldLeaveOutPatientsDueBeforeTheRange() {
+		ViralLoadSchedule schedule = adult();
+		schedule.setArtStartDate(date("2020-01-01"));
+		schedule.schedule();
+
+		assertTrue(schedule.isDueBetween(date("2020-07-01"), date("2020-09-30"), date("2020-09-30")));
+		assertFalse(schedule.isDueBetween(date("2020-07-02"), date("2020-09-30"), date("2020-09-30")));
+	}
+
+	@Test
+	public void isDueBy_shouldLeaveOutPatientsWhoExitedOnOrBeforeActiveOn() {
+		ViralLoadSchedule schedule = adult();
+		schedule.setArtStartDate(date("2020-01-01"));
+		schedule.addExitDate(date("2020-06-15"));
+		schedule.schedule();
+
+		assertFalse(schedule.isDueBy(date("2020-07-31"), date("2020-06-15")));
+		assertTrue(schedule.isDueBy(date("2020-07-31"), date("2020-06-14")));
+	}
+
+	private static ViralLoadSchedule adult() {
+		ViralLoadSchedule ret = new ViralLoadSchedule(1);
+		ret.setBirthdate(date("1980-01-01"));
+		return ret;
+	}
+
+	private static void assertDue(ViralLoadSchedule schedule, String date, ViralLoadSchedule.Reason reason) {
+		assertEquals(date(date), schedule.getNextDueDate());
+		assertEquals(reason, schedule.getReason());
+	}
+
+	private static Date date(String date) {
+		return new LocalDate(date).toDate();
+	}
+}
@@ -0,0 +1,113 @@
+package org.openmrs.module.ugandaemrreports.evaluation;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.reporting.cohort.definition.SqlCohortDefinition;
+import org.openmrs.module.reporting.dataset.definition.CohortIndicatorDataSetDefinition;
+import org.openmrs.module.reporting.dataset.definition.DataSetDefinition;
+import org.openmrs.module.reporting.evaluation.EvaluationContext;
+import org.openmrs.module.reporting.evaluation.parameter.Mapped;
+import org.openmrs.module.reporting.report.definition.ReportDefinition;
+import org.openmrs.module.ugandaemrreports.definition.dataset.definition.ARTDatasetDefinition;
+
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Checks which database report runs read from. The test reading the replica needs a second MySQL database, e.g. a
+ * local one, given as -Dugandaemrreports.replica.url=jdbc:mysql://localhost:3307/openmrs with
+ * -Dugandaemrreports.replica.username and -Dugandaemrreports.replica.password, and is skipped without it.
+ */
+public class ReportingDataSourceTest {
+
+	private static final String PRIMARY_URL = "jdbc:mysql://primary:3306/openmrs";
+
+	private static final String UNREACHABLE_REPLICA_URL = "jdbc:mysql://127.0.0.1:1/openmrs";
+
+	private Properties runtimeProperties;
+
+	@Before
+	public void setRuntimeProperties() {
+		runtimeProperties = new Properties();
+		runtimeProperties.setProperty("connection.url", PRIMARY_URL);
+		runtimeProperties.setProperty("connection.username", "openmrs");
+		runtimeProperties.setProperty("connection.password", "openmrs");
+		runtimeProperties.setProperty(ReportingDataSource.PROPERTY_REPLICA_URL, UNREACHABLE_REPLICA_URL);
+		Context.setRuntimeProperties(runtimeProperties);
+	}
+
+	@After
+	public void clearRun() {
+		ReportRunContext.clear();
+	}
+
+	@Test
+	public void readsOnlyOverJdbc_shouldBeTrueOnlyForReportsOfJdbcDataSetsWithoutABaseCohort() {
+		assertTrue(ReportingDataSource.readsOnlyOverJdbc(report(new ARTDatasetDefinition())));
+		assertFalse(ReportingDataSource.readsOnlyOverJdbc(report(new CohortIndicatorDataSetDefinition())));
+		assertFalse(ReportingDataSource.readsOnlyOverJdbc(report(new ARTDatasetDefinition(), new CohortIndicatorDataSetDefinition())));
+		assertFalse(ReportingDataSource.readsOnlyOverJdbc(new ReportDefinition()));
+
+		ReportDefinition withBaseCohort = report(new ARTDatasetDefinition());
+		withBaseCohort.setBaseCohortDefinition(new Mapped<SqlCohortDefinition>(new SqlCohortDefinition("select 1"), null));
+		assertFalse(ReportingDataSource.readsOnlyOverJdbc(withBaseCohort));
+	}
+
+	@Test
+	public void getConnectionProperties_shouldReadThePrimaryOutsideOfAReportRun() {
+		assertEquals(PRIMARY_URL, ReportingDataSource.getConnectionProperties().getProperty("driver.url"));
+	}
+
+	@Test
+	public void getConnectionProperties_shouldReadThePrimaryForAReportUsingTheReportingFramework() {
+		ReportRun run = new ReportRun(report(new CohortIndicatorDataSetDefinition()), new EvaluationContext());
+		ReportRunContext.setCurrentRun(run);
+
+		assertEquals(PRIMARY_URL, ReportingDataSource.getConnectionProperties().getProperty("driver.url"));
+		assertFalse(run.isReplicaAllowed());
+	}
+
+	@Test
+	public void getConnectionProperties_shouldReadThePrimaryWhenTheReplicaCannotBeReached() {
+		ReportRun run = new ReportRun(report(new ARTDatasetDefinition()), new EvaluationContext());
+		ReportRunContext.setCurrentRun(run);
+
+		assertEquals(PRIMARY_URL, ReportingDataSource.getConnectionProperties().getProperty("driver.url"));
+		assertEquals(ReportingDataSource.PRIMARY, run.getDataSource());
+	}
+
+	@Test
+	public void getConnectionProperties_shouldReadTheReplicaForAReportReadingOnlyOverJdbc() {
+		String replicaUrl = System.getProperty(ReportingDataSource.PROPERTY_REPLICA_URL);
+		assumeTrue(replicaUrl != null && !replicaUrl.startsWith("${"));
+		runtimeProperties.setProperty(ReportingDataSource.PROPERTY_REPLICA_URL, replicaUrl);
+		runtimeProperties.setProperty(ReportingDataSource.PROPERTY_REPLICA_USERNAME,
+				System.getProperty(ReportingDataSource.PROPERTY_REPLICA_USERNAME, "openmrs"));
+		runtimeProperties.setProperty(ReportingDataSource.PROPERTY_REPLICA_PASSWORD,
+				System.getProperty(ReportingDataSource.PROPERTY_REPLICA_PASSWORD, ""));
+		Context.setRuntimeProperties(runtimeProperties);
+
+		ReportRun jdbcRun = new ReportRun(report(new ARTDatasetDefinition()), new EvaluationContext());
+		ReportRunContext.setCurrentRun(jdbcRun);
+		assertEquals(replicaUrl, ReportingDataSource.getConnectionProperties().getProperty("driver.url"));
+		assertEquals(ReportingDataSource.REPLICA, jdbcRun.getDataSource());
+
+		ReportRunContext.setCurrentRun(new ReportRun(report(new CohortIndicatorDataSetDefinition()), new EvaluationContext()));
+		assertEquals(PRIMARY_URL, ReportingDataSource.getConnectionProperties().getProperty("driver.url"));
+	}
+
+	private static ReportDefinition report(DataSetDefinition... dataSetDefinitions) {
+		ReportDefinition ret = new ReportDefinition();
+		ret.setName("Test report");
+		for (int i = 0; i < dataSetDefinitions.length; i++) {
+			ret.addDataSetDefinition("ds" + i, dataSetDefinitions[i], null);
+		}
+		return ret;
+	}
+}
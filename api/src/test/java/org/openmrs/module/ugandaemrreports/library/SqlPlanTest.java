@@ -0,0 +1,197 @@
+package org.openmrs.module.ugandaemrreports.library;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.Concept;
+import org.openmrs.module.reporting.cohort.definition.SqlCohortDefinition;
+import org.openmrs.module.reporting.data.patient.definition.SqlPatientDataDefinition;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Runs EXPLAIN on the SQL cohorts and SQL patient data of this module's libraries, the static methods of
+ * {@link Cohorts} and {@link PatientDatasets}, against a MySQL database with the OpenMRS schema, and fails if any of
+ * them reads the whole of the obs or encounter table. Methods taking arguments are called with sample values of
+ * each type. It is skipped unless sqlplan.url is set, e.g.
+ * mvn test -Dtest=SqlPlanTest -Dsqlplan.url=jdbc:mysql://localhost:3306/openmrs -Dsqlplan.user=openmrs
+ * -Dsqlplan.password=openmrs; plans are only meaningful on a database holding a realistic amount of data.
+ */
+public class SqlPlanTest {
+
+	/**
+	 * Classes whose public static methods return the SQL checked
+	 */
+	private static final Class<?>[] SOURCES = { Cohorts.class, PatientDatasets.class };
+
+	/**
+	 * Tables that must be read through an index
+	 */
+	private static final String[] INDEXED_TABLES = { "obs", "encounter" };
+
+	private static final String SAMPLE_DATE = "'2019-01-01'";
+
+	/**
+	 * The values each method argument is tried with, by type; every combination is checked
+	 */
+	private static final Map<Class<?>, List<?>> SAMPLE_ARGUMENTS = new HashMap<Class<?>, List<?>>();
+
+	static {
+		SAMPLE_ARGUMENTS.put(Concept.class, Arrays.asList(new Concept(99161)));
+		SAMPLE_ARGUMENTS.put(Integer.class, Arrays.asList(0, -1));
+		SAMPLE_ARGUMENTS.put(int.class, Arrays.asList(0, -1));
+		SAMPLE_ARGUMENTS.put(String.class, Arrays.asList("YEAR", "QUARTER", "MONTH"));
+		SAMPLE_ARGUMENTS.put(Date.class, Arrays.asList(new Date(1546300800000L), new Date(1553990400000L)));
+	}
+
+	private Connection connection;
+
+	@Before
+	public void connect() throws Exception {
+		String url = System.getProperty("sqlplan.url");
+		assumeTrue(url != null && !url.startsWith("${"));
+		Class.forName(System.getProperty("sqlplan.driver", "com.mysql.jdbc.Driver"));
+		connection = DriverManager.getConnection(url, System.getProperty("sqlplan.user"), System.getProperty("sqlplan.password"));
+	}
+
+	@After
+	public void disconnect() throws Exception {
+		if (connection != null) {
+			connection.close();
+		}
+	}
+
+	@Test
+	public void sqlDefinitions_shouldNotReadObsOrEncounterInFull() throws Exception {
+		Map<String, String> queries = getSqlDefinitions();
+		assertTrue("No SQL definitions found", !queries.isEmpty());
+
+		List<String> failures = new ArrayList<String>();
+		for (Map.Entry<String, String> query : queries.entrySet()) {
+			List<String> fullScans = explain(query.getValue());
+			if (!fullScans.isEmpty()) {
+				failures.add(query.getKey() + " reads all of " + fullScans);
+			}
+		}
+		if (!failures.isEmpty()) {
+			fail(failures.size() + " SQL definitions scan obs or encounter in full:\n" + join(failures));
+		}
+	}
+
+	/**
+	 * @return the queries of the SQL definitions by the method and arguments that build them
+	 */
+	private static Map<String, String> getSqlDefinitions() throws Exception {
+		Map<String, String> ret = new TreeMap<String, String>();
+		for (Class<?> source : SOURCES) {
+			for (Method method : source.getMethods()) {
+				if (!Modifier.isStatic(method.getModifiers()) || !(SqlCohortDefinition.class.isAssignableFrom(method.getReturnType())
+						|| SqlPatientDataDefinition.class.isAssignableFrom(method.getReturnType()))) {
+					continue;
+				}
+				for (Object[] arguments : getSampleArguments(method)) {
+					Object definition = method.invoke(null, arguments);
+					String query = definition instanceof SqlCohortDefinition ? ((SqlCohortDefinition) definition).getQuery()
+							: ((SqlPatientDataDefinition) definition).getSql();
+					ret.put(source.getSimpleName() + "." + method.getName() + Arrays.toString(arguments), query);
+				}
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * @return every combination of the sample values of the method's argument types
+	 */
+	private static List<Object[]> getSampleArguments(Method method) {
+		List<Object[]> ret = new ArrayList<Object[]>();
+		ret.add(new Object[0]);
+		for (Class<?> type : method.getParameterTypes()) {
+			List<?> samples = SAMPLE_ARGUMENTS.get(type);
+			if (samples == null) {
+				fail("No sample arguments of type " + type.getName() + " for " + method + ", add them to SAMPLE_ARGUMENTS");
+			}
+			List<Object[]> next = new ArrayList<Object[]>();
+			for (Object[] arguments : ret) {
+				for (Object sample : samples) {
+					Object[] extended = Arrays.copyOf(arguments, arguments.length + 1);
+					extended[arguments.length] = sample;
+					next.add(extended);
+				}
+			}
+			ret = next;
+		}
+		return ret;
+	}
+
+	/**
+	 * @return the obs and encounter tables the query reads in full, by the name or alias used in the query
+	 */
+	private List<String> explain(String query) throws SQLException {
+		Map<String, String> aliases = getAliases(query);
+		List<String> ret = new ArrayList<String>();
+		Statement statement = connection.createStatement();
+		try {
+			ResultSet rs = statement.executeQuery("EXPLAIN " + bindSampleValues(query));
+			while (rs.next()) {
+				String table = rs.getString("table");
+				if ("ALL".equalsIgnoreCase(rs.getString("type")) && aliases.containsKey(table)) {
+					ret.add(aliases.get(table) + " " + table);
+				}
+			}
+		}
+		finally {
+			statement.close();
+		}
+		return ret;
+	}
+
+	/**
+	 * @return the obs and encounter tables of the query by the alias or name they appear under in the plan
+	 */
+	private static Map<String, String> getAliases(String query) {
+		Map<String, String> ret = new HashMap<String, String>();
+		for (String table : INDEXED_TABLES) {
+			ret.put(table, table);
+			Matcher m = Pattern.compile("\\b" + table + "\\s+(?:as\\s+)?(\\w+)", Pattern.CASE_INSENSITIVE).matcher(query);
+			while (m.find()) {
+				ret.put(m.group(1), table);
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * @return the query with a sample date in place of each named parameter, quoted or not
+	 */
+	private static String bindSampleValues(String query) {
+		return query.replaceAll("':\\w+'", SAMPLE_DATE).replaceAll(":(\\w+)", SAMPLE_DATE);
+	}
+
+	private static String join(List<String> lines) {
+		StringBuilder sb = new StringBuilder();
+		for (String line : lines) {
+			sb.append(line).append('\n');
+		}
+		return sb.toString();
+	}
+}
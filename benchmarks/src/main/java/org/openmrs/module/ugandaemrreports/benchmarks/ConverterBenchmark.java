@@ -0,0 +1,52 @@
+package org.openmrs.module.ugandaemrreports.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openmrs.Obs;
+import org.openmrs.module.reporting.data.converter.DataConverter;
+import org.openmrs.module.ugandaemrreports.data.converter.ObsDataConverter;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The data converters run on every cell of the register data sets
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConverterBenchmark {
+
+    @Param({"1000", "10000"})
+    public int cells;
+
+    private List<Obs> obs;
+
+    private DataConverter obsDataConverter;
+
+    @Setup
+    public void setUp() {
+        obs = new SyntheticData().obs(cells);
+        obsDataConverter = new ObsDataConverter();
+    }
+
+    @Benchmark
+    public void obsDataConverter(Blackhole blackhole) {
+        for (Obs o : obs) {
+            blackhole.consume(obsDataConverter.convert(o));
+        }
+    }
+}
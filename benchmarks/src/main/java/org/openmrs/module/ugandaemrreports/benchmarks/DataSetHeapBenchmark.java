@@ -0,0 +1,170 @@
+package org.openmrs.module.ugandaemrreports.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openmrs.module.reporting.dataset.DataSet;
+import org.openmrs.module.reporting.dataset.DataSetRow;
+import org.openmrs.module.reporting.dataset.SimpleDataSet;
+import org.openmrs.module.reporting.evaluation.EvaluationContext;
+import org.openmrs.module.ugandaemrreports.common.ColumnarDataSet;
+import org.openmrs.module.ugandaemrreports.common.PatientDataHelper;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The output of the ART and pre-ART register evaluators, rows of the same columns filled through
+ * {@link PatientDataHelper#addCol(DataSetRow, String, Object)}, in a SimpleDataSet and in a {@link ColumnarDataSet}.
+ * The time and allocation of filling them is measured by the benchmarks (allocation with -prof gc); the heap each
+ * retains once filled is measured when the trial is set up and printed with the benchmark output.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class DataSetHeapBenchmark {
+
+    @Param({"ART", "PRE_ART"})
+    public String register;
+
+    @Param({"30000"})
+    public int rows;
+
+    private List<String> columns;
+
+    private DataSet measured;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        columns = "ART".equals(register) ? artColumns() : preArtColumns();
+        long simple = retainedBytes(false);
+        long columnar = retainedBytes(true);
+        System.out.println(register + " register, " + rows + " rows x " + columns.size() + " columns: SimpleDataSet "
+                + simple / (1024 * 1024) + " MB, ColumnarDataSet " + columnar / (1024 * 1024) + " MB");
+    }
+
+    @Benchmark
+    public DataSet simpleDataSet() {
+        return fill(false);
+    }
+
+    @Benchmark
+    public DataSet columnarDataSet() {
+        return fill(true);
+    }
+
+    /**
+     * @return the register's rows as the evaluators build them: dates, identifiers and names, ages, and for each
+     * month of follow up a status code, or blanks for the months before the patient started
+     */
+    private DataSet fill(boolean columnar) {
+        Random random = new Random(42);
+        PatientDataHelper pdh = new PatientDataHelper();
+        ColumnarDataSet columnarDataSet = columnar ? new ColumnarDataSet(null, new EvaluationContext()) : null;
+        SimpleDataSet simpleDataSet = columnar ? null : new SimpleDataSet(null, new EvaluationContext());
+        Date date = new Date();
+        for (int r = 0; r < rows; r++) {
+            DataSetRow row = columnar ? columnarDataSet.newRow() : new DataSetRow();
+            int started = random.nextInt(columns.size());
+            for (int c = 0; c < columns.size(); c++) {
+                String column = columns.get(c);
+                Object value;
+                if (c == 0) {
+                    value = date;
+                } else if (column.equals("Age") || column.startsWith("W") || column.startsWith("CD4")) {
+                    value = c < started ? "" : Integer.valueOf(random.nextInt(100));
+                } else if (c < 8) {
+                    value = "Value " + random.nextInt(rows);
+                } else {
+                    value = c < started ? "" : String.valueOf(1 + random.nextInt(6));
+                }
+                pdh.addCol(row, column, value);
+            }
+            if (!columnar) {
+                simpleDataSet.addRow(row);
+            }
+        }
+        return columnar ? columnarDataSet : simpleDataSet;
+    }
+
+    private long retainedBytes(boolean columnar) {
+        long before = usedAfterGc();
+        // held in a field so that it is still reachable when the heap is measured
+        measured = fill(columnar);
+        long ret = usedAfterGc() - before;
+        measured = null;
+        return ret;
+    }
+
+    private static long usedAfterGc() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * The columns of ARTDatasetDefinitionEvaluator: the patient's details, then 73 months of follow up with the
+     * clinical details every six months
+     */
+    private static List<String> artColumns() {
+        List<String> ret = new ArrayList<String>();
+        String[] details = {"Date ART Started", "Unique ID no", "TI", "Patient Clinic ID", "Surname", "GivenName", "Gender",
+                "Age", "District", "Subcounty/Parish", "Village/Cell", "Weight", "FUS", "CS", "CD4", "VL", "CPT Start Date",
+                "CPT Stop Date", "INH Start Date", "INH Stop Date", "TB Reg No", "TB Start Date", "TB Stop Date", "EDD1",
+                "ANC1", "INFANT1", "EDD2", "ANC2", "INFANT2", "EDD3", "ANC3", "INFANT3", "BASE REGIMEN", "L1S1", "L1S2",
+                "L2S1", "L2S2", "L3S1", "L3S2"};
+        for (String detail : details) {
+            ret.add(detail);
+        }
+        for (int i = 0; i <= 72; i++) {
+            ret.add("FUS" + i);
+            ret.add("TB" + i);
+            ret.add("A" + i);
+            ret.add("C" + i);
+            if (i == 6 || i == 12 || i == 24 || i == 36 || i == 48 || i == 60 || i == 72) {
+                ret.add("CI" + i);
+                ret.add("W" + i);
+                ret.add("CD4" + i);
+                ret.add("VL" + i);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * The columns of PreARTDatasetDefinitionEvaluator: the patient's details, then 16 quarters of follow up
+     */
+    private static List<String> preArtColumns() {
+        List<String> ret = new ArrayList<String>();
+        String[] details = {"Date Enrolled", "Unique ID no", "Patient Clinic ID", "Name", "firstName", "Gender", "Age",
+                "District", "Sub-county", "Parish", "Village", "Entry Point", "Enrollment", "CPT", "INH", "TBStartDate",
+                "TBStopDate", "CS1", "CS2", "CS3", "CS4", "Date Eligible", "Date Eligible and Ready", "ART Start Date"};
+        for (String detail : details) {
+            ret.add(detail);
+        }
+        for (int i = 0; i < 16; i++) {
+            ret.add("FUS" + i);
+            ret.add("CPT" + i);
+            ret.add("TB" + i);
+            ret.add("Nutrition" + i);
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,167 @@
+package org.openmrs.module.ugandaemrreports.benchmarks;
+
+import org.joda.time.LocalDate;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openmrs.module.reporting.common.DateUtil;
+import org.openmrs.module.ugandaemrreports.common.Enums;
+import org.openmrs.module.ugandaemrreports.common.FollowUpStatuses;
+import org.openmrs.module.ugandaemrreports.common.PatientData;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The yearly FU status of the patients of a facility, from the rows the FU status queries return: one comma
+ * separated string per patient, split and parsed as the FU status evaluator used to, and the typed rows folded into
+ * {@link FollowUpStatuses} as it does now. Each patient has an encounter in the year, a few return visit dates, an
+ * ART start date and, for some, a transfer out or death.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(1)
+public class FollowUpStatusBenchmark {
+
+    private static final int RETURN_VISITS = 4;
+
+    @Param({"5000", "30000"})
+    public int patients;
+
+    private Date startDate;
+
+    private Date endDate;
+
+    private List<Integer> patientIds;
+
+    private List<String> concatenated;
+
+    private List<Object[]> encounters;
+
+    private List<Object[]> returnVisits;
+
+    private List<Object[]> artStarts;
+
+    private List<Object[]> transfersOut;
+
+    private List<Object[]> deaths;
+
+    @Setup
+    public void setUp() {
+        SyntheticData data = new SyntheticData();
+        Random random = new Random(42);
+        startDate = SyntheticData.START.plusYears(2).toDate();
+        endDate = SyntheticData.START.plusYears(3).minusDays(1).toDate();
+
+        patientIds = new ArrayList<Integer>(patients);
+        concatenated = new ArrayList<String>(patients);
+        encounters = new ArrayList<Object[]>(patients);
+        returnVisits = new ArrayList<Object[]>(patients * RETURN_VISITS);
+        artStarts = new ArrayList<Object[]>(patients);
+        transfersOut = new ArrayList<Object[]>();
+        deaths = new ArrayList<Object[]>();
+        for (int i = 0; i < patients; i++) {
+            Integer patientId = i + 1;
+            patientIds.add(patientId);
+
+            LocalDate encounter = new LocalDate(startDate).plusDays(random.nextInt(365));
+            encounters.add(new Object[]{patientId, encounter.toDate()});
+            LocalDate lastReturnVisit = null;
+            LocalDate nextReturnVisit = null;
+            for (int v = 0; v < RETURN_VISITS; v++) {
+                LocalDate returnVisit = data.date().plusDays(random.nextInt(120));
+                returnVisits.add(new Object[]{patientId, returnVisit.toDate()});
+                if (returnVisit.toDate().after(endDate)) {
+                    nextReturnVisit = nextReturnVisit == null || returnVisit.isBefore(nextReturnVisit) ? returnVisit : nextReturnVisit;
+                } else {
+                    lastReturnVisit = lastReturnVisit == null || returnVisit.isAfter(lastReturnVisit) ? returnVisit : lastReturnVisit;
+                }
+            }
+            LocalDate artStart = data.date();
+            artStarts.add(new Object[]{patientId, artStart.toDate()});
+            boolean transferredOut = random.nextInt(20) == 0;
+            if (transferredOut) {
+                transfersOut.add(new Object[]{patientId, encounter.toDate()});
+            }
+            LocalDate death = random.nextInt(50) == 0 ? encounter.plusDays(1) : null;
+            if (death != null) {
+                deaths.add(new Object[]{patientId, death.toDate()});
+            }
+
+            concatenated.add(encounter.toString("yyyy-MM-dd") + ","
+                    + (lastReturnVisit != null ? String.valueOf(random.nextInt(365)) : "-") + ","
+                    + (death != null ? death.toString("yyyy-MM-dd") : "-") + ","
+                    + (transferredOut ? "90306" : "-") + ","
+                    + (nextReturnVisit != null ? nextReturnVisit.toString("yyyy-MM-dd") : "-") + ","
+                    + artStart.toString("yyyy-MM-dd") + ","
+                    + encounter.toString("yyyy-MM-dd"));
+        }
+    }
+
+    @Benchmark
+    public void concatenatedStrings(Blackhole blackhole) {
+        for (int i = 0; i < patients; i++) {
+            String[] splitString = concatenated.get(i).split(",");
+            PatientData patientData = new PatientData();
+            patientData.setPeriod(Enums.Period.YEARLY);
+            patientData.setPeriodDate(endDate);
+            if (!splitString[0].equalsIgnoreCase("-")) {
+                patientData.setEncounterDate(DateUtil.parseDate(splitString[0], "yyyy-MM-dd"));
+            }
+            if (!splitString[1].equalsIgnoreCase("-")) {
+                patientData.setNumberOfSinceLastVisit(Integer.valueOf(splitString[1]));
+            }
+            if (!splitString[2].equalsIgnoreCase("-")) {
+                patientData.setDeathDate(DateUtil.parseDate(splitString[2], "yyyy-MM-dd"));
+            }
+            if (!splitString[3].equalsIgnoreCase("-")) {
+                patientData.setTransferredOut(true);
+            }
+            if (!splitString[4].equalsIgnoreCase("-")) {
+                patientData.setNextVisitDate(DateUtil.parseDate(splitString[4], "yyyy-MM-dd"));
+            }
+            if (!splitString[5].equalsIgnoreCase("-")) {
+                patientData.setArtStartDate(DateUtil.parseDate(splitString[5], "yyyy-MM-dd"));
+            }
+            blackhole.consume(patientData);
+        }
+    }
+
+    @Benchmark
+    public void typedRows(Blackhole blackhole) {
+        FollowUpStatuses statuses = new FollowUpStatuses(Enums.Period.YEARLY, startDate, endDate, patientIds);
+        for (Object[] row : encounters) {
+            statuses.addEncounter((Integer) row[0], (Date) row[1]);
+        }
+        for (Object[] row : returnVisits) {
+            statuses.addReturnVisitDate((Integer) row[0], (Date) row[1]);
+        }
+        for (Object[] row : transfersOut) {
+            statuses.addTransferOut((Integer) row[0], (Date) row[1]);
+        }
+        for (Object[] row : artStarts) {
+            statuses.addArtStartDate((Integer) row[0], (Date) row[1]);
+        }
+        for (Object[] row : deaths) {
+            statuses.setDeathDate((Integer) row[0], (Date) row[1]);
+        }
+        for (int i = 0; i < statuses.size(); i++) {
+            blackhole.consume(statuses.getStatus(i));
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package org.openmrs.module.ugandaemrreports.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openmrs.module.ugandaemrreports.common.ObsData;
+import org.openmrs.module.ugandaemrreports.reports.Helper;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The string parsing and obs lookups the register data set evaluators run for every patient
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HelperBenchmark {
+
+    @Param({"10", "100"})
+    public int pairs;
+
+    @Param({"100", "1000"})
+    public int obsCount;
+
+    private String conceptValues;
+
+    private Map<String, String> answers;
+
+    private List<ObsData> obsData;
+
+    private String yearMonth;
+
+    @Setup
+    public void setUp() {
+        SyntheticData data = new SyntheticData();
+        conceptValues = data.conceptValues(pairs);
+        answers = new HashMap<String, String>();
+        for (int i = 0; i < 100000; i += 7) {
+            answers.put(String.valueOf(i), "answer " + i);
+        }
+        obsData = data.obsData(obsCount);
+        yearMonth = SyntheticData.START.plusMonths(12).toString("yyyyMM");
+    }
+
+    @Benchmark
+    public Map<String, String> processString() {
+        return Helper.processString(conceptValues);
+    }
+
+    @Benchmark
+    public List<String> processString2() {
+        return Helper.processString2(conceptValues);
+    }
+
+    @Benchmark
+    public Map<String, String> processString3() {
+        return Helper.processString3(conceptValues);
+    }
+
+    @Benchmark
+    public Map<String, String> processString3WithAnswers() {
+        return Helper.processString3(conceptValues, answers);
+    }
+
+    @Benchmark
+    public void getDataByConcept(Blackhole blackhole) {
+        for (String concept : SyntheticData.CONCEPTS) {
+            blackhole.consume(Helper.getData(obsData, concept));
+        }
+    }
+
+    @Benchmark
+    public void getDataByMonthAndConcept(Blackhole blackhole) {
+        for (String concept : SyntheticData.CONCEPTS) {
+            blackhole.consume(Helper.getData(obsData, yearMonth, concept));
+        }
+    }
+
+    @Benchmark
+    public ObsData getDataByMonth() {
+        return Helper.getData(obsData, Integer.valueOf(yearMonth));
+    }
+}
@@ -0,0 +1,70 @@
+package org.openmrs.module.ugandaemrreports.benchmarks;
+
+import org.joda.time.Interval;
+import org.joda.time.LocalDate;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openmrs.module.ugandaemrreports.common.Periods;
+
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The quarter bucketing the cohort analysis data sets do for every patient
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PeriodsBenchmark {
+
+    @Param({"4", "12"})
+    public int quarters;
+
+    @Param({"10", "100"})
+    public int dates;
+
+    private LocalDate workingDate;
+
+    private TreeMap<String, Interval> periods;
+
+    private List<String> dateList;
+
+    private TreeMap<String, String> dateValues;
+
+    @Setup
+    public void setUp() {
+        SyntheticData data = new SyntheticData();
+        workingDate = SyntheticData.START;
+        periods = Periods.getQuarters(workingDate, quarters);
+        dateList = data.dates(dates);
+        dateValues = data.dateValues(dates);
+    }
+
+    @Benchmark
+    public TreeMap<String, Interval> getQuarters() {
+        return Periods.getQuarters(workingDate, quarters);
+    }
+
+    @Benchmark
+    public List<String> listOfDatesInPeriods() {
+        return Periods.listOfDatesInPeriods(periods, dateList);
+    }
+
+    @Benchmark
+    public TreeMap<String, TreeMap<String, String>> listOfDateValuesInPeriods() {
+        return Periods.listOfDatesInPeriods(periods, dateValues);
+    }
+}
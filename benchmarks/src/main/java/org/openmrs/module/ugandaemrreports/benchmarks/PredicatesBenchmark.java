@@ -0,0 +1,70 @@
+package org.openmrs.module.ugandaemrreports.benchmarks;
+
+import com.google.common.collect.Collections2;
+import com.google.common.collect.Lists;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openmrs.module.ugandaemrreports.common.PatientMonthData;
+import org.openmrs.module.ugandaemrreports.common.ViralLoad;
+import org.openmrs.module.ugandaemrreports.definition.dataset.predicates.PatientMonthDataFilter;
+import org.openmrs.module.ugandaemrreports.definition.dataset.predicates.ViralLoadFailedFilter;
+import org.openmrs.module.ugandaemrreports.definition.dataset.predicates.ViralLoadNotDetectedFilter;
+import org.openmrs.module.ugandaemrreports.definition.dataset.predicates.ViralLoadTestedFilter;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The filters the ART cohort analysis data set applies for every month of follow up
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PredicatesBenchmark {
+
+    @Param({"1000", "10000"})
+    public int patients;
+
+    private List<ViralLoad> viralLoads;
+
+    private List<PatientMonthData> patientMonthData;
+
+    @Setup
+    public void setUp() {
+        SyntheticData data = new SyntheticData();
+        viralLoads = data.viralLoads(patients);
+        patientMonthData = data.patientMonthData(patients);
+    }
+
+    @Benchmark
+    public int viralLoadFilters() {
+        int count = 0;
+        for (int month = 6; month <= 72; month += 6) {
+            count += Lists.newArrayList(Collections2.filter(viralLoads, new ViralLoadTestedFilter(month, month + 2))).size();
+            count += Lists.newArrayList(Collections2.filter(viralLoads, new ViralLoadNotDetectedFilter(month, month + 2))).size();
+            count += Lists.newArrayList(Collections2.filter(viralLoads, new ViralLoadFailedFilter(month))).size();
+        }
+        return count;
+    }
+
+    @Benchmark
+    public int patientMonthDataFilter() {
+        int count = 0;
+        for (int month = 0; month <= 72; month += 3) {
+            count += Lists.newArrayList(Collections2.filter(patientMonthData, new PatientMonthDataFilter(month, 1))).size();
+        }
+        return count;
+    }
+}
@@ -0,0 +1,167 @@
+package org.openmrs.module.ugandaemrreports.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openmrs.module.ugandaemrreports.common.Enums;
+import org.openmrs.module.ugandaemrreports.definition.cohort.evaluator.ArtFollowupLostCohortEvaluator;
+import org.openmrs.module.ugandaemrreports.definition.data.evaluator.ViralLoadCohortDataEvaluator;
+import org.openmrs.module.ugandaemrreports.definition.dataset.queries.PillPickupQueries;
+import org.openmrs.module.ugandaemrreports.evaluation.ReportingIndex;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The queries the reporting indexes (see {@link ReportingIndex}) were added for, run against a MySQL database with
+ * the OpenMRS schema with the indexes and with MySQL told to ignore them. It needs a database, so it is run with the
+ * sqlplan profile rather than with the other benchmarks, e.g.
+ * mvn -Pbenchmarks,sqlplan verify -Dsqlplan.url=jdbc:mysql://localhost:3306/openmrs
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class ReportingIndexBenchmark {
+
+    private static final String START_DATE = "2019-01-01";
+
+    private static final String END_DATE = "2019-12-31";
+
+    @Param({"true", "false"})
+    public boolean useIndexes;
+
+    private Connection connection;
+
+    private String viralLoadQuery;
+
+    private String artFollowupLostQuery;
+
+    private String pillPickupQuery;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        String url = System.getProperty("sqlplan.url");
+        if (url == null || url.startsWith("${")) {
+            throw new IllegalStateException("Set sqlplan.url, sqlplan.user and sqlplan.password to the database to benchmark against");
+        }
+        Class.forName(System.getProperty("sqlplan.driver", "com.mysql.jdbc.Driver"));
+        connection = DriverManager.getConnection(url, System.getProperty("sqlplan.user"), System.getProperty("sqlplan.password"));
+
+        List<String> missing = getMissingIndexes();
+        if (!missing.isEmpty()) {
+            throw new IllegalStateException("Create the reporting indexes " + missing + " first, e.g. by starting OpenMRS with the module");
+        }
+
+        viralLoadQuery = withHints(ViralLoadCohortDataEvaluator.getQuery(END_DATE));
+        artFollowupLostQuery = withHints(ArtFollowupLostCohortEvaluator.getQuery(START_DATE, END_DATE, 6, Enums.Period.MONTHLY, true));
+        pillPickupQuery = withHints(PillPickupQueries.ewiPillPickupQuery(START_DATE, END_DATE));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        if (connection != null) {
+            connection.close();
+        }
+    }
+
+    @Benchmark
+    public int viralLoadCohortData() throws SQLException {
+        return count(viralLoadQuery);
+    }
+
+    @Benchmark
+    public int artFollowupLostCohort() throws SQLException {
+        return count(artFollowupLostQuery);
+    }
+
+    @Benchmark
+    public int ewiPillPickup() throws SQLException {
+        return count(pillPickupQuery);
+    }
+
+    private int count(String query) throws SQLException {
+        Statement statement = connection.createStatement();
+        try {
+            ResultSet rs = statement.executeQuery(query);
+            int rows = 0;
+            while (rs.next()) {
+                rows++;
+            }
+            return rows;
+        }
+        finally {
+            statement.close();
+        }
+    }
+
+    /**
+     * @return the query as is, or with MySQL told to ignore the reporting indexes on every obs and encounter it reads
+     */
+    private String withHints(String query) {
+        if (useIndexes) {
+            return query;
+        }
+        Map<String, List<String>> indexesByTable = new HashMap<String, List<String>>();
+        for (ReportingIndex index : ReportingIndex.ALL) {
+            if (!indexesByTable.containsKey(index.getTable())) {
+                indexesByTable.put(index.getTable(), new ArrayList<String>());
+            }
+            indexesByTable.get(index.getTable()).add(index.getName());
+        }
+        for (Map.Entry<String, List<String>> table : indexesByTable.entrySet()) {
+            // the hint goes after the alias, if the table has one
+            Pattern p = Pattern.compile("\\b((?:from|join)\\s+" + table.getKey()
+                    + "(?:\\s+(?:as\\s+)?(?!where\\b|on\\b|inner\\b|left\\b|join\\b|group\\b|union\\b|order\\b)\\w+)?)\\b",
+                    Pattern.CASE_INSENSITIVE);
+            Matcher m = p.matcher(query);
+            String hint = " IGNORE INDEX (" + String.join(", ", table.getValue()) + ")";
+            query = m.replaceAll("$1" + Matcher.quoteReplacement(hint));
+        }
+        return query;
+    }
+
+    private List<String> getMissingIndexes() throws SQLException {
+        List<String> ret = new ArrayList<String>();
+        PreparedStatement ps = connection.prepareStatement("select count(*) from information_schema.statistics "
+                + "where table_schema = database() and table_name = ? and index_name = ?");
+        try {
+            for (ReportingIndex index : ReportingIndex.ALL) {
+                ps.setString(1, index.getTable());
+                ps.setString(2, index.getName());
+                ResultSet rs = ps.executeQuery();
+                rs.next();
+                if (rs.getInt(1) == 0) {
+                    ret.add(index.getName());
+                }
+            }
+        }
+        finally {
+            ps.close();
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,127 @@
+package org.openmrs.module.ugandaemrreports.benchmarks;
+
+import org.joda.time.LocalDate;
+import org.openmrs.Obs;
+import org.openmrs.module.ugandaemrreports.common.ObsData;
+import org.openmrs.module.ugandaemrreports.common.PatientMonthData;
+import org.openmrs.module.ugandaemrreports.common.ViralLoad;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * Generates data shaped like what the report queries return, from a fixed seed so that every run of a benchmark
+ * works on the same data
+ */
+public class SyntheticData {
+
+    /**
+     * Concepts the ART register queries group on
+     */
+    public static final String[] CONCEPTS = {"5096", "90315", "5090", "5089", "99037", "90221", "90211", "90012",
+            "99165", "99110", "90297", "90299", "730", "5497", "99071", "90206", "856", "99083"};
+
+    public static final LocalDate START = new LocalDate(2016, 1, 1);
+
+    private final Random random;
+
+    public SyntheticData() {
+        this(20180101L);
+    }
+
+    public SyntheticData(long seed) {
+        this.random = new Random(seed);
+    }
+
+    public String concept() {
+        return CONCEPTS[random.nextInt(CONCEPTS.length)];
+    }
+
+    /**
+     * @return a date in the three years from {@link #START}
+     */
+    public LocalDate date() {
+        return START.plusDays(random.nextInt(3 * 365));
+    }
+
+    /**
+     * @return a group_concat of concept:value pairs, as read from the encounter obs queries
+     */
+    public String conceptValues(int pairs) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < pairs; i++) {
+            if (i > 0) {
+                sb.append(",");
+            }
+            sb.append(concept()).append(":").append(random.nextInt(100000));
+        }
+        return sb.toString();
+    }
+
+    public List<ObsData> obsData(int size) {
+        List<ObsData> data = new ArrayList<ObsData>(size);
+        for (int i = 0; i < size; i++) {
+            data.add(new ObsData(random.nextInt(5000), concept(), i, date().toDate(), String.valueOf(random.nextInt(1000)), "ART"));
+        }
+        return data;
+    }
+
+    /**
+     * @return dates formatted as yyyy-MM-dd
+     */
+    public List<String> dates(int size) {
+        List<String> dates = new ArrayList<String>(size);
+        for (int i = 0; i < size; i++) {
+            dates.add(date().toString("yyyy-MM-dd"));
+        }
+        return dates;
+    }
+
+    public TreeMap<String, String> dateValues(int size) {
+        TreeMap<String, String> dateValues = new TreeMap<String, String>();
+        for (String date : dates(size)) {
+            dateValues.put(date, String.valueOf(random.nextInt(1000)));
+        }
+        return dateValues;
+    }
+
+    public List<ViralLoad> viralLoads(int size) {
+        List<ViralLoad> viralLoads = new ArrayList<ViralLoad>(size);
+        for (int i = 0; i < size; i++) {
+            viralLoads.add(new ViralLoad(i, random.nextInt(72), random.nextInt(72), null, random.nextDouble() * 5000));
+        }
+        return viralLoads;
+    }
+
+    public List<PatientMonthData> patientMonthData(int size) {
+        List<PatientMonthData> data = new ArrayList<PatientMonthData>(size);
+        for (int i = 0; i < size; i++) {
+            data.add(new PatientMonthData(i, random.nextInt(72), random.nextInt(3)));
+        }
+        return data;
+    }
+
+    /**
+     * @return obs with numeric, date and text values in equal parts
+     */
+    public List<Obs> obs(int size) {
+        List<Obs> obs = new ArrayList<Obs>(size);
+        for (int i = 0; i < size; i++) {
+            Obs o = new Obs();
+            switch (i % 3) {
+                case 0:
+                    o.setValueNumeric(random.nextDouble() * 1000);
+                    break;
+                case 1:
+                    o.setValueDatetime(date().toDate());
+                    break;
+                default:
+                    o.setValueText(conceptValues(1));
+            }
+            obs.add(o);
+        }
+        return obs;
+    }
+}
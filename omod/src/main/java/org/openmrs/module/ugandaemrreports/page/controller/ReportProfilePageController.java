@@ -0,0 +1,37 @@
+package org.openmrs.module.ugandaemrreports.page.controller;
+
+import org.openmrs.api.context.Context;
+import org.openmrs.module.ugandaemrreports.api.UgandaEMRReportsService;
+import org.openmrs.module.ugandaemrreports.evaluation.ProfileNode;
+import org.openmrs.module.ugandaemrreports.evaluation.ReportProfile;
+import org.openmrs.ui.framework.page.PageModel;
+import org.springframework.web.bind.annotation.RequestParam;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Shows the tree of steps of one report run profile
+ */
+public class ReportProfilePageController {
+
+    public void controller(PageModel model, @RequestParam("reportProfileId") Integer reportProfileId) {
+        ReportProfile profile = Context.getService(UgandaEMRReportsService.class).getReportProfile(reportProfileId);
+        List<Object[]> rows = new ArrayList<Object[]>();
+        if (profile != null && profile.getRoot() != null) {
+            flatten(profile.getRoot(), 0, rows);
+        }
+        model.addAttribute("profile", profile);
+        model.addAttribute("rows", rows);
+    }
+
+    /**
+     * Lists the nodes of the tree in depth first order, each with its depth
+     */
+    private void flatten(ProfileNode node, int depth, List<Object[]> rows) {
+        rows.add(new Object[]{node, depth});
+        for (ProfileNode child : node.getChildren()) {
+            flatten(child, depth + 1, rows);
+        }
+    }
+}
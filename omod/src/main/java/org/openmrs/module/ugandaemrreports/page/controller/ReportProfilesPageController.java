@@ -0,0 +1,19 @@
+package org.openmrs.module.ugandaemrreports.page.controller;
+
+import org.openmrs.api.context.Context;
+import org.openmrs.module.ugandaemrreports.api.UgandaEMRReportsService;
+import org.openmrs.ui.framework.page.PageModel;
+import org.springframework.web.bind.annotation.RequestParam;
+
+/**
+ * Lists the most recent report run profiles
+ */
+public class ReportProfilesPageController {
+
+    private static final int MAX_PROFILES = 200;
+
+    public void controller(PageModel model, @RequestParam(value = "reportDefinitionUuid", required = false) String reportDefinitionUuid) {
+        model.addAttribute("reportDefinitionUuid", reportDefinitionUuid);
+        model.addAttribute("profiles", Context.getService(UgandaEMRReportsService.class).getReportProfiles(reportDefinitionUuid, null, MAX_PROFILES));
+    }
+}
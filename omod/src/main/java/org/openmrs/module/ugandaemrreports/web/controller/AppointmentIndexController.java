@@ -0,0 +1,36 @@
+package org.openmrs.module.ugandaemrreports.web.controller;
+
+import org.openmrs.api.context.Context;
+import org.openmrs.module.ugandaemrreports.evaluation.AppointmentIndex;
+import org.openmrs.module.webservices.rest.web.RestConstants;
+import org.openmrs.module.webservices.rest.web.v1_0.controller.BaseRestController;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Maintains the appointment index, at /ws/rest/v1/ugandaemrreports/appointmentindex: POST refreshes it, or rebuilds it
+ * from all the obs and encounters with ?rebuild=true
+ */
+@Controller
+@RequestMapping(value = "/rest/" + RestConstants.VERSION_1 + "/ugandaemrreports/appointmentindex")
+public class AppointmentIndexController extends BaseRestController {
+
+    @Autowired
+    private AppointmentIndex appointmentIndex;
+
+    @RequestMapping(method = RequestMethod.POST)
+    @ResponseBody
+    public Map<String, Object> update(@RequestParam(value = "rebuild", required = false, defaultValue = "false") boolean rebuild) {
+        Context.requirePrivilege(ViralLoadIndexController.PRIV_MANAGE_REPORTS);
+        Map<String, Object> ret = new LinkedHashMap<String, Object>();
+        ret.put(rebuild ? "indexedPatients" : "updatedPatients", rebuild ? appointmentIndex.rebuild() : appointmentIndex.refresh());
+        return ret;
+    }
+}
@@ -0,0 +1,39 @@
+package org.openmrs.module.ugandaemrreports.web.controller;
+
+import org.openmrs.api.context.Context;
+import org.openmrs.module.reporting.common.DateUtil;
+import org.openmrs.module.reporting.common.DurationUnit;
+import org.openmrs.module.ugandaemrreports.evaluation.PerformanceMetrics;
+import org.openmrs.module.webservices.rest.web.RestConstants;
+import org.openmrs.module.webservices.rest.web.v1_0.controller.BaseRestController;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import java.util.Date;
+import java.util.Map;
+
+/**
+ * Exposes the performance metrics of report runs for monitoring, at
+ * /ws/rest/v1/ugandaemrreports/metrics?days=30
+ */
+@Controller
+@RequestMapping(value = "/rest/" + RestConstants.VERSION_1 + "/ugandaemrreports/metrics")
+public class PerformanceMetricsController extends BaseRestController {
+
+    public static final String PRIV_VIEW_REPORTS = "View Reports";
+
+    @Autowired
+    private PerformanceMetrics performanceMetrics;
+
+    @RequestMapping(method = RequestMethod.GET)
+    @ResponseBody
+    public Map<String, Object> getMetrics(@RequestParam(value = "days", required = false, defaultValue = "30") Integer days) {
+        Context.requirePrivilege(PRIV_VIEW_REPORTS);
+        Date since = DateUtil.adjustDate(new Date(), -Math.max(days, 1), DurationUnit.DAYS);
+        return performanceMetrics.getMetrics(since);
+    }
+}
@@ -0,0 +1,70 @@
+package org.openmrs.module.ugandaemrreports.web.controller;
+
+import org.openmrs.api.context.Context;
+import org.openmrs.module.reporting.common.DateUtil;
+import org.openmrs.module.ugandaemrreports.evaluation.ReportRun;
+import org.openmrs.module.ugandaemrreports.evaluation.ReportRunContext;
+import org.openmrs.module.webservices.rest.web.RestConstants;
+import org.openmrs.module.webservices.rest.web.response.ObjectNotFoundException;
+import org.openmrs.module.webservices.rest.web.v1_0.controller.BaseRestController;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Lists the report runs in progress, at /ws/rest/v1/ugandaemrreports/reportrun, and cancels one with a POST to
+ * /ws/rest/v1/ugandaemrreports/reportrun/{id}/cancel
+ */
+@Controller
+@RequestMapping(value = "/rest/" + RestConstants.VERSION_1 + "/ugandaemrreports/reportrun")
+public class ReportRunController extends BaseRestController {
+
+    @RequestMapping(method = RequestMethod.GET)
+    @ResponseBody
+    public List<Map<String, Object>> getActiveRuns() {
+        Context.requirePrivilege(ViralLoadIndexController.PRIV_MANAGE_REPORTS);
+        List<Map<String, Object>> ret = new ArrayList<Map<String, Object>>();
+        for (ReportRun run : ReportRunContext.getActiveRuns()) {
+            ret.add(toMap(run));
+        }
+        return ret;
+    }
+
+    @RequestMapping(value = "/{id}/cancel", method = RequestMethod.POST)
+    @ResponseBody
+    public Map<String, Object> cancel(@PathVariable("id") String id) {
+        Context.requirePrivilege(ViralLoadIndexController.PRIV_MANAGE_REPORTS);
+        ReportRun run = ReportRunContext.getActiveRun(id);
+        if (run == null) {
+            throw new ObjectNotFoundException();
+        }
+        run.getCancellationToken().cancel("cancelled by " + Context.getAuthenticatedUser().getUsername());
+        return toMap(run);
+    }
+
+    private Map<String, Object> toMap(ReportRun run) {
+        Map<String, Object> parameters = new TreeMap<String, Object>();
+        for (Map.Entry<String, Object> e : run.getParameterValues().entrySet()) {
+            Object value = e.getValue();
+            parameters.put(e.getKey(), value instanceof Date ? DateUtil.formatDate((Date) value, "yyyy-MM-dd") : String.valueOf(value));
+        }
+        Map<String, Object> ret = new LinkedHashMap<String, Object>();
+        ret.put("id", run.getId());
+        ret.put("reportName", run.getReportDefinitionName());
+        ret.put("reportDefinitionUuid", run.getReportDefinitionUuid());
+        ret.put("started", DateUtil.formatDate(run.getStarted(), "yyyy-MM-dd HH:mm:ss"));
+        ret.put("parameters", parameters);
+        ret.put("cancelled", run.getCancellationToken().isCancelled());
+        ret.put("cancelReason", run.getCancellationToken().getReason());
+        return ret;
+    }
+}
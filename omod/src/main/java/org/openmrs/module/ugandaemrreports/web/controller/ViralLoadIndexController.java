@@ -0,0 +1,50 @@
+package org.openmrs.module.ugandaemrreports.web.controller;
+
+import org.openmrs.api.context.Context;
+import org.openmrs.module.ugandaemrreports.evaluation.ViralLoadIndex;
+import org.openmrs.module.webservices.rest.web.RestConstants;
+import org.openmrs.module.webservices.rest.web.v1_0.controller.BaseRestController;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Maintains the viral load index, at /ws/rest/v1/ugandaemrreports/viralloadindex: GET compares it with the obs, and
+ * POST refreshes it, or rebuilds it from all the obs with ?rebuild=true
+ */
+@Controller
+@RequestMapping(value = "/rest/" + RestConstants.VERSION_1 + "/ugandaemrreports/viralloadindex")
+public class ViralLoadIndexController extends BaseRestController {
+
+    public static final String PRIV_MANAGE_REPORTS = "Manage Reports";
+
+    @Autowired
+    private ViralLoadIndex viralLoadIndex;
+
+    @RequestMapping(method = RequestMethod.GET)
+    @ResponseBody
+    public Map<String, Object> check() {
+        Context.requirePrivilege(PerformanceMetricsController.PRIV_VIEW_REPORTS);
+        List<Integer> differing = viralLoadIndex.check();
+        Map<String, Object> ret = new LinkedHashMap<String, Object>();
+        ret.put("consistent", differing.isEmpty());
+        ret.put("differingPatients", differing);
+        return ret;
+    }
+
+    @RequestMapping(method = RequestMethod.POST)
+    @ResponseBody
+    public Map<String, Object> update(@RequestParam(value = "rebuild", required = false, defaultValue = "false") boolean rebuild) {
+        Context.requirePrivilege(PRIV_MANAGE_REPORTS);
+        Map<String, Object> ret = new LinkedHashMap<String, Object>();
+        ret.put(rebuild ? "indexedPatients" : "updatedPatients", rebuild ? viralLoadIndex.rebuild() : viralLoadIndex.refresh());
+        return ret;
+    }
+}